@@ -31,6 +31,7 @@ import org.eclipse.leshan.core.request.UplinkRequest;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.util.HashedWheelTimer;
 import org.eclipse.leshan.util.Validate;
 
 /**
@@ -42,6 +43,7 @@ public class LeshanClient implements LwM2mClient {
     private final AtomicBoolean clientServerStarted = new AtomicBoolean(false);
     private final CaliforniumLwM2mClientRequestSender requestSender;
     private final List<LwM2mObjectEnabler> objectEnablers;
+    private final HashedWheelTimer requestTimer;
 
     public LeshanClient(final InetSocketAddress serverAddress, final List<LwM2mObjectEnabler> objectEnablers) {
         this(new InetSocketAddress("0", 0), serverAddress, new CoapServer(), objectEnablers);
@@ -77,8 +79,9 @@ public class LeshanClient implements LwM2mClient {
             clientSideServer.add(clientObject);
         }
 
+        requestTimer = new HashedWheelTimer("leshan-client-request-timer");
         requestSender = new CaliforniumLwM2mClientRequestSender(serverLocal.getEndpoint(clientAddress), serverAddress,
-                this);
+                this, requestTimer);
     }
 
     @Override
@@ -91,6 +94,7 @@ public class LeshanClient implements LwM2mClient {
     public void stop() {
         clientSideServer.stop();
         clientServerStarted.set(false);
+        requestTimer.stop();
     }
 
     @Override
@@ -16,10 +16,8 @@
 package org.eclipse.leshan.client.californium.impl;
 
 import java.net.InetSocketAddress;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.californium.core.coap.MessageObserverAdapter;
 import org.eclipse.californium.core.coap.Request;
@@ -28,10 +26,14 @@ import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.leshan.client.LwM2mClient;
 import org.eclipse.leshan.client.request.LwM2mClientRequestSender;
 import org.eclipse.leshan.core.request.UplinkRequest;
+import org.eclipse.leshan.core.request.exception.RequestCanceledException;
 import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.SyncResponseCallback;
+import org.eclipse.leshan.util.HashedWheelTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,49 +43,53 @@ public class CaliforniumLwM2mClientRequestSender implements LwM2mClientRequestSe
     private final Endpoint clientEndpoint;
     private final InetSocketAddress serverAddress;
     private final LwM2mClient client;
+    private final HashedWheelTimer timer;
+    // the timer created by this sender, stopped on destroy
+    private HashedWheelTimer ownTimer;
 
+    /**
+     * Creates a sender with its own timer, stopped by {@link #destroy()}.
+     */
     public CaliforniumLwM2mClientRequestSender(final Endpoint endpoint, final InetSocketAddress serverAddress,
             final LwM2mClient client) {
+        this(endpoint, serverAddress, client, new HashedWheelTimer("leshan-client-request-timer"));
+        this.ownTimer = this.timer;
+    }
+
+    public CaliforniumLwM2mClientRequestSender(final Endpoint endpoint, final InetSocketAddress serverAddress,
+            final LwM2mClient client, final HashedWheelTimer timer) {
         this.clientEndpoint = endpoint;
         this.serverAddress = serverAddress;
         this.client = client;
+        this.timer = timer;
+    }
+
+    /**
+     * Stops the timer if it was created by this sender. A timer given to the constructor is left to its owner.
+     */
+    public void destroy() {
+        if (ownTimer != null) {
+            ownTimer.destroy();
+        }
     }
 
     @Override
     public <T extends LwM2mResponse> T send(final UplinkRequest<T> request, Long timeout) {
-        // Create the CoAP request from LwM2m request
-        final CoapClientRequestBuilder coapClientRequestBuilder = new CoapClientRequestBuilder(serverAddress, client);
-        request.accept(coapClientRequestBuilder);
-        // TODO manage invalid parameters
-        // if (!coapClientRequestBuilder.areParametersValid()) {
-        // return OperationResponse.failure(ResponseCode.INTERNAL_SERVER_ERROR,
-        // "Request has invalid parameters.  Not sending.");
-        // }
-        final Request coapRequest = coapClientRequestBuilder.getRequest();
-
-        // Send CoAP request synchronously
-        final SyncRequestObserver<T> syncMessageObserver = new SyncRequestObserver<T>(coapRequest, timeout) {
-            @Override
-            public T buildResponse(final Response coapResponse) {
-                // Build LwM2m response
-                final LwM2mClientResponseBuilder<T> lwm2mResponseBuilder = new LwM2mClientResponseBuilder<T>(
-                        coapRequest, coapResponse);
-                request.accept(lwm2mResponseBuilder);
-                return lwm2mResponseBuilder.getResponse();
-            }
-        };
-        coapRequest.addMessageObserver(syncMessageObserver);
-
-        // Send CoAP request asynchronously
-        clientEndpoint.sendRequest(coapRequest);
-
-        // Wait for response, then return it
-        return syncMessageObserver.waitForResponse();
+        // Send the request asynchronously and wait for the callback: the timeout is handled by the timer
+        SyncResponseCallback<T> callback = new SyncResponseCallback<T>();
+        send(request, timeout, callback, callback);
+        return callback.waitForResponse();
     }
 
     @Override
     public <T extends LwM2mResponse> void send(final UplinkRequest<T> request,
             final ResponseCallback<T> responseCallback, final ErrorCallback errorCallback) {
+        send(request, null, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(final UplinkRequest<T> request, final Long timeout,
+            final ResponseCallback<T> responseCallback, final ErrorCallback errorCallback) {
         // Create the CoAP request from LwM2m request
         final CoapClientRequestBuilder coapClientRequestBuilder = new CoapClientRequestBuilder(serverAddress, client);
         request.accept(coapClientRequestBuilder);
@@ -96,7 +102,8 @@ public class CaliforniumLwM2mClientRequestSender implements LwM2mClientRequestSe
         final Request coapRequest = coapClientRequestBuilder.getRequest();
 
         // Add CoAP request callback
-        coapRequest.addMessageObserver(new AsyncRequestObserver<T>(coapRequest, responseCallback, errorCallback) {
+        final RequestObserver<T> observer = new RequestObserver<T>(coapRequest, timeout, responseCallback,
+                errorCallback) {
 
             @Override
             public T buildResponse(final Response coapResponse) {
@@ -106,7 +113,13 @@ public class CaliforniumLwM2mClientRequestSender implements LwM2mClientRequestSe
                 request.accept(lwm2mResponseBuilder);
                 return lwm2mResponseBuilder.getResponse();
             }
-        });
+        };
+        coapRequest.addMessageObserver(observer);
+
+        // Schedule the request deadline
+        if (timeout != null) {
+            observer.setDeadline(timer.newTimeout(observer, timeout, TimeUnit.MILLISECONDS, true));
+        }
 
         // Send CoAP request asynchronously
         clientEndpoint.sendRequest(coapRequest);
@@ -115,129 +128,90 @@ public class CaliforniumLwM2mClientRequestSender implements LwM2mClientRequestSe
     // ////// Request Observer Class definition/////////////
     // TODO leshan-code-cf: All Request Observer should be factorize in a leshan-core-cf project.
     // duplicate from org.eclipse.leshan.server.californium.impl.CaliforniumLwM2mRequestSender
-    private abstract class AbstractRequestObserver<T extends LwM2mResponse> extends MessageObserverAdapter {
-        Request coapRequest;
-
-        public AbstractRequestObserver(final Request coapRequest) {
-            this.coapRequest = coapRequest;
-        }
-
-        public abstract T buildResponse(Response coapResponse);
-    }
-
-    private abstract class AsyncRequestObserver<T extends LwM2mResponse> extends AbstractRequestObserver<T> {
+    private abstract class RequestObserver<T extends LwM2mResponse> extends MessageObserverAdapter implements
+            Runnable {
 
-        ResponseCallback<T> responseCallback;
-        ErrorCallback errorCallback;
+        final Request coapRequest;
+        final Long timeout;
+        final ResponseCallback<T> responseCallback;
+        final ErrorCallback errorCallback;
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        volatile HashedWheelTimer.Timeout deadline;
 
-        AsyncRequestObserver(final Request coapRequest, final ResponseCallback<T> responseCallback,
+        RequestObserver(final Request coapRequest, final Long timeout, final ResponseCallback<T> responseCallback,
                 final ErrorCallback errorCallback) {
-            super(coapRequest);
+            this.coapRequest = coapRequest;
+            this.timeout = timeout;
             this.responseCallback = responseCallback;
             this.errorCallback = errorCallback;
         }
 
-        @Override
-        public void onResponse(final Response coapResponse) {
-            LOG.debug("Received coap response: {}", coapResponse);
-            try {
-                final T lwM2mResponseT = buildResponse(coapResponse);
-                if (lwM2mResponseT != null) {
-                    responseCallback.onResponse(lwM2mResponseT);
-                }
-            } catch (final Exception e) {
-                errorCallback.onError(e);
-            } finally {
-                coapRequest.removeMessageObserver(this);
-            }
-        }
-
-        @Override
-        public void onTimeout() {
-            errorCallback.onError(new org.eclipse.leshan.core.request.exception.TimeoutException());
-        }
-
-        @Override
-        public void onCancel() {
-            errorCallback.onError(new RequestFailedException("Canceled request"));
-        }
+        public abstract T buildResponse(Response coapResponse);
 
-        @Override
-        public void onReject() {
-            errorCallback.onError(new RequestFailedException("Reject request"));
+        void setDeadline(HashedWheelTimer.Timeout deadline) {
+            this.deadline = deadline;
         }
 
-    }
-
-    private abstract class SyncRequestObserver<T extends LwM2mResponse> extends AbstractRequestObserver<T> {
-
-        CountDownLatch latch = new CountDownLatch(1);
-        AtomicReference<T> ref = new AtomicReference<T>(null);
-        AtomicBoolean coapTimeout = new AtomicBoolean(false);
-        AtomicReference<RuntimeException> exception = new AtomicReference<>();
-        Long timeout;
-
-        public SyncRequestObserver(final Request coapRequest, final Long timeout) {
-            super(coapRequest);
-            this.timeout = timeout;
+        private boolean complete() {
+            if (!completed.compareAndSet(false, true)) {
+                return false;
+            }
+            HashedWheelTimer.Timeout d = deadline;
+            if (d != null) {
+                d.cancel();
+            }
+            coapRequest.removeMessageObserver(this);
+            return true;
         }
 
         @Override
         public void onResponse(final Response coapResponse) {
             LOG.debug("Received coap response: {}", coapResponse);
+            if (completed.get()) {
+                return;
+            }
+            final T lwM2mResponseT;
             try {
-                final T lwM2mResponseT = buildResponse(coapResponse);
-                if (lwM2mResponseT != null) {
-                    ref.set(lwM2mResponseT);
+                lwM2mResponseT = buildResponse(coapResponse);
+            } catch (final Exception e) {
+                if (complete()) {
+                    errorCallback.onError(e);
                 }
-            } catch (final RuntimeException e) {
-                exception.set(e);
-            } finally {
-                latch.countDown();
+                return;
+            }
+            if (lwM2mResponseT != null && complete()) {
+                responseCallback.onResponse(lwM2mResponseT);
             }
         }
 
         @Override
         public void onTimeout() {
-            coapTimeout.set(true);
-            latch.countDown();
+            if (complete()) {
+                errorCallback.onError(new TimeoutException());
+            }
         }
 
         @Override
         public void onCancel() {
-            LOG.debug(String.format("Synchronous request cancelled %s", coapRequest));
-            latch.countDown();
+            if (complete()) {
+                LOG.debug("Request cancelled {}", coapRequest);
+                errorCallback.onError(new RequestCanceledException());
+            }
         }
 
         @Override
         public void onReject() {
-            exception.set(new RequestFailedException("Rejected request"));
-            latch.countDown();
-        }
-
-        public T waitForResponse() {
-            try {
-                boolean timeElapsed = false;
-                if (timeout != null) {
-                    timeElapsed = !latch.await(timeout, TimeUnit.MILLISECONDS);
-                } else {
-                    latch.await();
-                }
-                if (timeElapsed || coapTimeout.get()) {
-                    coapRequest.cancel();
-                }
-            } catch (final InterruptedException e) {
-                // no idea why some other thread should have interrupted this thread
-                // but anyway, go ahead as if the timeout had been reached
-                LOG.debug("Caught an unexpected InterruptedException during execution of CoAP request", e);
-            } finally {
-                coapRequest.removeMessageObserver(this);
+            if (complete()) {
+                errorCallback.onError(new RequestFailedException("Reject request"));
             }
+        }
 
-            if (exception.get() != null) {
-                throw exception.get();
+        @Override
+        public void run() {
+            if (complete()) {
+                coapRequest.cancel();
+                errorCallback.onError(new TimeoutException(String.format("Request timed out after %d ms", timeout)));
             }
-            return ref.get();
         }
     }
 }
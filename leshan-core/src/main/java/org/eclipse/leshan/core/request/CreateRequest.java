@@ -15,8 +15,11 @@
  *******************************************************************************/
 package org.eclipse.leshan.core.request;
 
+import org.eclipse.leshan.core.model.LwM2mModel;
+import org.eclipse.leshan.core.node.LwM2mObjectInstance;
 import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.codec.LwM2mNodeEncoder;
 import org.eclipse.leshan.core.response.CreateResponse;
 
 /**
@@ -28,6 +31,8 @@ public class CreateRequest extends AbstractDownlinkRequest<CreateResponse> {
 
     private final ContentFormat contentFormat;
 
+    private final EncodedPayloadCache payloadCache = new EncodedPayloadCache();
+
     /**
      * Creates a request for creating an instance of a particular object.
      * 
@@ -86,6 +91,23 @@ public class CreateRequest extends AbstractDownlinkRequest<CreateResponse> {
         return contentFormat;
     }
 
+    /**
+     * Encodes the resources of this request, wrapped into an object instance. The payload is computed once for a given
+     * model and shared by all the callers: it must not be modified.
+     *
+     * @param model the object definitions of the destination
+     * @return the encoded payload
+     */
+    public byte[] getEncodedPayload(LwM2mModel model) {
+        byte[] payload = payloadCache.get(contentFormat, model);
+        if (payload == null) {
+            // wrap the resources into an object instance layer (with a fake instance id).
+            payload = LwM2mNodeEncoder.encode(new LwM2mObjectInstance(-1, resources), contentFormat, getPath(), model);
+            payloadCache.put(contentFormat, model, payload);
+        }
+        return payload;
+    }
+
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
@@ -0,0 +1,54 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core.request;
+
+import org.eclipse.leshan.core.model.LwM2mModel;
+
+/**
+ * Remembers the last payload encoded for a request, so that a request sent to many clients sharing the same model is
+ * only encoded once.
+ */
+class EncodedPayloadCache {
+
+    private static class Entry {
+        final ContentFormat format;
+        final LwM2mModel model;
+        final byte[] payload;
+
+        Entry(ContentFormat format, LwM2mModel model, byte[] payload) {
+            this.format = format;
+            this.model = model;
+            this.payload = payload;
+        }
+    }
+
+    private volatile Entry entry;
+
+    /**
+     * @return the payload encoded for the given format and model (compared by identity) or <code>null</code>
+     */
+    byte[] get(ContentFormat format, LwM2mModel model) {
+        Entry e = entry;
+        if (e != null && e.format == format && e.model == model) {
+            return e.payload;
+        }
+        return null;
+    }
+
+    void put(ContentFormat format, LwM2mModel model, byte[] payload) {
+        entry = new Entry(format, model, payload);
+    }
+}
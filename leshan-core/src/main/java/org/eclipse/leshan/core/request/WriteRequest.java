@@ -15,11 +15,13 @@
  *******************************************************************************/
 package org.eclipse.leshan.core.request;
 
+import org.eclipse.leshan.core.model.LwM2mModel;
 import org.eclipse.leshan.core.node.LwM2mNode;
 import org.eclipse.leshan.core.node.LwM2mObject;
 import org.eclipse.leshan.core.node.LwM2mObjectInstance;
 import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.codec.LwM2mNodeEncoder;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.util.Validate;
 
@@ -34,6 +36,8 @@ public class WriteRequest extends AbstractDownlinkRequest<LwM2mResponse> {
 
     private final boolean replaceRequest;
 
+    private final EncodedPayloadCache payloadCache = new EncodedPayloadCache();
+
     public WriteRequest(final int objectId, final int objectInstanceId, final int resourceId, final LwM2mNode node,
             final ContentFormat contentFormat, final boolean replaceResources) {
         this(new LwM2mPath(objectId, objectInstanceId, resourceId), node, contentFormat, replaceResources);
@@ -105,6 +109,23 @@ public class WriteRequest extends AbstractDownlinkRequest<LwM2mResponse> {
         return contentFormat;
     }
 
+    /**
+     * Encodes the node of this request. The payload is computed once for a given format and model and shared by all
+     * the callers: it must not be modified.
+     *
+     * @param format the content format of the payload
+     * @param model the object definitions of the destination
+     * @return the encoded payload
+     */
+    public byte[] getEncodedPayload(ContentFormat format, LwM2mModel model) {
+        byte[] payload = payloadCache.get(format, model);
+        if (payload == null) {
+            payload = LwM2mNodeEncoder.encode(node, format, getPath(), model);
+            payloadCache.put(format, model, payload);
+        }
+        return payload;
+    }
+
     @Override
     public void accept(final DownlinkRequestVisitor visitor) {
         visitor.visit(this);
@@ -30,4 +30,8 @@ public class RequestFailedException extends RuntimeException {
         super(message);
     }
 
+    public RequestFailedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
 }
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core.request.exception;
+
+/**
+ * A {@link TimeoutException} raised when a request was sent to the client and the client did not acknowledge it.
+ * <p>
+ * Unlike the other timeouts (a request expiring before being sent, or a deadline set by the caller shorter than the
+ * CoAP retransmission schedule), it means that the client is not answering.
+ * </p>
+ */
+public class UnacknowledgedRequestException extends TimeoutException {
+
+    private static final long serialVersionUID = 4526381904762311752L;
+
+    public UnacknowledgedRequestException() {
+        super();
+    }
+
+    public UnacknowledgedRequestException(String message) {
+        super(message);
+    }
+
+}
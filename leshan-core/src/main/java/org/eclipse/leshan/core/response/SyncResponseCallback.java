@@ -0,0 +1,82 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.core.response;
+
+import org.eclipse.leshan.core.request.exception.RequestCanceledException;
+import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+
+/**
+ * A callback used to implement a synchronous request on top of an asynchronous one.
+ * <p>
+ * The request sender is responsible for calling one of the callback methods exactly once, typically when a response is
+ * received, when the CoAP exchange times out or when the request deadline expires. {@link #waitForResponse()} does not
+ * handle any timeout by itself.
+ * </p>
+ */
+public class SyncResponseCallback<T extends LwM2mResponse> implements ResponseCallback<T>, ErrorCallback {
+
+    private boolean done = false;
+    private T response;
+    private Exception error;
+
+    @Override
+    public synchronized void onResponse(T response) {
+        if (!done) {
+            this.response = response;
+            this.done = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public synchronized void onError(Exception e) {
+        if (!done) {
+            this.error = e;
+            this.done = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the request completes.
+     *
+     * @return the response or <code>null</code> if the request timed out or was canceled
+     * @throws RuntimeException if the request failed
+     */
+    public T waitForResponse() {
+        synchronized (this) {
+            while (!done) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    // no idea why some other thread should have interrupted this thread
+                    // but anyway, go ahead as if the timeout had been reached
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+
+        if (error == null || error instanceof TimeoutException || error instanceof RequestCanceledException) {
+            return response;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else {
+            throw new RequestFailedException(error.getMessage(), error);
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A timer dedicated to the expiration of a large number of pending deadlines (typically request timeouts).
+ * <p>
+ * Timeouts are stored in a wheel of buckets which is processed by a single worker thread at each tick. Scheduling and
+ * cancelling a timeout are O(1) and do not block, so the number of threads does not grow with the number of pending
+ * deadlines. The price is accuracy: a task is executed at most one tick after its deadline.
+ * </p>
+ * <p>
+ * Tasks are executed by the worker thread and must be short and non-blocking. The worker thread is started lazily on
+ * the first scheduled timeout. When the timer is stopped, the pending deadlines scheduled with
+ * {@link #newTimeout(Runnable, long, TimeUnit, boolean) expireOnStop} are executed immediately so that nobody waits for
+ * a deadline which will never be reached. The other tasks stay pending until the timer is restarted, or are executed
+ * when it is destroyed.
+ * </p>
+ */
+public class HashedWheelTimer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    /** The default duration of a tick in milliseconds */
+    public static final long DEFAULT_TICK_DURATION = 100;
+
+    /** The default number of buckets in the wheel */
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    /**
+     * A handle on a task scheduled with {@link HashedWheelTimer#newTimeout(Runnable, long, TimeUnit)}.
+     */
+    public interface Timeout {
+
+        /**
+         * Cancels the task. It will not be executed if it is not already expired.
+         *
+         * @return <code>true</code> if the task was pending and is now cancelled
+         */
+        boolean cancel();
+
+        /**
+         * @return <code>true</code> if the task has been executed (or is being executed)
+         */
+        boolean isExpired();
+
+        /**
+         * @return <code>true</code> if the task has been cancelled
+         */
+        boolean isCancelled();
+    }
+
+    private final String name;
+    private final long tickDuration; // in nanoseconds
+    private final int wheelSize;
+
+    private final Queue<WheelTimeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    // guarded by this
+    private Worker worker;
+
+    /**
+     * Creates a timer with the default tick duration and wheel size.
+     *
+     * @param name the name of the worker thread
+     */
+    public HashedWheelTimer(String name) {
+        this(name, DEFAULT_TICK_DURATION, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * @param name the name of the worker thread
+     * @param tickDuration the duration between two ticks: the accuracy of the timer
+     * @param unit the time unit of the tick duration
+     * @param wheelSize the number of buckets in the wheel (rounded up to a power of two)
+     */
+    public HashedWheelTimer(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        Validate.notNull(name);
+        Validate.notNull(unit);
+        Validate.isTrue(tickDuration > 0, "tick duration must be positive");
+        Validate.isTrue(wheelSize > 0 && wheelSize <= 1 << 30, "invalid wheel size");
+
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+
+        this.name = name;
+        this.tickDuration = unit.toNanos(tickDuration);
+        this.wheelSize = size;
+    }
+
+    /**
+     * Schedules the execution of a task after the given delay.
+     *
+     * @param task the task to execute
+     * @param delay the delay before executing the task
+     * @param unit the time unit of the delay
+     * @return a handle which can be used to cancel the task
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        return newTimeout(task, delay, unit, false);
+    }
+
+    /**
+     * Schedules the execution of a task after the given delay.
+     *
+     * @param task the task to execute
+     * @param delay the delay before executing the task
+     * @param unit the time unit of the delay
+     * @param expireOnStop <code>true</code> to execute the task when the timer is stopped (e.g. the deadline of a
+     *        request which will never complete once stopped), <code>false</code> to keep it pending until the timer is
+     *        restarted
+     * @return a handle which can be used to cancel the task
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit, boolean expireOnStop) {
+        Validate.notNull(task);
+        Validate.notNull(unit);
+
+        WheelTimeout timeout = new WheelTimeout(task, System.nanoTime() + unit.toNanos(Math.max(delay, 0)),
+                expireOnStop);
+        pendingCount.incrementAndGet();
+        start();
+        pendingTimeouts.add(timeout);
+
+        // the timer may have been stopped after it was started above: nobody will transfer this timeout
+        boolean stopped;
+        synchronized (this) {
+            stopped = worker == null;
+        }
+        if (stopped && expireOnStop && pendingTimeouts.remove(timeout)) {
+            timeout.expire();
+        }
+        return timeout;
+    }
+
+    /**
+     * @return the number of scheduled tasks which are neither expired nor cancelled
+     */
+    public int pendingTimeouts() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Starts the worker thread if it is not running, e.g. to resume the tasks kept pending by {@link #stop()}.
+     */
+    public synchronized void start() {
+        if (worker == null) {
+            worker = new Worker();
+            worker.thread.start();
+        }
+    }
+
+    /**
+     * Stops the worker thread and executes the pending tasks scheduled to expire on stop. The other tasks stay pending:
+     * the timer is restarted by {@link #start()} or on the next call to {@link #newTimeout(Runnable, long, TimeUnit)}.
+     */
+    public void stop() {
+        Worker stopped;
+        synchronized (this) {
+            if (worker == null) {
+                return;
+            }
+            stopped = worker;
+            worker = null;
+        }
+        stopped.running = false;
+        if (stopped.thread != Thread.currentThread()) {
+            stopped.thread.interrupt();
+            boolean interrupted = false;
+            while (stopped.thread.isAlive()) {
+                try {
+                    stopped.thread.join(100);
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Stops the worker thread and executes all the pending tasks, so that nobody waits for a task which will never be
+     * executed. The timer must not be used afterwards.
+     */
+    public void destroy() {
+        stop();
+        WheelTimeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            timeout.expire();
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        final Thread thread;
+        volatile boolean running = true;
+
+        // the wheel is owned by a single worker: a restarted timer never shares buckets with a stopping one
+        private final Bucket[] wheel;
+        private final int mask;
+        private final long startTime = System.nanoTime();
+        private long tick;
+
+        Worker() {
+            wheel = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                wheel[i] = new Bucket();
+            }
+            mask = wheelSize - 1;
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                if (!waitForNextTick()) {
+                    break;
+                }
+                transferPendingTimeouts();
+                wheel[(int) (tick & mask)].expire();
+                tick++;
+            }
+
+            List<WheelTimeout> remaining = new ArrayList<>();
+            for (Bucket bucket : wheel) {
+                bucket.drainTo(remaining);
+            }
+            synchronized (HashedWheelTimer.this) {
+                // once restarted, the new worker is in charge of the timeouts not transferred yet
+                if (worker == null) {
+                    WheelTimeout timeout;
+                    while ((timeout = pendingTimeouts.poll()) != null) {
+                        remaining.add(timeout);
+                    }
+                }
+            }
+            for (WheelTimeout t : remaining) {
+                if (t.expireOnStop) {
+                    // nobody should wait for a deadline which will never be reached
+                    t.expire();
+                } else if (!t.isCancelled()) {
+                    // the deadline is absolute: it is rescheduled as is when the timer is restarted
+                    pendingTimeouts.add(t);
+                }
+            }
+        }
+
+        /**
+         * @return <code>false</code> if the timer was stopped while waiting
+         */
+        private boolean waitForNextTick() {
+            long deadline = tickDuration * (tick + 1);
+            while (true) {
+                long sleepTimeMs = (deadline - (System.nanoTime() - startTime) + 999999) / 1000000;
+                if (sleepTimeMs <= 0) {
+                    return true;
+                }
+                try {
+                    Thread.sleep(sleepTimeMs);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return false;
+                    }
+                }
+            }
+        }
+
+        private void transferPendingTimeouts() {
+            // bound the number of transfers per tick to keep the worker responsive under heavy load
+            for (int i = 0; i < 100000; i++) {
+                WheelTimeout timeout = pendingTimeouts.poll();
+                if (timeout == null) {
+                    break;
+                }
+                if (timeout.isCancelled()) {
+                    continue;
+                }
+                long calculated = (timeout.deadline - startTime) / tickDuration;
+                timeout.remainingRounds = (calculated - tick) / wheel.length;
+                // a deadline in the past is scheduled for the current tick
+                long ticks = Math.max(calculated, tick);
+                wheel[(int) (ticks & mask)].add(timeout);
+            }
+        }
+    }
+
+    private final class WheelTimeout implements Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        // absolute, in System.nanoTime() time
+        private final long deadline;
+        private final boolean expireOnStop;
+
+        // released on cancellation: a cancelled timeout is only unlinked when the worker reaches its bucket
+        private Runnable task;
+
+        // not private: accessed through STATE_UPDATER
+        volatile int state = ST_INIT;
+
+        // only accessed by the worker thread
+        private long remainingRounds;
+        private WheelTimeout next;
+        private WheelTimeout prev;
+
+        WheelTimeout(Runnable task, long deadline, boolean expireOnStop) {
+            this.task = task;
+            this.deadline = deadline;
+            this.expireOnStop = expireOnStop;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            task = null;
+            pendingCount.decrementAndGet();
+            return true;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == ST_EXPIRED;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state == ST_CANCELLED;
+        }
+
+        void expire() {
+            if (!STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            pendingCount.decrementAndGet();
+            Runnable t = task;
+            task = null;
+            try {
+                t.run();
+            } catch (RuntimeException e) {
+                LOG.warn("An exception was thrown by a timer task", e);
+            }
+        }
+    }
+
+    private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE_UPDATER = AtomicIntegerFieldUpdater
+            .newUpdater(WheelTimeout.class, "state");
+
+    /**
+     * A doubly linked list of timeouts, only accessed by the worker thread.
+     */
+    private static final class Bucket {
+
+        private WheelTimeout head;
+        private WheelTimeout tail;
+
+        void add(WheelTimeout timeout) {
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        void expire() {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds <= 0) {
+                    remove(timeout);
+                    timeout.expire();
+                } else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+
+        void remove(WheelTimeout timeout) {
+            WheelTimeout next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+
+        void drainTo(List<WheelTimeout> timeouts) {
+            WheelTimeout timeout = head;
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                remove(timeout);
+                timeouts.add(timeout);
+                timeout = next;
+            }
+        }
+    }
+}
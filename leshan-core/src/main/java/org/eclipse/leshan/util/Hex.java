@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.util;
+
+/**
+ * Hexadecimal encoding of byte arrays, in lower case.
+ */
+public final class Hex {
+
+    private Hex() {
+    }
+
+    /**
+     * @return the hexadecimal encoding of the given bytes
+     */
+    public static String encodeHex(byte[] bytes) {
+        return appendHex(bytes, new StringBuilder(bytes.length * 2)).toString();
+    }
+
+    /**
+     * Appends the hexadecimal encoding of the given bytes to a builder.
+     *
+     * @return the given builder
+     */
+    public static StringBuilder appendHex(byte[] bytes, StringBuilder b) {
+        for (byte v : bytes) {
+            b.append(Character.forDigit((v >> 4) & 0xF, 16)).append(Character.forDigit(v & 0xF, 16));
+        }
+        return b;
+    }
+
+    /**
+     * @return the bytes encoded by the given hexadecimal string
+     * @throws IllegalArgumentException if the string is not a valid hexadecimal encoding
+     */
+    public static byte[] decodeHex(String hex) {
+        if (hex.length() % 2 != 0) {
+            throw new IllegalArgumentException("odd length: " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int high = Character.digit(hex.charAt(2 * i), 16);
+            int low = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (high < 0 || low < 0) {
+                throw new IllegalArgumentException("invalid hexadecimal string: " + hex);
+            }
+            bytes[i] = (byte) (high << 4 | low);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.util;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HashedWheelTimerTest {
+
+    HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+        // a small wheel to exercise the remaining rounds
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 4);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void expire_timeout_after_delay() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(new CountDown(latch), 100, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+        Assert.assertTrue(timeout.isExpired());
+        Assert.assertFalse(timeout.cancel());
+        Assert.assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    public void cancelled_timeout_is_not_executed() throws InterruptedException {
+        final AtomicInteger executions = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+            @Override
+            public void run() {
+                executions.incrementAndGet();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+
+        Assert.assertTrue(timeout.cancel());
+        Assert.assertTrue(timeout.isCancelled());
+        Assert.assertEquals(0, timer.pendingTimeouts());
+
+        Thread.sleep(150);
+        Assert.assertEquals(0, executions.get());
+        Assert.assertFalse(timeout.isExpired());
+    }
+
+    @Test
+    public void stop_executes_pending_deadlines() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(2);
+        timer.newTimeout(new CountDown(latch), 1, TimeUnit.HOURS, true);
+        timer.newTimeout(new CountDown(latch), 1, TimeUnit.DAYS, true);
+
+        timer.stop();
+
+        Assert.assertTrue(latch.await(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void stop_keeps_other_tasks_until_restart() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(new CountDown(latch), 100, TimeUnit.MILLISECONDS);
+
+        timer.stop();
+        Assert.assertFalse(timeout.isExpired());
+        Assert.assertEquals(1, timer.pendingTimeouts());
+
+        // the deadline does not depend on the restart time
+        timer.start();
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assert.assertTrue(elapsed >= 100 && elapsed < 1000);
+    }
+
+    @Test
+    public void destroy_executes_all_pending_tasks() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(2);
+        timer.newTimeout(new CountDown(latch), 1, TimeUnit.HOURS, true);
+        timer.newTimeout(new CountDown(latch), 1, TimeUnit.DAYS);
+
+        timer.destroy();
+
+        Assert.assertTrue(latch.await(0, TimeUnit.SECONDS));
+        Assert.assertEquals(0, timer.pendingTimeouts());
+    }
+
+    @Test
+    public void restart_after_stop() throws InterruptedException {
+        timer.stop();
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        timer.newTimeout(new CountDown(latch), 20, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+    }
+
+    private static class CountDown implements Runnable {
+
+        private final CountDownLatch latch;
+
+        CountDown(CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HexTest {
+
+    @Test
+    public void encode_and_decode() {
+        byte[] bytes = new byte[] { 0, 15, 16, -1, 127, -128 };
+
+        Assert.assertEquals("000f10ff7f80", Hex.encodeHex(bytes));
+        Assert.assertArrayEquals(bytes, Hex.decodeHex("000f10ff7f80"));
+        Assert.assertArrayEquals(bytes, Hex.decodeHex("000F10FF7F80"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reject_odd_length() {
+        Hex.decodeHex("abc");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reject_invalid_digit() {
+        Hex.decodeHex("0g");
+    }
+}
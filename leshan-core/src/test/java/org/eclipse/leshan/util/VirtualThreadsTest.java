@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class VirtualThreadsTest {
+
+    @Test
+    public void run_tasks_on_virtual_threads_when_supported() throws Exception {
+        ExecutorService executor;
+        try {
+            executor = VirtualThreads.newThreadPerTaskExecutor("test-virtual");
+        } catch (UnsupportedOperationException e) {
+            Assert.assertFalse(VirtualThreads.isSupported());
+            return;
+        }
+        Assert.assertTrue(VirtualThreads.isSupported());
+
+        String name = executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return Thread.currentThread().getName();
+            }
+        }).get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        Assert.assertTrue(name.startsWith("test-virtual-"));
+    }
+
+    @Test
+    public void name_daemon_threads() {
+        NamedThreadFactory factory = new NamedThreadFactory("test-worker");
+        Thread first = factory.newThread(null);
+        Thread second = factory.newThread(null);
+
+        Assert.assertEquals("test-worker-0", first.getName());
+        Assert.assertEquals("test-worker-1", second.getName());
+        Assert.assertTrue(first.isDaemon());
+    }
+}
@@ -17,10 +17,19 @@ package org.eclipse.leshan.server.californium;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
 
 import org.eclipse.leshan.server.LwM2mServer;
 import org.eclipse.leshan.server.californium.impl.LeshanServer;
 import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.cluster.RequestForwarder;
+import org.eclipse.leshan.server.impl.ClientRegistryEventBus;
 import org.eclipse.leshan.server.impl.ClientRegistryImpl;
 import org.eclipse.leshan.server.impl.ObservationRegistryImpl;
 import org.eclipse.leshan.server.impl.SecurityRegistryImpl;
@@ -48,6 +57,9 @@ public class LeshanServerBuilder {
     private LwM2mModelProvider modelProvider;
     private InetSocketAddress localAddress;
     private InetSocketAddress localAddressSecure;
+    private final List<InetSocketAddress> additionalAddresses = new ArrayList<>();
+    private final List<InetSocketAddress> additionalAddressesSecure = new ArrayList<>();
+    private final LeshanServerConfig config = new LeshanServerConfig();
 
     public LeshanServerBuilder setLocalAddress(String hostname, int port) {
         this.localAddress = new InetSocketAddress(hostname, port);
@@ -69,6 +81,23 @@ public class LeshanServerBuilder {
         return this;
     }
 
+    /**
+     * Binds an additional non-secure endpoint, e.g. to listen on several ports or network interfaces. The clients are
+     * always answered through the endpoint they registered with.
+     */
+    public LeshanServerBuilder addLocalAddress(InetSocketAddress localAddress) {
+        this.additionalAddresses.add(localAddress);
+        return this;
+    }
+
+    /**
+     * Binds an additional DTLS endpoint, e.g. to listen on several ports or network interfaces.
+     */
+    public LeshanServerBuilder addLocalAddressSecure(InetSocketAddress localAddressSecure) {
+        this.additionalAddressesSecure.add(localAddressSecure);
+        return this;
+    }
+
     public LeshanServerBuilder setClientRegistry(ClientRegistry clientRegistry) {
         this.clientRegistry = clientRegistry;
         return this;
@@ -89,13 +118,412 @@ public class LeshanServerBuilder {
         return this;
     }
 
+    /**
+     * Sets the maximum number of requests sent concurrently to a client (1 by default). The other requests are queued
+     * until a response is received.
+     */
+    public LeshanServerBuilder setMaxInFlightRequests(int maxInFlightRequests) {
+        config.setMaxInFlightRequests(maxInFlightRequests);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of requests waiting to be sent to a client. Requests exceeding this limit are rejected.
+     */
+    public LeshanServerBuilder setMaxQueuedRequests(int maxQueuedRequests) {
+        config.setMaxQueuedRequests(maxQueuedRequests);
+        return this;
+    }
+
+    /**
+     * Sets the order in which the requests queued for a client are sent. Requests are sent in FIFO order by default.
+     */
+    public LeshanServerBuilder setRequestPriority(Comparator<DownlinkRequest<?>> requestPriority) {
+        config.setRequestPriority(requestPriority);
+        return this;
+    }
+
+    /**
+     * Sets the time a queue mode client is reachable after a registration update (93s by default). Requests sent to a
+     * queue mode client after this delay are buffered until its next update.
+     */
+    public LeshanServerBuilder setQueueModeAwakeTime(long awakeTime, TimeUnit unit) {
+        config.setQueueModeAwakeTime(unit.toMillis(awakeTime));
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of requests buffered for a sleeping queue mode client.
+     */
+    public LeshanServerBuilder setMaxBufferedRequests(int maxBufferedRequests) {
+        config.setMaxBufferedRequests(maxBufferedRequests);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of requests of group operations waiting for a response (100 by default).
+     */
+    public LeshanServerBuilder setMaxConcurrentGroupRequests(int maxConcurrentGroupRequests) {
+        config.setMaxConcurrentGroupRequests(maxConcurrentGroupRequests);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of requests of group operations sent per second. No limit by default.
+     */
+    public LeshanServerBuilder setMaxGroupRequestsPerSecond(double maxGroupRequestsPerSecond) {
+        config.setMaxGroupRequestsPerSecond(maxGroupRequestsPerSecond);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of values kept in the device shadow for all the clients (0 by default: no shadow). The
+     * shadow is updated by each read response and each notification.
+     */
+    public LeshanServerBuilder setMaxShadowEntries(int maxShadowEntries) {
+        config.setMaxShadowEntries(maxShadowEntries);
+        return this;
+    }
+
+    /**
+     * Sets the number of threads decoding the notifications and calling the observation listeners (the number of
+     * processors by default). The notifications of an observation are always processed in order. Use 0 to process them
+     * in the CoAP threads.
+     */
+    public LeshanServerBuilder setNotificationWorkers(int notificationWorkers) {
+        config.setNotificationWorkers(notificationWorkers);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of notifications waiting for each notification thread (1000 by default). When this limit
+     * is reached, the reception of new messages is slowed down.
+     */
+    public LeshanServerBuilder setNotificationQueueCapacity(int notificationQueueCapacity) {
+        config.setNotificationQueueCapacity(notificationQueueCapacity);
+        return this;
+    }
+
+    /**
+     * Drops the notifications carrying the same payload as the previous notification of the observation (disabled by
+     * default). Unchanged values are neither decoded nor dispatched to the observation listeners.
+     */
+    public LeshanServerBuilder setDropUnchangedNotifications(boolean dropUnchangedNotifications) {
+        config.setDropUnchangedNotifications(dropUnchangedNotifications);
+        return this;
+    }
+
+    /**
+     * Sets the store persisting the observations (none by default). On start, the server restores the stored
+     * observations of the registered clients and keeps receiving their notifications without observing them again.
+     * This is only useful with a persistent client registry.
+     */
+    public LeshanServerBuilder setObservationStore(ObservationStore observationStore) {
+        config.setObservationStore(observationStore);
+        return this;
+    }
+
+    /**
+     * Sets the number of notified values kept for each observed numeric resource (0 by default: no history). Each
+     * value uses 16 bytes.
+     */
+    public LeshanServerBuilder setHistorySize(int historySize) {
+        config.setHistorySize(historySize);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of resources with a history (10000 by default).
+     */
+    public LeshanServerBuilder setMaxHistorySeries(int maxHistorySeries) {
+        config.setMaxHistorySeries(maxHistorySeries);
+        return this;
+    }
+
+    /**
+     * Enables the aggregation of the notified numeric values (disabled by default). Use the same window and step for
+     * tumbling windows, or a window multiple of the step for sliding windows.
+     *
+     * @see LeshanServer#getNotificationAggregator()
+     */
+    public LeshanServerBuilder setAggregationWindow(long window, long step, TimeUnit unit) {
+        config.setAggregationWindow(unit.toMillis(window));
+        config.setAggregationStep(unit.toMillis(step));
+        return this;
+    }
+
+    /**
+     * Sets the number of partitions of the aggregation (the number of processors by default). The resources are
+     * partitioned by endpoint.
+     */
+    public LeshanServerBuilder setAggregationPartitions(int aggregationPartitions) {
+        config.setAggregationPartitions(aggregationPartitions);
+        return this;
+    }
+
+    /**
+     * Exports the notified values to rolling files in the given directory (disabled by default).
+     *
+     * @see LeshanServer#getNotificationFileSink()
+     */
+    public LeshanServerBuilder setNotificationExport(String directory) {
+        config.setExportDirectory(directory);
+        return this;
+    }
+
+    /**
+     * Exports the notified values to at most <code>maxFiles</code> rolling files of about <code>maxFileSize</code>
+     * bytes in the given directory (disabled by default).
+     *
+     * @see LeshanServer#getNotificationFileSink()
+     */
+    public LeshanServerBuilder setNotificationExport(String directory, long maxFileSize, int maxFiles) {
+        config.setExportDirectory(directory);
+        config.setExportMaxFileSize(maxFileSize);
+        config.setExportMaxFiles(maxFiles);
+        return this;
+    }
+
+    /**
+     * Sets the number of threads delivering the registration events to the client registry listeners (the number of
+     * processors by default). The events of a client are always delivered in order. Use 0 to deliver them in the CoAP
+     * threads. Only applies to the default client registry.
+     */
+    public LeshanServerBuilder setRegistryEventWorkers(int registryEventWorkers) {
+        config.setRegistryEventWorkers(registryEventWorkers);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of registration events waiting for each registry event thread (1000 by default). When
+     * the queue is full, the registration requests wait for the listeners.
+     */
+    public LeshanServerBuilder setRegistryEventQueueCapacity(int registryEventQueueCapacity) {
+        config.setRegistryEventQueueCapacity(registryEventQueueCapacity);
+        return this;
+    }
+
+    /**
+     * Limits the rate of the registration requests (no limit by default). New registrations and registration updates
+     * are limited separately. The requests exceeding the limits are rejected with a 5.03 Service Unavailable.
+     *
+     * @param maxRegistrationsPerSecond the maximum number of new registrations per second or 0 for no limit
+     * @param maxUpdatesPerSecond the maximum number of registration updates per second or 0 for no limit
+     * @see LeshanServer#getRegistrationAdmissionControl()
+     */
+    public LeshanServerBuilder setRegistrationRateLimits(double maxRegistrationsPerSecond,
+            double maxUpdatesPerSecond) {
+        config.setMaxRegistrationsPerSecond(maxRegistrationsPerSecond);
+        config.setMaxUpdatesPerSecond(maxUpdatesPerSecond);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of registration requests processed at the same time (no limit by default). The requests
+     * received beyond this limit are rejected with a 5.03 Service Unavailable.
+     */
+    public LeshanServerBuilder setMaxPendingRegistrations(int maxPendingRegistrations) {
+        config.setMaxPendingRegistrations(maxPendingRegistrations);
+        return this;
+    }
+
+    /**
+     * Sets the range of the random Max-Age of the responses to the rejected registration requests (between 10 and 60
+     * seconds by default).
+     */
+    public LeshanServerBuilder setRegistrationRetryDelay(int minRetryDelay, int maxRetryDelay, TimeUnit unit) {
+        config.setMinRegistrationRetryDelay((int) unit.toSeconds(minRetryDelay));
+        config.setMaxRegistrationRetryDelay((int) unit.toSeconds(maxRetryDelay));
+        return this;
+    }
+
+    /**
+     * Makes this server a node of a cluster sharing the client registrations (standalone by default). The
+     * registration ids contain the node id, and the requests for the clients owned by another node are given to the
+     * request forwarder. Use a shared client registry such as a
+     * {@link org.eclipse.leshan.server.impl.SharedClientRegistry}, created with the same node id to route the requests
+     * to the node which handled the last update of each client.
+     *
+     * @param nodeId the identifier of this node: letters, digits and dashes only
+     * @param requestForwarder the forwarder of the requests for the clients registered through other nodes
+     */
+    public LeshanServerBuilder setClusterNode(String nodeId, RequestForwarder requestForwarder) {
+        config.setNodeId(nodeId);
+        config.setRequestForwarder(requestForwarder);
+        return this;
+    }
+
+    /**
+     * Sets the threads of each CoAP endpoint (by default all the endpoints share the thread pool of the CoAP server
+     * and the socket threads are set by the Californium configuration). Giving each endpoint its own protocol threads
+     * spreads the load of several endpoints over the cores.
+     *
+     * @param protocolThreads the number of threads processing the messages of each endpoint or 0 to share the thread
+     *        pool of the CoAP server
+     * @param receiverThreads the number of threads reading the UDP socket of each non-secure endpoint or 0 for the
+     *        default
+     * @param senderThreads the number of threads writing to the UDP socket of each non-secure endpoint or 0 for the
+     *        default
+     */
+    public LeshanServerBuilder setEndpointThreads(int protocolThreads, int receiverThreads, int senderThreads) {
+        config.setEndpointProtocolThreads(protocolThreads);
+        config.setEndpointReceiverThreads(receiverThreads);
+        config.setEndpointSenderThreads(senderThreads);
+        return this;
+    }
+
+    /**
+     * Sets the size of the UDP socket buffers of the non-secure endpoints (set by the Californium configuration by
+     * default). Larger receive buffers absorb the bursts of registrations and notifications.
+     *
+     * @param receiveBufferSize the receive buffer size in bytes or 0 for the default
+     * @param sendBufferSize the send buffer size in bytes or 0 for the default
+     */
+    public LeshanServerBuilder setSocketBufferSizes(int receiveBufferSize, int sendBufferSize) {
+        config.setSocketReceiveBufferSize(receiveBufferSize);
+        config.setSocketSendBufferSize(sendBufferSize);
+        return this;
+    }
+
+    /**
+     * Sets the number of threads of the CoAP server processing the messages of the endpoints which do not have their
+     * own threads (set by the Californium configuration by default).
+     *
+     * @see #setEndpointThreads(int, int, int)
+     */
+    public LeshanServerBuilder setProtocolThreads(int protocolThreads) {
+        config.setProtocolThreads(protocolThreads);
+        return this;
+    }
+
+    /**
+     * Sets the number of threads handling the registration requests (0 by default: they are handled in the protocol
+     * threads). This dedicated lane keeps a registration storm, or a slow client registry, from delaying the
+     * notifications and the responses to the downlink requests.
+     *
+     * @see LeshanServer#getRegistrationLane()
+     */
+    public LeshanServerBuilder setRegistrationThreads(int registrationThreads) {
+        config.setRegistrationThreads(registrationThreads);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of registration requests waiting for a registration thread (1000 by default). The
+     * requests exceeding it are answered with a 5.03 Service Unavailable.
+     */
+    public LeshanServerBuilder setRegistrationQueueCapacity(int registrationQueueCapacity) {
+        config.setRegistrationQueueCapacity(registrationQueueCapacity);
+        return this;
+    }
+
+    /**
+     * Sets the number of threads calling the callbacks of the asynchronous requests (0 by default: they are called in
+     * the CoAP threads and must not block).
+     *
+     * @see LeshanServer#getCallbackLane()
+     */
+    public LeshanServerBuilder setCallbackThreads(int callbackThreads) {
+        config.setCallbackThreads(callbackThreads);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of callbacks waiting for a callback thread (1000 by default). When the queue is full,
+     * the callbacks are called in the CoAP threads, slowing down the reception of new responses.
+     */
+    public LeshanServerBuilder setCallbackQueueCapacity(int callbackQueueCapacity) {
+        config.setCallbackQueueCapacity(callbackQueueCapacity);
+        return this;
+    }
+
+    /**
+     * Calls each callback of the asynchronous requests in its own virtual thread, so that the callbacks can block. On
+     * JVMs without virtual threads (before Java 21), the callback threads are used instead.
+     *
+     * @see #setCallbackThreads(int)
+     */
+    public LeshanServerBuilder setVirtualThreadCallbacks(boolean virtualThreadCallbacks) {
+        config.setVirtualThreadCallbacks(virtualThreadCallbacks);
+        return this;
+    }
+
+    /**
+     * Sets the executor calling the callbacks of the asynchronous requests. The executor is not shut down with the
+     * server.
+     */
+    public LeshanServerBuilder setCallbackExecutor(ExecutorService callbackExecutor) {
+        config.setCallbackExecutor(callbackExecutor);
+        return this;
+    }
+
+    /**
+     * Enables the metrics of the server (enabled by default) and their exposition as the JMX MBean
+     * <code>org.eclipse.leshan:type=Metrics,name=server</code> (disabled by default). Disabled metrics cost nothing
+     * on the hot path.
+     *
+     * @see LeshanServer#getMetricsRegistry()
+     */
+    public LeshanServerBuilder setMetrics(boolean enabled, boolean jmx) {
+        config.setMetricsEnabled(enabled);
+        config.setJmxMetrics(enabled && jmx);
+        return this;
+    }
+
+    /**
+     * Derives the timeout of the requests sent without timeout from the round-trip time of the client (disabled by
+     * default). The timeout covers the CoAP retransmissions of a request with the retransmission timeout (RTO) of the
+     * client, so that the requests to a client on a fast network fail sooner when a message is lost. The CoAP layer
+     * keeps retransmitting on its fixed schedule: a request may be given up before all its retransmissions are sent,
+     * and a slow client is never given more time than the CoAP timeout. A request acknowledged by the client is not
+     * given up by this timeout. The round-trip times are tracked in any case.
+     *
+     * @see LeshanServer#getRttTracker()
+     */
+    public LeshanServerBuilder setAdaptiveTimeouts(boolean adaptiveTimeouts) {
+        config.setAdaptiveTimeouts(adaptiveTimeouts);
+        return this;
+    }
+
+    /**
+     * Sets the bounds of the retransmission timeout computed from the round-trip time of a client (200 ms and 32 s by
+     * default).
+     */
+    public LeshanServerBuilder setRetransmissionTimeoutBounds(long minRetransmissionTimeout,
+            long maxRetransmissionTimeout) {
+        config.setMinRetransmissionTimeout(minRetransmissionTimeout);
+        config.setMaxRetransmissionTimeout(maxRetransmissionTimeout);
+        return this;
+    }
+
+    /**
+     * Stops sending requests to the clients which do not answer anymore (disabled by default). After the given number
+     * of consecutive timeouts, the requests sent to a client fail immediately, or are queued, until its next
+     * registration update. The first request sent after the probe interval is forwarded to check whether the client is
+     * reachable again.
+     *
+     * @param timeoutThreshold the number of consecutive timeouts, or 0 to always send the requests
+     * @param probeInterval the time before probing an unreachable client in ms, or 0 to wait for the next update
+     * @param queueRequests <code>true</code> to queue the requests until the client is reachable, <code>false</code>
+     *        to fail them immediately
+     *
+     * @see LeshanServer#getCircuitBreaker()
+     */
+    public LeshanServerBuilder setUnreachableClients(int timeoutThreshold, long probeInterval, boolean queueRequests) {
+        config.setUnreachableTimeoutThreshold(timeoutThreshold);
+        config.setUnreachableProbeInterval(probeInterval);
+        config.setQueueUnreachableRequests(queueRequests);
+        return this;
+    }
+
     public LeshanServer build() {
         if (localAddress == null)
             localAddress = new InetSocketAddress((InetAddress) null, PORT);
         if (localAddressSecure == null)
             localAddressSecure = new InetSocketAddress((InetAddress) null, PORT_DTLS);
         if (clientRegistry == null)
-            clientRegistry = new ClientRegistryImpl();
+            clientRegistry = new ClientRegistryImpl(new ClientRegistryEventBus(config.getRegistryEventWorkers(),
+                    config.getRegistryEventQueueCapacity(), ClientRegistryEventBus.DEFAULT_MAX_BATCH_SIZE));
         if (securityRegistry == null)
             securityRegistry = new SecurityRegistryImpl();
         if (observationRegistry == null)
@@ -103,7 +531,14 @@ public class LeshanServerBuilder {
         if (modelProvider == null) {
             modelProvider = new StandardModelProvider();
         }
-        return new LeshanServer(localAddress, localAddressSecure, clientRegistry, securityRegistry,
-                observationRegistry, modelProvider);
+
+        List<InetSocketAddress> localAddresses = new ArrayList<>();
+        localAddresses.add(localAddress);
+        localAddresses.addAll(additionalAddresses);
+        List<InetSocketAddress> localAddressesSecure = new ArrayList<>();
+        localAddressesSecure.add(localAddressSecure);
+        localAddressesSecure.addAll(additionalAddressesSecure);
+        return new LeshanServer(localAddresses, localAddressesSecure, clientRegistry, securityRegistry,
+                observationRegistry, modelProvider, config);
     }
 }
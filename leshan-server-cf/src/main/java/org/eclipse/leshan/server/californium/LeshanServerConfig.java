@@ -0,0 +1,686 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium;
+
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.server.cluster.RequestForwarder;
+import org.eclipse.leshan.server.impl.ClientRegistryEventBus;
+import org.eclipse.leshan.server.impl.GroupRequestSender;
+import org.eclipse.leshan.server.impl.NotificationFileSink;
+import org.eclipse.leshan.server.impl.ObservationHistoryImpl;
+import org.eclipse.leshan.server.impl.TrafficLane;
+import org.eclipse.leshan.server.californium.impl.CircuitBreakerRequestSender;
+import org.eclipse.leshan.server.californium.impl.ClientRttTracker;
+import org.eclipse.leshan.server.californium.impl.DownlinkRequestScheduler;
+import org.eclipse.leshan.server.californium.impl.LeshanServer;
+import org.eclipse.leshan.server.californium.impl.NotificationPipeline;
+import org.eclipse.leshan.server.californium.impl.QueueModeRequestSender;
+import org.eclipse.leshan.server.californium.impl.RegistrationAdmissionControl;
+
+/**
+ * The tuning parameters of a {@link LeshanServer}. The default values are suitable for most deployments.
+ */
+public class LeshanServerConfig {
+
+    private int maxInFlightRequests = DownlinkRequestScheduler.DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+    private int maxQueuedRequests = DownlinkRequestScheduler.DEFAULT_MAX_QUEUED_REQUESTS;
+    private Comparator<DownlinkRequest<?>> requestPriority;
+    private long queueModeAwakeTime = QueueModeRequestSender.DEFAULT_AWAKE_TIME;
+    private int maxBufferedRequests = QueueModeRequestSender.DEFAULT_MAX_BUFFERED_REQUESTS;
+    private int maxConcurrentGroupRequests = GroupRequestSender.DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private double maxGroupRequestsPerSecond = 0;
+    private int maxShadowEntries = 0;
+    private int notificationWorkers = Runtime.getRuntime().availableProcessors();
+    private int notificationQueueCapacity = NotificationPipeline.DEFAULT_QUEUE_CAPACITY;
+    private boolean dropUnchangedNotifications = false;
+    private ObservationStore observationStore;
+    private int historySize = 0;
+    private int maxHistorySeries = ObservationHistoryImpl.DEFAULT_MAX_SERIES;
+    private long aggregationWindow = 0;
+    private long aggregationStep = 0;
+    private int aggregationPartitions = Runtime.getRuntime().availableProcessors();
+    private String exportDirectory;
+    private long exportMaxFileSize = NotificationFileSink.DEFAULT_MAX_FILE_SIZE;
+    private int exportMaxFiles = NotificationFileSink.DEFAULT_MAX_FILES;
+    private int registryEventWorkers = Runtime.getRuntime().availableProcessors();
+    private int registryEventQueueCapacity = ClientRegistryEventBus.DEFAULT_QUEUE_CAPACITY;
+    private double maxRegistrationsPerSecond = 0;
+    private double maxUpdatesPerSecond = 0;
+    private int maxPendingRegistrations = 0;
+    private int minRegistrationRetryDelay = RegistrationAdmissionControl.DEFAULT_MIN_RETRY_DELAY;
+    private int maxRegistrationRetryDelay = RegistrationAdmissionControl.DEFAULT_MAX_RETRY_DELAY;
+    private String nodeId;
+    private RequestForwarder requestForwarder;
+    private int endpointProtocolThreads = 0;
+    private int endpointReceiverThreads = 0;
+    private int endpointSenderThreads = 0;
+    private int socketReceiveBufferSize = 0;
+    private int socketSendBufferSize = 0;
+    private int protocolThreads = 0;
+    private int registrationThreads = 0;
+    private int callbackThreads = 0;
+    private boolean virtualThreadCallbacks = false;
+    private ExecutorService callbackExecutor;
+    private int registrationQueueCapacity = TrafficLane.DEFAULT_QUEUE_CAPACITY;
+    private int callbackQueueCapacity = TrafficLane.DEFAULT_QUEUE_CAPACITY;
+    private boolean metricsEnabled = true;
+    private boolean jmxMetrics = false;
+    private boolean adaptiveTimeouts = false;
+    private long minRetransmissionTimeout = ClientRttTracker.DEFAULT_MIN_RTO;
+    private long maxRetransmissionTimeout = ClientRttTracker.DEFAULT_MAX_RTO;
+    // disabled by default: the requests to unreachable clients would fail without being sent
+    private int unreachableTimeoutThreshold = 0;
+    private long unreachableProbeInterval = CircuitBreakerRequestSender.DEFAULT_PROBE_INTERVAL;
+    private boolean queueUnreachableRequests = false;
+
+    /**
+     * @return the maximum number of requests sent concurrently to a client
+     */
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public LeshanServerConfig setMaxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of requests waiting to be sent to a client
+     */
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    public LeshanServerConfig setMaxQueuedRequests(int maxQueuedRequests) {
+        this.maxQueuedRequests = maxQueuedRequests;
+        return this;
+    }
+
+    /**
+     * @return the order in which the requests queued for a client are sent or <code>null</code> for FIFO
+     */
+    public Comparator<DownlinkRequest<?>> getRequestPriority() {
+        return requestPriority;
+    }
+
+    public LeshanServerConfig setRequestPriority(Comparator<DownlinkRequest<?>> requestPriority) {
+        this.requestPriority = requestPriority;
+        return this;
+    }
+
+    /**
+     * @return the time a queue mode client is reachable after a registration update in milliseconds
+     */
+    public long getQueueModeAwakeTime() {
+        return queueModeAwakeTime;
+    }
+
+    public LeshanServerConfig setQueueModeAwakeTime(long queueModeAwakeTime) {
+        this.queueModeAwakeTime = queueModeAwakeTime;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of requests buffered for a sleeping queue mode client
+     */
+    public int getMaxBufferedRequests() {
+        return maxBufferedRequests;
+    }
+
+    public LeshanServerConfig setMaxBufferedRequests(int maxBufferedRequests) {
+        this.maxBufferedRequests = maxBufferedRequests;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of requests of group operations waiting for a response
+     */
+    public int getMaxConcurrentGroupRequests() {
+        return maxConcurrentGroupRequests;
+    }
+
+    public LeshanServerConfig setMaxConcurrentGroupRequests(int maxConcurrentGroupRequests) {
+        this.maxConcurrentGroupRequests = maxConcurrentGroupRequests;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of requests of group operations sent per second or 0 for no limit
+     */
+    public double getMaxGroupRequestsPerSecond() {
+        return maxGroupRequestsPerSecond;
+    }
+
+    public LeshanServerConfig setMaxGroupRequestsPerSecond(double maxGroupRequestsPerSecond) {
+        this.maxGroupRequestsPerSecond = maxGroupRequestsPerSecond;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of values kept in the device shadow for all the clients or 0 to keep no shadow
+     */
+    public int getMaxShadowEntries() {
+        return maxShadowEntries;
+    }
+
+    public LeshanServerConfig setMaxShadowEntries(int maxShadowEntries) {
+        this.maxShadowEntries = maxShadowEntries;
+        return this;
+    }
+
+    /**
+     * @return the number of threads processing the notifications or 0 to process them in the CoAP threads
+     */
+    public int getNotificationWorkers() {
+        return notificationWorkers;
+    }
+
+    public LeshanServerConfig setNotificationWorkers(int notificationWorkers) {
+        this.notificationWorkers = notificationWorkers;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of notifications waiting for each notification thread
+     */
+    public int getNotificationQueueCapacity() {
+        return notificationQueueCapacity;
+    }
+
+    public LeshanServerConfig setNotificationQueueCapacity(int notificationQueueCapacity) {
+        this.notificationQueueCapacity = notificationQueueCapacity;
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if the notifications carrying the same payload as the previous one are dropped
+     */
+    public boolean isDropUnchangedNotifications() {
+        return dropUnchangedNotifications;
+    }
+
+    public LeshanServerConfig setDropUnchangedNotifications(boolean dropUnchangedNotifications) {
+        this.dropUnchangedNotifications = dropUnchangedNotifications;
+        return this;
+    }
+
+    /**
+     * @return the store persisting the observations or <code>null</code> if they are not persisted
+     */
+    public ObservationStore getObservationStore() {
+        return observationStore;
+    }
+
+    public LeshanServerConfig setObservationStore(ObservationStore observationStore) {
+        this.observationStore = observationStore;
+        return this;
+    }
+
+    /**
+     * @return the number of notified values kept for each observed numeric resource or 0 to keep no history
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    public LeshanServerConfig setHistorySize(int historySize) {
+        this.historySize = historySize;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of resources with a history
+     */
+    public int getMaxHistorySeries() {
+        return maxHistorySeries;
+    }
+
+    public LeshanServerConfig setMaxHistorySeries(int maxHistorySeries) {
+        this.maxHistorySeries = maxHistorySeries;
+        return this;
+    }
+
+    /**
+     * @return the duration of the aggregation windows in milliseconds or 0 to disable the aggregation
+     */
+    public long getAggregationWindow() {
+        return aggregationWindow;
+    }
+
+    public LeshanServerConfig setAggregationWindow(long aggregationWindow) {
+        this.aggregationWindow = aggregationWindow;
+        return this;
+    }
+
+    /**
+     * @return the time between two aggregation windows in milliseconds or 0 for tumbling windows
+     */
+    public long getAggregationStep() {
+        return aggregationStep;
+    }
+
+    public LeshanServerConfig setAggregationStep(long aggregationStep) {
+        this.aggregationStep = aggregationStep;
+        return this;
+    }
+
+    /**
+     * @return the number of partitions (and threads) of the aggregation
+     */
+    public int getAggregationPartitions() {
+        return aggregationPartitions;
+    }
+
+    public LeshanServerConfig setAggregationPartitions(int aggregationPartitions) {
+        this.aggregationPartitions = aggregationPartitions;
+        return this;
+    }
+
+    /**
+     * @return the directory of the files the notified values are exported to or <code>null</code> for no export
+     */
+    public String getExportDirectory() {
+        return exportDirectory;
+    }
+
+    public LeshanServerConfig setExportDirectory(String exportDirectory) {
+        this.exportDirectory = exportDirectory;
+        return this;
+    }
+
+    /**
+     * @return the size in bytes beyond which a new export file is started
+     */
+    public long getExportMaxFileSize() {
+        return exportMaxFileSize;
+    }
+
+    public LeshanServerConfig setExportMaxFileSize(long exportMaxFileSize) {
+        this.exportMaxFileSize = exportMaxFileSize;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of export files kept in the export directory
+     */
+    public int getExportMaxFiles() {
+        return exportMaxFiles;
+    }
+
+    public LeshanServerConfig setExportMaxFiles(int exportMaxFiles) {
+        this.exportMaxFiles = exportMaxFiles;
+        return this;
+    }
+
+    /**
+     * @return the number of threads delivering the registry events to the listeners or 0 to deliver them in the CoAP
+     *         threads
+     */
+    public int getRegistryEventWorkers() {
+        return registryEventWorkers;
+    }
+
+    public LeshanServerConfig setRegistryEventWorkers(int registryEventWorkers) {
+        this.registryEventWorkers = registryEventWorkers;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of registry events waiting for each registry event thread
+     */
+    public int getRegistryEventQueueCapacity() {
+        return registryEventQueueCapacity;
+    }
+
+    public LeshanServerConfig setRegistryEventQueueCapacity(int registryEventQueueCapacity) {
+        this.registryEventQueueCapacity = registryEventQueueCapacity;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of new registrations accepted per second or 0 for no limit
+     */
+    public double getMaxRegistrationsPerSecond() {
+        return maxRegistrationsPerSecond;
+    }
+
+    public LeshanServerConfig setMaxRegistrationsPerSecond(double maxRegistrationsPerSecond) {
+        this.maxRegistrationsPerSecond = maxRegistrationsPerSecond;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of registration updates accepted per second or 0 for no limit
+     */
+    public double getMaxUpdatesPerSecond() {
+        return maxUpdatesPerSecond;
+    }
+
+    public LeshanServerConfig setMaxUpdatesPerSecond(double maxUpdatesPerSecond) {
+        this.maxUpdatesPerSecond = maxUpdatesPerSecond;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of registration requests processed at the same time or 0 for no limit
+     */
+    public int getMaxPendingRegistrations() {
+        return maxPendingRegistrations;
+    }
+
+    public LeshanServerConfig setMaxPendingRegistrations(int maxPendingRegistrations) {
+        this.maxPendingRegistrations = maxPendingRegistrations;
+        return this;
+    }
+
+    /**
+     * @return the minimum time in seconds a client whose registration was rejected is asked to wait
+     */
+    public int getMinRegistrationRetryDelay() {
+        return minRegistrationRetryDelay;
+    }
+
+    public LeshanServerConfig setMinRegistrationRetryDelay(int minRegistrationRetryDelay) {
+        this.minRegistrationRetryDelay = minRegistrationRetryDelay;
+        return this;
+    }
+
+    /**
+     * @return the maximum time in seconds a client whose registration was rejected is asked to wait
+     */
+    public int getMaxRegistrationRetryDelay() {
+        return maxRegistrationRetryDelay;
+    }
+
+    public LeshanServerConfig setMaxRegistrationRetryDelay(int maxRegistrationRetryDelay) {
+        this.maxRegistrationRetryDelay = maxRegistrationRetryDelay;
+        return this;
+    }
+
+    /**
+     * @return the identifier of this node in a cluster of servers or <code>null</code> if the server is standalone
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public LeshanServerConfig setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+        return this;
+    }
+
+    /**
+     * @return the forwarder of the requests for the clients registered through other nodes
+     */
+    public RequestForwarder getRequestForwarder() {
+        return requestForwarder;
+    }
+
+    public LeshanServerConfig setRequestForwarder(RequestForwarder requestForwarder) {
+        this.requestForwarder = requestForwarder;
+        return this;
+    }
+
+    /**
+     * @return the number of threads processing the messages of each CoAP endpoint or 0 to share the thread pool of
+     *         the CoAP server
+     */
+    public int getEndpointProtocolThreads() {
+        return endpointProtocolThreads;
+    }
+
+    public LeshanServerConfig setEndpointProtocolThreads(int endpointProtocolThreads) {
+        this.endpointProtocolThreads = endpointProtocolThreads;
+        return this;
+    }
+
+    /**
+     * @return the number of threads reading the UDP socket of each non-secure endpoint or 0 for the default
+     */
+    public int getEndpointReceiverThreads() {
+        return endpointReceiverThreads;
+    }
+
+    public LeshanServerConfig setEndpointReceiverThreads(int endpointReceiverThreads) {
+        this.endpointReceiverThreads = endpointReceiverThreads;
+        return this;
+    }
+
+    /**
+     * @return the number of threads writing to the UDP socket of each non-secure endpoint or 0 for the default
+     */
+    public int getEndpointSenderThreads() {
+        return endpointSenderThreads;
+    }
+
+    public LeshanServerConfig setEndpointSenderThreads(int endpointSenderThreads) {
+        this.endpointSenderThreads = endpointSenderThreads;
+        return this;
+    }
+
+    /**
+     * @return the receive buffer size of the UDP sockets in bytes or 0 for the default
+     */
+    public int getSocketReceiveBufferSize() {
+        return socketReceiveBufferSize;
+    }
+
+    public LeshanServerConfig setSocketReceiveBufferSize(int socketReceiveBufferSize) {
+        this.socketReceiveBufferSize = socketReceiveBufferSize;
+        return this;
+    }
+
+    /**
+     * @return the send buffer size of the UDP sockets in bytes or 0 for the default
+     */
+    public int getSocketSendBufferSize() {
+        return socketSendBufferSize;
+    }
+
+    public LeshanServerConfig setSocketSendBufferSize(int socketSendBufferSize) {
+        this.socketSendBufferSize = socketSendBufferSize;
+        return this;
+    }
+
+    /**
+     * @return the number of threads of the CoAP server processing the messages or 0 for the Californium default
+     */
+    public int getProtocolThreads() {
+        return protocolThreads;
+    }
+
+    public LeshanServerConfig setProtocolThreads(int protocolThreads) {
+        this.protocolThreads = protocolThreads;
+        return this;
+    }
+
+    /**
+     * @return the number of threads handling the registration requests or 0 to handle them in the protocol threads
+     */
+    public int getRegistrationThreads() {
+        return registrationThreads;
+    }
+
+    public LeshanServerConfig setRegistrationThreads(int registrationThreads) {
+        this.registrationThreads = registrationThreads;
+        return this;
+    }
+
+    /**
+     * @return the number of threads calling the callbacks of the asynchronous requests or 0 to call them in the CoAP
+     *         threads
+     */
+    public int getCallbackThreads() {
+        return callbackThreads;
+    }
+
+    public LeshanServerConfig setCallbackThreads(int callbackThreads) {
+        this.callbackThreads = callbackThreads;
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> to call the callbacks of the asynchronous requests in virtual threads when the JVM
+     *         supports them
+     */
+    public boolean isVirtualThreadCallbacks() {
+        return virtualThreadCallbacks;
+    }
+
+    public LeshanServerConfig setVirtualThreadCallbacks(boolean virtualThreadCallbacks) {
+        this.virtualThreadCallbacks = virtualThreadCallbacks;
+        return this;
+    }
+
+    /**
+     * @return the executor calling the callbacks of the asynchronous requests, which takes precedence over the
+     *         callback threads settings
+     */
+    public ExecutorService getCallbackExecutor() {
+        return callbackExecutor;
+    }
+
+    public LeshanServerConfig setCallbackExecutor(ExecutorService callbackExecutor) {
+        this.callbackExecutor = callbackExecutor;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of registration requests waiting for a registration thread
+     */
+    public int getRegistrationQueueCapacity() {
+        return registrationQueueCapacity;
+    }
+
+    public LeshanServerConfig setRegistrationQueueCapacity(int registrationQueueCapacity) {
+        this.registrationQueueCapacity = registrationQueueCapacity;
+        return this;
+    }
+
+    /**
+     * @return the maximum number of callbacks waiting for a callback thread
+     */
+    public int getCallbackQueueCapacity() {
+        return callbackQueueCapacity;
+    }
+
+    public LeshanServerConfig setCallbackQueueCapacity(int callbackQueueCapacity) {
+        this.callbackQueueCapacity = callbackQueueCapacity;
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if the server records its metrics
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public LeshanServerConfig setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if the metrics are exposed as a JMX MBean while the server is started
+     */
+    public boolean isJmxMetrics() {
+        return jmxMetrics;
+    }
+
+    public LeshanServerConfig setJmxMetrics(boolean jmxMetrics) {
+        this.jmxMetrics = jmxMetrics;
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if the timeout of the requests sent without timeout is derived from the round-trip
+     *         time of the client
+     */
+    public boolean isAdaptiveTimeouts() {
+        return adaptiveTimeouts;
+    }
+
+    public LeshanServerConfig setAdaptiveTimeouts(boolean adaptiveTimeouts) {
+        this.adaptiveTimeouts = adaptiveTimeouts;
+        return this;
+    }
+
+    /**
+     * @return the minimum retransmission timeout computed from the round-trip time of a client in ms
+     */
+    public long getMinRetransmissionTimeout() {
+        return minRetransmissionTimeout;
+    }
+
+    public LeshanServerConfig setMinRetransmissionTimeout(long minRetransmissionTimeout) {
+        this.minRetransmissionTimeout = minRetransmissionTimeout;
+        return this;
+    }
+
+    /**
+     * @return the maximum retransmission timeout computed from the round-trip time of a client in ms
+     */
+    public long getMaxRetransmissionTimeout() {
+        return maxRetransmissionTimeout;
+    }
+
+    public LeshanServerConfig setMaxRetransmissionTimeout(long maxRetransmissionTimeout) {
+        this.maxRetransmissionTimeout = maxRetransmissionTimeout;
+        return this;
+    }
+
+    /**
+     * @return the number of consecutive timeouts after which a client is unreachable, or 0 to always send the requests
+     */
+    public int getUnreachableTimeoutThreshold() {
+        return unreachableTimeoutThreshold;
+    }
+
+    public LeshanServerConfig setUnreachableTimeoutThreshold(int unreachableTimeoutThreshold) {
+        this.unreachableTimeoutThreshold = unreachableTimeoutThreshold;
+        return this;
+    }
+
+    /**
+     * @return the time before sending a probe request to an unreachable client in ms, or 0 to wait for its next
+     *         registration update
+     */
+    public long getUnreachableProbeInterval() {
+        return unreachableProbeInterval;
+    }
+
+    public LeshanServerConfig setUnreachableProbeInterval(long unreachableProbeInterval) {
+        this.unreachableProbeInterval = unreachableProbeInterval;
+        return this;
+    }
+
+    /**
+     * @return <code>true</code> if the requests sent to unreachable clients are queued instead of failing immediately
+     */
+    public boolean isQueueUnreachableRequests() {
+        return queueUnreachableRequests;
+    }
+
+    public LeshanServerConfig setQueueUnreachableRequests(boolean queueUnreachableRequests) {
+        this.queueUnreachableRequests = queueUnreachableRequests;
+        return this;
+    }
+}
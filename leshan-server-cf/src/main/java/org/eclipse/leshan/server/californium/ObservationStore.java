@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium;
+
+import java.util.Collection;
+
+/**
+ * Persists the observe relations established with the clients.
+ * <p>
+ * A server restarted with the same store and the same registered clients restores its observations and keeps
+ * receiving their notifications (matched by token) without observing the resources again.
+ * </p>
+ */
+public interface ObservationStore {
+
+    /**
+     * Stores an observation. Adding an observation with the token of a stored one replaces it.
+     */
+    void add(StoredObservation observation);
+
+    /**
+     * Removes the observation with the given token.
+     */
+    void remove(byte[] token);
+
+    /**
+     * Removes all the observations of the given registration.
+     */
+    void removeAll(String registrationId);
+
+    /**
+     * @return a copy of all the stored observations
+     */
+    Collection<StoredObservation> getAll();
+}
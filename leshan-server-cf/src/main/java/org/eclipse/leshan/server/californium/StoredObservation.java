@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium;
+
+import java.util.Arrays;
+
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * The metadata of an observe relation needed to match its notifications after a restart.
+ */
+public class StoredObservation {
+
+    private final String registrationId;
+    private final LwM2mPath path;
+    private final byte[] token;
+    private final Integer contentFormat;
+
+    /**
+     * @param registrationId the registration of the observed client
+     * @param path the observed node
+     * @param token the token of the observe request, echoed in the notifications
+     * @param contentFormat the content format requested for the notifications or <code>null</code>
+     */
+    public StoredObservation(String registrationId, LwM2mPath path, byte[] token, Integer contentFormat) {
+        Validate.notNull(registrationId);
+        Validate.notNull(path);
+        Validate.notNull(token);
+        this.registrationId = registrationId;
+        this.path = path;
+        this.token = Arrays.copyOf(token, token.length);
+        this.contentFormat = contentFormat;
+    }
+
+    public String getRegistrationId() {
+        return registrationId;
+    }
+
+    public LwM2mPath getPath() {
+        return path;
+    }
+
+    public byte[] getToken() {
+        return Arrays.copyOf(token, token.length);
+    }
+
+    public Integer getContentFormat() {
+        return contentFormat;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StoredObservation [registrationId=%s, path=%s, token=%s, contentFormat=%s]",
+                registrationId, path, Arrays.toString(token), contentFormat);
+    }
+}
@@ -38,6 +38,8 @@ import org.eclipse.leshan.server.bootstrap.BootstrapStore;
 import org.eclipse.leshan.tlv.Tlv;
 import org.eclipse.leshan.tlv.Tlv.TlvType;
 import org.eclipse.leshan.tlv.TlvEncoder;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -48,11 +50,24 @@ public class BootstrapResource extends CoapResource {
 
     private BootstrapStore store;
 
-    private Executor e = Executors.newFixedThreadPool(5);
+    /** The default number of threads pushing the bootstrap configurations */
+    public static final int DEFAULT_THREADS = 5;
+
+    private final Executor e;
 
     public BootstrapResource(BootstrapStore store) {
+        this(store, Executors.newFixedThreadPool(DEFAULT_THREADS, new NamedThreadFactory("leshan-bootstrap")));
+    }
+
+    /**
+     * @param store the bootstrap configurations
+     * @param executor the executor pushing the configurations to the clients
+     */
+    public BootstrapResource(BootstrapStore store, Executor executor) {
         super("bs");
+        Validate.notNull(executor);
         this.store = store;
+        this.e = executor;
     }
 
     @Override
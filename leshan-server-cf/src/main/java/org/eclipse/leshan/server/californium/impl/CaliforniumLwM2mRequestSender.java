@@ -17,10 +17,10 @@ package org.eclipse.leshan.server.californium.impl;
 
 import java.net.InetSocketAddress;
 import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
 import org.eclipse.californium.core.coap.MessageObserverAdapter;
 import org.eclipse.californium.core.coap.Request;
@@ -28,99 +28,182 @@ import org.eclipse.californium.core.coap.Response;
 import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.leshan.core.model.LwM2mModel;
 import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.RequestCanceledException;
 import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.request.exception.UnacknowledgedRequestException;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.SyncResponseCallback;
+import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.client.Client;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.observation.ObservationRegistry;
 import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.server.shadow.DeviceShadow;
+import org.eclipse.leshan.util.HashedWheelTimer;
 import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class CaliforniumLwM2mRequestSender implements LwM2mRequestSender {
+public class CaliforniumLwM2mRequestSender implements LwM2mRequestSender, Destroyable {
 
     private static final Logger LOG = LoggerFactory.getLogger(CaliforniumLwM2mRequestSender.class);
 
     private final Set<Endpoint> endpoints;
+    private final ConcurrentMap<InetSocketAddress, Endpoint> endpointsByAddress = new ConcurrentHashMap<>();
     private final ObservationRegistry observationRegistry;
     private final LwM2mModelProvider modelProvider;
+    private final HashedWheelTimer timer;
+    private final DeviceShadow deviceShadow;
+    private final NotificationPipeline notificationPipeline;
+    private final NotificationDeduplicator notificationDeduplicator;
+    private final CoapMetrics metrics;
+    private final ClientRttTracker rttTracker;
+    // the timer created by this sender, stopped on destroy
+    private HashedWheelTimer ownTimer;
 
     /**
+     * Creates a sender with its own timer, stopped by {@link #destroy()}.
+     *
      * @param endpoints the CoAP endpoints to use for sending requests
      * @param observationRegistry the registry for keeping track of observed resources
      * @param modelProvider provides the supported objects definitions
      */
     public CaliforniumLwM2mRequestSender(final Set<Endpoint> endpoints, final ObservationRegistry observationRegistry,
             LwM2mModelProvider modelProvider) {
+        this(endpoints, observationRegistry, modelProvider, new HashedWheelTimer("leshan-request-timer"));
+        this.ownTimer = this.timer;
+    }
+
+    /**
+     * @param endpoints the CoAP endpoints to use for sending requests
+     * @param observationRegistry the registry for keeping track of observed resources
+     * @param modelProvider provides the supported objects definitions
+     * @param timer the timer in charge of expiring the requests which are not answered in time
+     */
+    public CaliforniumLwM2mRequestSender(final Set<Endpoint> endpoints, final ObservationRegistry observationRegistry,
+            LwM2mModelProvider modelProvider, HashedWheelTimer timer) {
+        this(endpoints, observationRegistry, modelProvider, timer, null, null, null);
+    }
+
+    /**
+     * @param endpoints the CoAP endpoints to use for sending requests
+     * @param observationRegistry the registry for keeping track of observed resources
+     * @param modelProvider provides the supported objects definitions
+     * @param timer the timer in charge of expiring the requests which are not answered in time
+     * @param deviceShadow the store of the last known values, updated with the read responses (optional)
+     * @param notificationPipeline the pipeline processing the notifications out of the CoAP threads (optional)
+     * @param notificationDeduplicator drops the notifications of unchanged values (optional)
+     */
+    public CaliforniumLwM2mRequestSender(final Set<Endpoint> endpoints, final ObservationRegistry observationRegistry,
+            LwM2mModelProvider modelProvider, HashedWheelTimer timer, DeviceShadow deviceShadow,
+            NotificationPipeline notificationPipeline, NotificationDeduplicator notificationDeduplicator) {
+        this(endpoints, observationRegistry, modelProvider, timer, deviceShadow, notificationPipeline,
+                notificationDeduplicator, null);
+    }
+
+    /**
+     * @param metrics records the latency of the requests, the timeouts and the encoding and decoding time (optional)
+     */
+    public CaliforniumLwM2mRequestSender(final Set<Endpoint> endpoints, final ObservationRegistry observationRegistry,
+            LwM2mModelProvider modelProvider, HashedWheelTimer timer, DeviceShadow deviceShadow,
+            NotificationPipeline notificationPipeline, NotificationDeduplicator notificationDeduplicator,
+            CoapMetrics metrics) {
+        this(endpoints, observationRegistry, modelProvider, timer, deviceShadow, notificationPipeline,
+                notificationDeduplicator, metrics, null);
+    }
+
+    /**
+     * @param rttTracker tracks the round-trip time of each client and derives the timeout of the requests sent without
+     *        timeout (optional)
+     */
+    public CaliforniumLwM2mRequestSender(final Set<Endpoint> endpoints, final ObservationRegistry observationRegistry,
+            LwM2mModelProvider modelProvider, HashedWheelTimer timer, DeviceShadow deviceShadow,
+            NotificationPipeline notificationPipeline, NotificationDeduplicator notificationDeduplicator,
+            CoapMetrics metrics, ClientRttTracker rttTracker) {
         Validate.notNull(endpoints);
         Validate.notNull(observationRegistry);
         Validate.notNull(modelProvider);
+        Validate.notNull(timer);
         this.observationRegistry = observationRegistry;
         this.endpoints = endpoints;
         this.modelProvider = modelProvider;
+        this.timer = timer;
+        this.deviceShadow = deviceShadow;
+        this.notificationPipeline = notificationPipeline;
+        this.notificationDeduplicator = notificationDeduplicator;
+        this.metrics = metrics == null ? CoapMetrics.DISABLED : metrics;
+        this.rttTracker = rttTracker;
+    }
+
+    /**
+     * Stops the timer if it was created by this sender. A timer given to the constructor is left to its owner.
+     */
+    @Override
+    public void destroy() {
+        if (ownTimer != null) {
+            ownTimer.destroy();
+        }
     }
 
     @Override
     public <T extends LwM2mResponse> T send(final Client destination, final DownlinkRequest<T> request, Long timeout) {
-
-        // Retrieve the objects definition
-        final LwM2mModel model = modelProvider.getObjectModel(destination);
-
-        // Create the CoAP request from LwM2m request
-        final CoapRequestBuilder coapRequestBuilder = new CoapRequestBuilder(destination, model);
-        request.accept(coapRequestBuilder);
-        final Request coapRequest = coapRequestBuilder.getRequest();
-
-        // Send CoAP request synchronously
-        final SyncRequestObserver<T> syncMessageObserver = new SyncRequestObserver<T>(coapRequest, destination, timeout) {
-            @Override
-            public T buildResponse(final Response coapResponse) {
-                // Build LwM2m response
-                final LwM2mResponseBuilder<T> lwm2mResponseBuilder = new LwM2mResponseBuilder<T>(coapRequest,
-                        coapResponse, client, model, observationRegistry);
-                request.accept(lwm2mResponseBuilder);
-                return lwm2mResponseBuilder.getResponse();
-            }
-        };
-        coapRequest.addMessageObserver(syncMessageObserver);
-
-        // Send CoAP request asynchronously
-        final Endpoint endpoint = getEndpointForClient(destination);
-        endpoint.sendRequest(coapRequest);
-
-        // Wait for response, then return it
-        return syncMessageObserver.waitForResponse();
+        // Send the request asynchronously and wait for the callback: the timeout is handled by the timer
+        SyncResponseCallback<T> callback = new SyncResponseCallback<T>();
+        send(destination, request, timeout, callback, callback);
+        return callback.waitForResponse();
     }
 
     @Override
     public <T extends LwM2mResponse> void send(final Client destination, final DownlinkRequest<T> request,
             final ResponseCallback<T> responseCallback, final ErrorCallback errorCallback) {
+        send(destination, request, null, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(final Client destination, final DownlinkRequest<T> request,
+            final Long timeout, final ResponseCallback<T> responseCallback, final ErrorCallback errorCallback) {
         // Retrieve the objects definition
         final LwM2mModel model = modelProvider.getObjectModel(destination);
 
         // Create the CoAP request from LwM2m request
-        final CoapRequestBuilder coapRequestBuilder = new CoapRequestBuilder(destination, model);
+        final CoapRequestBuilder coapRequestBuilder = new CoapRequestBuilder(destination, model, metrics);
         request.accept(coapRequestBuilder);
         final Request coapRequest = coapRequestBuilder.getRequest();
 
+        // Wait as long as the client needs to answer, retransmissions included
+        Long deadline = timeout;
+        boolean adaptiveDeadline = false;
+        if (deadline == null && rttTracker != null && rttTracker.isAdaptiveTimeouts()) {
+            deadline = rttTracker.getTimeout(destination);
+            adaptiveDeadline = deadline != null;
+        }
+
         // Add CoAP request callback
-        coapRequest.addMessageObserver(new AsyncRequestObserver<T>(coapRequest, destination, responseCallback,
-                errorCallback) {
+        final RequestObserver<T> observer = new RequestObserver<T>(coapRequest, request, destination, deadline,
+                adaptiveDeadline, responseCallback, errorCallback) {
             @Override
             public T buildResponse(final Response coapResponse) {
                 // Build LwM2m response
                 final LwM2mResponseBuilder<T> lwm2mResponseBuilder = new LwM2mResponseBuilder<T>(coapRequest,
-                        coapResponse, client, model, observationRegistry);
+                        coapResponse, client, model, observationRegistry, deviceShadow, notificationPipeline,
+                        notificationDeduplicator, metrics);
                 request.accept(lwm2mResponseBuilder);
                 return lwm2mResponseBuilder.getResponse();
             }
-        });
+        };
+        coapRequest.addMessageObserver(observer);
+
+        // Schedule the request deadline
+        if (deadline != null) {
+            observer.setDeadline(timer.newTimeout(observer, deadline, TimeUnit.MILLISECONDS, true));
+        }
 
         // Send CoAP request asynchronously
         final Endpoint endpoint = getEndpointForClient(destination);
+        observer.startTime = System.nanoTime();
         endpoint.sendRequest(coapRequest);
     }
 
@@ -129,148 +212,195 @@ public class CaliforniumLwM2mRequestSender implements LwM2mRequestSender {
      *
      * @param client the client
      * @return the CoAP endpoint bound to the same network address and port that the client connected to during
-     *         registration. If no such CoAP endpoint is available, the first CoAP endpoint from the list of registered
-     *         endpoints is returned
+     *         registration
+     * @throws IllegalStateException if no such CoAP endpoint is available
      */
     private Endpoint getEndpointForClient(final Client client) {
-        for (final Endpoint ep : endpoints) {
-            final InetSocketAddress endpointAddress = ep.getAddress();
-            if (endpointAddress.equals(client.getRegistrationEndpointAddress())) {
-                return ep;
+        final InetSocketAddress address = client.getRegistrationEndpointAddress();
+        if (address == null) {
+            throw new IllegalStateException("no registration endpoint address for client " + client.getEndpoint());
+        }
+        Endpoint endpoint = endpointsByAddress.get(address);
+        if (endpoint == null) {
+            // the endpoints bound to an ephemeral port only know their address once started
+            for (final Endpoint ep : endpoints) {
+                endpointsByAddress.put(ep.getAddress(), ep);
             }
+            endpoint = endpointsByAddress.get(address);
         }
-        throw new IllegalStateException("can't find the client endpoint for address : "
-                + client.getRegistrationEndpointAddress());
+        if (endpoint == null) {
+            throw new IllegalStateException("can't find the client endpoint for address : " + address);
+        }
+        return endpoint;
     }
 
     // ////// Request Observer Class definition/////////////
     // TODO leshan-code-cf: All Request Observer should be factorize in a leshan-core-cf project.
     // duplicate from org.eclipse.leshan.client.californium.impl.CaliforniumLwM2mClientRequestSender
-    private abstract class AbstractRequestObserver<T extends LwM2mResponse> extends MessageObserverAdapter {
-        Request coapRequest;
-        Client client;
-
-        public AbstractRequestObserver(final Request coapRequest, final Client client) {
+    /**
+     * Observes a CoAP request until its completion. The first terminal event (response, CoAP timeout, cancellation,
+     * rejection or expiration of the request deadline) completes the request: the callbacks are called exactly once.
+     * <p>
+     * The observer is also the task executed by the timer when the deadline expires.
+     * </p>
+     */
+    private abstract class RequestObserver<T extends LwM2mResponse> extends MessageObserverAdapter implements
+            Runnable {
+
+        final Request coapRequest;
+        final DownlinkRequest<T> request;
+        final Client client;
+        final ResponseCallback<T> responseCallback;
+        final ErrorCallback errorCallback;
+        final AtomicBoolean completed = new AtomicBoolean(false);
+        final AtomicBoolean rttSampled = new AtomicBoolean(false);
+        final Long timeout;
+        // the deadline was derived from the RTO of the client rather than given by the caller
+        final boolean adaptiveDeadline;
+        volatile HashedWheelTimer.Timeout deadline;
+        volatile long startTime;
+        volatile int retransmissions = 0;
+        volatile boolean acknowledged = false;
+
+        RequestObserver(final Request coapRequest, final DownlinkRequest<T> request, final Client client,
+                final Long timeout, final boolean adaptiveDeadline, final ResponseCallback<T> responseCallback,
+                final ErrorCallback errorCallback) {
             this.coapRequest = coapRequest;
+            this.request = request;
             this.client = client;
+            this.timeout = timeout;
+            this.adaptiveDeadline = adaptiveDeadline;
+            this.responseCallback = responseCallback;
+            this.errorCallback = errorCallback;
         }
 
         public abstract T buildResponse(Response coapResponse);
-    }
-
-    private abstract class AsyncRequestObserver<T extends LwM2mResponse> extends AbstractRequestObserver<T> {
 
-        ResponseCallback<T> responseCallback;
-        ErrorCallback errorCallback;
-
-        AsyncRequestObserver(final Request coapRequest, final Client client,
-                final ResponseCallback<T> responseCallback, final ErrorCallback errorCallback) {
-            super(coapRequest, client);
-            this.responseCallback = responseCallback;
-            this.errorCallback = errorCallback;
+        void setDeadline(HashedWheelTimer.Timeout deadline) {
+            this.deadline = deadline;
         }
 
-        @Override
-        public void onResponse(final Response coapResponse) {
-            LOG.debug("Received coap response: {}", coapResponse);
-            try {
-                final T lwM2mResponseT = buildResponse(coapResponse);
-                if (lwM2mResponseT != null) {
-                    responseCallback.onResponse(lwM2mResponseT);
-                }
-            } catch (final Exception e) {
-                errorCallback.onError(e);
-            } finally {
-                coapRequest.removeMessageObserver(this);
+        /**
+         * @return <code>true</code> if the caller is in charge of calling the callbacks
+         */
+        private boolean complete() {
+            if (!completed.compareAndSet(false, true)) {
+                return false;
             }
+            HashedWheelTimer.Timeout d = deadline;
+            if (d != null) {
+                d.cancel();
+            }
+            coapRequest.removeMessageObserver(this);
+            return true;
         }
 
-        @Override
-        public void onTimeout() {
-            errorCallback.onError(new org.eclipse.leshan.core.request.exception.TimeoutException());
-        }
-
-        @Override
-        public void onCancel() {
-            errorCallback.onError(new RequestFailedException("Canceled request"));
+        /**
+         * Measures the round-trip time on the acknowledgement or the piggybacked response of the request.
+         */
+        private void sampleRtt() {
+            if (rttTracker != null && rttSampled.compareAndSet(false, true)) {
+                rttTracker.addSample(client, System.nanoTime() - startTime, retransmissions);
+            }
         }
 
         @Override
-        public void onReject() {
-            errorCallback.onError(new RequestFailedException("Rejected request"));
-        }
-
-    }
-
-    private abstract class SyncRequestObserver<T extends LwM2mResponse> extends AbstractRequestObserver<T> {
-
-        CountDownLatch latch = new CountDownLatch(1);
-        AtomicReference<T> ref = new AtomicReference<T>(null);
-        AtomicBoolean coapTimeout = new AtomicBoolean(false);
-        AtomicReference<RuntimeException> exception = new AtomicReference<>();
-        Long timeout;
-
-        public SyncRequestObserver(final Request coapRequest, final Client client, final Long timeout) {
-            super(coapRequest, client);
-            this.timeout = timeout;
+        public void onAcknowledgement() {
+            sampleRtt();
+            acknowledged = true;
+            if (adaptiveDeadline) {
+                // the client got the request: only the CoAP layer decides how long to wait for the separate response
+                HashedWheelTimer.Timeout d = deadline;
+                if (d != null) {
+                    d.cancel();
+                }
+            }
         }
 
         @Override
         public void onResponse(final Response coapResponse) {
             LOG.debug("Received coap response: {}", coapResponse);
+            sampleRtt();
+            if (completed.get()) {
+                return;
+            }
+            final T lwM2mResponseT;
             try {
-                final T lwM2mResponseT = buildResponse(coapResponse);
-                if (lwM2mResponseT != null) {
-                    ref.set(lwM2mResponseT);
+                lwM2mResponseT = buildResponse(coapResponse);
+            } catch (final Exception e) {
+                if (complete()) {
+                    errorCallback.onError(e);
                 }
-            } catch (final RuntimeException e) {
-                exception.set(e);
-            } finally {
-                latch.countDown();
+                return;
+            }
+            // a null response is not an answer to the request (e.g. a notification): keep waiting
+            if (lwM2mResponseT != null && complete()) {
+                metrics.responseReceived(request, coapResponse.getCode(), startTime);
+                responseCallback.onResponse(lwM2mResponseT);
             }
         }
 
         @Override
         public void onTimeout() {
-            coapTimeout.set(true);
-            latch.countDown();
+            if (complete()) {
+                metrics.timeout();
+                // all the retransmissions were sent without acknowledgement
+                errorCallback.onError(new UnacknowledgedRequestException());
+            }
+        }
+
+        @Override
+        public void onRetransmission() {
+            // only called by the retransmission task of the exchange
+            retransmissions++;
+            metrics.retransmission();
         }
 
         @Override
         public void onCancel() {
-            LOG.debug(String.format("Synchronous request cancelled %s", coapRequest));
-            latch.countDown();
+            if (complete()) {
+                LOG.debug("Request cancelled {}", coapRequest);
+                errorCallback.onError(new RequestCanceledException());
+            }
         }
 
         @Override
         public void onReject() {
-            exception.set(new RequestFailedException("Rejected request"));
-            latch.countDown();
+            if (complete()) {
+                errorCallback.onError(new RequestFailedException("Rejected request"));
+            }
         }
 
-        public T waitForResponse() {
-            try {
-                boolean timeElapsed = false;
-                if (timeout != null) {
-                    timeElapsed = !latch.await(timeout, TimeUnit.MILLISECONDS);
-                } else {
-                    latch.await();
-                }
-                if (timeElapsed || coapTimeout.get()) {
-                    coapRequest.cancel();
-                }
-            } catch (final InterruptedException e) {
-                // no idea why some other thread should have interrupted this thread
-                // but anyway, go ahead as if the timeout had been reached
-                LOG.debug("Caught an unexpected InterruptedException during execution of CoAP request", e);
-            } finally {
-                coapRequest.removeMessageObserver(this);
+        /**
+         * Called by the timer when the request deadline expires.
+         */
+        @Override
+        public void run() {
+            if (adaptiveDeadline && acknowledged) {
+                return;
             }
+            if (complete()) {
+                metrics.timeout();
+                coapRequest.cancel();
+                String message = String.format("Request timed out after %d ms", timeout);
+                errorCallback.onError(unanswered() ? new UnacknowledgedRequestException(message)
+                        : new TimeoutException(message));
+            }
+        }
 
-            if (exception.get() != null) {
-                throw exception.get();
+        /**
+         * @return <code>true</code> if the client did not acknowledge the request during the time it needs to answer,
+         *         <code>false</code> if the deadline was too short to tell
+         */
+        private boolean unanswered() {
+            if (acknowledged) {
+                return false;
+            }
+            if (adaptiveDeadline) {
+                return true;
             }
-            return ref.get();
+            Long transmitSpan = rttTracker == null ? null : rttTracker.getTimeout(client);
+            return transmitSpan != null && timeout >= transmitSpan;
         }
     }
 }
@@ -27,9 +27,9 @@ import org.eclipse.leshan.core.model.LwM2mModel;
 import org.eclipse.leshan.core.node.LwM2mNode;
 import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.node.codec.InvalidValueException;
-import org.eclipse.leshan.core.node.codec.LwM2mNodeDecoder;
 import org.eclipse.leshan.core.request.ContentFormat;
 import org.eclipse.leshan.core.response.ValueResponse;
+import org.eclipse.leshan.server.californium.impl.NotificationDeduplicator.LastNotification;
 import org.eclipse.leshan.server.client.Client;
 import org.eclipse.leshan.server.observation.Observation;
 import org.eclipse.leshan.server.observation.ObservationListener;
@@ -45,8 +45,27 @@ public final class CaliforniumObservation extends MessageObserverAdapter impleme
     private final Client client;
     private final LwM2mPath path;
     private final LwM2mModel model;
+    private final NotificationPipeline pipeline;
+    private final NotificationDeduplicator deduplicator;
+    private final CoapMetrics metrics;
+    private final LastNotification lastNotification = new LastNotification();
 
     public CaliforniumObservation(Request coapRequest, Client client, LwM2mPath path, LwM2mModel model) {
+        this(coapRequest, client, path, model, null, null);
+    }
+
+    public CaliforniumObservation(Request coapRequest, Client client, LwM2mPath path, LwM2mModel model,
+            NotificationPipeline pipeline, NotificationDeduplicator deduplicator) {
+        this(coapRequest, client, path, model, pipeline, deduplicator, null);
+    }
+
+    /**
+     * @param pipeline the pipeline processing the notifications or <code>null</code> to process them in the CoAP thread
+     * @param deduplicator the deduplicator dropping the unchanged values or <code>null</code> to notify all the values
+     * @param metrics records the received notifications and their decoding time (optional)
+     */
+    public CaliforniumObservation(Request coapRequest, Client client, LwM2mPath path, LwM2mModel model,
+            NotificationPipeline pipeline, NotificationDeduplicator deduplicator, CoapMetrics metrics) {
         Validate.notNull(coapRequest);
         Validate.notNull(client);
         Validate.notNull(path);
@@ -56,6 +75,9 @@ public final class CaliforniumObservation extends MessageObserverAdapter impleme
         this.client = client;
         this.path = path;
         this.model = model;
+        this.pipeline = pipeline;
+        this.deduplicator = deduplicator;
+        this.metrics = metrics == null ? CoapMetrics.DISABLED : metrics;
     }
 
     @Override
@@ -64,25 +86,58 @@ public final class CaliforniumObservation extends MessageObserverAdapter impleme
     }
 
     @Override
-    public void onResponse(Response coapResponse) {
+    public void onResponse(final Response coapResponse) {
         if (coapResponse.getCode() == CoAP.ResponseCode.CHANGED || coapResponse.getCode() == CoAP.ResponseCode.CONTENT) {
-            try {
-                LwM2mNode content = LwM2mNodeDecoder.decode(coapResponse.getPayload(),
-                        ContentFormat.fromCode(coapResponse.getOptions().getContentFormat()), path, model);
-                ValueResponse response = new ValueResponse(ResponseCode.CHANGED, content);
+            metrics.notificationReceived();
+            if (deduplicator != null && deduplicator.isDuplicate(lastNotification, coapResponse)) {
+                LOG.trace("Unchanged value for {} of client {} dropped", path, client.getEndpoint());
+                return;
+            }
+            if (pipeline == null) {
+                notifyNewValue(coapResponse);
+            } else {
+                // decode and notify out of the CoAP thread, in the order of reception
+                pipeline.submit(this, new Runnable() {
+                    @Override
+                    public void run() {
+                        notifyNewValue(coapResponse);
+                    }
+                });
+            }
+        }
+    }
 
-                for (ObservationListener listener : listeners) {
-                    listener.newValue(this, response.getContent());
-                }
-            } catch (InvalidValueException e) {
-                String msg = String.format("[%s] ([%s])", e.getMessage(), e.getPath().toString());
-                LOG.debug(msg);
+    private void notifyNewValue(Response coapResponse) {
+        try {
+            LwM2mNode content = metrics.decode(coapResponse.getPayload(),
+                    ContentFormat.fromCode(coapResponse.getOptions().getContentFormat()), path, model);
+            ValueResponse response = new ValueResponse(ResponseCode.CHANGED, content);
+
+            for (ObservationListener listener : listeners) {
+                listener.newValue(this, response.getContent());
             }
+        } catch (InvalidValueException e) {
+            String msg = String.format("[%s] ([%s])", e.getMessage(), e.getPath().toString());
+            LOG.debug(msg);
         }
     }
 
     @Override
     public void onCancel() {
+        if (pipeline == null) {
+            notifyCancelled();
+        } else {
+            // after the notifications already received
+            pipeline.submit(this, new Runnable() {
+                @Override
+                public void run() {
+                    notifyCancelled();
+                }
+            });
+        }
+    }
+
+    private void notifyCancelled() {
         for (ObservationListener listener : listeners) {
             listener.cancelled(this);
         }
@@ -104,6 +159,13 @@ public final class CaliforniumObservation extends MessageObserverAdapter impleme
         return path;
     }
 
+    /**
+     * @return the observe request (its token identifies the notifications)
+     */
+    Request getCoapRequest() {
+        return coapRequest;
+    }
+
     @Override
     public String toString() {
         return String.format("CaliforniumObservation [%s]", path);
@@ -0,0 +1,513 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.request.exception.UnacknowledgedRequestException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.SyncResponseCallback;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.registration.KeepAliveListener;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link LwM2mRequestSender} which stops sending requests to the clients which do not answer anymore.
+ * <p>
+ * After a given number of consecutive timeouts, a client is considered unreachable: the requests sent to it fail
+ * immediately with a {@link RequestFailedException} reported to their error callback, or are queued, instead of
+ * waiting for the whole CoAP retransmission schedule. Only the requests the client did not acknowledge ({@link UnacknowledgedRequestException})
+ * count: the requests expiring in a queue or before a short deadline set by the caller do not tell anything about the
+ * client.
+ * </p>
+ * <p>
+ * The next registration update of the client, keep-alives included (the sender must be registered as
+ * {@link KeepAliveListener}), or any response, proves that it is reachable again and flushes the queued requests.
+ * </p>
+ * <p>
+ * If a probe interval is set, the first request sent to an unreachable client after this interval is forwarded as a
+ * probe: the client is reachable again if it answers, and stays unreachable for another interval otherwise.
+ * </p>
+ */
+public class CircuitBreakerRequestSender implements LwM2mRequestSender, ClientRegistryListener, KeepAliveListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreakerRequestSender.class);
+
+    /** The reachability of a client */
+    public enum Reachability {
+        /** The requests are forwarded */
+        REACHABLE,
+        /** The client did not answer the last requests: the requests fail or are queued */
+        UNREACHABLE,
+        /** A probe request was forwarded to the unreachable client and waits for an answer */
+        PROBING
+    }
+
+    /** The default number of consecutive timeouts after which a client is unreachable */
+    public static final int DEFAULT_TIMEOUT_THRESHOLD = 3;
+
+    /** The default time before probing an unreachable client in ms */
+    public static final long DEFAULT_PROBE_INTERVAL = 60000;
+
+    /** The default maximum number of requests queued for an unreachable client */
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 100;
+
+    private final LwM2mRequestSender delegate;
+    private final HashedWheelTimer timer;
+    private final int timeoutThreshold;
+    private final long probeInterval;
+    private final boolean queueRequests;
+    private final int maxQueuedRequests;
+    private final ClientRegistry clientRegistry;
+
+    private final ConcurrentMap<String /* registration id */, ClientState> states = new ConcurrentHashMap<>();
+
+    // metrics
+    private final AtomicInteger queuedRequests = new AtomicInteger();
+    private final AtomicLong rejectedRequests = new AtomicLong();
+    private final AtomicLong unreachableEvents = new AtomicLong();
+
+    /**
+     * Creates a sender failing the requests sent to unreachable clients with the default threshold and probe
+     * interval.
+     */
+    public CircuitBreakerRequestSender(LwM2mRequestSender delegate, HashedWheelTimer timer) {
+        this(delegate, timer, DEFAULT_TIMEOUT_THRESHOLD, DEFAULT_PROBE_INTERVAL, false, DEFAULT_MAX_QUEUED_REQUESTS);
+    }
+
+    /**
+     * @param delegate the sender used to forward the requests
+     * @param timer the timer used to expire the queued requests
+     * @param timeoutThreshold the number of consecutive timeouts after which a client is unreachable
+     * @param probeInterval the time before forwarding a probe request to an unreachable client in ms, or 0 to wait for
+     *        the next registration update
+     * @param queueRequests <code>true</code> to queue the requests sent to unreachable clients until they are
+     *        reachable again, <code>false</code> to fail them immediately
+     * @param maxQueuedRequests the maximum number of requests queued for a client
+     */
+    public CircuitBreakerRequestSender(LwM2mRequestSender delegate, HashedWheelTimer timer, int timeoutThreshold,
+            long probeInterval, boolean queueRequests, int maxQueuedRequests) {
+        this(delegate, timer, timeoutThreshold, probeInterval, queueRequests, maxQueuedRequests, null);
+    }
+
+    /**
+     * @param delegate the sender used to forward the requests
+     * @param timer the timer used to expire the queued requests
+     * @param timeoutThreshold the number of consecutive timeouts after which a client is unreachable
+     * @param probeInterval the time before forwarding a probe request to an unreachable client in ms, or 0 to wait for
+     *        the next registration update
+     * @param queueRequests <code>true</code> to queue the requests sent to unreachable clients until they are
+     *        reachable again, <code>false</code> to fail them immediately
+     * @param maxQueuedRequests the maximum number of requests queued for a client
+     * @param clientRegistry the registry used to reject the requests sent to a deregistered client or
+     *        <code>null</code> to trust the deregistration events only
+     */
+    public CircuitBreakerRequestSender(LwM2mRequestSender delegate, HashedWheelTimer timer, int timeoutThreshold,
+            long probeInterval, boolean queueRequests, int maxQueuedRequests, ClientRegistry clientRegistry) {
+        Validate.notNull(delegate);
+        Validate.notNull(timer);
+        Validate.isTrue(timeoutThreshold > 0, "the timeout threshold must be positive");
+        Validate.isTrue(probeInterval >= 0, "the probe interval must not be negative");
+        Validate.isTrue(maxQueuedRequests >= 0, "the queue limit must not be negative");
+        this.delegate = delegate;
+        this.timer = timer;
+        this.timeoutThreshold = timeoutThreshold;
+        this.probeInterval = probeInterval;
+        this.queueRequests = queueRequests;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.clientRegistry = clientRegistry;
+    }
+
+    @Override
+    public <T extends LwM2mResponse> T send(Client destination, DownlinkRequest<T> request, Long timeout) {
+        SyncResponseCallback<T> callback = new SyncResponseCallback<T>();
+        send(destination, request, timeout, callback, callback);
+        return callback.waitForResponse();
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        send(destination, request, null, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, Long timeout,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        Validate.notNull(destination);
+
+        ClientState state = getState(destination);
+        PendingRequest<T> pending = new PendingRequest<>(state, destination, request, timeout, responseCallback,
+                errorCallback);
+        RequestFailedException rejected = null;
+        synchronized (state) {
+            if (state.closed) {
+                rejected = new RequestFailedException(String.format("Client %s is not registered anymore",
+                        destination.getEndpoint()));
+            } else if (state.reachability == Reachability.UNREACHABLE && probeInterval > 0
+                    && System.currentTimeMillis() - state.unreachableSince >= probeInterval) {
+                LOG.debug("Probing unreachable client {}", destination.getEndpoint());
+                state.reachability = Reachability.PROBING;
+                pending.probe = true;
+            } else if (state.reachability != Reachability.REACHABLE || state.flushingFor != null) {
+                // keep the order of the requests queued while the client was unreachable
+                rejected = hold(state, pending);
+                if (rejected == null) {
+                    return;
+                }
+            }
+        }
+
+        if (rejected != null) {
+            errorCallback.onError(rejected);
+            return;
+        }
+        try {
+            forward(pending);
+        } catch (RuntimeException e) {
+            if (pending.probe) {
+                probeFailed(state);
+            }
+            errorCallback.onError(e);
+        }
+    }
+
+    /**
+     * Queues a request sent to an unreachable client. Must be called while holding the state lock.
+     *
+     * @return the reason why the request was rejected, or <code>null</code> if it was queued
+     */
+    private RequestFailedException hold(ClientState state, PendingRequest<?> pending) {
+        if (!queueRequests) {
+            rejectedRequests.incrementAndGet();
+            return new RequestFailedException(String.format("Client %s is unreachable (%d consecutive timeouts)",
+                    pending.destination.getEndpoint(), state.consecutiveTimeouts));
+        }
+        if (state.pending.size() >= maxQueuedRequests) {
+            rejectedRequests.incrementAndGet();
+            return new RequestFailedException(String.format("Too many requests queued for unreachable client %s (%d)",
+                    pending.destination.getEndpoint(), state.pending.size()));
+        }
+        state.pending.add(pending);
+        queuedRequests.incrementAndGet();
+        if (pending.timeout != null) {
+            pending.expiry = timer.newTimeout(pending, pending.timeout, TimeUnit.MILLISECONDS);
+        }
+        return null;
+    }
+
+    private <T extends LwM2mResponse> void forward(final PendingRequest<T> pending) {
+        Long remaining = null;
+        if (pending.timeout != null) {
+            remaining = pending.timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pending.creationTime);
+            if (remaining <= 0) {
+                pending.errorCallback.onError(new TimeoutException(String.format(
+                        "Request timed out after %d ms while the client was unreachable", pending.timeout)));
+                return;
+            }
+        }
+        delegate.send(pending.destination, pending.request, remaining, new ResponseCallback<T>() {
+            @Override
+            public void onResponse(T response) {
+                reachable(pending.state, pending.destination);
+                pending.responseCallback.onResponse(response);
+            }
+        }, new ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+                if (e instanceof UnacknowledgedRequestException) {
+                    timedOut(pending.state, pending.destination, pending.probe);
+                } else if (pending.probe) {
+                    // the probe did not reach the client: the next request will probe again
+                    probeFailed(pending.state);
+                }
+                pending.errorCallback.onError(e);
+            }
+        });
+    }
+
+    private void timedOut(ClientState state, Client client, boolean probe) {
+        synchronized (state) {
+            state.consecutiveTimeouts++;
+            boolean reachable = state.reachability == Reachability.REACHABLE;
+            if (probe || reachable && state.consecutiveTimeouts >= timeoutThreshold) {
+                if (reachable) {
+                    unreachableEvents.incrementAndGet();
+                    LOG.debug("Client {} is unreachable after {} consecutive timeouts", client.getEndpoint(),
+                            state.consecutiveTimeouts);
+                }
+                state.reachability = Reachability.UNREACHABLE;
+                state.unreachableSince = System.currentTimeMillis();
+            }
+        }
+    }
+
+    private void probeFailed(ClientState state) {
+        synchronized (state) {
+            if (state.reachability == Reachability.PROBING) {
+                state.reachability = Reachability.UNREACHABLE;
+            }
+        }
+    }
+
+    /**
+     * Marks the client as reachable and forwards its queued requests.
+     */
+    private void reachable(ClientState state, Client client) {
+        synchronized (state) {
+            state.consecutiveTimeouts = 0;
+            if (state.flushingFor != null) {
+                // another thread is already sending the queued requests: use the up-to-date registration
+                state.flushingFor = client;
+                return;
+            }
+            if (state.reachability == Reachability.REACHABLE) {
+                return;
+            }
+            LOG.debug("Client {} is reachable again: sending {} queued requests", client.getEndpoint(),
+                    state.pending.size());
+            state.reachability = Reachability.REACHABLE;
+            if (state.pending.isEmpty()) {
+                return;
+            }
+            state.flushingFor = client;
+        }
+
+        // in order, one at a time: the requests sent meanwhile are queued behind
+        while (true) {
+            PendingRequest<?> pending;
+            synchronized (state) {
+                pending = state.pending.poll();
+                if (pending == null) {
+                    state.flushingFor = null;
+                    return;
+                }
+                if (pending.expiry != null) {
+                    pending.expiry.cancel();
+                }
+                pending.destination = state.flushingFor;
+            }
+            queuedRequests.decrementAndGet();
+            try {
+                forward(pending);
+            } catch (RuntimeException e) {
+                pending.errorCallback.onError(e);
+            }
+        }
+    }
+
+    /**
+     * @return the reachability of the given client
+     */
+    public Reachability getReachability(Client client) {
+        ClientState state = states.get(client.getRegistrationId());
+        if (state == null) {
+            return Reachability.REACHABLE;
+        }
+        synchronized (state) {
+            return state.reachability;
+        }
+    }
+
+    /**
+     * @return the number of consecutive requests to the given client which timed out
+     */
+    public int getConsecutiveTimeouts(Client client) {
+        ClientState state = states.get(client.getRegistrationId());
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return state.consecutiveTimeouts;
+        }
+    }
+
+    /**
+     * @return the number of clients currently unreachable or probed
+     */
+    public int getUnreachableClients() {
+        int count = 0;
+        for (ClientState state : states.values()) {
+            synchronized (state) {
+                if (state.reachability != Reachability.REACHABLE) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of requests currently queued for unreachable clients
+     */
+    public int getQueuedRequests() {
+        return queuedRequests.get();
+    }
+
+    /**
+     * @return the number of requests rejected because their client was unreachable
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests.get();
+    }
+
+    /**
+     * @return the number of times a client became unreachable
+     */
+    public long getUnreachableEvents() {
+        return unreachableEvents.get();
+    }
+
+    private ClientState getState(Client client) {
+        String registrationId = client.getRegistrationId();
+        ClientState state = states.get(registrationId);
+        if (state != null) {
+            return state;
+        }
+        ClientState newState = new ClientState();
+        state = states.putIfAbsent(registrationId, newState);
+        if (state != null) {
+            return state;
+        }
+
+        // The client may have been deregistered before the state was added: the deregistration event found no state
+        // to remove. The registry is checked after adding it, so a later deregistration removes it as usual.
+        if (clientRegistry != null && !isRegistered(client)) {
+            states.remove(registrationId, newState);
+            synchronized (newState) {
+                newState.closed = true;
+            }
+        }
+        return newState;
+    }
+
+    private boolean isRegistered(Client client) {
+        Client registered = clientRegistry.get(client.getEndpoint());
+        return registered != null && registered.getRegistrationId().equals(client.getRegistrationId());
+    }
+
+    @Override
+    public void registered(Client client) {
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+        // the client just talked to the server
+        ClientState state = states.get(clientUpdated.getRegistrationId());
+        if (state != null) {
+            reachable(state, clientUpdated);
+        }
+    }
+
+    @Override
+    public void keepAlive(Client client) {
+        updated(client);
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        ClientState state = states.remove(client.getRegistrationId());
+        if (state == null) {
+            return;
+        }
+
+        List<PendingRequest<?>> dropped;
+        synchronized (state) {
+            state.closed = true;
+            dropped = new ArrayList<>(state.pending);
+            state.pending.clear();
+        }
+        queuedRequests.addAndGet(-dropped.size());
+        for (PendingRequest<?> pending : dropped) {
+            if (pending.expiry != null) {
+                pending.expiry.cancel();
+            }
+            pending.errorCallback.onError(new RequestFailedException(String.format(
+                    "Client %s was deregistered while unreachable", client.getEndpoint())));
+        }
+    }
+
+    private static class ClientState {
+        // guarded by this
+        final Queue<PendingRequest<?>> pending = new ArrayDeque<>();
+        Reachability reachability = Reachability.REACHABLE;
+        int consecutiveTimeouts = 0;
+        long unreachableSince;
+        // the registration the queued requests are sent to, while they are sent
+        Client flushingFor;
+        boolean closed = false;
+    }
+
+    private class PendingRequest<T extends LwM2mResponse> implements Runnable {
+
+        final ClientState state;
+        final DownlinkRequest<T> request;
+        final Long timeout;
+        final ResponseCallback<T> responseCallback;
+        final ErrorCallback errorCallback;
+        final long creationTime = System.nanoTime();
+        boolean probe = false;
+
+        // guarded by state
+        Client destination;
+        HashedWheelTimer.Timeout expiry;
+
+        PendingRequest(ClientState state, Client destination, DownlinkRequest<T> request, Long timeout,
+                ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            this.state = state;
+            this.destination = destination;
+            this.request = request;
+            this.timeout = timeout;
+            this.responseCallback = responseCallback;
+            this.errorCallback = errorCallback;
+        }
+
+        /**
+         * Called by the timer when the request expires in the queue.
+         */
+        @Override
+        public void run() {
+            boolean removed;
+            synchronized (state) {
+                removed = state.pending.remove(this);
+            }
+            if (removed) {
+                queuedRequests.decrementAndGet();
+                errorCallback.onError(new TimeoutException(String.format(
+                        "Request timed out after %d ms while the client was unreachable", timeout)));
+            }
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Tracks the round-trip times of the requests sent to each registered client and derives the timeouts of their next
+ * requests.
+ * <p>
+ * Each registration has its own {@link RttEstimator}, dropped on deregistration. The timeout of a request covers the
+ * CoAP retransmissions: it is the time needed to send the request and its retransmissions with the retransmission
+ * timeout (RTO) of the client, e.g. 31 RTO with the default CoAP parameters (4 retransmissions, doubling the timeout
+ * each time).
+ * </p>
+ * <p>
+ * This timeout can only shorten the wait. The CoAP layer retransmits on its own fixed schedule and gives up on its own
+ * exchange lifetime whatever the RTO: a client on a fast network is given up before the default CoAP timeout, possibly
+ * after fewer retransmissions, but a slow client is not given more time. The timeout stops applying once the request
+ * is acknowledged.
+ * </p>
+ */
+public class ClientRttTracker implements ClientRegistryListener {
+
+    /** The default minimum RTO in ms */
+    public static final long DEFAULT_MIN_RTO = 200;
+
+    /** The default maximum RTO in ms */
+    public static final long DEFAULT_MAX_RTO = 32000;
+
+    private final long initialRto;
+    private final long minRto;
+    private final long maxRto;
+    private final double transmitSpan;
+    private final boolean adaptiveTimeouts;
+    private final ClientRegistry clientRegistry;
+
+    private final ConcurrentMap<String /* registration id */, RttEstimator> estimators = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a tracker using the CoAP parameters of the standard network configuration.
+     *
+     * @param minRto the minimum RTO in ms
+     * @param maxRto the maximum RTO in ms
+     * @param adaptiveTimeouts <code>true</code> to derive the timeouts of the requests from the RTO
+     */
+    public ClientRttTracker(long minRto, long maxRto, boolean adaptiveTimeouts) {
+        this(minRto, maxRto, adaptiveTimeouts, null);
+    }
+
+    /**
+     * Creates a tracker using the CoAP parameters of the standard network configuration.
+     *
+     * @param minRto the minimum RTO in ms
+     * @param maxRto the maximum RTO in ms
+     * @param adaptiveTimeouts <code>true</code> to derive the timeouts of the requests from the RTO
+     * @param clientRegistry the registry used to drop the samples of a deregistered client or <code>null</code> to
+     *        trust the deregistration events only
+     */
+    public ClientRttTracker(long minRto, long maxRto, boolean adaptiveTimeouts, ClientRegistry clientRegistry) {
+        this(NetworkConfig.getStandard().getInt(NetworkConfig.Keys.ACK_TIMEOUT), minRto, maxRto, NetworkConfig
+                .getStandard().getFloat(NetworkConfig.Keys.ACK_TIMEOUT_SCALE), NetworkConfig.getStandard().getInt(
+                NetworkConfig.Keys.MAX_RETRANSMIT), adaptiveTimeouts, clientRegistry);
+    }
+
+    /**
+     * @param initialRto the RTO of a client before its first sample in ms
+     * @param minRto the minimum RTO in ms
+     * @param maxRto the maximum RTO in ms
+     * @param ackTimeoutScale the factor applied to the timeout after each retransmission
+     * @param maxRetransmit the maximum number of retransmissions of a request
+     * @param adaptiveTimeouts <code>true</code> to derive the timeouts of the requests from the RTO
+     */
+    public ClientRttTracker(long initialRto, long minRto, long maxRto, double ackTimeoutScale, int maxRetransmit,
+            boolean adaptiveTimeouts) {
+        this(initialRto, minRto, maxRto, ackTimeoutScale, maxRetransmit, adaptiveTimeouts, null);
+    }
+
+    /**
+     * @param initialRto the RTO of a client before its first sample in ms
+     * @param minRto the minimum RTO in ms
+     * @param maxRto the maximum RTO in ms
+     * @param ackTimeoutScale the factor applied to the timeout after each retransmission
+     * @param maxRetransmit the maximum number of retransmissions of a request
+     * @param adaptiveTimeouts <code>true</code> to derive the timeouts of the requests from the RTO
+     * @param clientRegistry the registry used to drop the samples of a deregistered client or <code>null</code> to
+     *        trust the deregistration events only
+     */
+    public ClientRttTracker(long initialRto, long minRto, long maxRto, double ackTimeoutScale, int maxRetransmit,
+            boolean adaptiveTimeouts, ClientRegistry clientRegistry) {
+        Validate.isTrue(minRto > 0, "the minimum RTO must be positive");
+        Validate.isTrue(maxRto >= minRto, "the maximum RTO must not be lower than the minimum RTO");
+        Validate.isTrue(ackTimeoutScale >= 1, "the timeout scale must be at least 1");
+        Validate.isTrue(maxRetransmit >= 0, "the number of retransmissions must not be negative");
+        this.initialRto = initialRto;
+        this.minRto = minRto;
+        this.maxRto = maxRto;
+        this.adaptiveTimeouts = adaptiveTimeouts;
+        this.clientRegistry = clientRegistry;
+        double span = 0;
+        for (int i = 0; i <= maxRetransmit; i++) {
+            span += Math.pow(ackTimeoutScale, i);
+        }
+        this.transmitSpan = span;
+    }
+
+    /**
+     * @return <code>true</code> if the timeouts of the requests are derived from the RTO
+     */
+    public boolean isAdaptiveTimeouts() {
+        return adaptiveTimeouts;
+    }
+
+    /**
+     * Adds the round-trip time of an exchange with the given client.
+     *
+     * @param rttNanos the time between the first transmission of the request and its acknowledgement in ns
+     * @param retransmissions the number of retransmissions of the request
+     */
+    public void addSample(Client client, long rttNanos, int retransmissions) {
+        String registrationId = client.getRegistrationId();
+        RttEstimator estimator = estimators.get(registrationId);
+        if (estimator == null) {
+            RttEstimator newEstimator = new RttEstimator(initialRto, minRto, maxRto);
+            estimator = estimators.putIfAbsent(registrationId, newEstimator);
+            if (estimator == null) {
+                estimator = newEstimator;
+                // A late response may arrive after the deregistration event, which found no estimator to remove. The
+                // registry is checked after adding it, so a later deregistration removes it as usual.
+                if (clientRegistry != null && !isRegistered(client)) {
+                    estimators.remove(registrationId, newEstimator);
+                }
+            }
+        }
+        estimator.addSample(rttNanos / (double) TimeUnit.MILLISECONDS.toNanos(1), retransmissions);
+    }
+
+    private boolean isRegistered(Client client) {
+        Client registered = clientRegistry.get(client.getEndpoint());
+        return registered != null && registered.getRegistrationId().equals(client.getRegistrationId());
+    }
+
+    /**
+     * @return the estimator of the given client or <code>null</code> if no request to this client was answered
+     */
+    public RttEstimator getEstimator(Client client) {
+        return estimators.get(client.getRegistrationId());
+    }
+
+    /**
+     * @return the time to wait for the response to a request sent to the given client, retransmissions included, in
+     *         ms or <code>null</code> if no request to this client was answered yet
+     */
+    public Long getTimeout(Client client) {
+        RttEstimator estimator = estimators.get(client.getRegistrationId());
+        if (estimator == null || !estimator.hasSamples()) {
+            return null;
+        }
+        return (long) Math.ceil(estimator.getRto() * transmitSpan);
+    }
+
+    /**
+     * @return the number of clients with an estimator
+     */
+    public int size() {
+        return estimators.size();
+    }
+
+    @Override
+    public void registered(Client client) {
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        estimators.remove(client.getRegistrationId());
+    }
+}
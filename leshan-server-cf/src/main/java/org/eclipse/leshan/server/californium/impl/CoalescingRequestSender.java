@@ -0,0 +1,251 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.core.request.DiscoverRequest;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.SyncResponseCallback;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A {@link LwM2mRequestSender} which merges identical idempotent requests sent concurrently to the same client.
+ * <p>
+ * While a read or discover request is waiting for a response, an identical request (same registration, same type,
+ * same path) is not sent again: it is completed with the response of the pending one. The timeout of the merged
+ * request still applies, but it does not extend the timeout of the pending request.
+ * </p>
+ */
+public class CoalescingRequestSender implements LwM2mRequestSender {
+
+    private final LwM2mRequestSender delegate;
+    private final HashedWheelTimer timer;
+
+    private final ConcurrentMap<Key, PendingRequest<?>> pendingRequests = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+
+    public CoalescingRequestSender(LwM2mRequestSender delegate, HashedWheelTimer timer) {
+        Validate.notNull(delegate);
+        Validate.notNull(timer);
+        this.delegate = delegate;
+        this.timer = timer;
+    }
+
+    @Override
+    public <T extends LwM2mResponse> T send(Client destination, DownlinkRequest<T> request, Long timeout) {
+        SyncResponseCallback<T> callback = new SyncResponseCallback<T>();
+        send(destination, request, timeout, callback, callback);
+        return callback.waitForResponse();
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        send(destination, request, null, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, Long timeout,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        Validate.notNull(destination);
+        Validate.notNull(request);
+
+        if (request.getClass() != ReadRequest.class && request.getClass() != DiscoverRequest.class) {
+            delegate.send(destination, request, timeout, responseCallback, errorCallback);
+            return;
+        }
+
+        final Key key = new Key(destination.getRegistrationId(), request.getClass(), request.getPath().toString());
+        while (true) {
+            @SuppressWarnings("unchecked")
+            PendingRequest<T> pending = (PendingRequest<T>) pendingRequests.get(key);
+            if (pending != null) {
+                if (pending.attach(responseCallback, errorCallback, timeout)) {
+                    coalescedRequests.incrementAndGet();
+                    return;
+                }
+                // completed in the meantime
+                pendingRequests.remove(key, pending);
+                continue;
+            }
+
+            final PendingRequest<T> newPending = new PendingRequest<>();
+            newPending.attach(responseCallback, errorCallback, null);
+            if (pendingRequests.putIfAbsent(key, newPending) != null) {
+                continue;
+            }
+
+            try {
+                delegate.send(destination, request, timeout, new ResponseCallback<T>() {
+                    @Override
+                    public void onResponse(T response) {
+                        pendingRequests.remove(key, newPending);
+                        newPending.onResponse(response);
+                    }
+                }, new ErrorCallback() {
+                    @Override
+                    public void onError(Exception e) {
+                        pendingRequests.remove(key, newPending);
+                        newPending.onError(e);
+                    }
+                });
+            } catch (RuntimeException e) {
+                pendingRequests.remove(key, newPending);
+                // the caller gets the exception, the merged requests get an error
+                newPending.detach(responseCallback);
+                newPending.onError(e);
+                throw e;
+            }
+            return;
+        }
+    }
+
+    /**
+     * @return the number of requests completed with the response of another request
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    private static class Key {
+        private final String registrationId;
+        private final Class<?> type;
+        private final String path;
+
+        Key(String registrationId, Class<?> type, String path) {
+            this.registrationId = registrationId;
+            this.type = type;
+            this.path = path;
+        }
+
+        @Override
+        public int hashCode() {
+            return (registrationId.hashCode() * 31 + type.hashCode()) * 31 + path.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return registrationId.equals(other.registrationId) && type == other.type && path.equals(other.path);
+        }
+    }
+
+    /**
+     * The callbacks of all the callers waiting for the same response.
+     */
+    private class PendingRequest<T extends LwM2mResponse> {
+
+        // guarded by this
+        private final List<Waiter<T>> waiters = new ArrayList<>(1);
+        private boolean completed = false;
+
+        /**
+         * @return <code>false</code> if the request is already completed
+         */
+        synchronized boolean attach(ResponseCallback<T> responseCallback, ErrorCallback errorCallback, Long timeout) {
+            if (completed) {
+                return false;
+            }
+            final Waiter<T> waiter = new Waiter<>(responseCallback, errorCallback);
+            waiters.add(waiter);
+            if (timeout != null) {
+                final long t = timeout;
+                waiter.deadline = timer.newTimeout(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (remove(waiter)) {
+                            waiter.errorCallback.onError(new TimeoutException(String.format(
+                                    "Request timed out after %d ms", t)));
+                        }
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+            return true;
+        }
+
+        synchronized void detach(ResponseCallback<T> responseCallback) {
+            for (int i = 0; i < waiters.size(); i++) {
+                if (waiters.get(i).responseCallback == responseCallback) {
+                    waiters.remove(i);
+                    return;
+                }
+            }
+        }
+
+        private synchronized boolean remove(Waiter<T> waiter) {
+            return waiters.remove(waiter);
+        }
+
+        private synchronized List<Waiter<T>> complete() {
+            completed = true;
+            List<Waiter<T>> result = new ArrayList<>(waiters);
+            waiters.clear();
+            return result;
+        }
+
+        void onResponse(T response) {
+            for (Waiter<T> waiter : complete()) {
+                waiter.cancelDeadline();
+                waiter.responseCallback.onResponse(response);
+            }
+        }
+
+        void onError(Exception e) {
+            for (Waiter<T> waiter : complete()) {
+                waiter.cancelDeadline();
+                waiter.errorCallback.onError(e);
+            }
+        }
+    }
+
+    private static class Waiter<T extends LwM2mResponse> {
+        final ResponseCallback<T> responseCallback;
+        final ErrorCallback errorCallback;
+        volatile HashedWheelTimer.Timeout deadline;
+
+        Waiter(ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            this.responseCallback = responseCallback;
+            this.errorCallback = errorCallback;
+        }
+
+        void cancelDeadline() {
+            HashedWheelTimer.Timeout d = deadline;
+            if (d != null) {
+                d.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.leshan.core.model.LwM2mModel;
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.codec.InvalidValueException;
+import org.eclipse.leshan.core.node.codec.LwM2mNodeDecoder;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.server.metrics.Histogram;
+import org.eclipse.leshan.server.metrics.Meter;
+import org.eclipse.leshan.server.metrics.MetricsRegistry;
+
+/**
+ * The metrics of the CoAP layer of the server:
+ * <ul>
+ * <li><code>notifications.received</code>: the notifications received, before the deduplication and the decoding</li>
+ * <li><code>decode.us.&lt;format&gt;</code> and <code>encode.us.&lt;format&gt;</code>: the time spent decoding and
+ * encoding the LWM2M payloads by content format, in microseconds</li>
+ * <li><code>downlink.latency.ms.&lt;request&gt;.&lt;code&gt;</code>: the time between the sending of a request and
+ * its response by request type and response code, in milliseconds</li>
+ * <li><code>downlink.timeouts</code>, <code>downlink.retransmissions</code>: the requests which timed out and the CoAP
+ * retransmissions</li>
+ * </ul>
+ * <p>
+ * The metrics are looked up once: recording a value does not allocate. When the registry is disabled, the time is not
+ * even measured.
+ * </p>
+ */
+public class CoapMetrics {
+
+    /** Metrics ignoring all the values */
+    public static final CoapMetrics DISABLED = new CoapMetrics(new MetricsRegistry(false));
+
+    private static final CoAP.ResponseCode[] RESPONSE_CODES = CoAP.ResponseCode.values();
+
+    private final MetricsRegistry registry;
+    private final boolean enabled;
+    private final Meter receivedNotifications;
+    private final Meter timeouts;
+    private final Meter retransmissions;
+    private final Map<ContentFormat, Histogram> decodeTimes = new EnumMap<>(ContentFormat.class);
+    private final Map<ContentFormat, Histogram> encodeTimes = new EnumMap<>(ContentFormat.class);
+    private final ConcurrentMap<Class<?>, AtomicReferenceArray<Histogram>> latencies = new ConcurrentHashMap<>();
+
+    public CoapMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+        this.enabled = registry.isEnabled();
+        receivedNotifications = registry.meter("notifications.received");
+        timeouts = registry.meter("downlink.timeouts");
+        retransmissions = registry.meter("downlink.retransmissions");
+        for (ContentFormat format : ContentFormat.values()) {
+            decodeTimes.put(format, registry.histogram("decode.us." + format.name()));
+            encodeTimes.put(format, registry.histogram("encode.us." + format.name()));
+        }
+    }
+
+    /**
+     * @return the metrics recorded in the given registry or {@link #DISABLED} for a <code>null</code> registry
+     */
+    public static CoapMetrics of(MetricsRegistry registry) {
+        return registry == null ? DISABLED : new CoapMetrics(registry);
+    }
+
+    /**
+     * @return the start time to give to the methods recording a duration (0 when the metrics are disabled)
+     */
+    public long startTime() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void notificationReceived() {
+        receivedNotifications.mark();
+    }
+
+    public void timeout() {
+        timeouts.mark();
+    }
+
+    public void retransmission() {
+        retransmissions.mark();
+    }
+
+    /**
+     * Records the latency of a request answered with the given code.
+     */
+    public void responseReceived(DownlinkRequest<?> request, CoAP.ResponseCode code, long startTime) {
+        if (!enabled || code == null) {
+            return;
+        }
+        AtomicReferenceArray<Histogram> byCode = latencies.get(request.getClass());
+        if (byCode == null) {
+            byCode = new AtomicReferenceArray<>(RESPONSE_CODES.length);
+            AtomicReferenceArray<Histogram> previous = latencies.putIfAbsent(request.getClass(), byCode);
+            if (previous != null) {
+                byCode = previous;
+            }
+        }
+        Histogram latency = byCode.get(code.ordinal());
+        if (latency == null) {
+            // the registry returns the same histogram to the concurrent callers
+            latency = registry.histogram("downlink.latency.ms." + requestType(request) + "." + code.name());
+            byCode.set(code.ordinal(), latency);
+        }
+        latency.update(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    /**
+     * Decodes a payload with {@link LwM2mNodeDecoder} and records the decoding time.
+     */
+    public LwM2mNode decode(byte[] payload, ContentFormat format, LwM2mPath path, LwM2mModel model)
+            throws InvalidValueException {
+        long start = startTime();
+        LwM2mNode node = LwM2mNodeDecoder.decode(payload, format, path, model);
+        if (enabled && format != null) {
+            decodeTimes.get(format).update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+        return node;
+    }
+
+    /**
+     * Records the time spent encoding a payload in the given format.
+     */
+    public void encoded(ContentFormat format, long startTime) {
+        if (enabled && format != null) {
+            encodeTimes.get(format).update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime));
+        }
+    }
+
+    private static String requestType(DownlinkRequest<?> request) {
+        String type = request.getClass().getSimpleName();
+        if (type.endsWith("Request")) {
+            type = type.substring(0, type.length() - "Request".length());
+        }
+        return type.toLowerCase(Locale.ROOT);
+    }
+}
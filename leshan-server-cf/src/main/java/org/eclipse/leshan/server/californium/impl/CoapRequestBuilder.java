@@ -18,9 +18,7 @@ package org.eclipse.leshan.server.californium.impl;
 import org.eclipse.californium.core.coap.MediaTypeRegistry;
 import org.eclipse.californium.core.coap.Request;
 import org.eclipse.leshan.core.model.LwM2mModel;
-import org.eclipse.leshan.core.node.LwM2mObjectInstance;
 import org.eclipse.leshan.core.node.LwM2mPath;
-import org.eclipse.leshan.core.node.codec.LwM2mNodeEncoder;
 import org.eclipse.leshan.core.request.ContentFormat;
 import org.eclipse.leshan.core.request.ContentFormatHelper;
 import org.eclipse.leshan.core.request.CreateRequest;
@@ -40,10 +38,19 @@ public class CoapRequestBuilder implements DownlinkRequestVisitor {
     private Request coapRequest;
     private final Client destination;
     private final LwM2mModel model;
+    private final CoapMetrics metrics;
 
     public CoapRequestBuilder(Client destination, LwM2mModel model) {
+        this(destination, model, null);
+    }
+
+    /**
+     * @param metrics records the encoding time of the payloads (optional)
+     */
+    public CoapRequestBuilder(Client destination, LwM2mModel model, CoapMetrics metrics) {
         this.destination = destination;
         this.model = model;
+        this.metrics = metrics == null ? CoapMetrics.DISABLED : metrics;
     }
 
     @Override
@@ -67,7 +74,9 @@ public class CoapRequestBuilder implements DownlinkRequestVisitor {
             format = ContentFormatHelper.compute(request.getPath(), request.getNode(), model);
         }
         coapRequest.getOptions().setContentFormat(format.getCode());
-        coapRequest.setPayload(LwM2mNodeEncoder.encode(request.getNode(), format, request.getPath(), model));
+        long start = metrics.startTime();
+        coapRequest.setPayload(request.getEncodedPayload(format, model));
+        metrics.encoded(format, start);
         setTarget(coapRequest, destination, request.getPath());
     }
 
@@ -94,9 +103,9 @@ public class CoapRequestBuilder implements DownlinkRequestVisitor {
     public void visit(CreateRequest request) {
         coapRequest = Request.newPost();
         coapRequest.getOptions().setContentFormat(request.getContentFormat().getCode());
-        // wrap the resources into an object instance layer (with a fake instance id).
-        coapRequest.setPayload(LwM2mNodeEncoder.encode(new LwM2mObjectInstance(-1, request.getResources()),
-                request.getContentFormat(), request.getPath(), model));
+        long start = metrics.startTime();
+        coapRequest.setPayload(request.getEncodedPayload(model));
+        metrics.encoded(request.getContentFormat(), start);
         setTarget(coapRequest, destination, request.getPath());
     }
 
@@ -0,0 +1,391 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.SyncResponseCallback;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link LwM2mRequestSender} which limits the number of requests sent concurrently to each registered client.
+ * <p>
+ * Constrained devices generally handle one request at a time. Requests exceeding the in-flight limit of a registration
+ * are queued (in FIFO order or according to a priority comparator) and sent as soon as a previous request completes.
+ * When the client is deregistered, its queued requests fail immediately with a {@link RequestFailedException}.
+ * </p>
+ * <p>
+ * The requests which cannot be queued (the queue is full or the client is not registered anymore) are reported to the
+ * error callback, like any other failure of an asynchronous request.
+ * </p>
+ * <p>
+ * The timeout of a request covers the time spent in the queue.
+ * </p>
+ */
+public class DownlinkRequestScheduler implements LwM2mRequestSender, ClientRegistryListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DownlinkRequestScheduler.class);
+
+    /** The default number of requests sent concurrently to a client */
+    public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 1;
+
+    /** The default maximum number of requests waiting to be sent to a client */
+    public static final int DEFAULT_MAX_QUEUED_REQUESTS = 100;
+
+    private final LwM2mRequestSender delegate;
+    private final HashedWheelTimer timer;
+    private final int maxInFlightRequests;
+    private final int maxQueuedRequests;
+    private final Comparator<DownlinkRequest<?>> priority;
+    private final ClientRegistry clientRegistry;
+
+    private final ConcurrentMap<String /* registration id */, ClientQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Creates a scheduler sending the requests in FIFO order with the default limits.
+     */
+    public DownlinkRequestScheduler(LwM2mRequestSender delegate, HashedWheelTimer timer) {
+        this(delegate, timer, DEFAULT_MAX_IN_FLIGHT_REQUESTS, DEFAULT_MAX_QUEUED_REQUESTS, null);
+    }
+
+    /**
+     * @param delegate the sender used to actually send the requests
+     * @param timer the timer used to expire the queued requests
+     * @param maxInFlightRequests the maximum number of requests sent concurrently to a client
+     * @param maxQueuedRequests the maximum number of requests waiting to be sent to a client
+     * @param priority the order in which queued requests are sent (the lowest first) or <code>null</code> for FIFO
+     */
+    public DownlinkRequestScheduler(LwM2mRequestSender delegate, HashedWheelTimer timer, int maxInFlightRequests,
+            int maxQueuedRequests, Comparator<DownlinkRequest<?>> priority) {
+        this(delegate, timer, maxInFlightRequests, maxQueuedRequests, priority, null);
+    }
+
+    /**
+     * @param delegate the sender used to actually send the requests
+     * @param timer the timer used to expire the queued requests
+     * @param maxInFlightRequests the maximum number of requests sent concurrently to a client
+     * @param maxQueuedRequests the maximum number of requests waiting to be sent to a client
+     * @param priority the order in which queued requests are sent (the lowest first) or <code>null</code> for FIFO
+     * @param clientRegistry the registry used to reject the requests sent to a deregistered client or
+     *        <code>null</code> to trust the deregistration events only
+     */
+    public DownlinkRequestScheduler(LwM2mRequestSender delegate, HashedWheelTimer timer, int maxInFlightRequests,
+            int maxQueuedRequests, Comparator<DownlinkRequest<?>> priority, ClientRegistry clientRegistry) {
+        Validate.notNull(delegate);
+        Validate.notNull(timer);
+        Validate.isTrue(maxInFlightRequests > 0, "the in-flight limit must be positive");
+        Validate.isTrue(maxQueuedRequests >= 0, "the queue limit must not be negative");
+        this.delegate = delegate;
+        this.timer = timer;
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.maxQueuedRequests = maxQueuedRequests;
+        this.priority = priority;
+        this.clientRegistry = clientRegistry;
+    }
+
+    @Override
+    public <T extends LwM2mResponse> T send(Client destination, DownlinkRequest<T> request, Long timeout) {
+        SyncResponseCallback<T> callback = new SyncResponseCallback<T>();
+        send(destination, request, timeout, callback, callback);
+        return callback.waitForResponse();
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        send(destination, request, null, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, Long timeout,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        Validate.notNull(destination);
+        Validate.notNull(request);
+
+        ClientQueue queue = getQueue(destination);
+        ScheduledRequest<T> scheduled = new ScheduledRequest<>(queue, destination, request, timeout,
+                responseCallback, errorCallback);
+
+        boolean sendNow;
+        RequestFailedException rejected = null;
+        synchronized (queue) {
+            sendNow = false;
+            if (queue.closed) {
+                rejected = new RequestFailedException(String.format("Client %s is not registered anymore",
+                        destination.getEndpoint()));
+            } else if (queue.inFlight < maxInFlightRequests && queue.pending.isEmpty()) {
+                sendNow = true;
+                queue.inFlight++;
+            } else if (queue.pending.size() >= maxQueuedRequests) {
+                rejected = new RequestFailedException(String.format("Too many pending requests for client %s (%d)",
+                        destination.getEndpoint(), queue.pending.size()));
+            } else {
+                queue.pending.add(scheduled);
+                if (timeout != null) {
+                    scheduled.queueDeadline = timer.newTimeout(scheduled, timeout, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        if (rejected != null) {
+            errorCallback.onError(rejected);
+        } else if (sendNow) {
+            try {
+                scheduled.dispatch();
+            } catch (RuntimeException e) {
+                // the request was not sent: free the slot and report the error
+                release(queue);
+                errorCallback.onError(e);
+            }
+        } else {
+            LOG.trace("Request {} queued for client {}", request, destination.getEndpoint());
+        }
+    }
+
+    /**
+     * @return the number of requests waiting to be sent to the given client
+     */
+    public int getQueuedRequests(Client client) {
+        ClientQueue queue = queues.get(client.getRegistrationId());
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (queue) {
+            return queue.pending.size();
+        }
+    }
+
+    /**
+     * @return the number of requests sent to the given client and waiting for a response
+     */
+    public int getInFlightRequests(Client client) {
+        ClientQueue queue = queues.get(client.getRegistrationId());
+        if (queue == null) {
+            return 0;
+        }
+        synchronized (queue) {
+            return queue.inFlight;
+        }
+    }
+
+    private ClientQueue getQueue(Client destination) {
+        String registrationId = destination.getRegistrationId();
+        ClientQueue queue = queues.get(registrationId);
+        if (queue != null) {
+            return queue;
+        }
+        ClientQueue newQueue = new ClientQueue();
+        queue = queues.putIfAbsent(registrationId, newQueue);
+        if (queue != null) {
+            return queue;
+        }
+
+        // The client may have been deregistered before the queue was added: the deregistration event found no queue
+        // to remove. The registry is checked after adding it, so a later deregistration closes it as usual.
+        if (clientRegistry != null && !isRegistered(destination)) {
+            queues.remove(registrationId, newQueue);
+            synchronized (newQueue) {
+                newQueue.closed = true;
+            }
+        }
+        return newQueue;
+    }
+
+    private boolean isRegistered(Client client) {
+        Client registered = clientRegistry.get(client.getEndpoint());
+        return registered != null && registered.getRegistrationId().equals(client.getRegistrationId());
+    }
+
+    /**
+     * Frees an in-flight slot and sends the next queued requests.
+     */
+    private void release(ClientQueue queue) {
+        while (true) {
+            ScheduledRequest<?> next;
+            synchronized (queue) {
+                queue.inFlight--;
+                next = queue.pending.poll();
+                if (next == null) {
+                    return;
+                }
+                queue.inFlight++;
+                if (next.queueDeadline != null) {
+                    next.queueDeadline.cancel();
+                }
+            }
+            try {
+                next.dispatch();
+                return;
+            } catch (RuntimeException e) {
+                // the request was not sent: report the error and try the next one
+                next.errorCallback.onError(e);
+            }
+        }
+    }
+
+    @Override
+    public void registered(Client client) {
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        ClientQueue queue = queues.remove(client.getRegistrationId());
+        if (queue == null) {
+            return;
+        }
+
+        List<ScheduledRequest<?>> dropped;
+        synchronized (queue) {
+            queue.closed = true;
+            dropped = new ArrayList<>(queue.pending);
+            queue.pending.clear();
+        }
+        if (!dropped.isEmpty()) {
+            LOG.debug("Dropping {} queued requests of deregistered client {}", dropped.size(), client.getEndpoint());
+        }
+        for (ScheduledRequest<?> request : dropped) {
+            if (request.queueDeadline != null) {
+                request.queueDeadline.cancel();
+            }
+            request.errorCallback.onError(new RequestFailedException(String.format(
+                    "Client %s was deregistered before the request was sent", client.getEndpoint())));
+        }
+    }
+
+    private class ClientQueue {
+        // guarded by this
+        final Queue<ScheduledRequest<?>> pending;
+        int inFlight = 0;
+        boolean closed = false;
+
+        ClientQueue() {
+            if (priority == null) {
+                pending = new ArrayDeque<>();
+            } else {
+                pending = new PriorityQueue<>(11, new Comparator<ScheduledRequest<?>>() {
+                    @Override
+                    public int compare(ScheduledRequest<?> r1, ScheduledRequest<?> r2) {
+                        int c = priority.compare(r1.request, r2.request);
+                        if (c != 0) {
+                            return c;
+                        }
+                        // FIFO for requests with the same priority
+                        return r1.sequence < r2.sequence ? -1 : (r1.sequence == r2.sequence ? 0 : 1);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * A request waiting for an in-flight slot. It is also the task executed by the timer if the request expires while
+     * queued.
+     */
+    private class ScheduledRequest<T extends LwM2mResponse> implements Runnable {
+
+        final ClientQueue queue;
+        final Client destination;
+        final DownlinkRequest<T> request;
+        final Long timeout;
+        final ResponseCallback<T> responseCallback;
+        final ErrorCallback errorCallback;
+        final long sequence;
+        final long creationTime = System.nanoTime();
+
+        // guarded by queue
+        HashedWheelTimer.Timeout queueDeadline;
+
+        ScheduledRequest(ClientQueue queue, Client destination, DownlinkRequest<T> request, Long timeout,
+                ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            this.queue = queue;
+            this.destination = destination;
+            this.request = request;
+            this.timeout = timeout;
+            this.responseCallback = responseCallback;
+            this.errorCallback = errorCallback;
+            this.sequence = DownlinkRequestScheduler.this.sequence.getAndIncrement();
+        }
+
+        void dispatch() {
+            Long remaining = null;
+            if (timeout != null) {
+                remaining = timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - creationTime);
+                if (remaining <= 0) {
+                    // expired while dequeued
+                    release(queue);
+                    errorCallback.onError(new TimeoutException(String.format(
+                            "Request timed out after %d ms in queue", timeout)));
+                    return;
+                }
+            }
+            delegate.send(destination, request, remaining, new ResponseCallback<T>() {
+                @Override
+                public void onResponse(T response) {
+                    release(queue);
+                    responseCallback.onResponse(response);
+                }
+            }, new ErrorCallback() {
+                @Override
+                public void onError(Exception e) {
+                    release(queue);
+                    errorCallback.onError(e);
+                }
+            });
+        }
+
+        /**
+         * Called by the timer when the request expires in the queue.
+         */
+        @Override
+        public void run() {
+            boolean removed;
+            synchronized (queue) {
+                removed = queue.pending.remove(this);
+            }
+            if (removed) {
+                errorCallback.onError(new TimeoutException(String.format("Request timed out after %d ms in queue",
+                        timeout)));
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.network.CoAPEndpoint;
+import org.eclipse.californium.core.network.Endpoint;
+import org.eclipse.californium.core.network.config.NetworkConfig;
+import org.eclipse.californium.elements.UDPConnector;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Creates the CoAP endpoints of the server with their own threads and socket buffers.
+ * <p>
+ * By default all the endpoints of a {@link CoapServer} share the protocol thread pool of the server. When a number of
+ * protocol threads is configured, each endpoint gets its own pool so that the traffic received on a port does not
+ * wait behind the traffic of the other ports. The receiver and sender threads and the socket buffers of the unsecured
+ * endpoints are taken from the Californium configuration unless overridden.
+ * </p>
+ */
+public class EndpointFactory {
+
+    private final int protocolThreads;
+    private final int receiverThreads;
+    private final int senderThreads;
+    private final int receiveBufferSize;
+    private final int sendBufferSize;
+
+    private final List<ScheduledExecutorService> executors = new CopyOnWriteArrayList<>();
+    private final AtomicInteger endpointCount = new AtomicInteger();
+
+    /**
+     * Creates a factory using the Californium configuration and the thread pool of the CoAP server.
+     */
+    public EndpointFactory() {
+        this(0, 0, 0, 0, 0);
+    }
+
+    /**
+     * @param protocolThreads the number of threads processing the messages of each endpoint or 0 to use the thread
+     *        pool of the CoAP server
+     * @param receiverThreads the number of threads reading the UDP socket of each endpoint or 0 for the default
+     * @param senderThreads the number of threads writing to the UDP socket of each endpoint or 0 for the default
+     * @param receiveBufferSize the receive buffer size of the UDP sockets in bytes or 0 for the default
+     * @param sendBufferSize the send buffer size of the UDP sockets in bytes or 0 for the default
+     */
+    public EndpointFactory(int protocolThreads, int receiverThreads, int senderThreads, int receiveBufferSize,
+            int sendBufferSize) {
+        Validate.isTrue(protocolThreads >= 0, "the number of protocol threads must not be negative");
+        Validate.isTrue(receiverThreads >= 0, "the number of receiver threads must not be negative");
+        Validate.isTrue(senderThreads >= 0, "the number of sender threads must not be negative");
+        Validate.isTrue(receiveBufferSize >= 0, "the receive buffer size must not be negative");
+        Validate.isTrue(sendBufferSize >= 0, "the send buffer size must not be negative");
+        this.protocolThreads = protocolThreads;
+        this.receiverThreads = receiverThreads;
+        this.senderThreads = senderThreads;
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    /**
+     * Creates an unsecured endpoint bound to the given address.
+     */
+    public Endpoint createEndpoint(InetSocketAddress address) {
+        NetworkConfig config = NetworkConfig.getStandard();
+        UDPConnector connector = new UDPConnector(address);
+        connector.setReceiverThreadCount(receiverThreads > 0 ? receiverThreads : config
+                .getInt(NetworkConfig.Keys.NETWORK_STAGE_RECEIVER_THREAD_COUNT));
+        connector.setSenderThreadCount(senderThreads > 0 ? senderThreads : config
+                .getInt(NetworkConfig.Keys.NETWORK_STAGE_SENDER_THREAD_COUNT));
+        connector.setReceiveBufferSize(receiveBufferSize > 0 ? receiveBufferSize : config
+                .getInt(NetworkConfig.Keys.UDP_CONNECTOR_RECEIVE_BUFFER));
+        connector.setSendBufferSize(sendBufferSize > 0 ? sendBufferSize : config
+                .getInt(NetworkConfig.Keys.UDP_CONNECTOR_SEND_BUFFER));
+        connector.setReceiverPacketSize(config.getInt(NetworkConfig.Keys.UDP_CONNECTOR_DATAGRAM_SIZE));
+        connector.setLogPackets(config.getBoolean(NetworkConfig.Keys.UDP_CONNECTOR_LOG_PACKETS));
+        return new CoAPEndpoint(connector, config);
+    }
+
+    /**
+     * Adds the endpoint to the CoAP server and gives it its own protocol threads if configured.
+     */
+    public void addTo(CoapServer coapServer, Endpoint endpoint) {
+        coapServer.addEndpoint(endpoint);
+        if (protocolThreads > 0) {
+            // replaces the executor of the server set when adding the endpoint
+            ScheduledExecutorService executor = Executors.newScheduledThreadPool(protocolThreads,
+                    new NamedThreadFactory("leshan-coap-" + endpointCount.getAndIncrement()));
+            executors.add(executor);
+            endpoint.setExecutor(executor);
+        }
+    }
+
+    /**
+     * Stops the threads created for the endpoints.
+     */
+    public void destroy() {
+        for (ScheduledExecutorService executor : executors) {
+            executor.shutdownNow();
+        }
+        executors.clear();
+    }
+}
@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.californium.ObservationStore;
+import org.eclipse.leshan.server.californium.StoredObservation;
+import org.eclipse.leshan.util.Charsets;
+import org.eclipse.leshan.util.Hex;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ObservationStore} keeping the observations in memory and logging the changes to a file.
+ * <p>
+ * Each change appends a line to the file, so storing an observation does not depend on the number of stored
+ * observations. The file is compacted when it is loaded and when the removed entries outnumber the live ones.
+ * </p>
+ */
+public class FileObservationStore implements ObservationStore, Stoppable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileObservationStore.class);
+
+    // default location for persistence
+    private static final String DEFAULT_FILE = "data/observations.data";
+
+    private static final int MIN_COMPACTION_LINES = 1000;
+
+    private final File file;
+
+    // guarded by this
+    private final Map<String /* token */, StoredObservation> observations = new HashMap<>();
+    private final Map<String /* registration id */, Set<String /* token */>> tokensByRegistration = new HashMap<>();
+    private Writer writer;
+    private int lines = 0;
+
+    public FileObservationStore() {
+        this(DEFAULT_FILE);
+    }
+
+    /**
+     * @param file the file path to persist the observations
+     */
+    public FileObservationStore(String file) {
+        Validate.notEmpty(file);
+        this.file = new File(file);
+        loadFromFile();
+    }
+
+    @Override
+    public synchronized void add(StoredObservation observation) {
+        String token = Hex.encodeHex(observation.getToken());
+        StoredObservation previous = observations.get(token);
+        if (previous != null && previous.getRegistrationId().equals(observation.getRegistrationId())
+                && previous.getPath().equals(observation.getPath())) {
+            // already stored (e.g. restored observation)
+            return;
+        }
+        put(token, observation);
+        append(String.format("+ %s %s %s %s", token, observation.getRegistrationId(), observation.getPath(),
+                observation.getContentFormat() == null ? "-" : observation.getContentFormat()));
+    }
+
+    @Override
+    public synchronized void remove(byte[] token) {
+        String key = Hex.encodeHex(token);
+        if (delete(key)) {
+            append("- " + key);
+        }
+    }
+
+    @Override
+    public synchronized void removeAll(String registrationId) {
+        Set<String> tokens = tokensByRegistration.remove(registrationId);
+        if (tokens != null) {
+            for (String token : tokens) {
+                observations.remove(token);
+            }
+            append("* " + registrationId);
+        }
+    }
+
+    @Override
+    public synchronized Collection<StoredObservation> getAll() {
+        return new ArrayList<>(observations.values());
+    }
+
+    /**
+     * @return the number of stored observations
+     */
+    public synchronized int size() {
+        return observations.size();
+    }
+
+    /**
+     * Closes the file. It is opened again on the next change.
+     */
+    @Override
+    public synchronized void stop() {
+        closeWriter();
+    }
+
+    private void put(String token, StoredObservation observation) {
+        StoredObservation previous = observations.put(token, observation);
+        if (previous != null) {
+            removeToken(previous.getRegistrationId(), token);
+        }
+        Set<String> tokens = tokensByRegistration.get(observation.getRegistrationId());
+        if (tokens == null) {
+            tokens = new HashSet<>();
+            tokensByRegistration.put(observation.getRegistrationId(), tokens);
+        }
+        tokens.add(token);
+    }
+
+    private boolean delete(String token) {
+        StoredObservation observation = observations.remove(token);
+        if (observation == null) {
+            return false;
+        }
+        removeToken(observation.getRegistrationId(), token);
+        return true;
+    }
+
+    private void removeToken(String registrationId, String token) {
+        Set<String> tokens = tokensByRegistration.get(registrationId);
+        if (tokens != null) {
+            tokens.remove(token);
+            if (tokens.isEmpty()) {
+                tokensByRegistration.remove(registrationId);
+            }
+        }
+    }
+
+    // /////// File persistence
+
+    private void append(String line) {
+        if (lines >= MIN_COMPACTION_LINES && lines > 2 * observations.size()) {
+            compact();
+            return;
+        }
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), Charsets.UTF_8));
+            }
+            writer.write(line);
+            writer.write('\n');
+            writer.flush();
+            lines++;
+        } catch (IOException e) {
+            LOG.warn("Could not save observation to file", e);
+            closeWriter();
+        }
+    }
+
+    /**
+     * Replaces the file with the live observations.
+     */
+    private void compact() {
+        closeWriter();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), Charsets.UTF_8))) {
+            for (Map.Entry<String, StoredObservation> e : observations.entrySet()) {
+                StoredObservation o = e.getValue();
+                out.write(String.format("+ %s %s %s %s\n", e.getKey(), o.getRegistrationId(), o.getPath(),
+                        o.getContentFormat() == null ? "-" : o.getContentFormat()));
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not compact observation file", e);
+            return;
+        }
+        if ((file.exists() && !file.delete()) || !tmp.renameTo(file)) {
+            LOG.warn("Could not replace observation file {}", file);
+            return;
+        }
+        lines = observations.size();
+    }
+
+    private void closeWriter() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close observation file", e);
+            }
+            writer = null;
+        }
+    }
+
+    private synchronized void loadFromFile() {
+        if (!file.exists()) {
+            // create parents if needed
+            File parent = file.getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            return;
+        }
+
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), Charsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lines++;
+                String[] fields = line.split(" ");
+                try {
+                    switch (fields[0]) {
+                    case "+":
+                        put(fields[1], new StoredObservation(fields[2], new LwM2mPath(fields[3]),
+                                Hex.decodeHex(fields[1]), "-".equals(fields[4]) ? null : Integer.valueOf(fields[4])));
+                        break;
+                    case "-":
+                        delete(fields[1]);
+                        break;
+                    case "*":
+                        Set<String> tokens = tokensByRegistration.remove(fields[1]);
+                        if (tokens != null) {
+                            for (String token : tokens) {
+                                observations.remove(token);
+                            }
+                        }
+                        break;
+                    default:
+                        LOG.debug("Invalid line in observation file: {}", line);
+                    }
+                } catch (RuntimeException e) {
+                    // probably a partially written line
+                    LOG.debug("Invalid line in observation file: {}", line);
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not load observations from file", e);
+            return;
+        }
+        if (!observations.isEmpty()) {
+            LOG.info("{} observations loaded", observations.size());
+        }
+        compact();
+    }
+}
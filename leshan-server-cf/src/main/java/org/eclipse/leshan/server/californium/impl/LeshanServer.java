@@ -18,11 +18,17 @@ package org.eclipse.leshan.server.californium.impl;
 import java.net.InetSocketAddress;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.eclipse.californium.core.CoapServer;
-import org.eclipse.californium.core.network.CoAPEndpoint;
 import org.eclipse.californium.core.network.Endpoint;
 import org.eclipse.californium.scandium.DTLSConnector;
 import org.eclipse.californium.scandium.dtls.cipher.CipherSuite;
@@ -34,25 +40,53 @@ import org.eclipse.leshan.server.Destroyable;
 import org.eclipse.leshan.server.LwM2mServer;
 import org.eclipse.leshan.server.Startable;
 import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.aggregation.AggregateListener;
 import org.eclipse.leshan.server.californium.LeshanServerBuilder;
+import org.eclipse.leshan.server.californium.LeshanServerConfig;
+import org.eclipse.leshan.server.californium.ObservationStore;
 import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientFilter;
 import org.eclipse.leshan.server.client.ClientRegistry;
 import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.history.ObservationHistory;
+import org.eclipse.leshan.server.impl.CallbackExecutorRequestSender;
+import org.eclipse.leshan.server.impl.ClientRegistryEventBus;
+import org.eclipse.leshan.server.impl.ClientRegistryImpl;
+import org.eclipse.leshan.server.impl.DeviceShadowImpl;
+import org.eclipse.leshan.server.impl.GroupRequestSender;
+import org.eclipse.leshan.server.impl.NodeRegistrationIdGenerator;
+import org.eclipse.leshan.server.impl.NodeRoutingRequestSender;
+import org.eclipse.leshan.server.impl.SharedClientRegistry;
+import org.eclipse.leshan.server.impl.NotificationAggregator;
+import org.eclipse.leshan.server.impl.NotificationFileSink;
+import org.eclipse.leshan.server.impl.ObservationHistoryImpl;
+import org.eclipse.leshan.server.impl.TrafficLane;
+import org.eclipse.leshan.server.metrics.Gauge;
+import org.eclipse.leshan.server.metrics.JmxMetricsReporter;
+import org.eclipse.leshan.server.metrics.MetricsRegistry;
+import org.eclipse.leshan.server.metrics.ServerMetrics;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.observation.Observation;
 import org.eclipse.leshan.server.observation.ObservationRegistry;
 import org.eclipse.leshan.server.registration.RegistrationHandler;
+import org.eclipse.leshan.server.request.GroupOperation;
+import org.eclipse.leshan.server.request.GroupRequestListener;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
 import org.eclipse.leshan.server.security.SecurityInfo;
 import org.eclipse.leshan.server.security.SecurityRegistry;
+import org.eclipse.leshan.server.shadow.DeviceShadow;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.eclipse.leshan.util.NamedThreadFactory;
 import org.eclipse.leshan.util.Validate;
+import org.eclipse.leshan.util.VirtualThreads;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A Lightweight M2M server.
  * <p>
- * This implementation starts a Californium {@link CoapServer} with a non-secure and secure endpoint. This CoAP server
- * defines a <i>/rd</i> resource as described in the CoRE RD specification.
+ * This implementation starts a Californium {@link CoapServer} with one or several non-secure and secure endpoints. This
+ * CoAP server defines a <i>/rd</i> resource as described in the CoRE RD specification.
  * </p>
  * <p>
  * This class is the entry point to send synchronous and asynchronous requests to registered clients.
@@ -65,9 +99,17 @@ public class LeshanServer implements LwM2mServer {
 
     private final CoapServer coapServer;
 
+    private final EndpointFactory endpointFactory;
+
+    private final TrafficLane registrationLane;
+
+    private final TrafficLane callbackLane;
+
+    private final ExecutorService virtualThreadExecutor;
+
     private static final Logger LOG = LoggerFactory.getLogger(LeshanServer.class);
 
-    private final CaliforniumLwM2mRequestSender requestSender;
+    private final LwM2mRequestSender requestSender;
 
     private final ClientRegistry clientRegistry;
 
@@ -77,6 +119,38 @@ public class LeshanServer implements LwM2mServer {
 
     private final LwM2mModelProvider modelProvider;
 
+    private final GroupRequestSender groupRequestSender;
+
+    private final DeviceShadowImpl deviceShadow;
+
+    private final ObservationHistoryImpl observationHistory;
+
+    private final NotificationAggregator notificationAggregator;
+
+    private final NotificationFileSink notificationFileSink;
+
+    private final RegistrationAdmissionControl registrationAdmissionControl;
+
+    private final HashedWheelTimer requestTimer;
+
+    private final NotificationPipeline notificationPipeline;
+
+    private final NotificationDeduplicator notificationDeduplicator;
+
+    private final ObservationStore observationStore;
+
+    private final ObservationPersistence observationPersistence;
+
+    private final MetricsRegistry metricsRegistry;
+
+    private final ClientRttTracker rttTracker;
+
+    private final CircuitBreakerRequestSender circuitBreaker;
+
+    private final JmxMetricsReporter jmxMetricsReporter;
+
+    private boolean observationsRestored = false;
+
     /**
      * Initialize a server which will bind to the specified address and port.
      *
@@ -90,12 +164,57 @@ public class LeshanServer implements LwM2mServer {
     public LeshanServer(InetSocketAddress localAddress, InetSocketAddress localAddressSecure,
             final ClientRegistry clientRegistry, final SecurityRegistry securityRegistry,
             final ObservationRegistry observationRegistry, final LwM2mModelProvider modelProvider) {
-        Validate.notNull(localAddress, "IP address cannot be null");
-        Validate.notNull(localAddressSecure, "Secure IP address cannot be null");
+        this(localAddress, localAddressSecure, clientRegistry, securityRegistry, observationRegistry, modelProvider,
+                new LeshanServerConfig());
+    }
+
+    /**
+     * Initialize a server which will bind to the specified address and port.
+     *
+     * @param localAddress the address to bind the CoAP server.
+     * @param localAddressSecure the address to bind the CoAP server for DTLS connection.
+     * @param clientRegistry the registered {@link Client} registry.
+     * @param securityRegistry the {@link SecurityInfo} registry.
+     * @param observationRegistry the {@link Observation} registry.
+     * @param modelProvider provides the objects description for each client.
+     * @param config the tuning parameters of the server.
+     */
+    public LeshanServer(InetSocketAddress localAddress, InetSocketAddress localAddressSecure,
+            final ClientRegistry clientRegistry, final SecurityRegistry securityRegistry,
+            final ObservationRegistry observationRegistry, final LwM2mModelProvider modelProvider,
+            LeshanServerConfig config) {
+        this(Collections.singletonList(localAddress), Collections.singletonList(localAddressSecure), clientRegistry,
+                securityRegistry, observationRegistry, modelProvider, config);
+    }
+
+    /**
+     * Initialize a server which will bind to all the specified addresses and ports.
+     *
+     * @param localAddresses the addresses to bind the CoAP server.
+     * @param localAddressesSecure the addresses to bind the CoAP server for DTLS connection.
+     * @param clientRegistry the registered {@link Client} registry.
+     * @param securityRegistry the {@link SecurityInfo} registry.
+     * @param observationRegistry the {@link Observation} registry.
+     * @param modelProvider provides the objects description for each client.
+     * @param config the tuning parameters of the server.
+     */
+    public LeshanServer(Collection<InetSocketAddress> localAddresses,
+            Collection<InetSocketAddress> localAddressesSecure, final ClientRegistry clientRegistry,
+            final SecurityRegistry securityRegistry, final ObservationRegistry observationRegistry,
+            final LwM2mModelProvider modelProvider, LeshanServerConfig config) {
+        Validate.notEmpty(localAddresses, "IP addresses cannot be empty");
+        Validate.notEmpty(localAddressesSecure, "Secure IP addresses cannot be empty");
+        for (InetSocketAddress localAddress : localAddresses) {
+            Validate.notNull(localAddress, "IP address cannot be null");
+        }
+        for (InetSocketAddress localAddressSecure : localAddressesSecure) {
+            Validate.notNull(localAddressSecure, "Secure IP address cannot be null");
+        }
         Validate.notNull(clientRegistry, "clientRegistry cannot be null");
         Validate.notNull(securityRegistry, "securityRegistry cannot be null");
         Validate.notNull(observationRegistry, "observationRegistry cannot be null");
         Validate.notNull(modelProvider, "modelProvider cannot be null");
+        Validate.notNull(config, "config cannot be null");
 
         // Init registries
         this.clientRegistry = clientRegistry;
@@ -104,6 +223,19 @@ public class LeshanServer implements LwM2mServer {
 
         this.modelProvider = modelProvider;
 
+        // Record the metrics of the server
+        metricsRegistry = new MetricsRegistry(config.isMetricsEnabled());
+        final ServerMetrics serverMetrics;
+        if (metricsRegistry.isEnabled()) {
+            serverMetrics = new ServerMetrics(metricsRegistry, this.clientRegistry);
+            this.clientRegistry.addListener(serverMetrics);
+            this.observationRegistry.addListener(serverMetrics);
+        } else {
+            serverMetrics = null;
+        }
+        jmxMetricsReporter = config.isJmxMetrics() ? new JmxMetricsReporter(metricsRegistry, "server") : null;
+        CoapMetrics coapMetrics = new CoapMetrics(metricsRegistry);
+
         // Cancel observations on client unregistering
         this.clientRegistry.addListener(new ClientRegistryListener() {
 
@@ -121,12 +253,269 @@ public class LeshanServer implements LwM2mServer {
             }
         });
 
-        // default endpoint
+        // Keep the last known values of the clients
+        if (config.getMaxShadowEntries() > 0) {
+            deviceShadow = new DeviceShadowImpl(config.getMaxShadowEntries());
+            this.clientRegistry.addListener(deviceShadow);
+            this.observationRegistry.addListener(deviceShadow);
+        } else {
+            deviceShadow = null;
+        }
+
+        // Keep the last numeric values of the observed resources
+        if (config.getHistorySize() > 0) {
+            observationHistory = new ObservationHistoryImpl(config.getHistorySize(), config.getMaxHistorySeries(),
+                    this.clientRegistry);
+            this.clientRegistry.addListener(observationHistory);
+            this.observationRegistry.addListener(observationHistory);
+        } else {
+            observationHistory = null;
+        }
+
+        // Aggregate the numeric values over time windows
+        if (config.getAggregationWindow() > 0) {
+            long step = config.getAggregationStep() > 0 ? config.getAggregationStep() : config.getAggregationWindow();
+            notificationAggregator = new NotificationAggregator(config.getAggregationWindow(), step,
+                    config.getAggregationPartitions());
+            this.clientRegistry.addListener(notificationAggregator);
+            this.observationRegistry.addListener(notificationAggregator);
+        } else {
+            notificationAggregator = null;
+        }
+
+        // Export the notified values to local files
+        if (config.getExportDirectory() != null) {
+            notificationFileSink = new NotificationFileSink(config.getExportDirectory(),
+                    config.getExportMaxFileSize(), config.getExportMaxFiles(),
+                    NotificationFileSink.DEFAULT_QUEUE_CAPACITY);
+            this.observationRegistry.addListener(notificationFileSink);
+        } else {
+            notificationFileSink = null;
+        }
+
+        // default endpoints
         coapServer = new CoapServer();
-        final Endpoint endpoint = new CoAPEndpoint(localAddress);
-        coapServer.addEndpoint(endpoint);
+        if (config.getProtocolThreads() > 0) {
+            // must be set before adding the endpoints
+            coapServer.setExecutor(Executors.newScheduledThreadPool(config.getProtocolThreads(),
+                    new NamedThreadFactory("leshan-protocol")));
+        }
+        endpointFactory = new EndpointFactory(config.getEndpointProtocolThreads(),
+                config.getEndpointReceiverThreads(), config.getEndpointSenderThreads(),
+                config.getSocketReceiveBufferSize(), config.getSocketSendBufferSize());
+        final Set<Endpoint> endpoints = new HashSet<>();
+        for (InetSocketAddress localAddress : localAddresses) {
+            Endpoint endpoint = endpointFactory.createEndpoint(localAddress);
+            endpointFactory.addTo(coapServer, endpoint);
+            endpoints.add(endpoint);
+        }
+
+        // secure endpoints
+        for (InetSocketAddress localAddressSecure : localAddressesSecure) {
+            Endpoint secureEndpoint = new SecureEndpoint(createDTLSConnector(localAddressSecure));
+            endpointFactory.addTo(coapServer, secureEndpoint);
+            endpoints.add(secureEndpoint);
+        }
+
+        // define /rd resource
+        registrationAdmissionControl = new RegistrationAdmissionControl(config.getMaxRegistrationsPerSecond(),
+                config.getMaxUpdatesPerSecond(), config.getMaxPendingRegistrations(),
+                config.getMinRegistrationRetryDelay(), config.getMaxRegistrationRetryDelay());
+        final RegistrationHandler registrationHandler;
+        if (config.getNodeId() != null) {
+            // embed the node id in the registration ids to route the requests
+            registrationHandler = new RegistrationHandler(this.clientRegistry, this.securityRegistry,
+                    new NodeRegistrationIdGenerator(config.getNodeId()));
+        } else {
+            registrationHandler = new RegistrationHandler(this.clientRegistry, this.securityRegistry);
+        }
+        if (serverMetrics != null) {
+            // the client registry does not notify its listeners of the keep-alives
+            registrationHandler.addKeepAliveListener(serverMetrics);
+        }
+        final RegisterResource rdResource = new RegisterResource(registrationHandler, registrationAdmissionControl);
+        if (config.getRegistrationThreads() > 0) {
+            registrationLane = new TrafficLane("leshan-registration", config.getRegistrationThreads(),
+                    config.getRegistrationQueueCapacity());
+            rdResource.setExecutor(registrationLane);
+        } else {
+            registrationLane = null;
+        }
+        coapServer.add(rdResource);
+
+        // create sender
+        requestTimer = new HashedWheelTimer("leshan-request-timer");
+        if (config.getNotificationWorkers() > 0) {
+            notificationPipeline = new NotificationPipeline("leshan-notification", config.getNotificationWorkers(),
+                    config.getNotificationQueueCapacity());
+        } else {
+            notificationPipeline = null;
+        }
+        notificationDeduplicator = config.isDropUnchangedNotifications() ? new NotificationDeduplicator() : null;
+        rttTracker = new ClientRttTracker(config.getMinRetransmissionTimeout(), config.getMaxRetransmissionTimeout(),
+                config.isAdaptiveTimeouts(), this.clientRegistry);
+        this.clientRegistry.addListener(rttTracker);
+        CaliforniumLwM2mRequestSender coapRequestSender = new CaliforniumLwM2mRequestSender(endpoints,
+                this.observationRegistry, modelProvider, requestTimer, deviceShadow, notificationPipeline,
+                notificationDeduplicator, coapMetrics, rttTracker);
+
+        // persist the observations to restore them after a restart
+        observationStore = config.getObservationStore();
+        if (observationStore != null) {
+            observationPersistence = new ObservationPersistence(observationStore, modelProvider,
+                    notificationPipeline, notificationDeduplicator, coapMetrics);
+            for (Endpoint endpoint : endpoints) {
+                observationPersistence.addTo(endpoint);
+            }
+            this.observationRegistry.addListener(observationPersistence);
+            this.clientRegistry.addListener(observationPersistence);
+        } else {
+            observationPersistence = null;
+        }
+
+        // limit the number of concurrent requests per client
+        DownlinkRequestScheduler scheduler = new DownlinkRequestScheduler(coapRequestSender, requestTimer,
+                config.getMaxInFlightRequests(), config.getMaxQueuedRequests(), config.getRequestPriority(),
+                this.clientRegistry);
+        this.clientRegistry.addListener(scheduler);
+
+        // stop sending requests to the unreachable clients
+        LwM2mRequestSender reachableSender;
+        if (config.getUnreachableTimeoutThreshold() > 0) {
+            circuitBreaker = new CircuitBreakerRequestSender(scheduler, requestTimer,
+                    config.getUnreachableTimeoutThreshold(), config.getUnreachableProbeInterval(),
+                    config.isQueueUnreachableRequests(), CircuitBreakerRequestSender.DEFAULT_MAX_QUEUED_REQUESTS,
+                    this.clientRegistry);
+            this.clientRegistry.addListener(circuitBreaker);
+            // the keep-alives do not always notify the registry listeners
+            registrationHandler.addKeepAliveListener(circuitBreaker);
+            reachableSender = circuitBreaker;
+        } else {
+            circuitBreaker = null;
+            reachableSender = scheduler;
+        }
+
+        // buffer the requests sent to sleeping queue mode clients
+        QueueModeRequestSender queueModeSender = new QueueModeRequestSender(reachableSender, requestTimer,
+                config.getQueueModeAwakeTime(), config.getMaxBufferedRequests(), this.clientRegistry);
+        this.clientRegistry.addListener(queueModeSender);
+
+        // merge identical reads sent concurrently
+        LwM2mRequestSender localSender = new CoalescingRequestSender(queueModeSender, requestTimer);
+
+        // send the requests for the clients registered through other nodes to these nodes
+        LwM2mRequestSender routingSender;
+        if (config.getNodeId() != null) {
+            // route to the owner recorded by the shared registry, if any
+            SharedClientRegistry sharedRegistry = this.clientRegistry instanceof SharedClientRegistry
+                    ? (SharedClientRegistry) this.clientRegistry : null;
+            routingSender = new NodeRoutingRequestSender(config.getNodeId(), localSender,
+                    config.getRequestForwarder(), sharedRegistry);
+        } else {
+            routingSender = localSender;
+        }
+
+        // call the user callbacks out of the CoAP threads
+        Executor callbackExecutor = config.getCallbackExecutor();
+        if (callbackExecutor == null && config.isVirtualThreadCallbacks() && VirtualThreads.isSupported()) {
+            virtualThreadExecutor = VirtualThreads.newThreadPerTaskExecutor("leshan-callback");
+            callbackExecutor = virtualThreadExecutor;
+        } else {
+            if (callbackExecutor == null && config.isVirtualThreadCallbacks()) {
+                LOG.warn("Virtual threads are not supported by this JVM: using {} callback threads",
+                        config.getCallbackThreads());
+            }
+            virtualThreadExecutor = null;
+        }
+        if (callbackExecutor == null && config.getCallbackThreads() > 0) {
+            callbackLane = new TrafficLane("leshan-callback", config.getCallbackThreads(),
+                    config.getCallbackQueueCapacity());
+            callbackExecutor = callbackLane;
+        } else {
+            callbackLane = null;
+        }
+        if (callbackExecutor != null) {
+            requestSender = new CallbackExecutorRequestSender(routingSender, callbackExecutor);
+        } else {
+            requestSender = routingSender;
+        }
+
+        groupRequestSender = new GroupRequestSender(requestSender, requestTimer,
+                config.getMaxConcurrentGroupRequests(), config.getMaxGroupRequestsPerSecond());
+
+        registerQueueGauges(queueModeSender);
+    }
+
+    /**
+     * Exposes the depth of the queues between the CoAP threads and the listeners.
+     */
+    private void registerQueueGauges(final QueueModeRequestSender queueModeSender) {
+        if (notificationPipeline != null) {
+            metricsRegistry.gauge("queues.notifications", new Gauge() {
+                @Override
+                public long getValue() {
+                    return notificationPipeline.getQueuedTasks();
+                }
+            });
+        }
+        if (clientRegistry instanceof ClientRegistryImpl) {
+            final ClientRegistryEventBus eventBus = ((ClientRegistryImpl) clientRegistry).getEventBus();
+            if (eventBus != null) {
+                metricsRegistry.gauge("queues.registry-events", new Gauge() {
+                    @Override
+                    public long getValue() {
+                        return eventBus.getQueuedEvents();
+                    }
+                });
+            }
+        }
+        if (registrationLane != null) {
+            metricsRegistry.gauge("queues.registrations", new Gauge() {
+                @Override
+                public long getValue() {
+                    return registrationLane.getQueuedTasks();
+                }
+            });
+        }
+        if (callbackLane != null) {
+            metricsRegistry.gauge("queues.callbacks", new Gauge() {
+                @Override
+                public long getValue() {
+                    return callbackLane.getQueuedTasks();
+                }
+            });
+        }
+        if (notificationFileSink != null) {
+            metricsRegistry.gauge("queues.export", new Gauge() {
+                @Override
+                public long getValue() {
+                    return notificationFileSink.getQueuedRecords();
+                }
+            });
+        }
+        metricsRegistry.gauge("queues.sleeping-clients", new Gauge() {
+            @Override
+            public long getValue() {
+                return queueModeSender.getBufferedRequests();
+            }
+        });
+        if (circuitBreaker != null) {
+            metricsRegistry.gauge("queues.unreachable-clients", new Gauge() {
+                @Override
+                public long getValue() {
+                    return circuitBreaker.getQueuedRequests();
+                }
+            });
+            metricsRegistry.gauge("clients.unreachable", new Gauge() {
+                @Override
+                public long getValue() {
+                    return circuitBreaker.getUnreachableClients();
+                }
+            });
+        }
+    }
 
-        // secure endpoint
+    private DTLSConnector createDTLSConnector(InetSocketAddress localAddressSecure) {
         DTLSConnector connector = new DTLSConnector(localAddressSecure);
         connector.getConfig().setPskStore(new LwM2mPskStore(this.securityRegistry, this.clientRegistry));
         PrivateKey privateKey = this.securityRegistry.getServerPrivateKey();
@@ -139,20 +528,7 @@ public class LeshanServer implements LwM2mServer {
             // TODO this should be automatically done by scandium
             connector.getConfig().setPreferredCipherSuite(CipherSuite.TLS_PSK_WITH_AES_128_CCM_8);
         }
-
-        final Endpoint secureEndpoint = new SecureEndpoint(connector);
-        coapServer.addEndpoint(secureEndpoint);
-
-        // define /rd resource
-        final RegisterResource rdResource = new RegisterResource(new RegistrationHandler(this.clientRegistry,
-                this.securityRegistry));
-        coapServer.add(rdResource);
-
-        // create sender
-        final Set<Endpoint> endpoints = new HashSet<>();
-        endpoints.add(endpoint);
-        endpoints.add(secureEndpoint);
-        requestSender = new CaliforniumLwM2mRequestSender(endpoints, this.observationRegistry, modelProvider);
+        return connector;
     }
 
     @Override
@@ -169,8 +545,27 @@ public class LeshanServer implements LwM2mServer {
             ((Startable) observationRegistry).start();
         }
 
+        // Restore the observations of the registered clients
+        if (observationPersistence != null && !observationsRestored) {
+            observationPersistence.restore(clientRegistry.allClients(), observationRegistry);
+            observationsRestored = true;
+        }
+
         // Start server
+        if (notificationPipeline != null) {
+            notificationPipeline.start();
+        }
+        if (notificationAggregator != null) {
+            notificationAggregator.start();
+        }
+        if (notificationFileSink != null) {
+            notificationFileSink.start();
+        }
+        requestTimer.start();
         coapServer.start();
+        if (jmxMetricsReporter != null) {
+            jmxMetricsReporter.start();
+        }
 
         LOG.info("LW-M2M server started");
     }
@@ -179,6 +574,21 @@ public class LeshanServer implements LwM2mServer {
     public void stop() {
         // Stop server
         coapServer.stop();
+        if (jmxMetricsReporter != null) {
+            jmxMetricsReporter.stop();
+        }
+        if (notificationPipeline != null) {
+            notificationPipeline.stop();
+        }
+        if (notificationAggregator != null) {
+            notificationAggregator.stop();
+        }
+        if (notificationFileSink != null) {
+            notificationFileSink.stop();
+        }
+
+        // Expire the pending request deadlines, keep the other tasks until the restart
+        requestTimer.stop();
 
         // Start registries
         if (clientRegistry instanceof Stoppable) {
@@ -190,6 +600,9 @@ public class LeshanServer implements LwM2mServer {
         if (observationRegistry instanceof Stoppable) {
             ((Stoppable) observationRegistry).stop();
         }
+        if (observationStore instanceof Stoppable) {
+            ((Stoppable) observationStore).stop();
+        }
 
         LOG.info("LW-M2M server stopped");
     }
@@ -197,6 +610,31 @@ public class LeshanServer implements LwM2mServer {
     public void destroy() {
         // Destroy server
         coapServer.destroy();
+        if (jmxMetricsReporter != null) {
+            jmxMetricsReporter.stop();
+        }
+        endpointFactory.destroy();
+        if (registrationLane != null) {
+            registrationLane.stop();
+        }
+        if (callbackLane != null) {
+            callbackLane.stop();
+        }
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+        if (notificationPipeline != null) {
+            notificationPipeline.stop();
+        }
+        if (notificationAggregator != null) {
+            notificationAggregator.stop();
+        }
+        if (notificationFileSink != null) {
+            notificationFileSink.stop();
+        }
+
+        // Expire all the pending tasks
+        requestTimer.destroy();
 
         // Destroy registries
         if (clientRegistry instanceof Destroyable) {
@@ -208,6 +646,9 @@ public class LeshanServer implements LwM2mServer {
         if (observationRegistry instanceof Destroyable) {
             ((Destroyable) observationRegistry).destroy();
         }
+        if (observationStore instanceof Stoppable) {
+            ((Stoppable) observationStore).stop();
+        }
 
         LOG.info("LW-M2M server destroyed");
     }
@@ -232,6 +673,96 @@ public class LeshanServer implements LwM2mServer {
         return this.modelProvider;
     }
 
+    @Override
+    public DeviceShadow getDeviceShadow() {
+        return this.deviceShadow;
+    }
+
+    @Override
+    public ObservationHistory getObservationHistory() {
+        return this.observationHistory;
+    }
+
+    /**
+     * Get the aggregator computing statistics of the notified numeric values over time windows. Add an
+     * {@link AggregateListener} to it to receive the aggregates.
+     *
+     * @return the aggregator or <code>null</code> if the aggregation is disabled
+     */
+    public NotificationAggregator getNotificationAggregator() {
+        return this.notificationAggregator;
+    }
+
+    /**
+     * Get the sink exporting the notified values to local files.
+     *
+     * @return the sink or <code>null</code> if the export is disabled
+     */
+    public NotificationFileSink getNotificationFileSink() {
+        return this.notificationFileSink;
+    }
+
+    /**
+     * Get the admission control of the registration requests, which counts the accepted and rejected requests.
+     */
+    public RegistrationAdmissionControl getRegistrationAdmissionControl() {
+        return this.registrationAdmissionControl;
+    }
+
+    /**
+     * Get the pipeline processing the notifications, which counts the queued and blocked notifications.
+     *
+     * @return the pipeline or <code>null</code> if the notifications are processed in the CoAP threads
+     */
+    public NotificationPipeline getNotificationPipeline() {
+        return this.notificationPipeline;
+    }
+
+    /**
+     * Get the lane handling the registration requests.
+     *
+     * @return the lane or <code>null</code> if the registrations are handled in the CoAP threads
+     */
+    public TrafficLane getRegistrationLane() {
+        return this.registrationLane;
+    }
+
+    /**
+     * Get the lane calling the callbacks of the asynchronous requests.
+     *
+     * @return the lane or <code>null</code> if the callbacks are called in the CoAP threads or by another executor
+     */
+    public TrafficLane getCallbackLane() {
+        return this.callbackLane;
+    }
+
+    /**
+     * Get the metrics of the server: registration and notification rates, codec times, downlink latencies, queue
+     * depths...
+     *
+     * @return the registry of the metrics, which ignores the updates when the metrics are disabled
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return this.metricsRegistry;
+    }
+
+    /**
+     * Get the tracker of the round-trip time of each registered client, which gives the smoothed RTT, its variation,
+     * the retransmission timeout and the RTT percentiles of a client.
+     */
+    public ClientRttTracker getRttTracker() {
+        return this.rttTracker;
+    }
+
+    /**
+     * Get the sender tracking the reachability of each registered client.
+     *
+     * @return the sender or <code>null</code> if the requests are always sent
+     */
+    public CircuitBreakerRequestSender getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
     @Override
     public <T extends LwM2mResponse> T send(final Client destination, final DownlinkRequest<T> request) {
         return requestSender.send(destination, request, null);
@@ -248,6 +779,41 @@ public class LeshanServer implements LwM2mServer {
         requestSender.send(destination, request, responseCallback, errorCallback);
     }
 
+    @Override
+    public <T extends LwM2mResponse> void send(final Client destination, final DownlinkRequest<T> request,
+            long timeout, final ResponseCallback<T> responseCallback, final ErrorCallback errorCallback) {
+        requestSender.send(destination, request, timeout, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> GroupOperation send(ClientFilter filter, DownlinkRequest<T> request,
+            long timeout, GroupRequestListener<T> listener) {
+        Validate.notNull(filter);
+        List<Client> destinations = new ArrayList<>();
+        for (Client client : clientRegistry.allClients()) {
+            if (filter.accept(client)) {
+                destinations.add(client);
+            }
+        }
+        return groupRequestSender.send(destinations, request, timeout, listener);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> GroupOperation send(Collection<String> endpoints, DownlinkRequest<T> request,
+            long timeout, GroupRequestListener<T> listener) {
+        Validate.notNull(endpoints);
+        List<Client> destinations = new ArrayList<>(endpoints.size());
+        for (String endpoint : endpoints) {
+            Client client = clientRegistry.get(endpoint);
+            if (client != null) {
+                destinations.add(client);
+            } else {
+                LOG.debug("Ignoring unregistered endpoint {}", endpoint);
+            }
+        }
+        return groupRequestSender.send(destinations, request, timeout, listener);
+    }
+
     /**
      * @return the underlying {@link CoapServer}
      */
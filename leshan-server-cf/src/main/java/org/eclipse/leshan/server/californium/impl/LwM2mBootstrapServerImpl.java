@@ -17,6 +17,7 @@ package org.eclipse.leshan.server.californium.impl;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
 
 import org.eclipse.californium.core.CoapServer;
 import org.eclipse.californium.core.network.CoAPEndpoint;
@@ -56,6 +57,15 @@ public class LwM2mBootstrapServerImpl implements LwM2mBootstrapServer {
 
     public LwM2mBootstrapServerImpl(InetSocketAddress localAddress, InetSocketAddress localAddressSecure,
             BootstrapStore bsStore, SecurityStore securityStore) {
+        this(localAddress, localAddressSecure, bsStore, securityStore, null);
+    }
+
+    /**
+     * @param bootstrapExecutor the executor pushing the configurations to the clients or <code>null</code> for a pool
+     *        of {@value BootstrapResource#DEFAULT_THREADS} threads
+     */
+    public LwM2mBootstrapServerImpl(InetSocketAddress localAddress, InetSocketAddress localAddressSecure,
+            BootstrapStore bsStore, SecurityStore securityStore, Executor bootstrapExecutor) {
         Validate.notNull(bsStore, "bootstrap store must not be null");
 
         this.bsStore = bsStore;
@@ -73,7 +83,8 @@ public class LwM2mBootstrapServerImpl implements LwM2mBootstrapServer {
         coapServer.addEndpoint(secureEndpoint);
 
         // define /bs ressource
-        BootstrapResource bsResource = new BootstrapResource(bsStore);
+        BootstrapResource bsResource = bootstrapExecutor != null ? new BootstrapResource(bsStore,
+                bootstrapExecutor) : new BootstrapResource(bsStore);
         coapServer.add(bsResource);
     }
 
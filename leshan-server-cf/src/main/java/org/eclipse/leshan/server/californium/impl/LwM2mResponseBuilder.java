@@ -25,7 +25,6 @@ import org.eclipse.leshan.core.model.LwM2mModel;
 import org.eclipse.leshan.core.node.LwM2mNode;
 import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.node.codec.InvalidValueException;
-import org.eclipse.leshan.core.node.codec.LwM2mNodeDecoder;
 import org.eclipse.leshan.core.request.ContentFormat;
 import org.eclipse.leshan.core.request.CreateRequest;
 import org.eclipse.leshan.core.request.DeleteRequest;
@@ -43,6 +42,7 @@ import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ValueResponse;
 import org.eclipse.leshan.server.client.Client;
 import org.eclipse.leshan.server.observation.ObservationRegistry;
+import org.eclipse.leshan.server.shadow.DeviceShadow;
 import org.eclipse.leshan.util.Validate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +57,10 @@ public class LwM2mResponseBuilder<T extends LwM2mResponse> implements DownlinkRe
     private final ObservationRegistry observationRegistry;
     private final Client client;
     private final LwM2mModel model;
+    private final DeviceShadow deviceShadow;
+    private final NotificationPipeline notificationPipeline;
+    private final NotificationDeduplicator notificationDeduplicator;
+    private final CoapMetrics metrics;
 
     // TODO leshan-code-cf: this code should be factorize in a leshan-core-cf project.
     // duplicate from org.eclipse.leshan.client.californium.impl.LwM2mClientResponseBuilder<T>
@@ -90,11 +94,35 @@ public class LwM2mResponseBuilder<T extends LwM2mResponse> implements DownlinkRe
 
     public LwM2mResponseBuilder(final Request coapRequest, final Response coapResponse, final Client client,
             final LwM2mModel model, final ObservationRegistry observationRegistry) {
+        this(coapRequest, coapResponse, client, model, observationRegistry, null, null, null);
+    }
+
+    public LwM2mResponseBuilder(final Request coapRequest, final Response coapResponse, final Client client,
+            final LwM2mModel model, final ObservationRegistry observationRegistry, final DeviceShadow deviceShadow,
+            final NotificationPipeline notificationPipeline, final NotificationDeduplicator notificationDeduplicator) {
+        this(coapRequest, coapResponse, client, model, observationRegistry, deviceShadow, notificationPipeline,
+                notificationDeduplicator, null);
+    }
+
+    /**
+     * @param deviceShadow the store of the last known values, updated with the content of the responses (optional)
+     * @param notificationPipeline the pipeline processing the notifications of new observations (optional)
+     * @param notificationDeduplicator drops the unchanged notifications of new observations (optional)
+     * @param metrics records the decoding time of the responses and notifications (optional)
+     */
+    public LwM2mResponseBuilder(final Request coapRequest, final Response coapResponse, final Client client,
+            final LwM2mModel model, final ObservationRegistry observationRegistry, final DeviceShadow deviceShadow,
+            final NotificationPipeline notificationPipeline, final NotificationDeduplicator notificationDeduplicator,
+            final CoapMetrics metrics) {
         this.coapRequest = coapRequest;
         this.coapResponse = coapResponse;
         this.observationRegistry = observationRegistry;
         this.client = client;
         this.model = model;
+        this.deviceShadow = deviceShadow;
+        this.notificationPipeline = notificationPipeline;
+        this.notificationDeduplicator = notificationDeduplicator;
+        this.metrics = metrics == null ? CoapMetrics.DISABLED : metrics;
     }
 
     @Override
@@ -145,6 +173,7 @@ public class LwM2mResponseBuilder<T extends LwM2mResponse> implements DownlinkRe
         switch (coapResponse.getCode()) {
         case CHANGED:
             lwM2mresponse = new LwM2mResponse(fromCoapCode(coapResponse.getCode().value));
+            invalidateShadow(request.getPath());
             break;
         case BAD_REQUEST:
         case NOT_FOUND:
@@ -181,6 +210,7 @@ public class LwM2mResponseBuilder<T extends LwM2mResponse> implements DownlinkRe
         switch (coapResponse.getCode()) {
         case CHANGED:
             lwM2mresponse = new LwM2mResponse(fromCoapCode(coapResponse.getCode().value));
+            invalidateShadow(request.getPath());
             break;
         case BAD_REQUEST:
         case UNAUTHORIZED:
@@ -201,6 +231,7 @@ public class LwM2mResponseBuilder<T extends LwM2mResponse> implements DownlinkRe
         case CREATED:
             lwM2mresponse = new CreateResponse(fromCoapCode(coapResponse.getCode().value), coapResponse.getOptions()
                     .getLocationPathString());
+            invalidateShadow(request.getPath());
             break;
         case BAD_REQUEST:
         case UNAUTHORIZED:
@@ -219,6 +250,7 @@ public class LwM2mResponseBuilder<T extends LwM2mResponse> implements DownlinkRe
         switch (coapResponse.getCode()) {
         case DELETED:
             lwM2mresponse = new LwM2mResponse(fromCoapCode(coapResponse.getCode().value));
+            invalidateShadow(request.getPath());
             break;
         case UNAUTHORIZED:
         case NOT_FOUND:
@@ -243,7 +275,7 @@ public class LwM2mResponseBuilder<T extends LwM2mResponse> implements DownlinkRe
             if (coapResponse.getOptions().hasObserve()) {
                 // observe request succeed so we can add and observation to registry
                 final CaliforniumObservation observation = new CaliforniumObservation(coapRequest, client,
-                        request.getPath(), model);
+                        request.getPath(), model, notificationPipeline, notificationDeduplicator, metrics);
                 coapRequest.addMessageObserver(observation);
                 observationRegistry.addObservation(observation);
             }
@@ -262,15 +294,24 @@ public class LwM2mResponseBuilder<T extends LwM2mResponse> implements DownlinkRe
         final ResponseCode code = ResponseCode.CONTENT;
         LwM2mNode content;
         try {
-            content = LwM2mNodeDecoder.decode(coapResponse.getPayload(),
+            content = metrics.decode(coapResponse.getPayload(),
                     ContentFormat.fromCode(coapResponse.getOptions().getContentFormat()), path, model);
         } catch (final InvalidValueException e) {
             final String msg = String.format("[%s] ([%s])", e.getMessage(), e.getPath().toString());
             throw new ResourceAccessException(code, path.toString(), msg, e);
         }
+        if (deviceShadow != null) {
+            deviceShadow.update(client, path, content);
+        }
         return new ValueResponse(code, content);
     }
 
+    private void invalidateShadow(final LwM2mPath path) {
+        if (deviceShadow != null) {
+            deviceShadow.invalidate(client, path);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public T getResponse() {
         return (T) lwM2mresponse;
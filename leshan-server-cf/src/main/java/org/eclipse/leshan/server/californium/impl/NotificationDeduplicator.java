@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.californium.core.coap.Response;
+
+/**
+ * Suppresses the notifications carrying the same payload as the previous notification of the same observation.
+ * <p>
+ * Devices often notify their value on <code>pmax</code> even if it did not change. The raw payloads are compared
+ * before decoding, so an unchanged value is neither decoded nor dispatched to the observation listeners (which
+ * includes the device shadow: its timestamp is not refreshed by suppressed notifications).
+ * </p>
+ */
+public class NotificationDeduplicator {
+
+    private final AtomicLong suppressedNotifications = new AtomicLong();
+
+    /**
+     * @param last the last notification of the observation, updated with the given response if it is not a duplicate
+     * @return <code>true</code> if the response must be dropped
+     */
+    boolean isDuplicate(LastNotification last, Response response) {
+        int contentFormat = response.getOptions().getContentFormat();
+        byte[] payload = response.getPayload();
+        synchronized (last) {
+            if (last.payload != null && last.contentFormat == contentFormat && Arrays.equals(last.payload, payload)) {
+                suppressedNotifications.incrementAndGet();
+                return true;
+            }
+            last.contentFormat = contentFormat;
+            last.payload = payload;
+            return false;
+        }
+    }
+
+    /**
+     * @return the number of notifications dropped since the creation of this deduplicator
+     */
+    public long getSuppressedNotifications() {
+        return suppressedNotifications.get();
+    }
+
+    /**
+     * The payload of the last notification of an observation.
+     */
+    static class LastNotification {
+        // guarded by this
+        int contentFormat;
+        byte[] payload;
+    }
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processes the notifications out of the CoAP threads.
+ * <p>
+ * Tasks are dispatched to a fixed number of worker threads according to the hash of a partition key: the tasks
+ * submitted with the same key (typically an observation) are executed in order. Each worker has a bounded queue: when
+ * it is full, the submitting thread blocks until some room is available, slowing down the reception of new messages.
+ * </p>
+ * <p>
+ * When the pipeline is not started, tasks are executed by the submitting thread.
+ * </p>
+ */
+public class NotificationPipeline implements Startable, Stoppable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationPipeline.class);
+
+    /** The default capacity of the queue of each worker */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private final String name;
+    private final int parallelism;
+    private final int queueCapacity;
+
+    // null when stopped
+    private volatile Worker[] workers;
+
+    // metrics
+    private final AtomicLong processedTasks = new AtomicLong();
+    private final AtomicLong blockedSubmissions = new AtomicLong();
+
+    /**
+     * @param name the prefix of the worker thread names
+     * @param parallelism the number of worker threads
+     * @param queueCapacity the capacity of the queue of each worker
+     */
+    public NotificationPipeline(String name, int parallelism, int queueCapacity) {
+        Validate.notNull(name);
+        Validate.isTrue(parallelism > 0, "the parallelism must be positive");
+        Validate.isTrue(queueCapacity > 0, "the queue capacity must be positive");
+        this.name = name;
+        this.parallelism = parallelism;
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (workers != null) {
+            return;
+        }
+        Worker[] newWorkers = new Worker[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            newWorkers[i] = new Worker(name + "-" + i);
+            newWorkers[i].start();
+        }
+        workers = newWorkers;
+    }
+
+    /**
+     * Stops the worker threads. The tasks already queued are executed before the threads exit.
+     */
+    @Override
+    public void stop() {
+        Worker[] stopped;
+        synchronized (this) {
+            stopped = workers;
+            workers = null;
+        }
+        if (stopped == null) {
+            return;
+        }
+        for (Worker worker : stopped) {
+            worker.interrupt();
+        }
+        for (Worker worker : stopped) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Executes a task after all the tasks previously submitted with the same key.
+     *
+     * @param key the partition key
+     * @param task the task to execute
+     */
+    public void submit(Object key, Runnable task) {
+        Validate.notNull(key);
+        Validate.notNull(task);
+
+        Worker[] current = workers;
+        if (current == null) {
+            execute(task);
+            return;
+        }
+
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        Worker worker = current[(hash & 0x7fffffff) % current.length];
+        if (worker.queue.offer(task)) {
+            return;
+        }
+
+        // queue full: block the producer
+        blockedSubmissions.incrementAndGet();
+        try {
+            while (!worker.queue.offer(task, 100, TimeUnit.MILLISECONDS)) {
+                if (workers != current) {
+                    // stopped in the meantime
+                    execute(task);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while submitting a notification: dropping it");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of tasks waiting to be executed
+     */
+    public int getQueuedTasks() {
+        Worker[] current = workers;
+        int queued = 0;
+        if (current != null) {
+            for (Worker worker : current) {
+                queued += worker.queue.size();
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * @return the number of tasks executed since the creation of the pipeline
+     */
+    public long getProcessedTasks() {
+        return processedTasks.get();
+    }
+
+    /**
+     * @return the number of submissions which had to wait for a full queue
+     */
+    public long getBlockedSubmissions() {
+        return blockedSubmissions.get();
+    }
+
+    private void execute(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOG.warn("Unexpected error while processing a notification", e);
+        }
+        processedTasks.incrementAndGet();
+    }
+
+    private class Worker extends Thread {
+
+        private final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Worker(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    execute(queue.take());
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+
+            List<Runnable> remaining = new ArrayList<>();
+            queue.drainTo(remaining);
+            for (Runnable task : remaining) {
+                execute(task);
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.EmptyMessage;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.Endpoint;
+import org.eclipse.californium.core.network.interceptors.MessageInterceptor;
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.server.californium.ObservationStore;
+import org.eclipse.leshan.server.californium.StoredObservation;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.model.LwM2mModelProvider;
+import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationRegistry;
+import org.eclipse.leshan.server.observation.ObservationRegistryListener;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps an {@link ObservationStore} in sync with the observation registry and restores the stored observations when
+ * the server starts.
+ * <p>
+ * Californium only matches a notification with the exchange of the observe request it sent. The notifications of a
+ * restored observation are intercepted before the matching, acknowledged and delivered to the observation, so the
+ * clients never receive a reset and keep notifying the restarted server.
+ * </p>
+ * <p>
+ * Only the observations of the clients still registered are restored: the store must be used with a persistent
+ * client registry. The other ones are dropped and must be observed again.
+ * </p>
+ */
+public class ObservationPersistence implements ObservationRegistryListener, ClientRegistryListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObservationPersistence.class);
+
+    private final ObservationStore store;
+    private final LwM2mModelProvider modelProvider;
+    private final NotificationPipeline pipeline;
+    private final NotificationDeduplicator deduplicator;
+    private final CoapMetrics metrics;
+
+    private final ConcurrentMap<ByteBuffer /* token */, RestoredObservation> restored = new ConcurrentHashMap<>();
+
+    // metrics
+    private volatile int restoredObservations = 0;
+    private volatile int droppedObservations = 0;
+    private volatile long restoreTime = 0;
+
+    /**
+     * @param store the store of the observations
+     * @param modelProvider provides the objects description to decode the notifications of the restored observations
+     * @param pipeline the pipeline processing the notifications of the restored observations (optional)
+     * @param deduplicator drops the unchanged notifications of the restored observations (optional)
+     */
+    public ObservationPersistence(ObservationStore store, LwM2mModelProvider modelProvider,
+            NotificationPipeline pipeline, NotificationDeduplicator deduplicator) {
+        this(store, modelProvider, pipeline, deduplicator, null);
+    }
+
+    /**
+     * @param metrics records the notifications of the restored observations (optional)
+     */
+    public ObservationPersistence(ObservationStore store, LwM2mModelProvider modelProvider,
+            NotificationPipeline pipeline, NotificationDeduplicator deduplicator, CoapMetrics metrics) {
+        Validate.notNull(store);
+        Validate.notNull(modelProvider);
+        this.store = store;
+        this.modelProvider = modelProvider;
+        this.pipeline = pipeline;
+        this.deduplicator = deduplicator;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Intercepts the notifications of the restored observations received by the given endpoint.
+     */
+    public void addTo(Endpoint endpoint) {
+        endpoint.addInterceptor(new NotificationInterceptor(endpoint));
+    }
+
+    /**
+     * Adds the stored observations of the given clients to the registry. The observations of the other clients are
+     * removed from the store.
+     *
+     * @return the number of restored observations
+     */
+    public int restore(Collection<Client> clients, ObservationRegistry registry) {
+        long start = System.nanoTime();
+
+        Map<String, Client> clientsById = new HashMap<>();
+        for (Client client : clients) {
+            clientsById.put(client.getRegistrationId(), client);
+        }
+
+        int count = 0;
+        int dropped = 0;
+        for (StoredObservation stored : store.getAll()) {
+            Client client = clientsById.get(stored.getRegistrationId());
+            if (client == null) {
+                store.remove(stored.getToken());
+                dropped++;
+                continue;
+            }
+
+            Request coapRequest = newObserveRequest(client, stored);
+            CaliforniumObservation observation = new CaliforniumObservation(coapRequest, client, stored.getPath(),
+                    modelProvider.getObjectModel(client), pipeline, deduplicator, metrics);
+            coapRequest.addMessageObserver(observation);
+            restored.put(ByteBuffer.wrap(stored.getToken()), new RestoredObservation(observation));
+            registry.addObservation(observation);
+            count++;
+        }
+
+        restoredObservations = count;
+        droppedObservations = dropped;
+        restoreTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (count > 0 || dropped > 0) {
+            LOG.info("{} observations restored in {} ms ({} dropped)", count, restoreTime, dropped);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of observations restored at startup
+     */
+    public int getRestoredObservations() {
+        return restoredObservations;
+    }
+
+    /**
+     * @return the number of stored observations dropped at startup which must be observed again
+     */
+    public int getDroppedObservations() {
+        return droppedObservations;
+    }
+
+    /**
+     * @return the time spent restoring the observations at startup in milliseconds
+     */
+    public long getRestoreTime() {
+        return restoreTime;
+    }
+
+    /**
+     * @return a request equivalent to the one which established the observation. It is never sent: it is only used to
+     *         cancel the restored observation.
+     */
+    private static Request newObserveRequest(Client client, StoredObservation stored) {
+        Request coapRequest = Request.newGet();
+        coapRequest.setToken(stored.getToken());
+        coapRequest.setObserve();
+        LwM2mPath path = stored.getPath();
+        coapRequest.getOptions().addUriPath(String.valueOf(path.getObjectId()));
+        if (path.getObjectInstanceId() != null) {
+            coapRequest.getOptions().addUriPath(String.valueOf(path.getObjectInstanceId()));
+        }
+        if (path.getResourceId() != null) {
+            coapRequest.getOptions().addUriPath(String.valueOf(path.getResourceId()));
+        }
+        if (stored.getContentFormat() != null) {
+            coapRequest.getOptions().setAccept(stored.getContentFormat());
+        }
+        coapRequest.setDestination(client.getAddress());
+        coapRequest.setDestinationPort(client.getPort());
+        return coapRequest;
+    }
+
+    @Override
+    public void newObservation(Observation observation) {
+        if (!(observation instanceof CaliforniumObservation)) {
+            return;
+        }
+        Request coapRequest = ((CaliforniumObservation) observation).getCoapRequest();
+        byte[] token = coapRequest.getToken();
+        if (token == null || token.length == 0) {
+            return;
+        }
+        Integer contentFormat = coapRequest.getOptions().hasAccept() ? coapRequest.getOptions().getAccept() : null;
+        store.add(new StoredObservation(observation.getClient().getRegistrationId(), observation.getPath(), token,
+                contentFormat));
+    }
+
+    @Override
+    public void cancelled(Observation observation) {
+        if (!(observation instanceof CaliforniumObservation)) {
+            return;
+        }
+        byte[] token = ((CaliforniumObservation) observation).getCoapRequest().getToken();
+        if (token == null || token.length == 0) {
+            return;
+        }
+        // the token identifies this observation even if the same path was observed again
+        store.remove(token);
+        restored.remove(ByteBuffer.wrap(token));
+    }
+
+    @Override
+    public void newValue(Observation observation, LwM2mNode value) {
+    }
+
+    @Override
+    public void registered(Client client) {
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        store.removeAll(client.getRegistrationId());
+    }
+
+    private static class RestoredObservation {
+        final CaliforniumObservation observation;
+        // guarded by this
+        int lastMid = -1;
+
+        RestoredObservation(CaliforniumObservation observation) {
+            this.observation = observation;
+        }
+
+        synchronized boolean isRetransmission(int mid) {
+            if (mid == lastMid) {
+                return true;
+            }
+            lastMid = mid;
+            return false;
+        }
+    }
+
+    /**
+     * Routes the notifications of the restored observations, which are unknown to the Californium matcher.
+     */
+    private class NotificationInterceptor implements MessageInterceptor {
+
+        private final Endpoint endpoint;
+
+        NotificationInterceptor(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void receiveResponse(Response response) {
+            if (restored.isEmpty() || response.getToken() == null) {
+                return;
+            }
+            RestoredObservation r = restored.get(ByteBuffer.wrap(response.getToken()));
+            if (r == null) {
+                return;
+            }
+
+            // skip the matcher, which would reject the notification
+            response.setCanceled(true);
+            if (response.getType() == Type.CON) {
+                endpoint.sendEmptyMessage(null, EmptyMessage.newACK(response));
+            }
+            if (!r.isRetransmission(response.getMID())) {
+                r.observation.onResponse(response);
+            }
+        }
+
+        @Override
+        public void sendRequest(Request request) {
+        }
+
+        @Override
+        public void sendResponse(Response response) {
+        }
+
+        @Override
+        public void sendEmptyMessage(EmptyMessage message) {
+        }
+
+        @Override
+        public void receiveRequest(Request request) {
+        }
+
+        @Override
+        public void receiveEmptyMessage(EmptyMessage message) {
+        }
+    }
+}
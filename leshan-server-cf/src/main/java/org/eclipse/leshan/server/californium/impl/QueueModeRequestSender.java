@@ -0,0 +1,404 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.core.request.BindingMode;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.SyncResponseCallback;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link LwM2mRequestSender} which stores the requests sent to sleeping queue mode clients and forwards them when
+ * the client wakes up.
+ * <p>
+ * A client in queue mode (UQ, SQ or UQS binding) is only reachable for a short time after a registration or a
+ * registration update. Requests sent to a sleeping client are buffered and all flushed at once on the next
+ * registration update. Buffered requests expire according to their timeout and fail when the client deregisters.
+ * </p>
+ * <p>
+ * Requests sent to clients which are not in queue mode are forwarded immediately.
+ * </p>
+ */
+public class QueueModeRequestSender implements LwM2mRequestSender, ClientRegistryListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueueModeRequestSender.class);
+
+    /** The default time a queue mode client is reachable after an update (the CoAP MAX_TRANSMIT_WAIT) in ms */
+    public static final long DEFAULT_AWAKE_TIME = 93000;
+
+    /** The default maximum number of requests buffered for a client */
+    public static final int DEFAULT_MAX_BUFFERED_REQUESTS = 100;
+
+    private final LwM2mRequestSender delegate;
+    private final HashedWheelTimer timer;
+    private final long awakeTime;
+    private final int maxBufferedRequests;
+    private final ClientRegistry clientRegistry;
+
+    private final ConcurrentMap<String /* registration id */, ClientBuffer> buffers = new ConcurrentHashMap<>();
+
+    // metrics
+    private final AtomicInteger bufferedRequests = new AtomicInteger();
+    private final AtomicLong flushedRequests = new AtomicLong();
+    private final AtomicLong expiredRequests = new AtomicLong();
+
+    public QueueModeRequestSender(LwM2mRequestSender delegate, HashedWheelTimer timer) {
+        this(delegate, timer, DEFAULT_AWAKE_TIME, DEFAULT_MAX_BUFFERED_REQUESTS);
+    }
+
+    /**
+     * @param delegate the sender used to forward the requests
+     * @param timer the timer used to expire the buffered requests
+     * @param awakeTime the time a queue mode client is reachable after a registration update in ms
+     * @param maxBufferedRequests the maximum number of requests buffered for a client
+     */
+    public QueueModeRequestSender(LwM2mRequestSender delegate, HashedWheelTimer timer, long awakeTime,
+            int maxBufferedRequests) {
+        this(delegate, timer, awakeTime, maxBufferedRequests, null);
+    }
+
+    /**
+     * @param delegate the sender used to forward the requests
+     * @param timer the timer used to expire the buffered requests
+     * @param awakeTime the time a queue mode client is reachable after a registration update in ms
+     * @param maxBufferedRequests the maximum number of requests buffered for a client
+     * @param clientRegistry the registry used to reject the requests sent to a deregistered client or
+     *        <code>null</code> to trust the deregistration events only
+     */
+    public QueueModeRequestSender(LwM2mRequestSender delegate, HashedWheelTimer timer, long awakeTime,
+            int maxBufferedRequests, ClientRegistry clientRegistry) {
+        Validate.notNull(delegate);
+        Validate.notNull(timer);
+        Validate.isTrue(awakeTime >= 0, "the awake time must not be negative");
+        Validate.isTrue(maxBufferedRequests >= 0, "the buffer limit must not be negative");
+        this.delegate = delegate;
+        this.timer = timer;
+        this.awakeTime = awakeTime;
+        this.maxBufferedRequests = maxBufferedRequests;
+        this.clientRegistry = clientRegistry;
+    }
+
+    @Override
+    public <T extends LwM2mResponse> T send(Client destination, DownlinkRequest<T> request, Long timeout) {
+        SyncResponseCallback<T> callback = new SyncResponseCallback<T>();
+        send(destination, request, timeout, callback, callback);
+        return callback.waitForResponse();
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        send(destination, request, null, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, Long timeout,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        Validate.notNull(destination);
+
+        if (!isQueueMode(destination)) {
+            delegate.send(destination, request, timeout, responseCallback, errorCallback);
+            return;
+        }
+
+        ClientBuffer buffer = getBuffer(destination);
+        BufferedRequest<T> buffered = new BufferedRequest<>(buffer, destination, request, timeout, responseCallback,
+                errorCallback);
+        RequestFailedException rejected = null;
+        synchronized (buffer) {
+            // while a flush is in progress, the new requests are sent after the buffered ones
+            if (buffer.closed) {
+                rejected = new RequestFailedException(String.format("Client %s is not registered anymore",
+                        destination.getEndpoint()));
+            } else if (!buffer.isAwake() || !buffer.pending.isEmpty() || buffer.flushingFor != null) {
+                if (buffer.pending.size() >= maxBufferedRequests) {
+                    rejected = new RequestFailedException(String.format(
+                            "Too many buffered requests for client %s (%d)", destination.getEndpoint(),
+                            buffer.pending.size()));
+                } else {
+                    buffer.pending.add(buffered);
+                    bufferedRequests.incrementAndGet();
+                    if (timeout != null) {
+                        buffered.expiry = timer.newTimeout(buffered, timeout, TimeUnit.MILLISECONDS);
+                    }
+                    LOG.trace("Request {} buffered for sleeping client {}", request, destination.getEndpoint());
+                    return;
+                }
+            }
+        }
+
+        if (rejected != null) {
+            errorCallback.onError(rejected);
+        } else {
+            forward(buffer, buffered);
+        }
+    }
+
+    /**
+     * @return the number of requests buffered for the given client
+     */
+    public int getBufferedRequests(Client client) {
+        ClientBuffer buffer = buffers.get(client.getRegistrationId());
+        if (buffer == null) {
+            return 0;
+        }
+        synchronized (buffer) {
+            return buffer.pending.size();
+        }
+    }
+
+    /**
+     * @return the number of requests currently buffered for all the clients
+     */
+    public int getBufferedRequests() {
+        return bufferedRequests.get();
+    }
+
+    /**
+     * @return the number of buffered requests forwarded since the creation of this sender
+     */
+    public long getFlushedRequests() {
+        return flushedRequests.get();
+    }
+
+    /**
+     * @return the number of buffered requests which expired before the client woke up
+     */
+    public long getExpiredRequests() {
+        return expiredRequests.get();
+    }
+
+    private static boolean isQueueMode(Client client) {
+        BindingMode bindingMode = client.getBindingMode();
+        return bindingMode == BindingMode.UQ || bindingMode == BindingMode.SQ || bindingMode == BindingMode.UQS;
+    }
+
+    private ClientBuffer getBuffer(Client client) {
+        String registrationId = client.getRegistrationId();
+        ClientBuffer buffer = buffers.get(registrationId);
+        if (buffer != null) {
+            return buffer;
+        }
+        ClientBuffer newBuffer = new ClientBuffer(client.getLastUpdate().getTime() + awakeTime);
+        buffer = buffers.putIfAbsent(registrationId, newBuffer);
+        if (buffer != null) {
+            return buffer;
+        }
+
+        // The client may have been deregistered before the buffer was added: the deregistration event found no buffer
+        // to remove. The registry is checked after adding it, so a later deregistration closes it as usual.
+        if (clientRegistry != null && !isRegistered(client)) {
+            buffers.remove(registrationId, newBuffer);
+            synchronized (newBuffer) {
+                newBuffer.closed = true;
+            }
+        }
+        return newBuffer;
+    }
+
+    private boolean isRegistered(Client client) {
+        Client registered = clientRegistry.get(client.getEndpoint());
+        return registered != null && registered.getRegistrationId().equals(client.getRegistrationId());
+    }
+
+    /**
+     * Sends the request to the delegate. Must be called without holding the buffer lock: the delegate and the error
+     * callback may run user code.
+     */
+    private <T extends LwM2mResponse> void forward(final ClientBuffer buffer, final BufferedRequest<T> r) {
+        Long remaining = null;
+        if (r.timeout != null) {
+            remaining = r.timeout - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - r.creationTime);
+            if (remaining <= 0) {
+                expiredRequests.incrementAndGet();
+                r.errorCallback.onError(new TimeoutException(String.format(
+                        "Request timed out after %d ms while the client was sleeping", r.timeout)));
+                return;
+            }
+        }
+        delegate.send(r.destination, r.request, remaining, r.responseCallback, new ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+                if (e instanceof TimeoutException) {
+                    // the client went back to sleep earlier than expected
+                    synchronized (buffer) {
+                        buffer.awakeUntil = 0;
+                    }
+                }
+                r.errorCallback.onError(e);
+            }
+        });
+    }
+
+    private void flush(Client client) {
+        ClientBuffer buffer = buffers.get(client.getRegistrationId());
+        if (buffer == null) {
+            return;
+        }
+
+        synchronized (buffer) {
+            buffer.awakeUntil = client.getLastUpdate().getTime() + awakeTime;
+            if (buffer.flushingFor != null) {
+                // another thread is flushing: it will use the up-to-date registration
+                buffer.flushingFor = client;
+                return;
+            }
+            if (buffer.pending.isEmpty()) {
+                return;
+            }
+            buffer.flushingFor = client;
+            LOG.debug("Client {} is awake: sending {} buffered requests", client.getEndpoint(),
+                    buffer.pending.size());
+        }
+
+        // the requests are polled one at a time under the lock and forwarded outside of it
+        while (true) {
+            BufferedRequest<?> r;
+            synchronized (buffer) {
+                r = buffer.pending.poll();
+                if (r == null) {
+                    buffer.flushingFor = null;
+                    return;
+                }
+                if (r.expiry != null) {
+                    r.expiry.cancel();
+                }
+                // use the up-to-date registration (the binding or the address may have changed)
+                r.destination = buffer.flushingFor;
+            }
+            bufferedRequests.decrementAndGet();
+            flushedRequests.incrementAndGet();
+            try {
+                forward(buffer, r);
+            } catch (RuntimeException e) {
+                r.errorCallback.onError(e);
+            }
+        }
+    }
+
+    @Override
+    public void registered(Client client) {
+        flush(client);
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+        flush(clientUpdated);
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        ClientBuffer buffer = buffers.remove(client.getRegistrationId());
+        if (buffer == null) {
+            return;
+        }
+
+        List<BufferedRequest<?>> dropped;
+        synchronized (buffer) {
+            buffer.closed = true;
+            dropped = new ArrayList<>(buffer.pending);
+            buffer.pending.clear();
+        }
+        bufferedRequests.addAndGet(-dropped.size());
+        for (BufferedRequest<?> r : dropped) {
+            if (r.expiry != null) {
+                r.expiry.cancel();
+            }
+            r.errorCallback.onError(new RequestFailedException(String.format(
+                    "Client %s was deregistered before waking up", client.getEndpoint())));
+        }
+    }
+
+    private static class ClientBuffer {
+        // guarded by this
+        final Queue<BufferedRequest<?>> pending = new ArrayDeque<>();
+        long awakeUntil;
+        boolean closed = false;
+        // the registration used by the thread flushing the buffer, null when no flush is in progress
+        Client flushingFor;
+
+        ClientBuffer(long awakeUntil) {
+            this.awakeUntil = awakeUntil;
+        }
+
+        boolean isAwake() {
+            return System.currentTimeMillis() < awakeUntil;
+        }
+    }
+
+    private class BufferedRequest<T extends LwM2mResponse> implements Runnable {
+
+        final ClientBuffer buffer;
+        final DownlinkRequest<T> request;
+        final Long timeout;
+        final ResponseCallback<T> responseCallback;
+        final ErrorCallback errorCallback;
+        final long creationTime = System.nanoTime();
+
+        // guarded by buffer
+        Client destination;
+        HashedWheelTimer.Timeout expiry;
+
+        BufferedRequest(ClientBuffer buffer, Client destination, DownlinkRequest<T> request, Long timeout,
+                ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            this.buffer = buffer;
+            this.destination = destination;
+            this.request = request;
+            this.timeout = timeout;
+            this.responseCallback = responseCallback;
+            this.errorCallback = errorCallback;
+        }
+
+        /**
+         * Called by the timer when the request expires in the buffer.
+         */
+        @Override
+        public void run() {
+            boolean removed;
+            synchronized (buffer) {
+                removed = buffer.pending.remove(this);
+            }
+            if (removed) {
+                bufferedRequests.decrementAndGet();
+                expiredRequests.incrementAndGet();
+                errorCallback.onError(new TimeoutException(String.format(
+                        "Request timed out after %d ms while the client was sleeping", timeout)));
+            }
+        }
+    }
+}
@@ -18,8 +18,11 @@ package org.eclipse.leshan.server.californium.impl;
 import java.net.InetSocketAddress;
 import java.security.PublicKey;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.coap.CoAP.Code;
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
 import org.eclipse.californium.core.coap.CoAP.Type;
 import org.eclipse.californium.core.coap.Request;
@@ -65,15 +68,61 @@ public class RegisterResource extends CoapResource {
 
     private final RegistrationHandler registrationHandler;
 
+    private final RegistrationAdmissionControl admissionControl;
+
+    private volatile Executor executor;
+
     public RegisterResource(RegistrationHandler registrationHandler) {
+        this(registrationHandler, new RegistrationAdmissionControl());
+    }
+
+    /**
+     * @param registrationHandler the handler of the registration requests
+     * @param admissionControl decides which registration requests are processed when the server is overloaded
+     */
+    public RegisterResource(RegistrationHandler registrationHandler, RegistrationAdmissionControl admissionControl) {
         super(RESOURCE_NAME);
+        Validate.notNull(admissionControl);
 
         this.registrationHandler = registrationHandler;
+        this.admissionControl = admissionControl;
         getAttributes().addResourceType("core.rd");
     }
 
     @Override
-    public void handleRequest(Exchange exchange) {
+    public void handleRequest(final Exchange exchange) {
+        Executor e = executor;
+        if (e == null) {
+            doHandleRequest(exchange);
+            return;
+        }
+        try {
+            e.execute(new Runnable() {
+                @Override
+                public void run() {
+                    doHandleRequest(exchange);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            Request request = exchange.getRequest();
+            if (request.getCode() == Code.DELETE) {
+                // a deregistration is never shed: it is cheap and frees the resources of the client
+                doHandleRequest(exchange);
+                return;
+            }
+            if (request.getCode() == Code.POST || request.getCode() == Code.PUT) {
+                List<String> uri = request.getOptions().getUriPath();
+                if (uri.size() == 1) {
+                    admissionControl.rejectRegistration();
+                } else {
+                    admissionControl.rejectUpdate();
+                }
+            }
+            rejectOverload(new CoapExchange(exchange, this));
+        }
+    }
+
+    private void doHandleRequest(Exchange exchange) {
         try {
             super.handleRequest(exchange);
         } catch (Exception e) {
@@ -114,6 +163,40 @@ public class RegisterResource extends CoapResource {
     }
 
     private void handleRegister(CoapExchange exchange, Request request) {
+        if (!admissionControl.admitRegistration()) {
+            rejectOverload(exchange);
+            return;
+        }
+        try {
+            register(exchange, request);
+        } finally {
+            admissionControl.release();
+        }
+    }
+
+    private void handleUpdate(CoapExchange exchange, Request request, String registrationId) {
+        if (!admissionControl.admitUpdate()) {
+            rejectOverload(exchange);
+            return;
+        }
+        try {
+            update(exchange, request, registrationId);
+        } finally {
+            admissionControl.release();
+        }
+    }
+
+    /**
+     * Asks the client to retry later, after a random delay to spread the retries of all the rejected clients.
+     */
+    private void rejectOverload(CoapExchange exchange) {
+        Response response = new Response(ResponseCode.SERVICE_UNAVAILABLE);
+        response.getOptions().setMaxAge(admissionControl.getRetryDelay());
+        LOG.debug("Server overloaded: rejecting {}", exchange.advanced().getRequest());
+        exchange.respond(response);
+    }
+
+    private void register(CoapExchange exchange, Request request) {
         // Create LwM2m request from CoAP request
         // --------------------------------
         // TODO: assert content media type is APPLICATION LINK FORMAT?
@@ -170,7 +253,16 @@ public class RegisterResource extends CoapResource {
         }
     }
 
-    private void handleUpdate(CoapExchange exchange, Request request, String registrationId) {
+    private void update(CoapExchange exchange, Request request, String registrationId) {
+        if (request.getOptions().getURIQueryCount() == 0
+                && (request.getPayload() == null || request.getPayload().length == 0)) {
+            // a keep-alive: nothing to parse nor to update except the registration lifetime
+            LwM2mResponse keepAliveResponse = registrationHandler.keepAlive(registrationId, request.getSource(),
+                    request.getSourcePort());
+            exchange.respond(fromLwM2mCode(keepAliveResponse.getCode()));
+            return;
+        }
+
         // Create LwM2m request from CoAP request
         // --------------------------------
         Long lifetime = null;
@@ -280,6 +372,17 @@ public class RegisterResource extends CoapResource {
         }
     }
 
+    /**
+     * Sets the executor handling the registration requests instead of the CoAP protocol threads. The requests rejected
+     * by the executor (e.g. because its queue is full) are answered with a 5.03 Service Unavailable, except the
+     * deregistrations which are then handled by the CoAP protocol thread.
+     *
+     * @param executor the executor or <code>null</code> to use the threads of the CoAP server
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
     /*
      * Override the default behavior so that requests to sub resources (typically /rd/{client-reg-id}) are handled by
      * /rd resource.
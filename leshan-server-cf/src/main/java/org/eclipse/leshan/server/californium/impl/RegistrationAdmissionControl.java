@@ -0,0 +1,225 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Decides whether the registration requests received on the /rd resource are processed or rejected, to protect the
+ * server against registration storms (e.g. all the devices registering again after a network outage).
+ * <p>
+ * New registrations and registration updates have separate token buckets limiting their rate, so that a storm of new
+ * registrations does not expire the existing ones. Independently of the rates, requests are shed when too many
+ * registration requests are being processed at the same time. A rejected request should be answered with a
+ * <code>5.03 Service Unavailable</code> carrying a random Max-Age (see {@link #getRetryDelay()}) so that the clients
+ * spread their retries.
+ * </p>
+ * <p>
+ * Each admitted request must be followed by a call to {@link #release()} once processed.
+ * </p>
+ */
+public class RegistrationAdmissionControl {
+
+    /** The default minimum time in seconds a rejected client is asked to wait before retrying */
+    public static final int DEFAULT_MIN_RETRY_DELAY = 10;
+
+    /** The default maximum time in seconds a rejected client is asked to wait before retrying */
+    public static final int DEFAULT_MAX_RETRY_DELAY = 60;
+
+    private final TokenBucket registrations;
+    private final TokenBucket updates;
+    private final int maxPendingRequests;
+    private final int minRetryDelay;
+    private final int maxRetryDelay;
+    private final Random random = new Random();
+
+    private final AtomicInteger pendingRequests = new AtomicInteger();
+
+    // metrics
+    private final AtomicLong acceptedRegistrations = new AtomicLong();
+    private final AtomicLong rejectedRegistrations = new AtomicLong();
+    private final AtomicLong acceptedUpdates = new AtomicLong();
+    private final AtomicLong rejectedUpdates = new AtomicLong();
+
+    /**
+     * Creates an admission control accepting all the requests.
+     */
+    public RegistrationAdmissionControl() {
+        this(0, 0, 0, DEFAULT_MIN_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY);
+    }
+
+    /**
+     * @param maxRegistrationsPerSecond the maximum rate of new registrations or 0 for no limit
+     * @param maxUpdatesPerSecond the maximum rate of registration updates or 0 for no limit
+     * @param maxPendingRequests the maximum number of registration requests processed at the same time or 0 for no
+     *        limit
+     * @param minRetryDelay the minimum time in seconds a rejected client is asked to wait
+     * @param maxRetryDelay the maximum time in seconds a rejected client is asked to wait
+     */
+    public RegistrationAdmissionControl(double maxRegistrationsPerSecond, double maxUpdatesPerSecond,
+            int maxPendingRequests, int minRetryDelay, int maxRetryDelay) {
+        Validate.isTrue(maxRegistrationsPerSecond >= 0, "the registration rate limit must not be negative");
+        Validate.isTrue(maxUpdatesPerSecond >= 0, "the update rate limit must not be negative");
+        Validate.isTrue(maxPendingRequests >= 0, "the pending request limit must not be negative");
+        Validate.isTrue(minRetryDelay >= 0 && maxRetryDelay >= minRetryDelay, "invalid retry delays");
+        this.registrations = new TokenBucket(maxRegistrationsPerSecond);
+        this.updates = new TokenBucket(maxUpdatesPerSecond);
+        this.maxPendingRequests = maxPendingRequests;
+        this.minRetryDelay = minRetryDelay;
+        this.maxRetryDelay = maxRetryDelay;
+    }
+
+    /**
+     * @return <code>true</code> if a new registration can be processed now
+     */
+    public boolean admitRegistration() {
+        if (admit(registrations)) {
+            acceptedRegistrations.incrementAndGet();
+            return true;
+        }
+        rejectedRegistrations.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return <code>true</code> if a registration update can be processed now
+     */
+    public boolean admitUpdate() {
+        if (admit(updates)) {
+            acceptedUpdates.incrementAndGet();
+            return true;
+        }
+        rejectedUpdates.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Records a new registration rejected before reaching this admission control (e.g. by a full registration lane).
+     */
+    public void rejectRegistration() {
+        rejectedRegistrations.incrementAndGet();
+    }
+
+    /**
+     * Records a registration update rejected before reaching this admission control (e.g. by a full registration
+     * lane).
+     */
+    public void rejectUpdate() {
+        rejectedUpdates.incrementAndGet();
+    }
+
+    /**
+     * Must be called when an admitted request has been processed.
+     */
+    public void release() {
+        pendingRequests.decrementAndGet();
+    }
+
+    /**
+     * @return a random time in seconds a rejected client should wait before retrying
+     */
+    public int getRetryDelay() {
+        return minRetryDelay + random.nextInt(maxRetryDelay - minRetryDelay + 1);
+    }
+
+    /**
+     * @return the number of registration requests being processed
+     */
+    public int getPendingRequests() {
+        return pendingRequests.get();
+    }
+
+    /**
+     * @return the number of new registrations accepted since the creation of this admission control
+     */
+    public long getAcceptedRegistrations() {
+        return acceptedRegistrations.get();
+    }
+
+    /**
+     * @return the number of new registrations rejected since the creation of this admission control
+     */
+    public long getRejectedRegistrations() {
+        return rejectedRegistrations.get();
+    }
+
+    /**
+     * @return the number of registration updates accepted since the creation of this admission control
+     */
+    public long getAcceptedUpdates() {
+        return acceptedUpdates.get();
+    }
+
+    /**
+     * @return the number of registration updates rejected since the creation of this admission control
+     */
+    public long getRejectedUpdates() {
+        return rejectedUpdates.get();
+    }
+
+    private boolean admit(TokenBucket bucket) {
+        int pending = pendingRequests.incrementAndGet();
+        if (maxPendingRequests > 0 && pending > maxPendingRequests) {
+            // overloaded: shed the request
+            pendingRequests.decrementAndGet();
+            return false;
+        }
+        if (!bucket.acquire()) {
+            pendingRequests.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private static class TokenBucket {
+
+        private final double ratePerSecond;
+
+        // guarded by this
+        private double tokens;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(double ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+            this.tokens = burstSize();
+        }
+
+        private double burstSize() {
+            return Math.max(1, ratePerSecond);
+        }
+
+        /**
+         * @return <code>true</code> if a token was available (and consumed)
+         */
+        synchronized boolean acquire() {
+            if (ratePerSecond == 0) {
+                return true;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(burstSize(), tokens + (now - lastRefill) * ratePerSecond / 1e9);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+}
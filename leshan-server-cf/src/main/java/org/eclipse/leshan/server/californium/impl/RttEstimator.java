@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the round-trip time to a client and the retransmission timeout (RTO) to use for its requests.
+ * <p>
+ * The estimation follows the CoCoA congestion control proposed for CoAP (draft-ietf-core-cocoa), an adaptation of
+ * RFC 6298:
+ * <ul>
+ * <li>the strong estimator uses the exchanges answered without retransmission: RTO = SRTT + 4 * RTTVAR</li>
+ * <li>the weak estimator uses the exchanges answered after one or two retransmissions, measured from the first
+ * transmission: RTO = SRTT + RTTVAR. Without it, a client slower than the default ACK timeout would always trigger a
+ * retransmission and never get a strong sample.</li>
+ * <li>the overall RTO is the moving average of the RTOs computed by the estimators, bounded by the given limits</li>
+ * </ul>
+ * </p>
+ * <p>
+ * The last strong samples are kept to compute the RTT percentiles.
+ * </p>
+ */
+public class RttEstimator {
+
+    /** The number of samples kept to compute the percentiles */
+    public static final int WINDOW_SIZE = 32;
+
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+
+    private final long minRto;
+    private final long maxRto;
+
+    // guarded by this
+    private final Estimator strong = new Estimator(4);
+    private final Estimator weak = new Estimator(1);
+    private double rto;
+    private long strongSamples = 0;
+    private long weakSamples = 0;
+    private final long[] window = new long[WINDOW_SIZE];
+    private int windowNext = 0;
+    private int windowSize = 0;
+
+    /**
+     * @param initialRto the RTO before the first sample in ms
+     * @param minRto the minimum RTO in ms
+     * @param maxRto the maximum RTO in ms
+     */
+    public RttEstimator(long initialRto, long minRto, long maxRto) {
+        this.minRto = minRto;
+        this.maxRto = maxRto;
+        this.rto = initialRto;
+    }
+
+    /**
+     * Adds the round-trip time of an exchange.
+     *
+     * @param rtt the time between the first transmission of the request and its acknowledgement in ms
+     * @param retransmissions the number of retransmissions of the request
+     */
+    public synchronized void addSample(double rtt, int retransmissions) {
+        if (retransmissions == 0) {
+            strongSamples++;
+            rto = 0.5 * strong.update(rtt) + 0.5 * rto;
+            window[windowNext] = Math.round(rtt);
+            windowNext = (windowNext + 1) % WINDOW_SIZE;
+            windowSize = Math.min(windowSize + 1, WINDOW_SIZE);
+        } else if (retransmissions <= 2) {
+            weakSamples++;
+            rto = 0.25 * weak.update(rtt) + 0.75 * rto;
+        }
+        // the other exchanges are too ambiguous to give a sample
+    }
+
+    /**
+     * @return <code>true</code> if at least one exchange gave a sample
+     */
+    public synchronized boolean hasSamples() {
+        return strongSamples > 0 || weakSamples > 0;
+    }
+
+    /**
+     * @return the number of exchanges answered without retransmission
+     */
+    public synchronized long getStrongSamples() {
+        return strongSamples;
+    }
+
+    /**
+     * @return the number of exchanges answered after one or two retransmissions
+     */
+    public synchronized long getWeakSamples() {
+        return weakSamples;
+    }
+
+    /**
+     * @return the smoothed round-trip time of the exchanges answered without retransmission in ms (0 before the first
+     *         sample)
+     */
+    public synchronized double getSmoothedRtt() {
+        return strong.srtt;
+    }
+
+    /**
+     * @return the variation of the round-trip time of the exchanges answered without retransmission in ms
+     */
+    public synchronized double getRttVariation() {
+        return strong.rttvar;
+    }
+
+    /**
+     * @return the retransmission timeout to use for the next request, i.e. the time to wait for the acknowledgement of
+     *         the first transmission in ms
+     */
+    public synchronized long getRto() {
+        return Math.min(maxRto, Math.max(minRto, Math.round(rto)));
+    }
+
+    /**
+     * @param quantile the quantile between 0 and 1, e.g. 0.99 for the 99th percentile
+     * @return the round-trip time below which the given fraction of the last samples falls in ms (0 without sample)
+     */
+    public long getPercentile(double quantile) {
+        long[] samples;
+        synchronized (this) {
+            samples = Arrays.copyOf(window, windowSize);
+        }
+        if (samples.length == 0) {
+            return 0;
+        }
+        Arrays.sort(samples);
+        int rank = (int) Math.ceil(quantile * samples.length);
+        return samples[Math.max(0, Math.min(samples.length, rank) - 1)];
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("RttEstimator [srtt=%.1f, rttvar=%.1f, rto=%d, samples=%d/%d]", strong.srtt,
+                strong.rttvar, getRto(), strongSamples, weakSamples);
+    }
+
+    private static class Estimator {
+
+        final int k;
+        double srtt = 0;
+        double rttvar = 0;
+        boolean initialized = false;
+
+        Estimator(int k) {
+            this.k = k;
+        }
+
+        /**
+         * @return the RTO of this estimator
+         */
+        double update(double rtt) {
+            if (initialized) {
+                rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+                srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+            } else {
+                srtt = rtt;
+                rttvar = rtt / 2;
+                initialized = true;
+            }
+            return srtt + k * rttvar;
+        }
+    }
+}
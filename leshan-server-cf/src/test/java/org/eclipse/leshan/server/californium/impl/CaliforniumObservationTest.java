@@ -17,7 +17,9 @@ package org.eclipse.leshan.server.californium.impl;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.eclipse.californium.core.coap.CoAP.ResponseCode;
@@ -96,6 +98,40 @@ public class CaliforniumObservationTest {
         Assert.assertTrue(coapRequest.isCanceled());
     }
 
+    @Test
+    public void unchanged_notification_is_dropped() {
+        final List<LwM2mNode> values = new ArrayList<>();
+        ObservationListener listener = new ObservationListener() {
+            @Override
+            public void newValue(Observation observation, LwM2mNode value) {
+                values.add(value);
+            }
+
+            @Override
+            public void cancelled(Observation observation) {
+            }
+        };
+        givenAnObserveRequest(target);
+        NotificationDeduplicator deduplicator = new NotificationDeduplicator();
+        CaliforniumObservation observation = new CaliforniumObservation(coapRequest, support.client, target, model,
+                null, deduplicator);
+        observation.addListener(listener);
+
+        observation.onResponse(givenANotification("15"));
+        observation.onResponse(givenANotification("15"));
+        observation.onResponse(givenANotification("16"));
+        observation.onResponse(givenANotification("15"));
+
+        Assert.assertEquals(3, values.size());
+        Assert.assertEquals(1, deduplicator.getSuppressedNotifications());
+    }
+
+    private Response givenANotification(String payload) {
+        Response coapResponse = new Response(ResponseCode.CONTENT);
+        coapResponse.setPayload(payload);
+        return coapResponse;
+    }
+
     private void givenAnObserveRequest(LwM2mPath target) {
         coapRequest = Request.newGet();
         coapRequest.getOptions().addUriPath(String.valueOf(target.getObjectId()));
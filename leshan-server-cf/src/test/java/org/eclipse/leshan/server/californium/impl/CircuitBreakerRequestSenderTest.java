@@ -0,0 +1,230 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.ResponseCode;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.core.request.exception.UnacknowledgedRequestException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.server.californium.impl.CircuitBreakerRequestSender.Reachability;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.impl.ClientRegistryImpl;
+import org.eclipse.leshan.server.registration.RegistrationHandler;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerRequestSenderTest {
+
+    Client client;
+    RecordingSender sender;
+    HashedWheelTimer timer;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new Client("regid", "endpoint", InetAddress.getLocalHost(), 5683, new InetSocketAddress(5683));
+        sender = new RecordingSender();
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void fail_fast_after_consecutive_timeouts() {
+        CircuitBreakerRequestSender breaker = new CircuitBreakerRequestSender(sender, timer, 2, 0, false, 10);
+        givenTimeouts(breaker, 2);
+
+        Assert.assertEquals(Reachability.UNREACHABLE, breaker.getReachability(client));
+        RecordingCallback callback = new RecordingCallback();
+        breaker.send(client, new ReadRequest(3), callback, callback);
+
+        Assert.assertTrue(callback.error instanceof RequestFailedException);
+        Assert.assertEquals(2, sender.sent.size());
+        Assert.assertEquals(1, breaker.getRejectedRequests());
+    }
+
+    @Test
+    public void reset_the_timeouts_on_response() {
+        CircuitBreakerRequestSender breaker = new CircuitBreakerRequestSender(sender, timer, 2, 0, false, 10);
+        givenTimeouts(breaker, 1);
+
+        breaker.send(client, new ReadRequest(3), new RecordingCallback(), new RecordingCallback());
+        sender.respond(1);
+        givenTimeouts(breaker, 1);
+
+        Assert.assertEquals(Reachability.REACHABLE, breaker.getReachability(client));
+        Assert.assertEquals(1, breaker.getConsecutiveTimeouts(client));
+    }
+
+    @Test
+    public void queue_requests_until_update() {
+        CircuitBreakerRequestSender breaker = new CircuitBreakerRequestSender(sender, timer, 1, 0, true, 10);
+        givenTimeouts(breaker, 1);
+
+        RecordingCallback callback = new RecordingCallback();
+        breaker.send(client, new ReadRequest(4), callback, callback);
+        Assert.assertEquals(1, sender.sent.size());
+        Assert.assertEquals(1, breaker.getQueuedRequests());
+
+        breaker.updated(client);
+
+        Assert.assertEquals(Reachability.REACHABLE, breaker.getReachability(client));
+        Assert.assertEquals(2, sender.sent.size());
+        Assert.assertEquals(4, sender.sent.get(1).request.getPath().getObjectId());
+        Assert.assertEquals(0, breaker.getQueuedRequests());
+    }
+
+    @Test
+    public void reachable_after_keep_alive() {
+        ClientRegistry registry = new ClientRegistryImpl();
+        registry.registerClient(client);
+        CircuitBreakerRequestSender breaker = new CircuitBreakerRequestSender(sender, timer, 1, 0, true, 10);
+        RegistrationHandler registrationHandler = new RegistrationHandler(registry, null);
+        registrationHandler.addKeepAliveListener(breaker);
+        givenTimeouts(breaker, 1);
+        breaker.send(client, new ReadRequest(4), new RecordingCallback(), new RecordingCallback());
+
+        // the registry does not notify its listeners of this keep-alive
+        Assert.assertEquals(ResponseCode.CHANGED,
+                registrationHandler.keepAlive("regid", client.getAddress(), client.getPort()).getCode());
+
+        Assert.assertEquals(Reachability.REACHABLE, breaker.getReachability(client));
+        Assert.assertEquals(2, sender.sent.size());
+        Assert.assertEquals(0, breaker.getQueuedRequests());
+    }
+
+    @Test
+    public void ignore_timeouts_of_unsent_requests() {
+        CircuitBreakerRequestSender breaker = new CircuitBreakerRequestSender(sender, timer, 1, 0, false, 10);
+        RecordingCallback callback = new RecordingCallback();
+        breaker.send(client, new ReadRequest(3), callback, callback);
+
+        // e.g. expired in the scheduler queue or before a short deadline
+        sender.fail(0, new TimeoutException());
+
+        Assert.assertTrue(callback.error instanceof TimeoutException);
+        Assert.assertEquals(Reachability.REACHABLE, breaker.getReachability(client));
+        Assert.assertEquals(0, breaker.getConsecutiveTimeouts(client));
+    }
+
+    @Test
+    public void keep_order_of_requests_sent_while_flushing() {
+        final CircuitBreakerRequestSender[] breaker = new CircuitBreakerRequestSender[1];
+        sender = new RecordingSender() {
+            @Override
+            public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, Long timeout,
+                    ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+                super.send(destination, request, timeout, responseCallback, errorCallback);
+                if (request.getPath().getObjectId() == 4) {
+                    // sent while the queued requests are flushed
+                    breaker[0].send(destination, new ReadRequest(6), new RecordingCallback(),
+                            new RecordingCallback());
+                }
+            }
+        };
+        breaker[0] = new CircuitBreakerRequestSender(sender, timer, 1, 0, true, 10);
+        givenTimeouts(breaker[0], 1);
+        breaker[0].send(client, new ReadRequest(4), new RecordingCallback(), new RecordingCallback());
+        breaker[0].send(client, new ReadRequest(5), new RecordingCallback(), new RecordingCallback());
+
+        breaker[0].updated(client);
+
+        Assert.assertEquals(4, sender.sent.size());
+        Assert.assertEquals(4, sender.sent.get(1).request.getPath().getObjectId());
+        Assert.assertEquals(5, sender.sent.get(2).request.getPath().getObjectId());
+        Assert.assertEquals(6, sender.sent.get(3).request.getPath().getObjectId());
+        Assert.assertEquals(0, breaker[0].getQueuedRequests());
+    }
+
+    @Test
+    public void probe_unreachable_client() throws Exception {
+        CircuitBreakerRequestSender breaker = new CircuitBreakerRequestSender(sender, timer, 1, 50, false, 10);
+        givenTimeouts(breaker, 1);
+        Thread.sleep(60);
+
+        // the first request after the interval is a probe
+        breaker.send(client, new ReadRequest(3), new RecordingCallback(), new RecordingCallback());
+        Assert.assertEquals(Reachability.PROBING, breaker.getReachability(client));
+        // only one probe at a time
+        RecordingCallback callback = new RecordingCallback();
+        breaker.send(client, new ReadRequest(3), callback, callback);
+        Assert.assertTrue(callback.error instanceof RequestFailedException);
+
+        sender.respond(1);
+        Assert.assertEquals(Reachability.REACHABLE, breaker.getReachability(client));
+    }
+
+    @Test
+    public void stay_unreachable_when_probe_times_out() throws Exception {
+        CircuitBreakerRequestSender breaker = new CircuitBreakerRequestSender(sender, timer, 1, 50, false, 10);
+        givenTimeouts(breaker, 1);
+        Thread.sleep(60);
+
+        givenTimeouts(breaker, 1);
+
+        Assert.assertEquals(Reachability.UNREACHABLE, breaker.getReachability(client));
+        Assert.assertEquals(2, breaker.getConsecutiveTimeouts(client));
+    }
+
+    @Test
+    public void fail_queued_requests_on_deregistration() {
+        CircuitBreakerRequestSender breaker = new CircuitBreakerRequestSender(sender, timer, 1, 0, true, 10);
+        givenTimeouts(breaker, 1);
+        RecordingCallback callback = new RecordingCallback();
+        breaker.send(client, new ReadRequest(3), callback, callback);
+
+        breaker.unregistered(client);
+
+        Assert.assertTrue(callback.error instanceof RequestFailedException);
+        Assert.assertEquals(0, breaker.getQueuedRequests());
+        Assert.assertEquals(Reachability.REACHABLE, breaker.getReachability(client));
+    }
+
+    @Test
+    public void reject_request_sent_to_deregistered_client() {
+        // the client is not in the registry anymore: its deregistration event was already processed
+        CircuitBreakerRequestSender breaker = new CircuitBreakerRequestSender(sender, timer, 1, 0, true, 10,
+                new ClientRegistryImpl());
+        RecordingCallback callback = new RecordingCallback();
+        breaker.send(client, new ReadRequest(3), callback, callback);
+
+        Assert.assertTrue(callback.error instanceof RequestFailedException);
+        Assert.assertEquals(0, sender.sent.size());
+        Assert.assertEquals(0, breaker.getUnreachableClients());
+    }
+
+    private void givenTimeouts(CircuitBreakerRequestSender breaker, int count) {
+        for (int i = 0; i < count; i++) {
+            breaker.send(client, new ReadRequest(3), new RecordingCallback(), new RecordingCallback());
+            sender.fail(sender.sent.size() - 1, new UnacknowledgedRequestException());
+        }
+    }
+}
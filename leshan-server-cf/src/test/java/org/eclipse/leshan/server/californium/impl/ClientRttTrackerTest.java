@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.impl.ClientRegistryImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClientRttTrackerTest {
+
+    Client client;
+    ClientRttTracker tracker;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new Client("regid", "endpoint", InetAddress.getLocalHost(), 5683, new InetSocketAddress(5683));
+        // 2 s initial RTO, 4 retransmissions doubling the timeout
+        tracker = new ClientRttTracker(2000, 10, 32000, 2, 4, true);
+    }
+
+    @Test
+    public void no_timeout_before_the_first_sample() {
+        Assert.assertNull(tracker.getTimeout(client));
+        Assert.assertNull(tracker.getEstimator(client));
+    }
+
+    @Test
+    public void derive_a_short_timeout_for_a_fast_client() {
+        for (int i = 0; i < 20; i++) {
+            tracker.addSample(client, TimeUnit.MILLISECONDS.toNanos(20), 0);
+        }
+
+        RttEstimator estimator = tracker.getEstimator(client);
+        Assert.assertEquals(20, estimator.getSmoothedRtt(), 0.5);
+        // the RTO converges from the 2 s initial value
+        Assert.assertTrue(estimator.getRto() < 100);
+        Assert.assertEquals(estimator.getRto() * 31, (long) tracker.getTimeout(client));
+        Assert.assertEquals(20, estimator.getPercentile(0.99));
+    }
+
+    @Test
+    public void adapt_to_a_slow_client_with_retransmissions() {
+        // a 3 s client always answers after one retransmission with the default timeout
+        for (int i = 0; i < 20; i++) {
+            tracker.addSample(client, TimeUnit.MILLISECONDS.toNanos(3000), 1);
+        }
+
+        RttEstimator estimator = tracker.getEstimator(client);
+        Assert.assertEquals(0, estimator.getStrongSamples());
+        Assert.assertEquals(20, estimator.getWeakSamples());
+        Assert.assertTrue(estimator.getRto() > 3000);
+    }
+
+    @Test
+    public void drop_late_sample_of_deregistered_client() {
+        // the deregistration event was processed before the response arrived
+        tracker = new ClientRttTracker(2000, 10, 32000, 2, 4, true, new ClientRegistryImpl());
+
+        tracker.addSample(client, TimeUnit.MILLISECONDS.toNanos(20), 0);
+
+        Assert.assertNull(tracker.getEstimator(client));
+        Assert.assertEquals(0, tracker.size());
+    }
+
+    @Test
+    public void ignore_ambiguous_samples() {
+        tracker.addSample(client, TimeUnit.MILLISECONDS.toNanos(20000), 3);
+
+        Assert.assertFalse(tracker.getEstimator(client).hasSamples());
+        Assert.assertNull(tracker.getTimeout(client));
+    }
+
+    @Test
+    public void bound_the_rto() {
+        tracker.addSample(client, TimeUnit.MILLISECONDS.toNanos(100000), 0);
+        Assert.assertEquals(32000, tracker.getEstimator(client).getRto());
+    }
+
+    @Test
+    public void compute_percentiles_over_the_last_samples() {
+        for (int i = 1; i <= 100; i++) {
+            tracker.addSample(client, TimeUnit.MILLISECONDS.toNanos(i), 0);
+        }
+
+        // the last 32 samples: 69 to 100
+        RttEstimator estimator = tracker.getEstimator(client);
+        Assert.assertEquals(84, estimator.getPercentile(0.5));
+        Assert.assertEquals(100, estimator.getPercentile(1));
+    }
+
+    @Test
+    public void drop_the_estimator_on_deregistration() {
+        tracker.addSample(client, TimeUnit.MILLISECONDS.toNanos(20), 0);
+
+        tracker.unregistered(client);
+
+        Assert.assertEquals(0, tracker.size());
+    }
+}
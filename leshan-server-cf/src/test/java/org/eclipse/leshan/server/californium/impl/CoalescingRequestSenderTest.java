@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.core.request.DiscoverRequest;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CoalescingRequestSenderTest {
+
+    Client client;
+    RecordingSender sender;
+    HashedWheelTimer timer;
+    CoalescingRequestSender coalescingSender;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new Client("regid", "endpoint", InetAddress.getLocalHost(), 5683, new InetSocketAddress(5683));
+        sender = new RecordingSender();
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+        coalescingSender = new CoalescingRequestSender(sender, timer);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void share_response_of_identical_reads() {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        coalescingSender.send(client, new ReadRequest("/3/0"), first, first);
+        coalescingSender.send(client, new ReadRequest("/3/0"), second, second);
+        Assert.assertEquals(1, sender.sent.size());
+
+        sender.respond(0);
+        Assert.assertNotNull(first.response);
+        Assert.assertSame(first.response, second.response);
+        Assert.assertEquals(1, coalescingSender.getCoalescedRequests());
+
+        // completed: a new read is sent
+        coalescingSender.send(client, new ReadRequest("/3/0"), first, first);
+        Assert.assertEquals(2, sender.sent.size());
+    }
+
+    @Test
+    public void send_different_requests() {
+        RecordingCallback callback = new RecordingCallback();
+
+        coalescingSender.send(client, new ReadRequest("/3/0"), callback, callback);
+        coalescingSender.send(client, new ReadRequest("/3/1"), callback, callback);
+        coalescingSender.send(client, new DiscoverRequest("/3/0"), null, null);
+
+        Assert.assertEquals(3, sender.sent.size());
+    }
+
+    @Test
+    public void expire_merged_request() throws InterruptedException {
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        coalescingSender.send(client, new ReadRequest("/3/0"), first, first);
+        coalescingSender.send(client, new ReadRequest("/3/0"), 50L, second, second);
+
+        Assert.assertTrue(second.latch.await(2, TimeUnit.SECONDS));
+        Assert.assertTrue(second.error instanceof TimeoutException);
+
+        sender.respond(0);
+        Assert.assertNotNull(first.response);
+        Assert.assertNull(second.response);
+    }
+}
@@ -169,6 +169,22 @@ public class CoapRequestBuilderTest {
         assertEquals(CoAP.Code.PUT, coapRequest.getCode());
     }
 
+    @Test
+    public void build_write_requests_with_shared_payload() throws Exception {
+        Client client = newClient();
+        WriteRequest request = new WriteRequest(3, 0, 14, new LwM2mResource(14, Value.newStringValue("value")),
+                ContentFormat.TLV, true);
+
+        // test
+        CoapRequestBuilder builder1 = new CoapRequestBuilder(client, model);
+        builder1.visit(request);
+        CoapRequestBuilder builder2 = new CoapRequestBuilder(client, model);
+        builder2.visit(request);
+
+        // verify: the payload is encoded once
+        assertSame(builder1.getRequest().getPayload(), builder2.getRequest().getPayload());
+    }
+
     @Test
     public void build_write_attribute_request() throws Exception {
         Client client = newClient();
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.impl.ClientRegistryImpl;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DownlinkRequestSchedulerTest {
+
+    Client client;
+    RecordingSender sender;
+    HashedWheelTimer timer;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new Client("regid", "endpoint", InetAddress.getLocalHost(), 5683, new InetSocketAddress(5683));
+        sender = new RecordingSender();
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void send_one_request_at_a_time() {
+        DownlinkRequestScheduler scheduler = new DownlinkRequestScheduler(sender, timer);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+
+        scheduler.send(client, new ReadRequest(3), first, first);
+        scheduler.send(client, new ReadRequest(4), second, second);
+
+        Assert.assertEquals(1, sender.sent.size());
+        Assert.assertEquals(1, scheduler.getInFlightRequests(client));
+        Assert.assertEquals(1, scheduler.getQueuedRequests(client));
+
+        sender.respond(0);
+        Assert.assertNotNull(first.response);
+        Assert.assertEquals(2, sender.sent.size());
+        Assert.assertEquals(4, sender.sent.get(1).request.getPath().getObjectId());
+
+        sender.respond(1);
+        Assert.assertNotNull(second.response);
+        Assert.assertEquals(0, scheduler.getInFlightRequests(client));
+    }
+
+    @Test
+    public void send_queued_requests_by_priority() {
+        // the lowest object id first
+        DownlinkRequestScheduler scheduler = new DownlinkRequestScheduler(sender, timer, 1, 10,
+                new Comparator<DownlinkRequest<?>>() {
+                    @Override
+                    public int compare(DownlinkRequest<?> r1, DownlinkRequest<?> r2) {
+                        return Integer.compare(r1.getPath().getObjectId(), r2.getPath().getObjectId());
+                    }
+                });
+        RecordingCallback callback = new RecordingCallback();
+
+        scheduler.send(client, new ReadRequest(9), callback, callback);
+        scheduler.send(client, new ReadRequest(5), callback, callback);
+        scheduler.send(client, new ReadRequest(1), callback, callback);
+        sender.respond(0);
+        sender.respond(1);
+
+        Assert.assertEquals(1, sender.sent.get(1).request.getPath().getObjectId());
+        Assert.assertEquals(5, sender.sent.get(2).request.getPath().getObjectId());
+    }
+
+    @Test
+    public void reject_request_when_queue_is_full() {
+        DownlinkRequestScheduler scheduler = new DownlinkRequestScheduler(sender, timer, 1, 1, null);
+        RecordingCallback callback = new RecordingCallback();
+        RecordingCallback rejected = new RecordingCallback();
+
+        scheduler.send(client, new ReadRequest(3), callback, callback);
+        scheduler.send(client, new ReadRequest(3), callback, callback);
+        scheduler.send(client, new ReadRequest(3), rejected, rejected);
+
+        Assert.assertTrue(rejected.error instanceof RequestFailedException);
+        Assert.assertEquals(1, scheduler.getQueuedRequests(client));
+    }
+
+    @Test
+    public void reject_request_sent_to_deregistered_client() {
+        // the registry does not know the client anymore
+        ClientRegistry registry = new ClientRegistryImpl();
+        DownlinkRequestScheduler scheduler = new DownlinkRequestScheduler(sender, timer, 1, 10, null, registry);
+        RecordingCallback callback = new RecordingCallback();
+
+        scheduler.send(client, new ReadRequest(3), callback, callback);
+
+        Assert.assertTrue(callback.error instanceof RequestFailedException);
+        Assert.assertTrue(sender.sent.isEmpty());
+        Assert.assertEquals(0, scheduler.getInFlightRequests(client));
+    }
+
+    @Test
+    public void fail_queued_requests_on_deregistration() {
+        DownlinkRequestScheduler scheduler = new DownlinkRequestScheduler(sender, timer);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        scheduler.send(client, new ReadRequest(3), first, first);
+        scheduler.send(client, new ReadRequest(3), second, second);
+
+        scheduler.unregistered(client);
+
+        Assert.assertNull(first.error);
+        Assert.assertTrue(second.error instanceof RequestFailedException);
+        Assert.assertEquals(0, scheduler.getQueuedRequests(client));
+    }
+
+    @Test
+    public void expire_queued_request() throws InterruptedException {
+        DownlinkRequestScheduler scheduler = new DownlinkRequestScheduler(sender, timer);
+        RecordingCallback first = new RecordingCallback();
+        RecordingCallback second = new RecordingCallback();
+        scheduler.send(client, new ReadRequest(3), first, first);
+        scheduler.send(client, new ReadRequest(3), 50L, second, second);
+
+        Assert.assertTrue(second.latch.await(2, TimeUnit.SECONDS));
+        Assert.assertTrue(second.error instanceof TimeoutException);
+        Assert.assertEquals(0, scheduler.getQueuedRequests(client));
+
+        // the expired request is never sent
+        sender.respond(0);
+        Assert.assertEquals(1, sender.sent.size());
+    }
+}
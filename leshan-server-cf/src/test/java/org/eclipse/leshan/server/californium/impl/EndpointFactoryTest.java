@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.eclipse.californium.core.CoapClient;
+import org.eclipse.californium.core.CoapResource;
+import org.eclipse.californium.core.CoapResponse;
+import org.eclipse.californium.core.CoapServer;
+import org.eclipse.californium.core.network.Endpoint;
+import org.eclipse.californium.core.server.resources.CoapExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EndpointFactoryTest {
+
+    EndpointFactory factory;
+    CoapServer coapServer;
+
+    @Before
+    public void setUp() {
+        factory = new EndpointFactory(2, 1, 1, 65536, 0);
+        coapServer = new CoapServer();
+        coapServer.add(new CoapResource("thread") {
+            @Override
+            public void handleGET(CoapExchange exchange) {
+                exchange.respond(Thread.currentThread().getName());
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        coapServer.destroy();
+        factory.destroy();
+    }
+
+    @Test
+    public void process_messages_on_endpoint_threads() {
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        Endpoint first = factory.createEndpoint(loopback);
+        Endpoint second = factory.createEndpoint(loopback);
+        factory.addTo(coapServer, first);
+        factory.addTo(coapServer, second);
+        coapServer.start();
+
+        Assert.assertTrue(get(first).startsWith("leshan-coap-0-"));
+        Assert.assertTrue(get(second).startsWith("leshan-coap-1-"));
+    }
+
+    @Test
+    public void share_server_threads_by_default() {
+        factory = new EndpointFactory();
+        Endpoint endpoint = factory.createEndpoint(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        factory.addTo(coapServer, endpoint);
+        coapServer.start();
+
+        Assert.assertFalse(get(endpoint).startsWith("leshan-coap-"));
+    }
+
+    private String get(Endpoint endpoint) {
+        CoapClient client = new CoapClient("coap://127.0.0.1:" + endpoint.getAddress().getPort() + "/thread");
+        client.setTimeout(5000);
+        CoapResponse response = client.get();
+        Assert.assertNotNull(response);
+        return response.getResponseText();
+    }
+}
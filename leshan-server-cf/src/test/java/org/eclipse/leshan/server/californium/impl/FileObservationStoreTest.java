@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.io.File;
+
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.server.californium.StoredObservation;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileObservationStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reload_stored_observations() throws Exception {
+        String file = new File(folder.getRoot(), "observations.data").getPath();
+        FileObservationStore store = new FileObservationStore(file);
+        store.add(new StoredObservation("reg1", new LwM2mPath(3, 0, 15), new byte[] { 1, 2 }, null));
+        store.add(new StoredObservation("reg1", new LwM2mPath(3, 0), new byte[] { 3 }, 1542));
+        store.add(new StoredObservation("reg2", new LwM2mPath(4), new byte[] { 4 }, null));
+        store.add(new StoredObservation("reg3", new LwM2mPath(5), new byte[] { 5 }, null));
+        store.remove(new byte[] { 1, 2 });
+        store.removeAll("reg2");
+        store.stop();
+
+        FileObservationStore reloaded = new FileObservationStore(file);
+
+        Assert.assertEquals(2, reloaded.size());
+        for (StoredObservation o : reloaded.getAll()) {
+            if (o.getRegistrationId().equals("reg1")) {
+                Assert.assertEquals(new LwM2mPath(3, 0), o.getPath());
+                Assert.assertArrayEquals(new byte[] { 3 }, o.getToken());
+                Assert.assertEquals((Integer) 1542, o.getContentFormat());
+            } else {
+                Assert.assertEquals("reg3", o.getRegistrationId());
+                Assert.assertNull(o.getContentFormat());
+            }
+        }
+    }
+
+    @Test
+    public void compact_file_with_many_removed_observations() throws Exception {
+        File file = new File(folder.getRoot(), "observations.data");
+        FileObservationStore store = new FileObservationStore(file.getPath());
+        for (int i = 0; i < 3000; i++) {
+            store.add(new StoredObservation("reg", new LwM2mPath(3, 0, 15), new byte[] { (byte) i, 1 }, null));
+            store.remove(new byte[] { (byte) i, 1 });
+        }
+        store.add(new StoredObservation("reg", new LwM2mPath(3), new byte[] { 9, 9, 9 }, null));
+        store.stop();
+
+        // far less than the 6001 changes
+        Assert.assertTrue(file.length() < 1000 * 20);
+        Assert.assertEquals(1, new FileObservationStore(file.getPath()).size());
+    }
+}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import org.eclipse.californium.core.coap.CoAP;
+import org.eclipse.californium.core.coap.Request;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.Value;
+import org.eclipse.leshan.core.request.ContentFormat;
+import org.eclipse.leshan.core.request.DeleteRequest;
+import org.eclipse.leshan.core.request.WriteRequest;
+import org.eclipse.leshan.server.impl.DeviceShadowImpl;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LwM2mResponseBuilderTest {
+
+    CaliforniumTestSupport support = new CaliforniumTestSupport();
+    DeviceShadowImpl shadow;
+
+    @Before
+    public void setUp() throws Exception {
+        support.givenASimpleClient();
+        shadow = new DeviceShadowImpl();
+        shadow.update(support.client, new LwM2mPath(3, 0), new LwM2mResource(0, Value.newStringValue("instance")));
+        shadow.update(support.client, new LwM2mPath(3, 0, 1), new LwM2mResource(1, Value.newStringValue("model")));
+        shadow.update(support.client, new LwM2mPath(4, 0, 1), new LwM2mResource(1, Value.newIntegerValue(5)));
+    }
+
+    @Test
+    public void invalidate_shadow_on_successful_write() {
+        WriteRequest request = new WriteRequest(3, 0, 1, new LwM2mResource(1, Value.newStringValue("new")),
+                ContentFormat.TEXT, true);
+
+        request.accept(builder(CoAP.Code.PUT, CoAP.ResponseCode.CHANGED));
+
+        Assert.assertNull(shadow.get(support.client, new LwM2mPath(3, 0, 1), 1000));
+        Assert.assertNull(shadow.get(support.client, new LwM2mPath(3, 0), 1000));
+        Assert.assertNotNull(shadow.get(support.client, new LwM2mPath(4, 0, 1), 1000));
+    }
+
+    @Test
+    public void keep_shadow_on_failed_write() {
+        WriteRequest request = new WriteRequest(3, 0, 1, new LwM2mResource(1, Value.newStringValue("new")),
+                ContentFormat.TEXT, true);
+
+        request.accept(builder(CoAP.Code.PUT, CoAP.ResponseCode.METHOD_NOT_ALLOWED));
+
+        Assert.assertNotNull(shadow.get(support.client, new LwM2mPath(3, 0, 1), 1000));
+    }
+
+    @Test
+    public void invalidate_shadow_on_successful_delete() {
+        new DeleteRequest(3, 0).accept(builder(CoAP.Code.DELETE, CoAP.ResponseCode.DELETED));
+
+        Assert.assertNull(shadow.get(support.client, new LwM2mPath(3, 0), 1000));
+        Assert.assertNull(shadow.get(support.client, new LwM2mPath(3, 0, 1), 1000));
+        Assert.assertEquals(1, shadow.size());
+    }
+
+    private LwM2mResponseBuilder<?> builder(CoAP.Code method, CoAP.ResponseCode code) {
+        return new LwM2mResponseBuilder<>(new Request(method), new Response(code), support.client, null, null, shadow,
+                null, null);
+    }
+}
@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NotificationPipelineTest {
+
+    NotificationPipeline pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    @Test
+    public void execute_tasks_with_same_key_in_order() throws InterruptedException {
+        pipeline = new NotificationPipeline("test-pipeline", 4, 10);
+        pipeline.start();
+
+        final List<Integer> executed = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch latch = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            pipeline.submit("observation", new Runnable() {
+                @Override
+                public void run() {
+                    executed.add(value);
+                    latch.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(latch.await(2, TimeUnit.SECONDS));
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals((Integer) i, executed.get(i));
+        }
+        // the counter is updated right after the execution of the last task
+        long deadline = System.currentTimeMillis() + 2000;
+        while (pipeline.getProcessedTasks() < 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(100, pipeline.getProcessedTasks());
+    }
+
+    @Test
+    public void block_producer_when_queue_is_full() throws InterruptedException {
+        pipeline = new NotificationPipeline("test-pipeline", 1, 1);
+        pipeline.start();
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+        Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        };
+
+        // the first task blocks the worker, the second fills the queue
+        pipeline.submit("key", blocking);
+        Thread.sleep(50);
+        pipeline.submit("key", blocking);
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                pipeline.submit("key", new Runnable() {
+                    @Override
+                    public void run() {
+                        done.countDown();
+                    }
+                });
+            }
+        };
+        producer.start();
+        producer.join(200);
+        Assert.assertTrue(producer.isAlive());
+        Assert.assertEquals(1, pipeline.getBlockedSubmissions());
+
+        release.countDown();
+        Assert.assertTrue(done.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void execute_in_caller_thread_when_not_started() {
+        pipeline = new NotificationPipeline("test-pipeline", 1, 1);
+        final Thread[] executor = new Thread[1];
+
+        pipeline.submit("key", new Runnable() {
+            @Override
+            public void run() {
+                executor[0] = Thread.currentThread();
+            }
+        });
+
+        Assert.assertSame(Thread.currentThread(), executor[0]);
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.californium.core.coap.CoAP.ResponseCode;
+import org.eclipse.californium.core.coap.CoAP.Type;
+import org.eclipse.californium.core.coap.Response;
+import org.eclipse.californium.core.network.CoAPEndpoint;
+import org.eclipse.californium.core.network.interceptors.MessageInterceptor;
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.server.californium.StoredObservation;
+import org.eclipse.leshan.server.impl.ObservationRegistryImpl;
+import org.eclipse.leshan.server.model.StandardModelProvider;
+import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationRegistryListener;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ObservationPersistenceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    CaliforniumTestSupport support = new CaliforniumTestSupport();
+    FileObservationStore store;
+    ObservationPersistence persistence;
+    ObservationRegistryImpl registry;
+    MessageInterceptor interceptor;
+    List<LwM2mNode> values = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        support.givenASimpleClient();
+        store = new FileObservationStore(new File(folder.getRoot(), "observations.data").getPath());
+        store.add(new StoredObservation(support.client.getRegistrationId(), new LwM2mPath(3, 0, 15),
+                new byte[] { 1, 2, 3 }, null));
+        store.add(new StoredObservation("unknown", new LwM2mPath(3, 0, 15), new byte[] { 4 }, null));
+
+        persistence = new ObservationPersistence(store, new StandardModelProvider(), null, null);
+        CoAPEndpoint endpoint = new CoAPEndpoint(new InetSocketAddress(0));
+        persistence.addTo(endpoint);
+        interceptor = endpoint.getInterceptors().get(0);
+
+        registry = new ObservationRegistryImpl();
+        registry.addListener(persistence);
+        registry.addListener(new ObservationRegistryListener() {
+            @Override
+            public void newValue(Observation observation, LwM2mNode value) {
+                values.add(value);
+            }
+
+            @Override
+            public void cancelled(Observation observation) {
+            }
+
+            @Override
+            public void newObservation(Observation observation) {
+            }
+        });
+    }
+
+    @Test
+    public void restore_observations_of_registered_clients() {
+        Assert.assertEquals(1, persistence.restore(Collections.singleton(support.client), registry));
+
+        Assert.assertEquals(1, registry.getObservations(support.client).size());
+        Assert.assertEquals(1, persistence.getDroppedObservations());
+        Assert.assertEquals(1, store.size());
+    }
+
+    @Test
+    public void deliver_notifications_of_restored_observation() {
+        persistence.restore(Collections.singleton(support.client), registry);
+
+        Response notification = givenANotification(new byte[] { 1, 2, 3 }, 10);
+        interceptor.receiveResponse(notification);
+        // retransmission
+        interceptor.receiveResponse(givenANotification(new byte[] { 1, 2, 3 }, 10));
+        // unknown token
+        Response other = givenANotification(new byte[] { 9 }, 11);
+        interceptor.receiveResponse(other);
+
+        Assert.assertTrue(notification.isCanceled());
+        Assert.assertFalse(other.isCanceled());
+        Assert.assertEquals(1, values.size());
+    }
+
+    @Test
+    public void remove_cancelled_observation_from_store() {
+        persistence.restore(Collections.singleton(support.client), registry);
+
+        registry.cancelObservation(support.client, "/3/0/15");
+
+        Assert.assertEquals(0, store.size());
+        Response notification = givenANotification(new byte[] { 1, 2, 3 }, 10);
+        interceptor.receiveResponse(notification);
+        Assert.assertFalse(notification.isCanceled());
+    }
+
+    private Response givenANotification(byte[] token, int mid) {
+        Response notification = new Response(ResponseCode.CONTENT);
+        notification.setType(Type.NON);
+        notification.setMID(mid);
+        notification.setToken(token);
+        notification.getOptions().setObserve(mid);
+        notification.setPayload("15");
+        return notification;
+    }
+}
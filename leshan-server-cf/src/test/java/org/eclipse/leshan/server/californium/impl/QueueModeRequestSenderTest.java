@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.core.request.BindingMode;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.impl.ClientRegistryImpl;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueueModeRequestSenderTest {
+
+    RecordingSender sender;
+    HashedWheelTimer timer;
+    QueueModeRequestSender queueModeSender;
+
+    @Before
+    public void setUp() {
+        sender = new RecordingSender();
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+        queueModeSender = new QueueModeRequestSender(sender, timer, 1000, 10);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void forward_request_to_non_queue_mode_client() throws Exception {
+        queueModeSender.send(givenAClient(BindingMode.U, 3600000), new ReadRequest(3), new RecordingCallback(),
+                new RecordingCallback());
+
+        Assert.assertEquals(1, sender.sent.size());
+    }
+
+    @Test
+    public void forward_request_to_awake_client() throws Exception {
+        queueModeSender.send(givenAClient(BindingMode.UQ, 0), new ReadRequest(3), new RecordingCallback(),
+                new RecordingCallback());
+
+        Assert.assertEquals(1, sender.sent.size());
+    }
+
+    @Test
+    public void flush_buffered_requests_on_update() throws Exception {
+        Client sleeping = givenAClient(BindingMode.UQ, 3600000);
+        queueModeSender.send(sleeping, new ReadRequest(3), new RecordingCallback(), new RecordingCallback());
+        queueModeSender.send(sleeping, new ReadRequest(4), new RecordingCallback(), new RecordingCallback());
+
+        Assert.assertEquals(0, sender.sent.size());
+        Assert.assertEquals(2, queueModeSender.getBufferedRequests(sleeping));
+
+        queueModeSender.updated(givenAClient(BindingMode.UQ, 0));
+
+        Assert.assertEquals(2, sender.sent.size());
+        Assert.assertEquals(3, sender.sent.get(0).request.getPath().getObjectId());
+        Assert.assertEquals(4, sender.sent.get(1).request.getPath().getObjectId());
+        Assert.assertEquals(0, queueModeSender.getBufferedRequests());
+        Assert.assertEquals(2, queueModeSender.getFlushedRequests());
+    }
+
+    @Test
+    public void expire_buffered_request() throws Exception {
+        Client sleeping = givenAClient(BindingMode.UQ, 3600000);
+        RecordingCallback callback = new RecordingCallback();
+        queueModeSender.send(sleeping, new ReadRequest(3), 50L, callback, callback);
+
+        Assert.assertTrue(callback.latch.await(2, TimeUnit.SECONDS));
+        Assert.assertTrue(callback.error instanceof TimeoutException);
+        Assert.assertEquals(1, queueModeSender.getExpiredRequests());
+
+        queueModeSender.updated(givenAClient(BindingMode.UQ, 0));
+        Assert.assertEquals(0, sender.sent.size());
+    }
+
+    @Test
+    public void fail_buffered_requests_on_deregistration() throws Exception {
+        Client sleeping = givenAClient(BindingMode.UQ, 3600000);
+        RecordingCallback callback = new RecordingCallback();
+        queueModeSender.send(sleeping, new ReadRequest(3), callback, callback);
+
+        queueModeSender.unregistered(sleeping);
+
+        Assert.assertTrue(callback.error instanceof RequestFailedException);
+        Assert.assertEquals(0, queueModeSender.getBufferedRequests());
+    }
+
+    @Test
+    public void reject_request_sent_to_deregistered_client() throws Exception {
+        // the client is not in the registry anymore: its deregistration event was already processed
+        queueModeSender = new QueueModeRequestSender(sender, timer, QueueModeRequestSender.DEFAULT_AWAKE_TIME,
+                QueueModeRequestSender.DEFAULT_MAX_BUFFERED_REQUESTS, new ClientRegistryImpl());
+        RecordingCallback callback = new RecordingCallback();
+        queueModeSender.send(givenAClient(BindingMode.UQ, 3600000), new ReadRequest(3), callback, callback);
+
+        Assert.assertTrue(callback.error instanceof RequestFailedException);
+        Assert.assertEquals(0, queueModeSender.getBufferedRequests());
+    }
+
+    private Client givenAClient(BindingMode bindingMode, long lastUpdateAge) throws Exception {
+        Date lastUpdate = new Date(System.currentTimeMillis() - lastUpdateAge);
+        return new Client("regid", "endpoint", InetAddress.getLocalHost(), 5683, "1.0", 86400L, null, bindingMode,
+                null, new InetSocketAddress(5683), lastUpdate, lastUpdate);
+    }
+}
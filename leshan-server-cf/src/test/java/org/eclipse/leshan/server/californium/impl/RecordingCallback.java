@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ValueResponse;
+
+/**
+ * Records the outcome of a request.
+ */
+class RecordingCallback implements ResponseCallback<ValueResponse>, ErrorCallback {
+
+    final CountDownLatch latch = new CountDownLatch(1);
+    volatile ValueResponse response;
+    volatile Exception error;
+
+    @Override
+    public void onResponse(ValueResponse response) {
+        this.response = response;
+        latch.countDown();
+    }
+
+    @Override
+    public void onError(Exception e) {
+        this.error = e;
+        latch.countDown();
+    }
+}
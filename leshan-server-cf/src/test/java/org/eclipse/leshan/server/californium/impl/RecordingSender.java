@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.leshan.ResponseCode;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ValueResponse;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+
+/**
+ * A sender which records the requests and lets the test send the responses.
+ */
+class RecordingSender implements LwM2mRequestSender {
+
+    static class SentRequest {
+        Client destination;
+        DownlinkRequest<?> request;
+        Long timeout;
+        ResponseCallback<ValueResponse> responseCallback;
+        ErrorCallback errorCallback;
+    }
+
+    final List<SentRequest> sent = new ArrayList<>();
+
+    void respond(int index) {
+        sent.get(index).responseCallback.onResponse(new ValueResponse(ResponseCode.NOT_FOUND));
+    }
+
+    void fail(int index, Exception e) {
+        sent.get(index).errorCallback.onError(e);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> T send(Client destination, DownlinkRequest<T> request, Long timeout) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        send(destination, request, null, responseCallback, errorCallback);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, Long timeout,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        SentRequest s = new SentRequest();
+        s.destination = destination;
+        s.request = request;
+        s.timeout = timeout;
+        s.responseCallback = (ResponseCallback<ValueResponse>) responseCallback;
+        s.errorCallback = errorCallback;
+        sent.add(s);
+    }
+}
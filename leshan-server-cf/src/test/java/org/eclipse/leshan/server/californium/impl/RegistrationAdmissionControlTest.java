@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.californium.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class RegistrationAdmissionControlTest {
+
+    @Test
+    public void accept_all_requests_by_default() {
+        RegistrationAdmissionControl admissionControl = new RegistrationAdmissionControl();
+
+        for (int i = 0; i < 100; i++) {
+            Assert.assertTrue(admissionControl.admitRegistration());
+        }
+
+        Assert.assertEquals(100, admissionControl.getAcceptedRegistrations());
+        Assert.assertEquals(100, admissionControl.getPendingRequests());
+    }
+
+    @Test
+    public void limit_registrations_and_updates_separately() {
+        RegistrationAdmissionControl admissionControl = new RegistrationAdmissionControl(2, 1, 0, 10, 60);
+
+        // the buckets start full
+        Assert.assertTrue(admissionControl.admitRegistration());
+        Assert.assertTrue(admissionControl.admitRegistration());
+        Assert.assertFalse(admissionControl.admitRegistration());
+        Assert.assertTrue(admissionControl.admitUpdate());
+        Assert.assertFalse(admissionControl.admitUpdate());
+
+        Assert.assertEquals(2, admissionControl.getAcceptedRegistrations());
+        Assert.assertEquals(1, admissionControl.getRejectedRegistrations());
+        Assert.assertEquals(1, admissionControl.getAcceptedUpdates());
+        Assert.assertEquals(1, admissionControl.getRejectedUpdates());
+        Assert.assertEquals(3, admissionControl.getPendingRequests());
+    }
+
+    @Test
+    public void shed_requests_when_too_many_are_pending() {
+        RegistrationAdmissionControl admissionControl = new RegistrationAdmissionControl(0, 0, 2, 10, 60);
+
+        Assert.assertTrue(admissionControl.admitRegistration());
+        Assert.assertTrue(admissionControl.admitUpdate());
+        Assert.assertFalse(admissionControl.admitRegistration());
+        Assert.assertFalse(admissionControl.admitUpdate());
+
+        admissionControl.release();
+
+        Assert.assertTrue(admissionControl.admitRegistration());
+        Assert.assertEquals(2, admissionControl.getPendingRequests());
+    }
+
+    @Test
+    public void count_requests_rejected_by_registration_lane() {
+        RegistrationAdmissionControl admissionControl = new RegistrationAdmissionControl();
+
+        admissionControl.rejectRegistration();
+        admissionControl.rejectUpdate();
+
+        Assert.assertEquals(1, admissionControl.getRejectedRegistrations());
+        Assert.assertEquals(1, admissionControl.getRejectedUpdates());
+        Assert.assertEquals(0, admissionControl.getPendingRequests());
+    }
+
+    @Test
+    public void randomize_retry_delay() {
+        RegistrationAdmissionControl admissionControl = new RegistrationAdmissionControl(1, 1, 1, 10, 20);
+
+        boolean differentDelays = false;
+        int first = admissionControl.getRetryDelay();
+        for (int i = 0; i < 100; i++) {
+            int delay = admissionControl.getRetryDelay();
+            Assert.assertTrue(delay >= 10 && delay <= 20);
+            differentDelays |= delay != first;
+        }
+        Assert.assertTrue(differentDelays);
+    }
+}
@@ -15,15 +15,23 @@
  *******************************************************************************/
 package org.eclipse.leshan.server;
 
+import java.util.Collection;
+
 import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
 import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientFilter;
 import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.history.ObservationHistory;
 import org.eclipse.leshan.server.model.LwM2mModelProvider;
 import org.eclipse.leshan.server.observation.ObservationRegistry;
+import org.eclipse.leshan.server.request.GroupOperation;
+import org.eclipse.leshan.server.request.GroupRequestListener;
 import org.eclipse.leshan.server.security.SecurityRegistry;
+import org.eclipse.leshan.server.shadow.DeviceShadow;
 
 /**
  * An OMA Lightweight M2M device management server.
@@ -77,6 +85,44 @@ public interface LwM2mServer {
     <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
             ResponseCallback<T> responseCallback, ErrorCallback errorCallback);
 
+    /**
+     * Sends a Lightweight M2M request asynchronously. If no response is received before the given timeout, the request
+     * is cancelled and the error callback is called with a {@link TimeoutException}.
+     * 
+     * @param destination the remote client
+     * @param request the request to the client
+     * @param timeout the request timeout in millisecond
+     */
+    <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, long timeout,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback);
+
+    /**
+     * Sends a Lightweight M2M request to all the registered clients selected by the given filter. The number of
+     * concurrent requests is limited and the result of each request is given to the listener as soon as it completes.
+     * 
+     * @param filter selects the targeted clients
+     * @param request the request sent to each client
+     * @param timeout the timeout of each request in millisecond
+     * @param listener receives the result of each request
+     * @return a handle to follow the progress of the operation or cancel it
+     */
+    <T extends LwM2mResponse> GroupOperation send(ClientFilter filter, DownlinkRequest<T> request, long timeout,
+            GroupRequestListener<T> listener);
+
+    /**
+     * Sends a Lightweight M2M request to the registered clients with the given endpoints. Endpoints without
+     * registration are ignored. The number of concurrent requests is limited and the result of each request is given to
+     * the listener as soon as it completes.
+     * 
+     * @param endpoints the endpoints of the targeted clients
+     * @param request the request sent to each client
+     * @param timeout the timeout of each request in millisecond
+     * @param listener receives the result of each request
+     * @return a handle to follow the progress of the operation or cancel it
+     */
+    <T extends LwM2mResponse> GroupOperation send(Collection<String> endpoints, DownlinkRequest<T> request,
+            long timeout, GroupRequestListener<T> listener);
+
     /**
      * Get the client registry containing the list of connected clients. You can use this object for listening client
      * registration/deregistration.
@@ -99,4 +145,19 @@ public interface LwM2mServer {
      */
     LwM2mModelProvider getModelProvider();
 
+    /**
+     * Get the last known values of the clients resources, updated by the read responses and the notifications. You can
+     * use this object to avoid sending a request to a device when a recent value is known.
+     *
+     * @return the shadow or <code>null</code> if it is disabled
+     */
+    DeviceShadow getDeviceShadow();
+
+    /**
+     * Get the last numeric values notified for the observed resources.
+     *
+     * @return the history or <code>null</code> if it is disabled
+     */
+    ObservationHistory getObservationHistory();
+
 }
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.aggregation;
+
+import org.eclipse.leshan.core.node.LwM2mPath;
+
+/**
+ * The statistics of the values notified for a numeric resource during a time window.
+ */
+public class Aggregate {
+
+    private final String endpoint;
+    private final LwM2mPath path;
+    private final long start;
+    private final long end;
+    private final long count;
+    private final double min;
+    private final double max;
+    private final double sum;
+
+    public Aggregate(String endpoint, LwM2mPath path, long start, long end, long count, double min, double max,
+            double sum) {
+        this.endpoint = endpoint;
+        this.path = path;
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        this.min = min;
+        this.max = max;
+        this.sum = sum;
+    }
+
+    /**
+     * @return the endpoint of the client
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the path of the resource
+     */
+    public LwM2mPath getPath() {
+        return path;
+    }
+
+    /**
+     * @return the start of the window (inclusive) in milliseconds since the epoch
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * @return the end of the window (exclusive) in milliseconds since the epoch
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the number of values notified during the window
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public double getMin() {
+        return min;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public double getSum() {
+        return sum;
+    }
+
+    public double getAverage() {
+        return sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Aggregate [endpoint=%s, path=%s, start=%d, end=%d, count=%d, min=%s, max=%s, avg=%s]",
+                endpoint, path, start, end, count, min, max, getAverage());
+    }
+}
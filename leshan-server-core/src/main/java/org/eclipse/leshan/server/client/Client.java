@@ -26,7 +26,8 @@ import org.eclipse.leshan.core.request.BindingMode;
 import org.eclipse.leshan.util.Validate;
 
 /**
- * An immutable structure which represent a LW-M2M client registered on the server
+ * A structure which represent a LW-M2M client registered on the server. It is immutable except for the time of the
+ * last registration update, which is refreshed in place by the registration updates without parameters.
  */
 public class Client {
 
@@ -65,7 +66,8 @@ public class Client {
     /** The location where LWM2M objects are hosted on the device */
     private final String rootPath;
 
-    private final Date lastUpdate;
+    // in milliseconds since the epoch
+    private volatile long lastUpdate;
 
     public Client(String registrationId, String endpoint, InetAddress address, int port,
             InetSocketAddress registrationEndpointAddress) {
@@ -113,7 +115,7 @@ public class Client {
         this.bindingMode = bindingMode == null ? BindingMode.U : bindingMode;
         this.smsNumber = smsNumber;
         this.registrationEndpointAddress = registrationEndpointAddress;
-        this.lastUpdate = lastUpdate == null ? new Date() : lastUpdate;
+        this.lastUpdate = lastUpdate == null ? System.currentTimeMillis() : lastUpdate.getTime();
     }
 
     public String getRegistrationId() {
@@ -268,11 +270,19 @@ public class Client {
     }
 
     public Date getLastUpdate() {
-        return lastUpdate;
+        return new Date(lastUpdate);
+    }
+
+    /**
+     * Extends the registration lifetime as a registration update without parameters does. Only meant to be called by
+     * the {@link ClientRegistry}.
+     */
+    public void touch() {
+        lastUpdate = System.currentTimeMillis();
     }
 
     public boolean isAlive() {
-        return lastUpdate.getTime() + lifeTimeInSec * 1000 > System.currentTimeMillis();
+        return lastUpdate + lifeTimeInSec * 1000 > System.currentTimeMillis();
     }
 
     @Override
@@ -280,7 +290,8 @@ public class Client {
         return String
                 .format("Client [registrationDate=%s, address=%s, port=%s, registrationEndpoint=%s, lifeTimeInSec=%s, smsNumber=%s, lwM2mVersion=%s, bindingMode=%s, endpoint=%s, registrationId=%s, objectLinks=%s, lastUpdate=%s]",
                         registrationDate, address, port, registrationEndpointAddress, lifeTimeInSec, smsNumber,
-                        lwM2mVersion, bindingMode, endpoint, registrationId, Arrays.toString(objectLinks), lastUpdate);
+                        lwM2mVersion, bindingMode, endpoint, registrationId, Arrays.toString(objectLinks),
+                        getLastUpdate());
     }
 
     /**
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.client;
+
+/**
+ * Selects the registered clients targeted by an operation.
+ */
+public interface ClientFilter {
+    // We should keep this as a 1 method interface to be java 8 lambda compatible.
+
+    /**
+     * @return <code>true</code> if the client is selected
+     */
+    boolean accept(Client client);
+}
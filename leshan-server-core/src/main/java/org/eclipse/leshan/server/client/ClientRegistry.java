@@ -15,6 +15,7 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.client;
 
+import java.net.InetAddress;
 import java.util.Collection;
 
 /**
@@ -71,6 +72,20 @@ public interface ClientRegistry {
      */
     Client updateClient(ClientUpdate update);
 
+    /**
+     * Handles a registration update without parameters (a "keep-alive"), which only extends the registration lifetime.
+     * <p>
+     * An implementation may skip the notification of the listeners when the client address did not change, except for
+     * clients in queue mode, for which a registration update means that the client is awake.
+     * </p>
+     *
+     * @param registrationId the client registrationId
+     * @param address the source address of the update request
+     * @param port the source port of the update request
+     * @return the registered client or <code>null</code> if no client is registered under the given ID
+     */
+    Client keepAlive(String registrationId, InetAddress address, int port);
+
     /**
      * De-registers a client.
      * 
@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import java.util.Map;
+
+/**
+ * A key-value store shared by the nodes of a Leshan cluster, used to share the client registrations.
+ * <p>
+ * Implementations must be thread-safe. Single key operations are expected to be atomic; no transaction across keys is
+ * required.
+ * </p>
+ */
+public interface KeyValueStore {
+
+    /**
+     * @return the value of the key or <code>null</code> if there is none
+     */
+    byte[] get(String key);
+
+    /**
+     * Sets the value of a key, replacing the previous one.
+     */
+    void put(String key, byte[] value);
+
+    /**
+     * Removes a key.
+     *
+     * @return the previous value of the key or <code>null</code> if there was none
+     */
+    byte[] remove(String key);
+
+    /**
+     * @return all the entries whose key starts with the given prefix
+     */
+    Map<String, byte[]> getAll(String prefix);
+}
@@ -0,0 +1,48 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.cluster;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.server.client.Client;
+
+/**
+ * Transports the requests for the clients registered through another node of the cluster to this node. Only the node
+ * which received the registration can reach the client, as it owns the CoAP endpoint (and the DTLS session) the
+ * client talks to.
+ * <p>
+ * Leshan provides no implementation: the transport between the nodes (HTTP, a message broker...) and the serialization
+ * of the requests and responses depend on the deployment. Without a forwarder, the requests for the clients of the
+ * other nodes fail.
+ * </p>
+ */
+public interface RequestForwarder {
+
+    /**
+     * Sends a request through another node asynchronously.
+     *
+     * @param nodeId the identifier of the node owning the client
+     * @param destination the client
+     * @param request the request to send
+     * @param timeout the request timeout in millisecond or <code>null</code> to rely on the CoAP timeout only
+     * @param responseCallback called with the response received by the other node
+     * @param errorCallback called if the request could not be sent or timed out
+     */
+    <T extends LwM2mResponse> void forward(String nodeId, Client destination, DownlinkRequest<T> request,
+            Long timeout, ResponseCallback<T> responseCallback, ErrorCallback errorCallback);
+}
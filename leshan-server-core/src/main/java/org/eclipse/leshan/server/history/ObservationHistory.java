@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.history;
+
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.server.client.Client;
+
+/**
+ * The last numeric values notified for the observed resources of the registered clients.
+ * <p>
+ * A fixed number of samples is kept for each resource in primitive ring buffers, so the memory used by a resource is
+ * known in advance. The history of a resource is forgotten when its observation is cancelled or when the client
+ * deregisters.
+ * </p>
+ */
+public interface ObservationHistory {
+
+    /**
+     * Gets the samples of a resource received in a time range.
+     *
+     * @param client the registered client
+     * @param resourcePath the path of a single-instance numeric resource
+     * @param from the start of the range (inclusive) in milliseconds since the epoch
+     * @param to the end of the range (inclusive) in milliseconds since the epoch
+     * @return the samples, oldest first, or <code>null</code> if the resource has no history
+     */
+    TimeSeries get(Client client, LwM2mPath resourcePath, long from, long to);
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.history;
+
+/**
+ * The samples of a numeric resource, oldest first.
+ * <p>
+ * Integer values are kept as <code>long</code> and floating point values as <code>double</code>, without boxing.
+ * </p>
+ */
+public class TimeSeries {
+
+    private final long[] timestamps;
+    private final long[] values;
+    private final boolean floatingPoint;
+
+    /**
+     * @param timestamps the reception times in milliseconds since the epoch
+     * @param values the values, or the raw bits of the values if they are floating point numbers
+     * @param floatingPoint <code>true</code> if the values are floating point numbers
+     */
+    public TimeSeries(long[] timestamps, long[] values, boolean floatingPoint) {
+        this.timestamps = timestamps;
+        this.values = values;
+        this.floatingPoint = floatingPoint;
+    }
+
+    /**
+     * @return the number of samples
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * @return the reception time of a sample in milliseconds since the epoch
+     */
+    public long getTimestamp(int index) {
+        return timestamps[index];
+    }
+
+    /**
+     * @return the value of a sample
+     */
+    public double getValue(int index) {
+        return floatingPoint ? Double.longBitsToDouble(values[index]) : values[index];
+    }
+
+    /**
+     * @return the value of a sample of an integer resource
+     */
+    public long getLongValue(int index) {
+        return floatingPoint ? (long) Double.longBitsToDouble(values[index]) : values[index];
+    }
+
+    /**
+     * @return <code>true</code> if the resource is a floating point number
+     */
+    public boolean isFloatingPoint() {
+        return floatingPoint;
+    }
+}
@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link LwM2mRequestSender} calling the callbacks of the asynchronous requests with an {@link Executor}.
+ * <p>
+ * The callbacks are otherwise called by the threads receiving the CoAP responses: a callback doing some blocking work
+ * (e.g. storing the response in a database) then delays the processing of all the other messages. Synchronous
+ * requests are sent as is.
+ * </p>
+ * <p>
+ * If the executor rejects a callback because it is saturated, the callback is kept aside and called by the threads of
+ * the executor once they are done with their current tasks, never by the thread receiving the response. The number of
+ * callbacks kept aside is bounded by the number of requests in flight. If the executor is shut down, the callback is
+ * called by the current thread.
+ * </p>
+ */
+public class CallbackExecutorRequestSender implements LwM2mRequestSender {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CallbackExecutorRequestSender.class);
+
+    private final LwM2mRequestSender delegate;
+    private final Executor executor;
+
+    // the callbacks rejected by the saturated executor
+    private final Queue<Runnable> overflow = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param delegate the sender used to send the requests
+     * @param executor the executor calling the callbacks
+     */
+    public CallbackExecutorRequestSender(LwM2mRequestSender delegate, Executor executor) {
+        Validate.notNull(delegate);
+        Validate.notNull(executor);
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public <T extends LwM2mResponse> T send(Client destination, DownlinkRequest<T> request, Long timeout) {
+        return delegate.send(destination, request, timeout);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        send(destination, request, null, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, Long timeout,
+            final ResponseCallback<T> responseCallback, final ErrorCallback errorCallback) {
+        delegate.send(destination, request, timeout, new ResponseCallback<T>() {
+            @Override
+            public void onResponse(final T response) {
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        responseCallback.onResponse(response);
+                    }
+                });
+            }
+        }, new ErrorCallback() {
+            @Override
+            public void onError(final Exception e) {
+                execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        errorCallback.onError(e);
+                    }
+                });
+            }
+        });
+    }
+
+    private void execute(Runnable callback) {
+        if (submit(callback)) {
+            return;
+        }
+        overflow.add(callback);
+        // The tasks still queued call the overflowing callbacks after their own. Submit a task again in case they
+        // all completed in the meantime: if it is rejected too, some tasks are queued and will see this callback.
+        if (!submit(null) && isShutdown()) {
+            LOG.debug("Executor shut down: calling the callbacks directly");
+            callOverflow();
+        }
+    }
+
+    /**
+     * Submits a callback (or only a call of the overflowing callbacks if it is <code>null</code>).
+     *
+     * @return <code>false</code> if the executor rejected it
+     */
+    private boolean submit(final Runnable callback) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (callback != null) {
+                            callback.run();
+                        }
+                    } finally {
+                        callOverflow();
+                    }
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    private void callOverflow() {
+        Runnable callback;
+        while ((callback = overflow.poll()) != null) {
+            try {
+                callback.run();
+            } catch (RuntimeException e) {
+                LOG.warn("Unexpected error in request callback", e);
+            }
+        }
+    }
+
+    private boolean isShutdown() {
+        if (executor instanceof ExecutorService) {
+            return ((ExecutorService) executor).isShutdown();
+        }
+        return executor instanceof TrafficLane && ((TrafficLane) executor).isStopped();
+    }
+}
@@ -0,0 +1,334 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the events of a client registry to its listeners out of the threads handling the registration requests.
+ * <p>
+ * The events are dispatched to a fixed number of partitions according to the endpoint of the client: the events of a
+ * client are delivered in order. Each partition has a bounded queue and a worker thread which takes all the queued
+ * events at once (up to a maximum batch size) and delivers the whole batch to each listener in turn. When a queue is
+ * full, the publishing thread blocks until some room is available.
+ * </p>
+ * <p>
+ * When the bus has no partition or is not started, events are delivered by the publishing thread.
+ * </p>
+ */
+public class ClientRegistryEventBus implements ClientRegistryListener, Startable, Stoppable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClientRegistryEventBus.class);
+
+    /** The default capacity of the queue of each partition */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    /** The default maximum number of events delivered at once to a listener */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+    private enum Type {
+        REGISTERED, UPDATED, UNREGISTERED
+    }
+
+    private final int partitions;
+    private final int queueCapacity;
+    private final int maxBatchSize;
+    private final List<ClientRegistryListener> listeners = new CopyOnWriteArrayList<>();
+
+    // null when stopped
+    private volatile Partition[] workers;
+
+    // metrics
+    private final AtomicLong deliveredEvents = new AtomicLong();
+    private final AtomicLong blockedPublications = new AtomicLong();
+    private volatile long lag;
+    private final AtomicLong maxLag = new AtomicLong();
+
+    /**
+     * Creates a bus delivering the events in the publishing thread.
+     */
+    public ClientRegistryEventBus() {
+        this(0, DEFAULT_QUEUE_CAPACITY, DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param partitions the number of partitions (and of threads) or 0 to deliver the events in the publishing thread
+     * @param queueCapacity the capacity of the queue of each partition
+     * @param maxBatchSize the maximum number of events delivered at once to a listener
+     */
+    public ClientRegistryEventBus(int partitions, int queueCapacity, int maxBatchSize) {
+        Validate.isTrue(partitions >= 0, "the number of partitions must not be negative");
+        Validate.isTrue(queueCapacity > 0, "the queue capacity must be positive");
+        Validate.isTrue(maxBatchSize > 0, "the batch size must be positive");
+        this.partitions = partitions;
+        this.queueCapacity = queueCapacity;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public void addListener(ClientRegistryListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ClientRegistryListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (workers != null || partitions == 0) {
+            return;
+        }
+        Partition[] newWorkers = new Partition[partitions];
+        for (int i = 0; i < partitions; i++) {
+            newWorkers[i] = new Partition("leshan-registry-events-" + i);
+            newWorkers[i].start();
+        }
+        workers = newWorkers;
+    }
+
+    /**
+     * Stops the worker threads. The events already queued are delivered before this method returns.
+     */
+    @Override
+    public void stop() {
+        Partition[] stopped;
+        synchronized (this) {
+            stopped = workers;
+            workers = null;
+        }
+        if (stopped == null) {
+            return;
+        }
+        for (Partition worker : stopped) {
+            worker.interrupt();
+        }
+        for (Partition worker : stopped) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        // the events queued by the publishers racing with the end of the workers
+        List<Event> leftover = new ArrayList<>();
+        for (Partition worker : stopped) {
+            worker.queue.drainTo(leftover);
+            if (!leftover.isEmpty()) {
+                deliver(leftover);
+                leftover.clear();
+            }
+        }
+    }
+
+    @Override
+    public void registered(Client client) {
+        publish(new Event(Type.REGISTERED, client));
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+        publish(new Event(Type.UPDATED, clientUpdated));
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        publish(new Event(Type.UNREGISTERED, client));
+    }
+
+    /**
+     * @return the number of events waiting to be delivered
+     */
+    public int getQueuedEvents() {
+        Partition[] current = workers;
+        int queued = 0;
+        if (current != null) {
+            for (Partition worker : current) {
+                queued += worker.queue.size();
+            }
+        }
+        return queued;
+    }
+
+    /**
+     * @return the number of events delivered since the creation of the bus
+     */
+    public long getDeliveredEvents() {
+        return deliveredEvents.get();
+    }
+
+    /**
+     * @return the number of publications which had to wait for a full queue
+     */
+    public long getBlockedPublications() {
+        return blockedPublications.get();
+    }
+
+    /**
+     * @return the time in milliseconds the oldest event of the last delivered batch waited in the queue
+     */
+    public long getLag() {
+        return lag;
+    }
+
+    /**
+     * @return the maximum time in milliseconds an event waited in the queue since the creation of the bus
+     */
+    public long getMaxLag() {
+        return maxLag.get();
+    }
+
+    private void publish(Event event) {
+        Partition[] current = workers;
+        if (current == null) {
+            deliver(event);
+            return;
+        }
+
+        int hash = event.client.getEndpoint().hashCode();
+        hash ^= hash >>> 16;
+        Partition worker = current[(hash & 0x7fffffff) % current.length];
+        if (worker.queue.offer(event)) {
+            checkStopped(current, worker, event);
+            return;
+        }
+
+        // queue full: block the publisher
+        blockedPublications.incrementAndGet();
+        try {
+            while (!worker.queue.offer(event, 100, TimeUnit.MILLISECONDS)) {
+                if (workers != current) {
+                    // stopped in the meantime
+                    deliver(event);
+                    return;
+                }
+            }
+            checkStopped(current, worker, event);
+        } catch (InterruptedException e) {
+            LOG.warn("Interrupted while publishing a registry event: delivering it in the current thread");
+            Thread.currentThread().interrupt();
+            deliver(event);
+        }
+    }
+
+    /**
+     * Delivers a queued event in the publishing thread if the bus was stopped while it was queued: the worker may have
+     * already exited. The event is delivered only once, by the thread which removes it from the queue.
+     */
+    private void checkStopped(Partition[] current, Partition worker, Event event) {
+        if (workers != current && worker.queue.remove(event)) {
+            deliver(event);
+        }
+    }
+
+    private void deliver(Event event) {
+        for (ClientRegistryListener listener : listeners) {
+            deliver(listener, event);
+        }
+        deliveredEvents.incrementAndGet();
+    }
+
+    private void deliver(List<Event> batch) {
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.get(0).time);
+        lag = waited;
+        long max;
+        while (waited > (max = maxLag.get()) && !maxLag.compareAndSet(max, waited)) {
+            // retry
+        }
+
+        // each listener handles the whole batch before the next one
+        for (ClientRegistryListener listener : listeners) {
+            for (Event event : batch) {
+                deliver(listener, event);
+            }
+        }
+        deliveredEvents.addAndGet(batch.size());
+    }
+
+    private static void deliver(ClientRegistryListener listener, Event event) {
+        try {
+            switch (event.type) {
+            case REGISTERED:
+                listener.registered(event.client);
+                break;
+            case UPDATED:
+                listener.updated(event.client);
+                break;
+            case UNREGISTERED:
+                listener.unregistered(event.client);
+                break;
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Unexpected error in registry listener", e);
+        }
+    }
+
+    private static class Event {
+        final Type type;
+        final Client client;
+        final long time = System.nanoTime();
+
+        Event(Type type, Client client) {
+            this.type = type;
+            this.client = client;
+        }
+    }
+
+    private class Partition extends Thread {
+
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Partition(String name) {
+            super(name);
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            List<Event> batch = new ArrayList<>(maxBatchSize);
+            try {
+                while (true) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, maxBatchSize - 1);
+                    deliver(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                // stopped
+            }
+
+            queue.drainTo(batch);
+            if (!batch.isEmpty()) {
+                deliver(batch);
+            }
+        }
+    }
+}
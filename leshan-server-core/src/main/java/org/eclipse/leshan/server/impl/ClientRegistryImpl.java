@@ -15,16 +15,16 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.impl;
 
+import java.net.InetAddress;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import org.eclipse.leshan.core.request.BindingMode;
 import org.eclipse.leshan.server.Startable;
 import org.eclipse.leshan.server.Stoppable;
 import org.eclipse.leshan.server.client.Client;
@@ -44,16 +44,40 @@ public class ClientRegistryImpl implements ClientRegistry, Startable, Stoppable
 
     private final Map<String /* end-point */, Client> clientsByEp = new ConcurrentHashMap<>();
 
-    private final List<ClientRegistryListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String /* registration id */, Client> clientsByRegId = new ConcurrentHashMap<>();
+
+    private final ClientRegistryEventBus eventBus;
+
+    /**
+     * Creates a registry notifying its listeners in the registering thread.
+     */
+    public ClientRegistryImpl() {
+        this(new ClientRegistryEventBus());
+    }
+
+    /**
+     * @param eventBus the bus delivering the registry events to the listeners
+     */
+    public ClientRegistryImpl(ClientRegistryEventBus eventBus) {
+        Validate.notNull(eventBus);
+        this.eventBus = eventBus;
+    }
 
     @Override
     public void addListener(ClientRegistryListener listener) {
-        listeners.add(listener);
+        eventBus.addListener(listener);
     }
 
     @Override
     public void removeListener(ClientRegistryListener listener) {
-        listeners.remove(listener);
+        eventBus.removeListener(listener);
+    }
+
+    /**
+     * @return the bus delivering the registry events to the listeners
+     */
+    public ClientRegistryEventBus getEventBus() {
+        return eventBus;
     }
 
     @Override
@@ -74,13 +98,13 @@ public class ClientRegistryImpl implements ClientRegistry, Startable, Stoppable
 
         Client previous = clientsByEp.put(client.getEndpoint(), client);
         if (previous != null) {
-            for (ClientRegistryListener l : listeners) {
-                l.unregistered(previous);
-            }
+            clientsByRegId.remove(previous.getRegistrationId());
         }
-        for (ClientRegistryListener l : listeners) {
-            l.registered(client);
+        clientsByRegId.put(client.getRegistrationId(), client);
+        if (previous != null) {
+            eventBus.unregistered(previous);
         }
+        eventBus.registered(client);
 
         return true;
     }
@@ -96,11 +120,10 @@ public class ClientRegistryImpl implements ClientRegistry, Startable, Stoppable
         } else {
             Client clientUpdated = update.updateClient(client);
             clientsByEp.put(clientUpdated.getEndpoint(), clientUpdated);
+            clientsByRegId.put(clientUpdated.getRegistrationId(), clientUpdated);
 
             // notify listener
-            for (ClientRegistryListener l : listeners) {
-                l.updated(clientUpdated);
-            }
+            eventBus.updated(clientUpdated);
             return clientUpdated;
         }
     }
@@ -116,39 +139,60 @@ public class ClientRegistryImpl implements ClientRegistry, Startable, Stoppable
             return null;
         } else {
             Client unregistered = clientsByEp.remove(toBeUnregistered.getEndpoint());
-            for (ClientRegistryListener l : listeners) {
-                l.unregistered(unregistered);
-            }
+            clientsByRegId.remove(registrationId);
+            eventBus.unregistered(unregistered);
             LOG.debug("Deregistered client: {}", unregistered);
             return unregistered;
         }
     }
 
-    private Client findByRegistrationId(String id) {
-        Client result = null;
-        if (id != null) {
-            for (Client client : clientsByEp.values()) {
-                if (id.equals(client.getRegistrationId())) {
-                    result = client;
-                    break;
+    /**
+     * Only refreshes the time of the last update of the client, without creating a new {@link Client} nor notifying
+     * the listeners, unless the client changed its address or is in queue mode.
+     */
+    @Override
+    public Client keepAlive(String registrationId, InetAddress address, int port) {
+        Validate.notNull(registrationId);
+
+        Client client = findByRegistrationId(registrationId);
+        if (client == null) {
+            return null;
+        }
+        if (!isQueueMode(client) && client.getAddress().equals(address) && client.getPort() == port) {
+            synchronized (client) {
+                // the clean-up task removes the expired clients while holding the client lock
+                if (clientsByRegId.get(registrationId) == client) {
+                    client.touch();
+                    return client;
                 }
             }
         }
-        return result;
+        return updateClient(new ClientUpdate(registrationId, address, port, null, null, null, null));
+    }
+
+    private static boolean isQueueMode(Client client) {
+        BindingMode bindingMode = client.getBindingMode();
+        return bindingMode == BindingMode.UQ || bindingMode == BindingMode.SQ || bindingMode == BindingMode.UQS;
+    }
+
+    private Client findByRegistrationId(String id) {
+        return id == null ? null : clientsByRegId.get(id);
     }
 
     /**
-     * start the registration manager, will start regular cleanup of dead registrations.
+     * start the registration manager, will start the delivery of the events and regular cleanup of dead registrations.
      */
     @Override
     public void start() {
+        eventBus.start();
+
         // every 2 seconds clean the registration list
         // TODO re-consider clean-up interval: wouldn't 5 minutes do as well?
         schedExecutor.scheduleAtFixedRate(new Cleaner(), 2, 2, TimeUnit.SECONDS);
     }
 
     /**
-     * Stop the underlying cleanup of the registrations.
+     * Stop the underlying cleanup of the registrations and the delivery of the events.
      */
     @Override
     public void stop() {
@@ -158,6 +202,7 @@ public class ClientRegistryImpl implements ClientRegistry, Startable, Stoppable
         } catch (InterruptedException e) {
             LOG.warn("Clean up registration thread was interrupted.", e);
         }
+        eventBus.stop();
     }
 
     private final ScheduledExecutorService schedExecutor = Executors.newScheduledThreadPool(1);
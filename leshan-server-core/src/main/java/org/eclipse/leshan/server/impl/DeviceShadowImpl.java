@@ -0,0 +1,242 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mObjectInstance;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationRegistryListener;
+import org.eclipse.leshan.server.shadow.DeviceShadow;
+import org.eclipse.leshan.server.shadow.ShadowValue;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * An in-memory {@link DeviceShadow} holding a bounded number of values.
+ * <p>
+ * When the limit is reached, the least recently used values are evicted. It should be registered as a client registry
+ * listener to forget the values of deregistered clients and as an observation registry listener to store the notified
+ * values.
+ * </p>
+ */
+public class DeviceShadowImpl implements DeviceShadow, ClientRegistryListener, ObservationRegistryListener {
+
+    /** The default maximum number of values */
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private final int maxEntries;
+
+    // guarded by this
+    private final LinkedHashMap<Key, ShadowValue> values;
+    private final Map<String /* registration id */, Set<LwM2mPath>> pathsByRegistration = new HashMap<>();
+
+    public DeviceShadowImpl() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries the maximum number of values kept for all the clients
+     */
+    public DeviceShadowImpl(int maxEntries) {
+        Validate.isTrue(maxEntries > 0, "the maximum number of entries must be positive");
+        this.maxEntries = maxEntries;
+        this.values = new LinkedHashMap<Key, ShadowValue>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Entry<Key, ShadowValue> eldest) {
+                if (size() > DeviceShadowImpl.this.maxEntries) {
+                    unindex(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public synchronized ShadowValue get(Client client, LwM2mPath path, long maxAge) {
+        Validate.notNull(client);
+        Validate.notNull(path);
+        Validate.isTrue(maxAge >= 0, "the maximum age must not be negative");
+
+        ShadowValue value = values.get(new Key(client.getRegistrationId(), path));
+        if (path.isResource()) {
+            // the resource may be more recent in the value of its instance
+            ShadowValue instance = values.get(new Key(client.getRegistrationId(), new LwM2mPath(path.getObjectId(),
+                    path.getObjectInstanceId())));
+            if (instance != null && (value == null || instance.getTimestamp() > value.getTimestamp())
+                    && instance.getNode() instanceof LwM2mObjectInstance) {
+                LwM2mResource resource = ((LwM2mObjectInstance) instance.getNode()).getResources().get(
+                        path.getResourceId());
+                if (resource != null) {
+                    value = new ShadowValue(resource, instance.getTimestamp());
+                }
+            }
+        }
+
+        if (value == null || System.currentTimeMillis() - value.getTimestamp() > maxAge) {
+            return null;
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized void update(Client client, LwM2mPath path, LwM2mNode node) {
+        Validate.notNull(client);
+        Validate.notNull(path);
+        Validate.notNull(node);
+
+        Key key = new Key(client.getRegistrationId(), path);
+        if (values.put(key, new ShadowValue(node, System.currentTimeMillis())) == null) {
+            Set<LwM2mPath> paths = pathsByRegistration.get(key.registrationId);
+            if (paths == null) {
+                paths = new HashSet<>();
+                pathsByRegistration.put(key.registrationId, paths);
+            }
+            paths.add(path);
+        }
+    }
+
+    @Override
+    public synchronized void invalidate(Client client, LwM2mPath path) {
+        Validate.notNull(client);
+        Validate.notNull(path);
+
+        Set<LwM2mPath> paths = pathsByRegistration.get(client.getRegistrationId());
+        if (paths == null) {
+            return;
+        }
+        for (Iterator<LwM2mPath> it = paths.iterator(); it.hasNext();) {
+            LwM2mPath stored = it.next();
+            if (contains(stored, path) || contains(path, stored)) {
+                values.remove(new Key(client.getRegistrationId(), stored));
+                it.remove();
+            }
+        }
+        if (paths.isEmpty()) {
+            pathsByRegistration.remove(client.getRegistrationId());
+        }
+    }
+
+    @Override
+    public synchronized void remove(Client client) {
+        Set<LwM2mPath> paths = pathsByRegistration.remove(client.getRegistrationId());
+        if (paths != null) {
+            for (LwM2mPath path : paths) {
+                values.remove(new Key(client.getRegistrationId(), path));
+            }
+        }
+    }
+
+    /**
+     * @return the number of values currently stored
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * @return <code>true</code> if the node <code>parent</code> is <code>path</code> or one of its parents
+     */
+    private static boolean contains(LwM2mPath parent, LwM2mPath path) {
+        if (parent.getObjectId() != path.getObjectId()) {
+            return false;
+        }
+        if (parent.getObjectInstanceId() == null) {
+            return true;
+        }
+        if (!parent.getObjectInstanceId().equals(path.getObjectInstanceId())) {
+            return false;
+        }
+        return parent.getResourceId() == null || parent.getResourceId().equals(path.getResourceId());
+    }
+
+    // guarded by this
+    private void unindex(Key key) {
+        Set<LwM2mPath> paths = pathsByRegistration.get(key.registrationId);
+        if (paths != null) {
+            paths.remove(key.path);
+            if (paths.isEmpty()) {
+                pathsByRegistration.remove(key.registrationId);
+            }
+        }
+    }
+
+    @Override
+    public void registered(Client client) {
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        remove(client);
+    }
+
+    @Override
+    public void newObservation(Observation observation) {
+    }
+
+    @Override
+    public void cancelled(Observation observation) {
+    }
+
+    @Override
+    public void newValue(Observation observation, LwM2mNode value) {
+        update(observation.getClient(), observation.getPath(), value);
+    }
+
+    private static class Key {
+        final String registrationId;
+        final LwM2mPath path;
+
+        Key(String registrationId, LwM2mPath path) {
+            this.registrationId = registrationId;
+            this.path = path;
+        }
+
+        @Override
+        public int hashCode() {
+            return registrationId.hashCode() * 31 + path.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return registrationId.equals(other.registrationId) && path.equals(other.path);
+        }
+    }
+}
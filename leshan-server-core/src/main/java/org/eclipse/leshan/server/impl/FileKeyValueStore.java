@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.server.cluster.KeyValueStore;
+import org.eclipse.leshan.util.Charsets;
+import org.eclipse.leshan.util.Hex;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link KeyValueStore} keeping each entry in a file of a directory. The file name is the hexadecimal encoding of
+ * the key. The name of a key too long for the file system is the SHA-256 hash of the key instead, and the key is
+ * stored at the beginning of the file.
+ * <p>
+ * A value is written to a temporary file which then atomically replaces the previous file, so readers never see a
+ * partially written value. Several nodes can share the store through a shared file system. This store is meant as a
+ * reference implementation for small clusters: large deployments should rely on a distributed key-value store.
+ * </p>
+ */
+public class FileKeyValueStore implements KeyValueStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileKeyValueStore.class);
+
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final String LONG_KEY_SUFFIX = ".key";
+
+    // in hexadecimal characters: most file systems limit the file names to 255 bytes, temporary suffix included
+    private static final int MAX_NAME_LENGTH = 128;
+
+    private final File directory;
+    // unique among the nodes sharing the directory, so that their temporary files never collide
+    private final String instanceId = UUID.randomUUID().toString();
+    private final AtomicLong tmpSequence = new AtomicLong();
+
+    /**
+     * @param directory the directory of the entries, created if needed
+     */
+    public FileKeyValueStore(String directory) {
+        Validate.notEmpty(directory);
+        this.directory = new File(directory);
+        if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+            throw new IllegalStateException("Could not create directory " + directory);
+        }
+    }
+
+    @Override
+    public byte[] get(String key) {
+        File file = fileOf(key);
+        byte[] content;
+        try {
+            content = Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read entry " + key, e);
+        }
+        if (!isLongKey(file.getName())) {
+            return content;
+        }
+        Entry entry = readLongKeyEntry(content);
+        // a hash collision is not expected, but a different key must not be read as this one
+        return entry != null && entry.key.equals(key) ? entry.value : null;
+    }
+
+    @Override
+    public void put(String key, byte[] value) {
+        Validate.notNull(value);
+        File file = fileOf(key);
+        File tmp = new File(directory, file.getName() + "-" + instanceId + "-" + tmpSequence.incrementAndGet()
+                + TMP_SUFFIX);
+        try {
+            Files.write(tmp.toPath(), isLongKey(file.getName()) ? writeLongKeyEntry(key, value) : value);
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            if (!tmp.delete()) {
+                LOG.debug("Could not delete temporary file {}", tmp);
+            }
+            throw new IllegalStateException("Could not write entry " + key, e);
+        }
+    }
+
+    @Override
+    public byte[] remove(String key) {
+        byte[] previous = get(key);
+        if (previous != null) {
+            try {
+                Files.deleteIfExists(fileOf(key).toPath());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not remove entry " + key, e);
+            }
+        }
+        return previous;
+    }
+
+    @Override
+    public Map<String, byte[]> getAll(String prefix) {
+        Map<String, byte[]> entries = new HashMap<>();
+        String[] names = directory.list();
+        if (names == null) {
+            return entries;
+        }
+        for (String name : names) {
+            if (name.endsWith(TMP_SUFFIX)) {
+                continue;
+            }
+            if (isLongKey(name)) {
+                getLongKeyEntry(name, prefix, entries);
+                continue;
+            }
+            String key;
+            try {
+                key = fromHex(name);
+            } catch (IllegalArgumentException e) {
+                LOG.debug("Ignoring unknown file {}", name);
+                continue;
+            }
+            if (key.startsWith(prefix)) {
+                byte[] value = get(key);
+                // may have been removed in the meantime
+                if (value != null) {
+                    entries.put(key, value);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private void getLongKeyEntry(String name, String prefix, Map<String, byte[]> entries) {
+        Entry entry;
+        try {
+            entry = readLongKeyEntry(Files.readAllBytes(new File(directory, name).toPath()));
+        } catch (NoSuchFileException e) {
+            // removed in the meantime
+            return;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read file " + name, e);
+        }
+        if (entry != null && entry.key.startsWith(prefix)) {
+            entries.put(entry.key, entry.value);
+        }
+    }
+
+    private File fileOf(String key) {
+        Validate.notNull(key);
+        String name = toHex(key);
+        if (name.length() > MAX_NAME_LENGTH) {
+            try {
+                name = Hex.encodeHex(MessageDigest.getInstance("SHA-256").digest(key.getBytes(Charsets.UTF_8)))
+                        + LONG_KEY_SUFFIX;
+            } catch (NoSuchAlgorithmException e) {
+                // SHA-256 is available on every Java platform
+                throw new IllegalStateException(e);
+            }
+        }
+        return new File(directory, name);
+    }
+
+    private static boolean isLongKey(String name) {
+        return name.endsWith(LONG_KEY_SUFFIX);
+    }
+
+    private static byte[] writeLongKeyEntry(String key, byte[] value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(key);
+            out.write(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Entry readLongKeyEntry(byte[] content) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+            String key = in.readUTF();
+            byte[] value = new byte[in.available()];
+            in.readFully(value);
+            return new Entry(key, value);
+        } catch (IOException e) {
+            LOG.debug("Invalid long key entry", e);
+            return null;
+        }
+    }
+
+    private static class Entry {
+        final String key;
+        final byte[] value;
+
+        Entry(String key, byte[] value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static String toHex(String key) {
+        return Hex.encodeHex(key.getBytes(Charsets.UTF_8));
+    }
+
+    private static String fromHex(String hex) {
+        return new String(Hex.decodeHex(hex), Charsets.UTF_8);
+    }
+}
@@ -0,0 +1,347 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.request.GroupOperation;
+import org.eclipse.leshan.server.request.GroupRequestListener;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the same request to a group of clients.
+ * <p>
+ * The number of requests waiting for a response is capped for all the group operations together and the rate at
+ * which requests are sent can be limited. When several operations are running, the clients of each operation are
+ * served in turn. The requests are sent asynchronously through the given {@link LwM2mRequestSender}: the per-client
+ * ordering and limits of this sender still apply.
+ * </p>
+ */
+public class GroupRequestSender {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GroupRequestSender.class);
+
+    /** The default maximum number of group requests waiting for a response */
+    public static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 100;
+
+    private final LwM2mRequestSender sender;
+    private final HashedWheelTimer timer;
+    private final int maxConcurrentRequests;
+    private final double maxRequestsPerSecond;
+
+    // guarded by this
+    private int available;
+    private final Queue<Operation<?>> operations = new ArrayDeque<>();
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private boolean refillScheduled = false;
+    private boolean pumping = false;
+
+    /**
+     * Creates a sender without rate limit.
+     */
+    public GroupRequestSender(LwM2mRequestSender sender, HashedWheelTimer timer) {
+        this(sender, timer, DEFAULT_MAX_CONCURRENT_REQUESTS, 0);
+    }
+
+    /**
+     * @param sender the sender used for each client
+     * @param timer the timer used to delay the requests exceeding the rate limit
+     * @param maxConcurrentRequests the maximum number of requests waiting for a response
+     * @param maxRequestsPerSecond the maximum number of requests sent per second or 0 for no limit
+     */
+    public GroupRequestSender(LwM2mRequestSender sender, HashedWheelTimer timer, int maxConcurrentRequests,
+            double maxRequestsPerSecond) {
+        Validate.notNull(sender);
+        Validate.notNull(timer);
+        Validate.isTrue(maxConcurrentRequests > 0, "the concurrency limit must be positive");
+        Validate.isTrue(maxRequestsPerSecond >= 0, "the rate limit must not be negative");
+        this.sender = sender;
+        this.timer = timer;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.maxRequestsPerSecond = maxRequestsPerSecond;
+        this.available = maxConcurrentRequests;
+        this.tokens = burstSize();
+    }
+
+    /**
+     * Sends a request to a group of clients.
+     * <p>
+     * The same request instance is sent to all the clients.
+     * </p>
+     *
+     * @param destinations the targeted clients
+     * @param request the request to send
+     * @param timeout the timeout of each request in milliseconds or <code>null</code> for the CoAP timeout
+     * @param listener the listener receiving the results
+     * @return the handle on the operation
+     */
+    public <T extends LwM2mResponse> GroupOperation send(Collection<Client> destinations, DownlinkRequest<T> request,
+            Long timeout, GroupRequestListener<T> listener) {
+        Validate.notNull(destinations);
+        Validate.notNull(request);
+        Validate.notNull(listener);
+
+        Operation<T> operation = new Operation<>(new ArrayList<>(destinations), request, timeout, listener);
+        LOG.debug("Sending {} to {} clients", request, operation.total);
+        if (operation.total == 0) {
+            operation.complete();
+            return operation;
+        }
+        synchronized (this) {
+            operations.add(operation);
+        }
+        pump();
+        return operation;
+    }
+
+    /**
+     * @return the number of group requests waiting for a response
+     */
+    public synchronized int getConcurrentRequests() {
+        return maxConcurrentRequests - available;
+    }
+
+    private double burstSize() {
+        return Math.max(1, maxRequestsPerSecond);
+    }
+
+    /**
+     * @return <code>true</code> if a request can be sent now (consumes a token)
+     */
+    // guarded by this
+    private boolean acquireToken() {
+        if (maxRequestsPerSecond == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burstSize(), tokens + (now - lastRefill) * maxRequestsPerSecond / 1e9);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        if (!refillScheduled) {
+            refillScheduled = true;
+            long delay = (long) Math.ceil((1 - tokens) * 1000 / maxRequestsPerSecond);
+            timer.newTimeout(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (GroupRequestSender.this) {
+                        refillScheduled = false;
+                    }
+                    pump();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        return false;
+    }
+
+    /**
+     * Sends requests while the limits allow it. Only one thread sends at a time: the other ones just return, the limits
+     * are checked again before each request.
+     */
+    private void pump() {
+        synchronized (this) {
+            if (pumping) {
+                return;
+            }
+            pumping = true;
+        }
+        boolean stopped = false;
+        try {
+            while (true) {
+                Operation<?> operation;
+                Client client;
+                synchronized (this) {
+                    if (available == 0 || operations.isEmpty() || !acquireToken()) {
+                        pumping = false;
+                        stopped = true;
+                        return;
+                    }
+                    operation = operations.poll();
+                    client = operation.nextClient();
+                    if (operation.hasNextClient()) {
+                        // round robin between the running operations
+                        operations.add(operation);
+                    }
+                    available--;
+                }
+                operation.send(client);
+            }
+        } finally {
+            if (!stopped) {
+                synchronized (this) {
+                    pumping = false;
+                }
+            }
+        }
+    }
+
+    private void release() {
+        synchronized (this) {
+            available++;
+        }
+        pump();
+    }
+
+    private synchronized void remove(Operation<?> operation) {
+        operations.remove(operation);
+    }
+
+    private class Operation<T extends LwM2mResponse> implements GroupOperation {
+
+        private final DownlinkRequest<T> request;
+        private final Long timeout;
+        private final GroupRequestListener<T> listener;
+        private final int total;
+
+        // guarded by GroupRequestSender.this
+        private final Iterator<Client> clients;
+        private int notSent;
+
+        private final AtomicInteger responses = new AtomicInteger();
+        private final AtomicInteger errors = new AtomicInteger();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private volatile boolean cancelled = false;
+        private volatile boolean completed = false;
+
+        Operation(List<Client> destinations, DownlinkRequest<T> request, Long timeout,
+                GroupRequestListener<T> listener) {
+            this.request = request;
+            this.timeout = timeout;
+            this.listener = listener;
+            this.total = destinations.size();
+            this.notSent = total;
+            this.clients = destinations.iterator();
+        }
+
+        Client nextClient() {
+            notSent--;
+            inFlight.incrementAndGet();
+            return clients.next();
+        }
+
+        boolean hasNextClient() {
+            return clients.hasNext();
+        }
+
+        void send(final Client client) {
+            try {
+                sender.send(client, request, timeout, new ResponseCallback<T>() {
+                    @Override
+                    public void onResponse(T response) {
+                        responses.incrementAndGet();
+                        listener.onResponse(client, response);
+                        done();
+                    }
+                }, new ErrorCallback() {
+                    @Override
+                    public void onError(Exception e) {
+                        errors.incrementAndGet();
+                        listener.onError(client, e);
+                        done();
+                    }
+                });
+            } catch (RuntimeException e) {
+                errors.incrementAndGet();
+                listener.onError(client, e);
+                done();
+            }
+        }
+
+        private void done() {
+            boolean last;
+            synchronized (GroupRequestSender.this) {
+                last = inFlight.decrementAndGet() == 0 && (notSent == 0 || cancelled);
+            }
+            release();
+            if (last) {
+                complete();
+            }
+        }
+
+        void complete() {
+            completed = true;
+            listener.onCompleted(this);
+        }
+
+        @Override
+        public int getTotal() {
+            return total;
+        }
+
+        @Override
+        public int getResponses() {
+            return responses.get();
+        }
+
+        @Override
+        public int getErrors() {
+            return errors.get();
+        }
+
+        @Override
+        public int getPending() {
+            synchronized (GroupRequestSender.this) {
+                return inFlight.get() + (cancelled ? 0 : notSent);
+            }
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        @Override
+        public void cancel() {
+            boolean idle;
+            synchronized (GroupRequestSender.this) {
+                if (cancelled || completed || notSent == 0) {
+                    return;
+                }
+                cancelled = true;
+                remove(this);
+                idle = inFlight.get() == 0;
+            }
+            LOG.debug("Group operation {} cancelled: {} clients skipped", request, notSent);
+            if (idle) {
+                complete();
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
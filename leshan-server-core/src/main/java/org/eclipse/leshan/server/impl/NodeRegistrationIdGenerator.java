@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.core.request.RegisterRequest;
+import org.eclipse.leshan.server.registration.RegistrationIdGenerator;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Creates registration identifiers made of a node identifier and a sequence number (<code>node.sequence</code>), so
+ * that the node which handled the registration can be found from the identifier alone.
+ * <p>
+ * The sequence number is incremented atomically without locking. It starts from the current time (shifted by 12
+ * bits), so the identifiers stay unique across restarts as long as less than 4096 registrations per millisecond are
+ * created on average.
+ * </p>
+ */
+public class NodeRegistrationIdGenerator implements RegistrationIdGenerator {
+
+    private static final char SEPARATOR = '.';
+
+    private final String nodeId;
+    private final AtomicLong sequence;
+
+    /**
+     * @param nodeId the identifier of this node: letters, digits and dashes only
+     */
+    public NodeRegistrationIdGenerator(String nodeId) {
+        Validate.notEmpty(nodeId);
+        Validate.isTrue(nodeId.matches("[A-Za-z0-9-]+"), "invalid node id: " + nodeId);
+        this.nodeId = nodeId;
+        this.sequence = new AtomicLong(System.currentTimeMillis() << 12);
+    }
+
+    @Override
+    public String generate(RegisterRequest request) {
+        return nodeId + SEPARATOR + Long.toString(sequence.incrementAndGet(), Character.MAX_RADIX);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the identifier of the node which created the given registration identifier or <code>null</code> if it
+     *         was not created by a {@link NodeRegistrationIdGenerator}
+     */
+    public static String getNodeId(String registrationId) {
+        int separator = registrationId.lastIndexOf(SEPARATOR);
+        return separator > 0 ? registrationId.substring(0, separator) : null;
+    }
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.SyncResponseCallback;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.cluster.RequestForwarder;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A {@link LwM2mRequestSender} sending the requests through the node of the cluster which owns the client endpoint.
+ * <p>
+ * The owner is the node which handled the last registration, update or keep-alive of the client, as recorded by the
+ * {@link SharedClientRegistry}: behind a load balancer without affinity, the client may move to another node after its
+ * registration. Without a recorded owner, the node which handled the registration is found from the registration id
+ * (see {@link NodeRegistrationIdGenerator}).
+ * </p>
+ * <p>
+ * The requests for the clients owned by this node, or without any owner, are sent locally. The other ones are given to
+ * the {@link RequestForwarder}.
+ * </p>
+ */
+public class NodeRoutingRequestSender implements LwM2mRequestSender {
+
+    private final String nodeId;
+    private final LwM2mRequestSender delegate;
+    private final RequestForwarder forwarder;
+    private final SharedClientRegistry clientRegistry;
+
+    /**
+     * Creates a sender finding the owner of the clients from their registration id only.
+     *
+     * @param nodeId the identifier of this node
+     * @param delegate the sender used for the clients owned by this node
+     * @param forwarder the forwarder used for the other clients or <code>null</code> to fail their requests
+     */
+    public NodeRoutingRequestSender(String nodeId, LwM2mRequestSender delegate, RequestForwarder forwarder) {
+        this(nodeId, delegate, forwarder, null);
+    }
+
+    /**
+     * @param nodeId the identifier of this node
+     * @param delegate the sender used for the clients owned by this node
+     * @param forwarder the forwarder used for the other clients or <code>null</code> to fail their requests
+     * @param clientRegistry the registry recording the owner of each client or <code>null</code> to find it from the
+     *        registration id only
+     */
+    public NodeRoutingRequestSender(String nodeId, LwM2mRequestSender delegate, RequestForwarder forwarder,
+            SharedClientRegistry clientRegistry) {
+        Validate.notEmpty(nodeId);
+        Validate.notNull(delegate);
+        this.nodeId = nodeId;
+        this.delegate = delegate;
+        this.forwarder = forwarder;
+        this.clientRegistry = clientRegistry;
+    }
+
+    @Override
+    public <T extends LwM2mResponse> T send(Client destination, DownlinkRequest<T> request, Long timeout) {
+        String owner = getOwner(destination);
+        if (owner == null) {
+            return delegate.send(destination, request, timeout);
+        }
+        SyncResponseCallback<T> callback = new SyncResponseCallback<T>();
+        forward(owner, destination, request, timeout, callback, callback);
+        return callback.waitForResponse();
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        send(destination, request, null, responseCallback, errorCallback);
+    }
+
+    @Override
+    public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, Long timeout,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        String owner = getOwner(destination);
+        if (owner == null) {
+            delegate.send(destination, request, timeout, responseCallback, errorCallback);
+        } else {
+            forward(owner, destination, request, timeout, responseCallback, errorCallback);
+        }
+    }
+
+    /**
+     * @return the id of the node owning the client or <code>null</code> if it is this node
+     */
+    private String getOwner(Client destination) {
+        Validate.notNull(destination);
+        String owner = null;
+        if (clientRegistry != null) {
+            owner = clientRegistry.getOwnerNode(destination.getRegistrationId());
+        }
+        if (owner == null) {
+            owner = NodeRegistrationIdGenerator.getNodeId(destination.getRegistrationId());
+        }
+        return owner == null || owner.equals(nodeId) ? null : owner;
+    }
+
+    private <T extends LwM2mResponse> void forward(String owner, Client destination, DownlinkRequest<T> request,
+            Long timeout, ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+        if (forwarder == null) {
+            errorCallback.onError(new RequestFailedException(String.format("Client %s is owned by node %s",
+                    destination.getEndpoint(), owner)));
+            return;
+        }
+        forwarder.forward(owner, destination, request, timeout, responseCallback, errorCallback);
+    }
+}
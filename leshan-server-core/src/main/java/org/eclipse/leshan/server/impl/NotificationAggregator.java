@@ -0,0 +1,330 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.Value;
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.aggregation.Aggregate;
+import org.eclipse.leshan.server.aggregation.AggregateListener;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationRegistryListener;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Computes the count, min, max and sum of the values notified for each numeric resource over time windows, and emits
+ * one {@link Aggregate} per resource when a window closes.
+ * <p>
+ * Windows are aligned on the epoch. A window of the size of the step is a tumbling window; a larger window (a multiple
+ * of the step) is a sliding window emitted at each step. Each resource keeps the statistics of each step of the window
+ * in primitive arrays.
+ * </p>
+ * <p>
+ * The resources are partitioned by endpoint: each partition has its own lock and its own thread closing the windows,
+ * so the aggregation scales with the number of cores. Resources without values for a whole window are forgotten.
+ * </p>
+ */
+public class NotificationAggregator implements ObservationRegistryListener, ClientRegistryListener, Startable,
+        Stoppable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationAggregator.class);
+
+    private final long step;
+    private final int steps;
+    private final Partition[] partitions;
+    private final List<AggregateListener> listeners = new CopyOnWriteArrayList<>();
+
+    private ScheduledExecutorService executor;
+
+    // metrics
+    private final AtomicLong emittedAggregates = new AtomicLong();
+
+    /**
+     * @param window the duration of a window in milliseconds
+     * @param step the time between two windows in milliseconds (equal to the window for tumbling windows)
+     * @param partitions the number of partitions and of threads closing the windows
+     */
+    public NotificationAggregator(long window, long step, int partitions) {
+        Validate.isTrue(step > 0, "the step must be positive");
+        Validate.isTrue(window >= step && window % step == 0, "the window must be a multiple of the step");
+        Validate.isTrue(partitions > 0, "the number of partitions must be positive");
+        this.step = step;
+        this.steps = (int) (window / step);
+        this.partitions = new Partition[partitions];
+        for (int i = 0; i < partitions; i++) {
+            this.partitions[i] = new Partition();
+        }
+    }
+
+    public void addListener(AggregateListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(AggregateListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newScheduledThreadPool(partitions.length, new NamedThreadFactory("leshan-aggregator"));
+
+        // close the windows right after the step boundaries
+        long delay = step - System.currentTimeMillis() % step + 10;
+        for (final Partition partition : partitions) {
+            executor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        partition.close(System.currentTimeMillis());
+                    } catch (RuntimeException e) {
+                        LOG.warn("Unexpected error while closing aggregation windows", e);
+                    }
+                }
+            }, delay, step, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * @return the number of aggregates emitted since the creation of this aggregator
+     */
+    public long getEmittedAggregates() {
+        return emittedAggregates.get();
+    }
+
+    /**
+     * @return the number of resources being aggregated
+     */
+    public int getSeriesCount() {
+        int count = 0;
+        for (Partition partition : partitions) {
+            count += partition.size();
+        }
+        return count;
+    }
+
+    @Override
+    public void newValue(Observation observation, LwM2mNode value) {
+        final long time = System.currentTimeMillis();
+        final String endpoint = observation.getClient().getEndpoint();
+        NumericResources.forEach(observation.getPath(), value, new NumericResources.Handler() {
+            @Override
+            public void numericValue(LwM2mPath path, Value<?> resourceValue) {
+                record(endpoint, path, ((Number) resourceValue.value).doubleValue(), time);
+            }
+        });
+    }
+
+    void record(String endpoint, LwM2mPath path, double value, long time) {
+        getPartition(endpoint).add(endpoint, path, value, time);
+    }
+
+    /**
+     * Closes the windows ending at the last step boundary before the given time.
+     */
+    void closeWindows(long now) {
+        for (Partition partition : partitions) {
+            partition.close(now);
+        }
+    }
+
+    private Partition getPartition(String endpoint) {
+        return partitions[(endpoint.hashCode() & Integer.MAX_VALUE) % partitions.length];
+    }
+
+    @Override
+    public void cancelled(Observation observation) {
+    }
+
+    @Override
+    public void newObservation(Observation observation) {
+    }
+
+    @Override
+    public void registered(Client client) {
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        getPartition(client.getEndpoint()).remove(client.getEndpoint());
+    }
+
+    private class Partition {
+        // guarded by this
+        private final Map<String /* endpoint */, Map<LwM2mPath, Series>> series = new HashMap<>();
+        private long lastClosedStep = Long.MIN_VALUE;
+
+        synchronized void add(String endpoint, LwM2mPath path, double value, long time) {
+            Map<LwM2mPath, Series> endpointSeries = series.get(endpoint);
+            if (endpointSeries == null) {
+                endpointSeries = new HashMap<>();
+                series.put(endpoint, endpointSeries);
+            }
+            Series s = endpointSeries.get(path);
+            if (s == null) {
+                s = new Series(steps + 1);
+                endpointSeries.put(path, s);
+            }
+            s.add(time / step, value);
+        }
+
+        synchronized void remove(String endpoint) {
+            series.remove(endpoint);
+        }
+
+        synchronized int size() {
+            int size = 0;
+            for (Map<LwM2mPath, Series> endpointSeries : series.values()) {
+                size += endpointSeries.size();
+            }
+            return size;
+        }
+
+        void close(long now) {
+            // the window made of the steps [end - steps, end - 1] is complete
+            long end = now / step;
+            List<Aggregate> aggregates = new ArrayList<>();
+            synchronized (this) {
+                if (end <= lastClosedStep) {
+                    return;
+                }
+                if (lastClosedStep != Long.MIN_VALUE && end > lastClosedStep + 1) {
+                    LOG.debug("{} aggregation windows skipped", end - lastClosedStep - 1);
+                }
+                lastClosedStep = end;
+
+                for (Iterator<Map.Entry<String, Map<LwM2mPath, Series>>> it = series.entrySet().iterator(); it
+                        .hasNext();) {
+                    Map.Entry<String, Map<LwM2mPath, Series>> e = it.next();
+                    for (Iterator<Map.Entry<LwM2mPath, Series>> pit = e.getValue().entrySet().iterator(); pit
+                            .hasNext();) {
+                        Map.Entry<LwM2mPath, Series> pe = pit.next();
+                        Aggregate aggregate = pe.getValue().aggregate(e.getKey(), pe.getKey(), end);
+                        if (aggregate != null) {
+                            aggregates.add(aggregate);
+                        } else if (pe.getValue().lastStep < end) {
+                            // no value during the whole window
+                            pit.remove();
+                        }
+                    }
+                    if (e.getValue().isEmpty()) {
+                        it.remove();
+                    }
+                }
+            }
+
+            // notify out of the lock
+            emittedAggregates.addAndGet(aggregates.size());
+            for (Aggregate aggregate : aggregates) {
+                for (AggregateListener listener : listeners) {
+                    listener.onAggregate(aggregate);
+                }
+            }
+        }
+    }
+
+    /**
+     * The statistics of each step of a window, in ring buffers indexed by step number. One more step than the window
+     * is kept, so the values of the current step do not overwrite the oldest step of the window being closed.
+     */
+    private class Series {
+        final long[] stepNumbers;
+        final long[] counts;
+        final double[] mins;
+        final double[] maxs;
+        final double[] sums;
+        long lastStep = Long.MIN_VALUE;
+
+        Series(int size) {
+            stepNumbers = new long[size];
+            counts = new long[size];
+            mins = new double[size];
+            maxs = new double[size];
+            sums = new double[size];
+        }
+
+        void add(long stepNumber, double value) {
+            int i = (int) (stepNumber % stepNumbers.length);
+            if (stepNumbers[i] != stepNumber || counts[i] == 0) {
+                stepNumbers[i] = stepNumber;
+                counts[i] = 1;
+                mins[i] = value;
+                maxs[i] = value;
+                sums[i] = value;
+            } else {
+                counts[i]++;
+                mins[i] = Math.min(mins[i], value);
+                maxs[i] = Math.max(maxs[i], value);
+                sums[i] += value;
+            }
+            lastStep = Math.max(lastStep, stepNumber);
+        }
+
+        /**
+         * @return the aggregate of the steps [end - steps, end - 1] or <code>null</code> if there is no value
+         */
+        Aggregate aggregate(String endpoint, LwM2mPath path, long end) {
+            long count = 0;
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            double sum = 0;
+            for (int i = 0; i < stepNumbers.length; i++) {
+                if (counts[i] > 0 && stepNumbers[i] >= end - steps && stepNumbers[i] < end) {
+                    count += counts[i];
+                    min = Math.min(min, mins[i]);
+                    max = Math.max(max, maxs[i]);
+                    sum += sums[i];
+                }
+            }
+            if (count == 0) {
+                return null;
+            }
+            return new Aggregate(endpoint, path, (end - steps) * step, end * step, count, min, max, sum);
+        }
+    }
+}
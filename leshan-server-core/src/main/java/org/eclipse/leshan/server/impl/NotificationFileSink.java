@@ -0,0 +1,452 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mObject;
+import org.eclipse.leshan.core.node.LwM2mObjectInstance;
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.Value;
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationRegistryListener;
+import org.eclipse.leshan.util.Charsets;
+import org.eclipse.leshan.util.Hex;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ObservationRegistryListener} appending the notified values to rolling local files, so that they can be
+ * exported to an external system without slowing down the reception of the notifications.
+ * <p>
+ * Each resource value is written as a line <code>&lt;timestamp&gt; &lt;endpoint&gt; &lt;path&gt; &lt;type&gt;
+ * &lt;value&gt;</code> where the type is <code>i</code> (integer), <code>f</code> (floating point), <code>b</code>
+ * (boolean), <code>t</code> (time in milliseconds), <code>s</code> (string) or <code>o</code> (opaque, in hexadecimal).
+ * Spaces, new lines and backslashes in the endpoints and strings are escaped with a backslash. The values of a
+ * multiple instances resource are written with the resource instance id appended to the path.
+ * </p>
+ * <p>
+ * The notifications are only queued in the calling thread. A single writer thread drains the queue and writes the
+ * records in batches: a batch is forced to the disk once, whatever its size (group commit). When the queue is full,
+ * the new records are dropped. A new file is started when the current one exceeds the maximum size, and the oldest
+ * files are deleted beyond the maximum number of files.
+ * </p>
+ */
+public class NotificationFileSink implements ObservationRegistryListener, Startable, Stoppable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(NotificationFileSink.class);
+
+    /** The default maximum size of a file in bytes */
+    public static final long DEFAULT_MAX_FILE_SIZE = 16 * 1024 * 1024;
+
+    /** The default maximum number of files kept in the directory */
+    public static final int DEFAULT_MAX_FILES = 10;
+
+    /** The default maximum number of records waiting to be written */
+    public static final int DEFAULT_QUEUE_CAPACITY = 100000;
+
+    private static final String FILE_PREFIX = "notifications-";
+    private static final String FILE_SUFFIX = ".log";
+
+    private static final int MAX_BATCH_SIZE = 10000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final File directory;
+    private final long maxFileSize;
+    private final int maxFiles;
+    private final int queueCapacity;
+
+    private final Queue<Record> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private volatile boolean running = false;
+    private volatile Thread writer;
+
+    // accessed by the writer thread only
+    private final Deque<File> files = new ArrayDeque<>();
+    private FileChannel channel;
+    private long fileSize;
+
+    // metrics
+    private final AtomicLong writtenRecords = new AtomicLong();
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+
+    public NotificationFileSink(String directory) {
+        this(directory, DEFAULT_MAX_FILE_SIZE, DEFAULT_MAX_FILES, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * @param directory the directory of the files
+     * @param maxFileSize the size in bytes beyond which a new file is started
+     * @param maxFiles the maximum number of files kept in the directory
+     * @param queueCapacity the maximum number of records waiting to be written
+     */
+    public NotificationFileSink(String directory, long maxFileSize, int maxFiles, int queueCapacity) {
+        Validate.notEmpty(directory);
+        Validate.isTrue(maxFileSize > 0, "the maximum file size must be positive");
+        Validate.isTrue(maxFiles > 0, "the maximum number of files must be positive");
+        Validate.isTrue(queueCapacity > 0, "the queue capacity must be positive");
+        this.directory = new File(directory);
+        this.maxFileSize = maxFileSize;
+        this.maxFiles = maxFiles;
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public synchronized void start() {
+        if (writer != null) {
+            return;
+        }
+        running = true;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "leshan-notification-sink");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Writes the queued records and stops the writer thread.
+     */
+    @Override
+    public synchronized void stop() {
+        Thread thread = writer;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * @return the number of records written since the creation of this sink
+     */
+    public long getWrittenRecords() {
+        return writtenRecords.get();
+    }
+
+    /**
+     * @return the number of records dropped because the queue was full or the file could not be written
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    /**
+     * @return the number of batches forced to the disk since the creation of this sink
+     */
+    public long getCommits() {
+        return commits.get();
+    }
+
+    /**
+     * @return the number of records waiting to be written
+     */
+    public int getQueuedRecords() {
+        return queued.get();
+    }
+
+    @Override
+    public void newValue(Observation observation, LwM2mNode value) {
+        long time = System.currentTimeMillis();
+        String endpoint = observation.getClient().getEndpoint();
+        String path = observation.getPath().toString();
+        if (value instanceof LwM2mResource) {
+            add(time, endpoint, path, (LwM2mResource) value);
+        } else if (value instanceof LwM2mObjectInstance) {
+            add(time, endpoint, path, (LwM2mObjectInstance) value);
+        } else if (value instanceof LwM2mObject) {
+            for (LwM2mObjectInstance instance : ((LwM2mObject) value).getInstances().values()) {
+                add(time, endpoint, path + "/" + instance.getId(), instance);
+            }
+        }
+    }
+
+    private void add(long time, String endpoint, String instancePath, LwM2mObjectInstance instance) {
+        for (LwM2mResource resource : instance.getResources().values()) {
+            add(time, endpoint, instancePath + "/" + resource.getId(), resource);
+        }
+    }
+
+    private void add(long time, String endpoint, String resourcePath, LwM2mResource resource) {
+        if (resource.isMultiInstances()) {
+            Value<?>[] values = resource.getValues();
+            for (int i = 0; i < values.length; i++) {
+                add(new Record(time, endpoint, resourcePath + "/" + i, values[i]));
+            }
+        } else {
+            add(new Record(time, endpoint, resourcePath, resource.getValue()));
+        }
+    }
+
+    private void add(Record record) {
+        int size = queued.incrementAndGet();
+        if (size > queueCapacity) {
+            queued.decrementAndGet();
+            droppedRecords.incrementAndGet();
+            return;
+        }
+        queue.add(record);
+        if (size == 1) {
+            // the writer may be waiting for records
+            Thread thread = writer;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+    }
+
+    @Override
+    public void cancelled(Observation observation) {
+    }
+
+    @Override
+    public void newObservation(Observation observation) {
+    }
+
+    // /////// Writer thread
+
+    private void writeLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        StringBuilder line = new StringBuilder();
+        listFiles();
+        try {
+            while (true) {
+                // read the flag before polling to write the records queued before the stop
+                boolean stopping = !running;
+                Record record = queue.poll();
+                if (record == null) {
+                    if (stopping) {
+                        return;
+                    }
+                    LockSupport.parkNanos(this, IDLE_WAIT);
+                    continue;
+                }
+
+                // take all the records queued while the previous batch was written
+                int count = 0;
+                boolean written = true;
+                do {
+                    queued.decrementAndGet();
+                    count++;
+                    line.setLength(0);
+                    byte[] bytes = format(record, line).getBytes(Charsets.UTF_8);
+                    if (buffer.remaining() < bytes.length) {
+                        written &= write(buffer);
+                        if (bytes.length > buffer.capacity()) {
+                            written &= write(ByteBuffer.wrap(bytes));
+                            continue;
+                        }
+                    }
+                    buffer.put(bytes);
+                } while (count < MAX_BATCH_SIZE && (record = queue.poll()) != null);
+
+                written &= write(buffer);
+                if (written && commit()) {
+                    writtenRecords.addAndGet(count);
+                } else {
+                    droppedRecords.addAndGet(count);
+                }
+            }
+        } finally {
+            closeChannel();
+        }
+    }
+
+    /**
+     * Writes the content of the buffer to the current file and clears the buffer.
+     */
+    private boolean write(ByteBuffer buffer) {
+        buffer.flip();
+        try {
+            if (channel == null) {
+                openChannel();
+            }
+            while (buffer.hasRemaining()) {
+                fileSize += channel.write(buffer);
+            }
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not write notifications to file", e);
+            closeChannel();
+            return false;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Forces the written records to the disk and starts a new file if the current one is full.
+     */
+    private boolean commit() {
+        try {
+            channel.force(false);
+            commits.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not write notifications to file", e);
+            closeChannel();
+            return false;
+        } finally {
+            if (channel != null && fileSize >= maxFileSize) {
+                closeChannel();
+            }
+        }
+    }
+
+    private void openChannel() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory " + directory);
+        }
+        long time = System.currentTimeMillis();
+        File file;
+        while ((file = new File(directory, String.format("%s%013d%s", FILE_PREFIX, time, FILE_SUFFIX))).exists()) {
+            time++;
+        }
+        channel = new FileOutputStream(file).getChannel();
+        fileSize = 0;
+        files.addLast(file);
+        while (files.size() > maxFiles) {
+            File oldest = files.removeFirst();
+            if (!oldest.delete()) {
+                LOG.warn("Could not delete notification file {}", oldest);
+            }
+        }
+        LOG.debug("Writing notifications to {}", file);
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close notification file", e);
+            }
+            channel = null;
+        }
+    }
+
+    private void listFiles() {
+        File[] existing = directory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+            }
+        });
+        files.clear();
+        if (existing != null) {
+            // the names sort in creation order
+            Arrays.sort(existing);
+            files.addAll(Arrays.asList(existing));
+        }
+    }
+
+    static String format(Record record, StringBuilder b) {
+        b.append(record.time).append(' ');
+        escape(record.endpoint, b);
+        b.append(' ').append(record.path).append(' ');
+        Value<?> value = record.value;
+        switch (value.type) {
+        case INTEGER:
+        case LONG:
+            b.append("i ").append(value.value);
+            break;
+        case FLOAT:
+        case DOUBLE:
+            b.append("f ").append(value.value);
+            break;
+        case BOOLEAN:
+            b.append("b ").append(value.value);
+            break;
+        case TIME:
+            b.append("t ").append(((Date) value.value).getTime());
+            break;
+        case OPAQUE:
+            Hex.appendHex((byte[]) value.value, b.append("o "));
+            break;
+        default:
+            b.append("s ");
+            escape(String.valueOf(value.value), b);
+        }
+        return b.append('\n').toString();
+    }
+
+    private static void escape(String s, StringBuilder b) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+            case ' ':
+                b.append("\\s");
+                break;
+            case '\n':
+                b.append("\\n");
+                break;
+            case '\r':
+                b.append("\\r");
+                break;
+            case '\\':
+                b.append("\\\\");
+                break;
+            default:
+                b.append(c);
+            }
+        }
+    }
+
+    static class Record {
+        final long time;
+        final String endpoint;
+        final String path;
+        final Value<?> value;
+
+        Record(long time, String endpoint, String path, Value<?> value) {
+            this.time = time;
+            this.endpoint = endpoint;
+            this.path = path;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mObject;
+import org.eclipse.leshan.core.node.LwM2mObjectInstance;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.Value;
+
+/**
+ * Extracts the values of the single-instance numeric resources contained in a notified node.
+ */
+final class NumericResources {
+
+    interface Handler {
+        /**
+         * Called for each numeric resource.
+         *
+         * @param path the path of the resource
+         * @param value an <code>INTEGER</code>, <code>LONG</code>, <code>FLOAT</code> or <code>DOUBLE</code> value
+         */
+        void numericValue(LwM2mPath path, Value<?> value);
+    }
+
+    private NumericResources() {
+    }
+
+    /**
+     * @return <code>true</code> if the value is an integer or a floating point number
+     */
+    static boolean isNumeric(Value<?> value) {
+        switch (value.type) {
+        case INTEGER:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the value is a floating point number
+     */
+    static boolean isFloatingPoint(Value<?> value) {
+        return value.type == Value.DataType.FLOAT || value.type == Value.DataType.DOUBLE;
+    }
+
+    /**
+     * Calls the handler for each numeric resource of the node.
+     *
+     * @param path the path of the node
+     * @param node a resource, an object instance or an object
+     */
+    static void forEach(LwM2mPath path, LwM2mNode node, Handler handler) {
+        if (node instanceof LwM2mResource) {
+            if (path.isResource()) {
+                forResource(path, (LwM2mResource) node, handler);
+            }
+        } else if (node instanceof LwM2mObjectInstance) {
+            forInstance(path.getObjectId(), (LwM2mObjectInstance) node, handler);
+        } else if (node instanceof LwM2mObject) {
+            for (LwM2mObjectInstance instance : ((LwM2mObject) node).getInstances().values()) {
+                forInstance(path.getObjectId(), instance, handler);
+            }
+        }
+    }
+
+    private static void forInstance(int objectId, LwM2mObjectInstance instance, Handler handler) {
+        for (LwM2mResource resource : instance.getResources().values()) {
+            forResource(new LwM2mPath(objectId, instance.getId(), resource.getId()), resource, handler);
+        }
+    }
+
+    private static void forResource(LwM2mPath path, LwM2mResource resource, Handler handler) {
+        if (!resource.isMultiInstances() && isNumeric(resource.getValue())) {
+            handler.numericValue(path, resource.getValue());
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.Value;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.history.ObservationHistory;
+import org.eclipse.leshan.server.history.TimeSeries;
+import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationRegistryListener;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ObservationHistory} fed by the notifications of the observation registry.
+ * <p>
+ * Each resource uses two <code>long</code> arrays of the configured capacity (16 bytes per sample). The number of
+ * resources with a history is bounded: the resources observed once the limit is reached are not recorded.
+ * </p>
+ * <p>
+ * The notifications of a deregistered client processed after the deregistration event are ignored, so that they do
+ * not use a part of the limit forever.
+ * </p>
+ */
+public class ObservationHistoryImpl implements ObservationHistory, ObservationRegistryListener, ClientRegistryListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ObservationHistoryImpl.class);
+
+    /** The default maximum number of resources with a history */
+    public static final int DEFAULT_MAX_SERIES = 10000;
+
+    private final int capacity;
+    private final int maxSeries;
+    private final ClientRegistry clientRegistry;
+
+    private final ConcurrentMap<String /* registration id */, ClientSeries> series;
+    private final AtomicInteger seriesCount = new AtomicInteger();
+
+    /**
+     * @param capacity the number of samples kept for each resource
+     */
+    public ObservationHistoryImpl(int capacity) {
+        this(capacity, DEFAULT_MAX_SERIES);
+    }
+
+    /**
+     * @param capacity the number of samples kept for each resource
+     * @param maxSeries the maximum number of resources with a history
+     */
+    public ObservationHistoryImpl(int capacity, int maxSeries) {
+        this(capacity, maxSeries, null);
+    }
+
+    /**
+     * @param capacity the number of samples kept for each resource
+     * @param maxSeries the maximum number of resources with a history
+     * @param clientRegistry the registry used to ignore the notifications of a deregistered client or
+     *        <code>null</code> to trust the deregistration events only
+     */
+    public ObservationHistoryImpl(int capacity, int maxSeries, ClientRegistry clientRegistry) {
+        Validate.isTrue(capacity > 0, "the capacity must be positive");
+        Validate.isTrue(maxSeries > 0, "the series limit must be positive");
+        this.capacity = capacity;
+        this.maxSeries = maxSeries;
+        this.clientRegistry = clientRegistry;
+        this.series = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public TimeSeries get(Client client, LwM2mPath resourcePath, long from, long to) {
+        ClientSeries clientSeries = series.get(client.getRegistrationId());
+        if (clientSeries == null) {
+            return null;
+        }
+        Series s;
+        synchronized (clientSeries) {
+            s = clientSeries.byPath.get(resourcePath);
+        }
+        return s == null ? null : s.get(from, to);
+    }
+
+    /**
+     * @return the number of resources with a history
+     */
+    public int getSeriesCount() {
+        return seriesCount.get();
+    }
+
+    /**
+     * @return the memory used by the samples of all the resources in bytes
+     */
+    public long getSampleMemory() {
+        return 16L * capacity * seriesCount.get();
+    }
+
+    @Override
+    public void newValue(Observation observation, LwM2mNode value) {
+        final long time = System.currentTimeMillis();
+        final Client client = observation.getClient();
+        NumericResources.forEach(observation.getPath(), value, new NumericResources.Handler() {
+            @Override
+            public void numericValue(LwM2mPath path, Value<?> resourceValue) {
+                Number number = (Number) resourceValue.value;
+                boolean floatingPoint = NumericResources.isFloatingPoint(resourceValue);
+                long bits = floatingPoint ? Double.doubleToRawLongBits(number.doubleValue()) : number.longValue();
+                Series s = getSeries(client, path, floatingPoint);
+                if (s != null) {
+                    s.add(time, bits, floatingPoint);
+                }
+            }
+        });
+    }
+
+    private Series getSeries(Client client, LwM2mPath path, boolean floatingPoint) {
+        String registrationId = client.getRegistrationId();
+        ClientSeries clientSeries = series.get(registrationId);
+        if (clientSeries == null) {
+            ClientSeries newSeries = new ClientSeries();
+            clientSeries = series.putIfAbsent(registrationId, newSeries);
+            if (clientSeries == null) {
+                clientSeries = newSeries;
+                // The notification may be processed after the deregistration event, which found nothing to remove.
+                // The registry is checked after adding the series, so a later deregistration removes them as usual.
+                if (clientRegistry != null && !isRegistered(client)) {
+                    series.remove(registrationId, newSeries);
+                    synchronized (newSeries) {
+                        newSeries.closed = true;
+                    }
+                }
+            }
+        }
+
+        synchronized (clientSeries) {
+            if (clientSeries.closed) {
+                // the client is deregistered
+                return null;
+            }
+            Series s = clientSeries.byPath.get(path);
+            if (s == null) {
+                if (seriesCount.incrementAndGet() > maxSeries) {
+                    seriesCount.decrementAndGet();
+                    LOG.debug("No history recorded for {}: limit of {} resources reached", path, maxSeries);
+                    return null;
+                }
+                s = new Series(capacity, floatingPoint);
+                clientSeries.byPath.put(path, s);
+            }
+            return s;
+        }
+    }
+
+    private boolean isRegistered(Client client) {
+        Client registered = clientRegistry.get(client.getEndpoint());
+        return registered != null && registered.getRegistrationId().equals(client.getRegistrationId());
+    }
+
+    @Override
+    public void cancelled(Observation observation) {
+        ClientSeries clientSeries = series.get(observation.getClient().getRegistrationId());
+        if (clientSeries == null) {
+            return;
+        }
+        LwM2mPath observed = observation.getPath();
+        synchronized (clientSeries) {
+            for (Iterator<LwM2mPath> it = clientSeries.byPath.keySet().iterator(); it.hasNext();) {
+                LwM2mPath path = it.next();
+                if (path.getObjectId() == observed.getObjectId()
+                        && (observed.isObject() || path.getObjectInstanceId().equals(observed.getObjectInstanceId()))
+                        && (!observed.isResource() || path.getResourceId().equals(observed.getResourceId()))) {
+                    it.remove();
+                    seriesCount.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void newObservation(Observation observation) {
+    }
+
+    @Override
+    public void registered(Client client) {
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        ClientSeries removed = series.remove(client.getRegistrationId());
+        if (removed != null) {
+            synchronized (removed) {
+                // the notifications still being processed must not add series to the removed map
+                removed.closed = true;
+                seriesCount.addAndGet(-removed.byPath.size());
+                removed.byPath.clear();
+            }
+        }
+    }
+
+    /**
+     * The series of a registration.
+     */
+    private static class ClientSeries {
+        // guarded by this
+        final Map<LwM2mPath, Series> byPath = new HashMap<>();
+        boolean closed = false;
+    }
+
+    /**
+     * A ring buffer of samples. The timestamps never decrease, so a time range is found by binary search.
+     */
+    private static class Series {
+        // guarded by this
+        final long[] timestamps;
+        final long[] values;
+        boolean floatingPoint;
+        int head = 0; // the index of the next sample
+        int size = 0;
+
+        Series(int capacity, boolean floatingPoint) {
+            this.timestamps = new long[capacity];
+            this.values = new long[capacity];
+            this.floatingPoint = floatingPoint;
+        }
+
+        synchronized void add(long time, long bits, boolean floatingPointValue) {
+            if (floatingPointValue != floatingPoint) {
+                // the type of the resource changed: the previous samples are meaningless
+                size = 0;
+                floatingPoint = floatingPointValue;
+            }
+            if (size > 0) {
+                // the clock may go backwards
+                time = Math.max(time, timestamps[index(size - 1)]);
+            }
+            timestamps[head] = time;
+            values[head] = bits;
+            head = (head + 1) % timestamps.length;
+            if (size < timestamps.length) {
+                size++;
+            }
+        }
+
+        synchronized TimeSeries get(long from, long to) {
+            // first sample at or after from
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestamps[index(mid)] < from) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            int end = low;
+            while (end < size && timestamps[index(end)] <= to) {
+                end++;
+            }
+
+            long[] t = new long[end - low];
+            long[] v = new long[end - low];
+            for (int i = low; i < end; i++) {
+                t[i - low] = timestamps[index(i)];
+                v[i - low] = values[index(i)];
+            }
+            return new TimeSeries(t, v, floatingPoint);
+        }
+
+        /**
+         * @return the position in the arrays of the i-th oldest sample
+         */
+        private int index(int i) {
+            return (head - size + i + timestamps.length) % timestamps.length;
+        }
+    }
+}
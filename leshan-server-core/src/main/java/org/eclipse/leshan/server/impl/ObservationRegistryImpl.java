@@ -15,8 +15,11 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.impl;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,6 +30,7 @@ import org.eclipse.leshan.core.node.LwM2mNode;
 import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.server.client.Client;
 import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationFilter;
 import org.eclipse.leshan.server.observation.ObservationListener;
 import org.eclipse.leshan.server.observation.ObservationRegistry;
 import org.eclipse.leshan.server.observation.ObservationRegistryListener;
@@ -44,6 +48,10 @@ public class ObservationRegistryImpl implements ObservationRegistry, Observation
 
     private final List<ObservationRegistryListener> listeners = new CopyOnWriteArrayList<>();
 
+    // filtered listeners: an immutable index replaced on each subscription change
+    private final List<Subscription> subscriptions = new ArrayList<>();
+    private volatile SubscriptionIndex subscriptionIndex = new SubscriptionIndex(subscriptions);
+
     public ObservationRegistryImpl() {
         observationsByClientAndResource = new ConcurrentHashMap<String, Map<LwM2mPath, Observation>>();
     }
@@ -68,6 +76,9 @@ public class ObservationRegistryImpl implements ObservationRegistry, Observation
             for (ObservationRegistryListener listener : listeners) {
                 listener.newObservation(observation);
             }
+            for (ObservationRegistryListener listener : subscriptionIndex.getListeners(observation)) {
+                listener.newObservation(observation);
+            }
             observation.addListener(this);
         }
     }
@@ -131,9 +142,33 @@ public class ObservationRegistryImpl implements ObservationRegistry, Observation
         listeners.add(listener);
     }
 
+    @Override
+    public void addListener(ObservationRegistryListener listener, ObservationFilter filter) {
+        if (filter == null || (filter.getPath() == null && filter.getEndpoints() == null)) {
+            addListener(listener);
+            return;
+        }
+        synchronized (subscriptions) {
+            subscriptions.add(new Subscription(listener, filter));
+            subscriptionIndex = new SubscriptionIndex(subscriptions);
+        }
+    }
+
     @Override
     public void removeListener(ObservationRegistryListener listener) {
         listeners.remove(listener);
+        synchronized (subscriptions) {
+            boolean removed = false;
+            for (Iterator<Subscription> it = subscriptions.iterator(); it.hasNext();) {
+                if (it.next().listener == listener) {
+                    it.remove();
+                    removed = true;
+                }
+            }
+            if (removed) {
+                subscriptionIndex = new SubscriptionIndex(subscriptions);
+            }
+        }
     }
 
     @Override
@@ -141,6 +176,9 @@ public class ObservationRegistryImpl implements ObservationRegistry, Observation
         for (ObservationRegistryListener listener : listeners) {
             listener.cancelled(observation);
         }
+        for (ObservationRegistryListener listener : subscriptionIndex.getListeners(observation)) {
+            listener.cancelled(observation);
+        }
     }
 
     @Override
@@ -148,5 +186,84 @@ public class ObservationRegistryImpl implements ObservationRegistry, Observation
         for (ObservationRegistryListener listener : listeners) {
             listener.newValue(observation, value);
         }
+        for (ObservationRegistryListener listener : subscriptionIndex.getListeners(observation)) {
+            listener.newValue(observation, value);
+        }
+    }
+
+    private static class Subscription {
+        final ObservationRegistryListener listener;
+        final ObservationFilter filter;
+
+        Subscription(ObservationRegistryListener listener, ObservationFilter filter) {
+            this.listener = listener;
+            this.filter = filter;
+        }
+    }
+
+    /**
+     * The filtered subscriptions indexed by path and by endpoint. A notification is matched against the subscriptions
+     * of the observed path and of its parents, and against the subscriptions of its endpoint without path.
+     */
+    private static class SubscriptionIndex {
+
+        private final Map<LwM2mPath, List<Subscription>> byPath = new HashMap<>();
+        private final Map<String, List<Subscription>> byEndpoint = new HashMap<>();
+
+        SubscriptionIndex(List<Subscription> subscriptions) {
+            for (Subscription s : subscriptions) {
+                if (s.filter.getPath() != null) {
+                    add(byPath, s.filter.getPath(), s);
+                } else {
+                    for (String endpoint : s.filter.getEndpoints()) {
+                        add(byEndpoint, endpoint, s);
+                    }
+                }
+            }
+        }
+
+        private static <K> void add(Map<K, List<Subscription>> index, K key, Subscription s) {
+            List<Subscription> list = index.get(key);
+            if (list == null) {
+                list = new ArrayList<>();
+                index.put(key, list);
+            }
+            list.add(s);
+        }
+
+        List<ObservationRegistryListener> getListeners(Observation observation) {
+            if (byPath.isEmpty() && byEndpoint.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            List<ObservationRegistryListener> matching = new ArrayList<>(2);
+            String endpoint = observation.getClient().getEndpoint();
+            LwM2mPath path = observation.getPath();
+            if (!byPath.isEmpty()) {
+                collect(byPath.get(new LwM2mPath(path.getObjectId())), endpoint, matching);
+                if (!path.isObject()) {
+                    collect(byPath.get(new LwM2mPath(path.getObjectId(), path.getObjectInstanceId())), endpoint,
+                            matching);
+                }
+                if (path.isResource()) {
+                    collect(byPath.get(path), endpoint, matching);
+                }
+            }
+            collect(byEndpoint.get(endpoint), endpoint, matching);
+            return matching;
+        }
+
+        private static void collect(List<Subscription> subscriptions, String endpoint,
+                List<ObservationRegistryListener> matching) {
+            if (subscriptions == null) {
+                return;
+            }
+            for (Subscription s : subscriptions) {
+                Set<String> endpoints = s.filter.getEndpoints();
+                if (endpoints == null || endpoints.contains(endpoint)) {
+                    matching.add(s.listener);
+                }
+            }
+        }
     }
 }
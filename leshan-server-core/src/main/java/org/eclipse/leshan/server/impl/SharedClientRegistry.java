@@ -0,0 +1,450 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.LinkObject;
+import org.eclipse.leshan.core.request.BindingMode;
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.client.ClientUpdate;
+import org.eclipse.leshan.server.cluster.KeyValueStore;
+import org.eclipse.leshan.util.Charsets;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link ClientRegistry} keeping the registrations in a {@link KeyValueStore}, so that several server nodes can
+ * share them.
+ * <p>
+ * Each client is stored under its endpoint, with an index entry from its registration id to its endpoint. The
+ * listeners are notified of the changes made through this registry. Every node removes the expired registrations and,
+ * on each clean-up pass, notifies its listeners of the removal of the clients they know (registered or updated
+ * through this node) that another node removed.
+ * </p>
+ * <p>
+ * When created with a node id, the registry records in each registration the node which handled its last
+ * registration, update or keep-alive: the node holding the client endpoint (and DTLS session), to which the requests
+ * for this client must be sent (see {@link #getOwnerNode(String)}).
+ * </p>
+ * <p>
+ * The changes are serialized within a node only. The {@link KeyValueStore} provides no compare-and-set, so two nodes
+ * changing the same registration at the same time may lose one of the changes: an update or a keep-alive handled by
+ * a node can be overwritten by an update handled by another one, and a registration renewed through a node just after
+ * another node found it expired can still be removed. Strict atomicity across nodes would need a store with
+ * conditional writes (compare-and-set, or a version number checked on each write).
+ * </p>
+ */
+public class SharedClientRegistry implements ClientRegistry, Startable, Stoppable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedClientRegistry.class);
+
+    private static final String CLIENT_PREFIX = "client/";
+    private static final String REGISTRATION_PREFIX = "registration/";
+
+    private static final byte FORMAT_VERSION_1 = 1;
+    // adds the owner node
+    private static final byte FORMAT_VERSION = 2;
+
+    /** The period of the clean-up of the expired registrations in seconds */
+    private static final long CLEAN_PERIOD = 10;
+
+    private final KeyValueStore store;
+    private final ClientRegistryEventBus eventBus;
+    private final String nodeId;
+
+    // the clients known by the listeners of this node, to notify them when another node removes a client
+    private final ConcurrentMap<String /* registration id */, Client> localClients = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService schedExecutor;
+
+    /**
+     * Creates a registry notifying its listeners in the registering thread.
+     */
+    public SharedClientRegistry(KeyValueStore store) {
+        this(store, new ClientRegistryEventBus());
+    }
+
+    /**
+     * @param store the store of the registrations
+     * @param eventBus the bus delivering the registry events to the listeners
+     */
+    public SharedClientRegistry(KeyValueStore store, ClientRegistryEventBus eventBus) {
+        this(store, eventBus, null);
+    }
+
+    /**
+     * @param store the store of the registrations
+     * @param eventBus the bus delivering the registry events to the listeners
+     * @param nodeId the identifier of this node, recorded as the owner of the registrations it handles, or
+     *        <code>null</code> to record no owner
+     */
+    public SharedClientRegistry(KeyValueStore store, ClientRegistryEventBus eventBus, String nodeId) {
+        Validate.notNull(store);
+        Validate.notNull(eventBus);
+        this.store = store;
+        this.eventBus = eventBus;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public void addListener(ClientRegistryListener listener) {
+        eventBus.addListener(listener);
+    }
+
+    @Override
+    public void removeListener(ClientRegistryListener listener) {
+        eventBus.removeListener(listener);
+    }
+
+    @Override
+    public Client get(String endpoint) {
+        return decode(store.get(CLIENT_PREFIX + endpoint));
+    }
+
+    @Override
+    public Collection<Client> allClients() {
+        Collection<byte[]> values = store.getAll(CLIENT_PREFIX).values();
+        List<Client> clients = new ArrayList<>(values.size());
+        for (byte[] value : values) {
+            Client client = decode(value);
+            if (client != null) {
+                clients.add(client);
+            }
+        }
+        return Collections.unmodifiableCollection(clients);
+    }
+
+    @Override
+    public boolean registerClient(Client client) {
+        Validate.notNull(client);
+
+        LOG.debug("Registering new client: {}", client);
+
+        Client previous;
+        synchronized (this) {
+            previous = get(client.getEndpoint());
+            store.put(CLIENT_PREFIX + client.getEndpoint(), encode(client, nodeId));
+            store.put(REGISTRATION_PREFIX + client.getRegistrationId(), client.getEndpoint().getBytes(Charsets.UTF_8));
+            if (previous != null && !previous.getRegistrationId().equals(client.getRegistrationId())) {
+                store.remove(REGISTRATION_PREFIX + previous.getRegistrationId());
+            }
+            if (previous != null) {
+                localClients.remove(previous.getRegistrationId());
+            }
+            localClients.put(client.getRegistrationId(), client);
+        }
+        if (previous != null) {
+            eventBus.unregistered(previous);
+        }
+        eventBus.registered(client);
+        return true;
+    }
+
+    @Override
+    public Client updateClient(ClientUpdate update) {
+        Validate.notNull(update);
+
+        LOG.debug("Updating registration for client: {}", update);
+
+        Client clientUpdated;
+        synchronized (this) {
+            Client client = findByRegistrationId(update.getRegistrationId());
+            if (client == null) {
+                return null;
+            }
+            clientUpdated = update.updateClient(client);
+            store.put(CLIENT_PREFIX + clientUpdated.getEndpoint(), encode(clientUpdated, nodeId));
+            localClients.put(clientUpdated.getRegistrationId(), clientUpdated);
+        }
+        eventBus.updated(clientUpdated);
+        return clientUpdated;
+    }
+
+    /**
+     * Only stores the new time of the last update of the client, without notifying the listeners, unless the client
+     * changed its address or is in queue mode.
+     */
+    @Override
+    public Client keepAlive(String registrationId, InetAddress address, int port) {
+        Validate.notNull(registrationId);
+
+        synchronized (this) {
+            Client client = findByRegistrationId(registrationId);
+            if (client == null) {
+                return null;
+            }
+            if (!isQueueMode(client) && client.getAddress().equals(address) && client.getPort() == port) {
+                client.touch();
+                store.put(CLIENT_PREFIX + client.getEndpoint(), encode(client, nodeId));
+                return client;
+            }
+        }
+        return updateClient(new ClientUpdate(registrationId, address, port, null, null, null, null));
+    }
+
+    @Override
+    public Client deregisterClient(String registrationId) {
+        Validate.notNull(registrationId);
+
+        LOG.debug("Deregistering client with registrationId: {}", registrationId);
+        return remove(registrationId, false);
+    }
+
+    /**
+     * Removes a registration and notifies the listeners.
+     *
+     * @param onlyIfExpired if <code>true</code>, the registration is removed only if it is still expired when read
+     *        again: the client may have sent an update since the clean-up listed the registrations
+     */
+    private Client remove(String registrationId, boolean onlyIfExpired) {
+        Client unregistered;
+        synchronized (this) {
+            unregistered = findByRegistrationId(registrationId);
+            if (unregistered == null || (onlyIfExpired && unregistered.isAlive())) {
+                return null;
+            }
+            store.remove(CLIENT_PREFIX + unregistered.getEndpoint());
+            store.remove(REGISTRATION_PREFIX + registrationId);
+            localClients.remove(registrationId);
+        }
+        eventBus.unregistered(unregistered);
+        LOG.debug("Deregistered client: {}", unregistered);
+        return unregistered;
+    }
+
+    /**
+     * Removes the expired registrations and notifies the listeners of the clients removed by the other nodes. Called
+     * regularly once the registry is started.
+     */
+    void cleanUp() {
+        for (Client client : allClients()) {
+            if (!client.isAlive()) {
+                remove(client.getRegistrationId(), true);
+            }
+        }
+
+        for (Map.Entry<String, Client> known : localClients.entrySet()) {
+            String registrationId = known.getKey();
+            boolean removed;
+            synchronized (this) {
+                removed = findByRegistrationId(registrationId) == null
+                        && localClients.remove(registrationId, known.getValue());
+            }
+            if (removed) {
+                LOG.debug("Client {} was removed by another node", known.getValue());
+                eventBus.unregistered(known.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the id of the node which handled the last registration, update or keep-alive of the given registration,
+     *         or <code>null</code> if the registration does not exist or has no recorded owner
+     */
+    public String getOwnerNode(String registrationId) {
+        byte[] endpoint = store.get(REGISTRATION_PREFIX + registrationId);
+        if (endpoint == null) {
+            return null;
+        }
+        StoredClient stored = read(store.get(CLIENT_PREFIX + new String(endpoint, Charsets.UTF_8)));
+        return stored != null && stored.client.getRegistrationId().equals(registrationId) ? stored.ownerNode : null;
+    }
+
+    /**
+     * @return the identifier of this node or <code>null</code> if no owner is recorded
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return the bus delivering the registry events to the listeners
+     */
+    public ClientRegistryEventBus getEventBus() {
+        return eventBus;
+    }
+
+    private Client findByRegistrationId(String registrationId) {
+        byte[] endpoint = store.get(REGISTRATION_PREFIX + registrationId);
+        if (endpoint == null) {
+            return null;
+        }
+        Client client = get(new String(endpoint, Charsets.UTF_8));
+        // the index may be stale if the client registered again through another node
+        return client != null && client.getRegistrationId().equals(registrationId) ? client : null;
+    }
+
+    private static boolean isQueueMode(Client client) {
+        BindingMode bindingMode = client.getBindingMode();
+        return bindingMode == BindingMode.UQ || bindingMode == BindingMode.SQ || bindingMode == BindingMode.UQS;
+    }
+
+    /**
+     * Starts the delivery of the events and the regular clean-up of the expired registrations.
+     */
+    @Override
+    public synchronized void start() {
+        eventBus.start();
+        if (schedExecutor == null) {
+            schedExecutor = Executors.newScheduledThreadPool(1);
+            schedExecutor.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cleanUp();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Unexpected error while removing the expired registrations", e);
+                    }
+                }
+            }, CLEAN_PERIOD, CLEAN_PERIOD, TimeUnit.SECONDS);
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (this) {
+            if (schedExecutor != null) {
+                schedExecutor.shutdownNow();
+                schedExecutor = null;
+            }
+        }
+        eventBus.stop();
+    }
+
+    // /////// Serialization
+
+    static byte[] encode(Client client, String ownerNode) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeUTF(client.getRegistrationId());
+            out.writeUTF(client.getEndpoint());
+            byte[] address = client.getAddress().getAddress();
+            out.writeByte(address.length);
+            out.write(address);
+            out.writeInt(client.getPort());
+            out.writeUTF(client.getLwM2mVersion());
+            out.writeLong(client.getLifeTimeInSec());
+            writeNullable(out, client.getSmsNumber());
+            out.writeUTF(client.getBindingMode().name());
+            LinkObject[] links = client.getObjectLinks();
+            out.writeInt(links == null ? -1 : links.length);
+            if (links != null) {
+                for (LinkObject link : links) {
+                    out.writeUTF(link.toString());
+                }
+            }
+            out.writeUTF(client.getRegistrationEndpointAddress().getHostString());
+            out.writeInt(client.getRegistrationEndpointAddress().getPort());
+            out.writeLong(client.getRegistrationDate().getTime());
+            out.writeLong(client.getLastUpdate().getTime());
+            writeNullable(out, ownerNode);
+        } catch (IOException e) {
+            // not expected with a byte array
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Client decode(byte[] value) {
+        StoredClient stored = read(value);
+        return stored == null ? null : stored.client;
+    }
+
+    private static StoredClient read(byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(value))) {
+            byte version = in.readByte();
+            if (version != FORMAT_VERSION && version != FORMAT_VERSION_1) {
+                LOG.warn("Unsupported registration format");
+                return null;
+            }
+            String registrationId = in.readUTF();
+            String endpoint = in.readUTF();
+            byte[] address = new byte[in.readByte()];
+            in.readFully(address);
+            int port = in.readInt();
+            String lwM2mVersion = in.readUTF();
+            long lifetime = in.readLong();
+            String smsNumber = readNullable(in);
+            BindingMode bindingMode = BindingMode.valueOf(in.readUTF());
+            int linkCount = in.readInt();
+            LinkObject[] links = null;
+            if (linkCount >= 0) {
+                links = new LinkObject[linkCount];
+                for (int i = 0; i < linkCount; i++) {
+                    links[i] = LinkObject.parse(in.readUTF().getBytes(Charsets.UTF_8))[0];
+                }
+            }
+            InetSocketAddress registrationEndpoint = new InetSocketAddress(in.readUTF(), in.readInt());
+            Date registrationDate = new Date(in.readLong());
+            Date lastUpdate = new Date(in.readLong());
+            String ownerNode = version == FORMAT_VERSION_1 ? null : readNullable(in);
+            return new StoredClient(new Client(registrationId, endpoint, InetAddress.getByAddress(address), port,
+                    lwM2mVersion, lifetime, smsNumber, bindingMode, links, registrationEndpoint, registrationDate,
+                    lastUpdate), ownerNode);
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("Invalid registration in the store", e);
+            return null;
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static class StoredClient {
+        final Client client;
+        final String ownerNode;
+
+        StoredClient(Client client, String ownerNode) {
+            this.client = client;
+            this.ownerNode = ownerNode;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * An execution lane dedicated to one class of traffic (e.g. the registrations), with its own threads and its own
+ * bounded queue.
+ * <p>
+ * Giving each class of traffic its own lane keeps a burst of one class (e.g. a registration storm after a network
+ * outage) from delaying the others. When the queue of a lane is full, the tasks are rejected with a
+ * {@link RejectedExecutionException}: the caller decides how to shed the load.
+ * </p>
+ * <p>
+ * The saturation metrics of the lane tell whether its thread budget fits its traffic.
+ * </p>
+ */
+public class TrafficLane implements Executor, Stoppable {
+
+    /** The default maximum number of tasks waiting for a thread of the lane */
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+    private final String name;
+    private final ThreadPoolExecutor executor;
+
+    // metrics
+    private final AtomicLong executedTasks = new AtomicLong();
+    private final AtomicLong rejectedTasks = new AtomicLong();
+    private final AtomicLong queueTime = new AtomicLong();
+    private final AtomicInteger maxQueuedTasks = new AtomicInteger();
+
+    /**
+     * @param name the name of the lane, also the prefix of its thread names
+     * @param threads the number of threads of the lane
+     * @param queueCapacity the maximum number of tasks waiting for a thread
+     */
+    public TrafficLane(String name, int threads, int queueCapacity) {
+        Validate.notEmpty(name);
+        Validate.isTrue(threads > 0, "the number of threads must be positive");
+        Validate.isTrue(queueCapacity > 0, "the queue capacity must be positive");
+        this.name = name;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueCapacity), new NamedThreadFactory(name));
+    }
+
+    /**
+     * Executes the task with a thread of the lane.
+     *
+     * @throws RejectedExecutionException if the queue of the lane is full or the lane is stopped
+     */
+    @Override
+    public void execute(final Runnable task) {
+        Validate.notNull(task);
+        final long enqueued = System.nanoTime();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    queueTime.addAndGet(System.nanoTime() - enqueued);
+                    try {
+                        task.run();
+                    } finally {
+                        executedTasks.incrementAndGet();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejectedTasks.incrementAndGet();
+            throw e;
+        }
+
+        int queued = executor.getQueue().size();
+        int max = maxQueuedTasks.get();
+        while (queued > max && !maxQueuedTasks.compareAndSet(max, queued)) {
+            max = maxQueuedTasks.get();
+        }
+    }
+
+    /**
+     * Stops the threads of the lane. The queued tasks are discarded.
+     */
+    @Override
+    public void stop() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return <code>true</code> if the lane is stopped and rejects all the tasks
+     */
+    public boolean isStopped() {
+        return executor.isShutdown();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of tasks waiting for a thread of the lane
+     */
+    public int getQueuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * @return the highest number of tasks which waited for a thread of the lane at the same time
+     */
+    public int getMaxQueuedTasks() {
+        return maxQueuedTasks.get();
+    }
+
+    /**
+     * @return the number of threads of the lane currently executing a task
+     */
+    public int getActiveThreads() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return the number of tasks executed since the creation of the lane
+     */
+    public long getExecutedTasks() {
+        return executedTasks.get();
+    }
+
+    /**
+     * @return the number of tasks rejected because the queue of the lane was full
+     */
+    public long getRejectedTasks() {
+        return rejectedTasks.get();
+    }
+
+    /**
+     * @return the average time in ms the executed tasks waited for a thread of the lane
+     */
+    public double getAverageQueueTime() {
+        long executed = executedTasks.get();
+        return executed == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(queueTime.get()) / 1000.0 / executed;
+    }
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A metric counting events, which can also be decremented (e.g. the number of active observations).
+ */
+public class Counter {
+
+    private final boolean enabled;
+    private final AtomicLong count = new AtomicLong();
+
+    Counter(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void inc() {
+        if (enabled) {
+            count.incrementAndGet();
+        }
+    }
+
+    public void dec() {
+        if (enabled) {
+            count.decrementAndGet();
+        }
+    }
+
+    public void add(long n) {
+        if (enabled) {
+            count.addAndGet(n);
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+}
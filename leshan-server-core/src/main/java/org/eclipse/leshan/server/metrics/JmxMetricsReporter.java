@@ -0,0 +1,140 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.eclipse.leshan.server.Startable;
+import org.eclipse.leshan.server.Stoppable;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exposes the values of a {@link MetricsRegistry} as the read-only attributes of a JMX MBean named
+ * <code>org.eclipse.leshan:type=Metrics,name=&lt;name&gt;</code>.
+ */
+public class JmxMetricsReporter implements DynamicMBean, Startable, Stoppable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JmxMetricsReporter.class);
+
+    private final MetricsRegistry registry;
+    private final ObjectName objectName;
+    private final MBeanServer mbeanServer;
+
+    public JmxMetricsReporter(MetricsRegistry registry, String name) {
+        this(registry, name, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxMetricsReporter(MetricsRegistry registry, String name, MBeanServer mbeanServer) {
+        Validate.notNull(registry);
+        Validate.notEmpty(name);
+        Validate.notNull(mbeanServer);
+        this.registry = registry;
+        this.mbeanServer = mbeanServer;
+        try {
+            this.objectName = new ObjectName("org.eclipse.leshan:type=Metrics,name=" + ObjectName.quote(name));
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid metrics name " + name, e);
+        }
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public void start() {
+        try {
+            mbeanServer.registerMBean(this, objectName);
+        } catch (JMException e) {
+            LOG.warn("Unable to register the metrics MBean " + objectName, e);
+        }
+    }
+
+    @Override
+    public void stop() {
+        try {
+            if (mbeanServer.isRegistered(objectName)) {
+                mbeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            LOG.warn("Unable to unregister the metrics MBean " + objectName, e);
+        }
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = registry.getValues().get(attribute);
+        if (value == null) {
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        SortedMap<String, Number> values = registry.getValues();
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            Number value = values.get(attribute);
+            if (value != null) {
+                list.add(new Attribute(attribute, value));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read-only");
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for (Entry<String, Number> e : registry.getValues().entrySet()) {
+            String type = e.getValue() instanceof Double ? "double" : "long";
+            attributes.add(new MBeanAttributeInfo(e.getKey(), type, e.getKey(), true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Leshan server metrics",
+                attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+    }
+}
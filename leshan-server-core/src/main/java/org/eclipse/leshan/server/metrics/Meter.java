@@ -0,0 +1,97 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A metric measuring the rate of events, as an exponentially weighted moving average over one minute.
+ * <p>
+ * The average is updated every 5 seconds by the thread marking or reading the meter: there is no background thread.
+ * </p>
+ */
+public class Meter {
+
+    private static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+    private static final double ALPHA = 1 - Math.exp(-5.0 / 60.0);
+
+    private final boolean enabled;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong uncounted = new AtomicLong();
+    private final AtomicLong lastTick = new AtomicLong(System.nanoTime());
+
+    // updated by the thread winning the tick
+    private volatile double rate = 0;
+    private volatile boolean initialized = false;
+
+    Meter(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void mark() {
+        mark(1);
+    }
+
+    public void mark(long n) {
+        if (!enabled) {
+            return;
+        }
+        tickIfNecessary();
+        count.addAndGet(n);
+        uncounted.addAndGet(n);
+    }
+
+    /**
+     * @return the number of events since the creation of the meter
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return the number of events per second over the last minute
+     */
+    public double getRate() {
+        if (enabled) {
+            tickIfNecessary();
+        }
+        return rate;
+    }
+
+    private void tickIfNecessary() {
+        long last = lastTick.get();
+        long age = System.nanoTime() - last;
+        if (age < TICK_INTERVAL) {
+            return;
+        }
+        if (lastTick.compareAndSet(last, last + age - age % TICK_INTERVAL)) {
+            for (long i = age / TICK_INTERVAL; i > 0; i--) {
+                tick();
+            }
+        }
+    }
+
+    private void tick() {
+        double instantRate = uncounted.getAndSet(0) / 5.0;
+        if (initialized) {
+            rate += ALPHA * (instantRate - rate);
+        } else {
+            rate = instantRate;
+            initialized = true;
+        }
+    }
+}
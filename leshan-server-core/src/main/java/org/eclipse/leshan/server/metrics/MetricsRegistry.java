@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.metrics;
+
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * The registry of the metrics of a server: counters, meters, histograms and gauges identified by a dotted name (e.g.
+ * <code>registrations.new</code>).
+ * <p>
+ * The instrumented components get their metrics once and update them on the hot path without any lookup or
+ * allocation. When the registry is disabled, the metrics it returns ignore the updates.
+ * </p>
+ */
+public class MetricsRegistry {
+
+    private final boolean enabled;
+    private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an enabled registry.
+     */
+    public MetricsRegistry() {
+        this(true);
+    }
+
+    /**
+     * @param enabled <code>false</code> to return metrics ignoring the updates
+     */
+    public MetricsRegistry(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the counter with the given name, created if needed
+     */
+    public Counter counter(String name) {
+        return getOrAdd(name, new Counter(enabled), Counter.class);
+    }
+
+    /**
+     * @return the meter with the given name, created if needed
+     */
+    public Meter meter(String name) {
+        return getOrAdd(name, new Meter(enabled), Meter.class);
+    }
+
+    /**
+     * @return the histogram with the given name, created if needed
+     */
+    public Histogram histogram(String name) {
+        return getOrAdd(name, new Histogram(enabled), Histogram.class);
+    }
+
+    /**
+     * Registers a gauge, replacing the previous gauge with the same name. Gauges are not registered when the registry
+     * is disabled.
+     */
+    public void gauge(String name, Gauge gauge) {
+        Validate.notEmpty(name);
+        Validate.notNull(gauge);
+        if (!enabled) {
+            return;
+        }
+        Object previous = metrics.put(name, gauge);
+        if (previous != null && !(previous instanceof Gauge)) {
+            metrics.put(name, previous);
+            throw new IllegalArgumentException(String.format("%s is already registered as a %s", name, previous
+                    .getClass().getSimpleName()));
+        }
+    }
+
+    public void remove(String name) {
+        metrics.remove(name);
+    }
+
+    /**
+     * Reads all the metrics as a flat map of values sorted by name. The counters and the gauges give one value, the
+     * meters give <code>count</code> and <code>rate</code> (per second over the last minute) values, and the
+     * histograms give <code>count</code>, <code>mean</code>, <code>p50</code>, <code>p99</code> and <code>max</code>
+     * values, e.g. <code>registrations.new.rate</code>.
+     */
+    public SortedMap<String, Number> getValues() {
+        SortedMap<String, Number> values = new TreeMap<>();
+        for (Entry<String, Object> e : metrics.entrySet()) {
+            String name = e.getKey();
+            Object metric = e.getValue();
+            if (metric instanceof Counter) {
+                values.put(name, ((Counter) metric).getCount());
+            } else if (metric instanceof Gauge) {
+                values.put(name, ((Gauge) metric).getValue());
+            } else if (metric instanceof Meter) {
+                Meter meter = (Meter) metric;
+                values.put(name + ".count", meter.getCount());
+                values.put(name + ".rate", meter.getRate());
+            } else if (metric instanceof Histogram) {
+                Histogram histogram = (Histogram) metric;
+                values.put(name + ".count", histogram.getCount());
+                values.put(name + ".mean", histogram.getMean());
+                values.put(name + ".p50", histogram.getPercentile(0.5));
+                values.put(name + ".p99", histogram.getPercentile(0.99));
+                values.put(name + ".max", histogram.getMax());
+            }
+        }
+        return values;
+    }
+
+    private <M> M getOrAdd(String name, M newMetric, Class<M> type) {
+        Validate.notEmpty(name);
+        Object metric = metrics.get(name);
+        if (metric == null) {
+            metric = metrics.putIfAbsent(name, newMetric);
+            if (metric == null) {
+                return newMetric;
+            }
+        }
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(String.format("%s is already registered as a %s", name, metric
+                    .getClass().getSimpleName()));
+        }
+        return type.cast(metric);
+    }
+}
@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.metrics;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationRegistryListener;
+import org.eclipse.leshan.server.registration.KeepAliveListener;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Records the registration and observation events of a server in a {@link MetricsRegistry}:
+ * <ul>
+ * <li><code>registrations.new</code>, <code>registrations.updates</code>, <code>registrations.deregistrations</code>:
+ * the registration events, the updates including the keep-alives</li>
+ * <li><code>registrations.size</code>: the number of registered clients</li>
+ * <li><code>observations.active</code>: the number of observations currently established</li>
+ * <li><code>notifications.decoded</code>: the notifications delivered to the observation listeners</li>
+ * </ul>
+ */
+public class ServerMetrics implements ClientRegistryListener, ObservationRegistryListener, KeepAliveListener {
+
+    private final Meter registrations;
+    private final Meter updates;
+    private final Meter deregistrations;
+    private final Counter activeObservations;
+    private final Meter decodedNotifications;
+
+    public ServerMetrics(MetricsRegistry metrics, final ClientRegistry clientRegistry) {
+        Validate.notNull(metrics);
+        Validate.notNull(clientRegistry);
+        registrations = metrics.meter("registrations.new");
+        updates = metrics.meter("registrations.updates");
+        deregistrations = metrics.meter("registrations.deregistrations");
+        activeObservations = metrics.counter("observations.active");
+        decodedNotifications = metrics.meter("notifications.decoded");
+        metrics.gauge("registrations.size", new Gauge() {
+            @Override
+            public long getValue() {
+                return clientRegistry.allClients().size();
+            }
+        });
+    }
+
+    @Override
+    public void registered(Client client) {
+        registrations.mark();
+    }
+
+    @Override
+    public void updated(Client clientUpdated) {
+        updates.mark();
+    }
+
+    @Override
+    public void keepAlive(Client client) {
+        updates.mark();
+    }
+
+    @Override
+    public void unregistered(Client client) {
+        deregistrations.mark();
+    }
+
+    @Override
+    public void newObservation(Observation observation) {
+        activeObservations.inc();
+    }
+
+    @Override
+    public void cancelled(Observation observation) {
+        activeObservations.dec();
+    }
+
+    @Override
+    public void newValue(Observation observation, LwM2mNode value) {
+        decodedNotifications.mark();
+    }
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.observation;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.util.Validate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An {@link ObservationRegistryListener} which delivers the notifications to a slow listener, keeping only the newest
+ * value of each observed resource.
+ * <p>
+ * New values are stored and delivered to the wrapped listener by the given executor, one at a time. If several values
+ * are received for the same client and path before the previous one is delivered, only the newest one is delivered:
+ * the memory used does not depend on the notification rate but only on the number of observed resources.
+ * </p>
+ * <p>
+ * New observations and cancellations are delivered immediately.
+ * </p>
+ */
+public class ConflatingObservationRegistryListener implements ObservationRegistryListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConflatingObservationRegistryListener.class);
+
+    private final ObservationRegistryListener delegate;
+    private final Executor executor;
+
+    // guarded by this
+    private final Map<Key, PendingValue> pendingValues = new LinkedHashMap<>();
+    private boolean draining = false;
+
+    private final AtomicLong conflatedValues = new AtomicLong();
+    private final AtomicLong deliveredValues = new AtomicLong();
+
+    /**
+     * @param delegate the listener receiving the values
+     * @param executor the executor delivering the values (a single thread is enough)
+     */
+    public ConflatingObservationRegistryListener(ObservationRegistryListener delegate, Executor executor) {
+        Validate.notNull(delegate);
+        Validate.notNull(executor);
+        this.delegate = delegate;
+        this.executor = executor;
+    }
+
+    @Override
+    public void newObservation(Observation observation) {
+        delegate.newObservation(observation);
+    }
+
+    @Override
+    public void cancelled(Observation observation) {
+        synchronized (this) {
+            pendingValues.remove(new Key(observation));
+        }
+        delegate.cancelled(observation);
+    }
+
+    @Override
+    public void newValue(Observation observation, LwM2mNode value) {
+        boolean startDraining = false;
+        synchronized (this) {
+            // replacing the value keeps the position of the key: the oldest pending resources are delivered first, even
+            // if they are notified faster than they are delivered
+            if (pendingValues.put(new Key(observation), new PendingValue(observation, value)) != null) {
+                conflatedValues.incrementAndGet();
+            }
+            if (!draining) {
+                draining = true;
+                startDraining = true;
+            }
+        }
+        if (startDraining) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        drain();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the draining flag is still set: deliver the values in this thread rather than never again
+                LOG.warn("Observation values delivered in the calling thread: the executor rejected the task", e);
+                drain();
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            PendingValue next;
+            synchronized (this) {
+                Iterator<PendingValue> it = pendingValues.values().iterator();
+                if (!it.hasNext()) {
+                    draining = false;
+                    return;
+                }
+                next = it.next();
+                it.remove();
+            }
+            try {
+                delegate.newValue(next.observation, next.value);
+            } catch (RuntimeException e) {
+                LOG.warn("Unexpected error in observation listener", e);
+            }
+            deliveredValues.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of values replaced by a newer one before being delivered
+     */
+    public long getConflatedValues() {
+        return conflatedValues.get();
+    }
+
+    /**
+     * @return the number of values delivered to the wrapped listener
+     */
+    public long getDeliveredValues() {
+        return deliveredValues.get();
+    }
+
+    /**
+     * @return the number of values waiting to be delivered
+     */
+    public synchronized int getPendingValues() {
+        return pendingValues.size();
+    }
+
+    private static class Key {
+        private final String registrationId;
+        private final LwM2mPath path;
+
+        Key(Observation observation) {
+            this.registrationId = observation.getClient().getRegistrationId();
+            this.path = observation.getPath();
+        }
+
+        @Override
+        public int hashCode() {
+            return registrationId.hashCode() * 31 + path.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return registrationId.equals(other.registrationId) && path.equals(other.path);
+        }
+    }
+
+    private static class PendingValue {
+        private final Observation observation;
+        private final LwM2mNode value;
+
+        PendingValue(Observation observation, LwM2mNode value) {
+            this.observation = observation;
+            this.value = value;
+        }
+    }
+}
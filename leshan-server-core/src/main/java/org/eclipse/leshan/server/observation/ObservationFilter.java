@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.observation;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * Selects the observations an {@link ObservationRegistryListener} is interested in.
+ * <p>
+ * A filter may restrict the observed path (an object, an object instance or a resource) and the endpoints of the
+ * clients. An observation matches an object or object instance filter when its path is the filtered node or one of
+ * its children. A resource filter only matches the observation of this exact resource.
+ * </p>
+ * <p>
+ * The registry indexes the filters, so the notifications are only dispatched to the matching listeners.
+ * </p>
+ */
+public final class ObservationFilter {
+
+    private final LwM2mPath path;
+    private final Set<String> endpoints;
+
+    private ObservationFilter(LwM2mPath path, Set<String> endpoints) {
+        this.path = path;
+        this.endpoints = endpoints;
+    }
+
+    /**
+     * @return a filter matching the observations of the given object and of its instances and resources
+     */
+    public static ObservationFilter forObject(int objectId) {
+        return new ObservationFilter(new LwM2mPath(objectId), null);
+    }
+
+    /**
+     * @return a filter matching the observations of the given object instance and of its resources
+     */
+    public static ObservationFilter forObjectInstance(int objectId, int objectInstanceId) {
+        return new ObservationFilter(new LwM2mPath(objectId, objectInstanceId), null);
+    }
+
+    /**
+     * @return a filter matching the observations of the given path and of its children
+     */
+    public static ObservationFilter forPath(LwM2mPath path) {
+        Validate.notNull(path);
+        return new ObservationFilter(path, null);
+    }
+
+    /**
+     * @return a filter matching all the observations of the given clients
+     */
+    public static ObservationFilter forEndpoints(String... endpoints) {
+        return forEndpoints(Arrays.asList(endpoints));
+    }
+
+    /**
+     * @return a filter matching all the observations of the given clients
+     */
+    public static ObservationFilter forEndpoints(Collection<String> endpoints) {
+        return new ObservationFilter(null, toSet(endpoints));
+    }
+
+    /**
+     * @return a copy of this filter restricted to the given clients
+     */
+    public ObservationFilter withEndpoints(String... endpoints) {
+        return withEndpoints(Arrays.asList(endpoints));
+    }
+
+    /**
+     * @return a copy of this filter restricted to the given clients
+     */
+    public ObservationFilter withEndpoints(Collection<String> endpoints) {
+        return new ObservationFilter(path, toSet(endpoints));
+    }
+
+    private static Set<String> toSet(Collection<String> endpoints) {
+        Validate.notNull(endpoints);
+        Validate.isTrue(!endpoints.isEmpty(), "at least one endpoint is required");
+        return Collections.unmodifiableSet(new HashSet<>(endpoints));
+    }
+
+    /**
+     * @return the filtered path or <code>null</code> to match any path
+     */
+    public LwM2mPath getPath() {
+        return path;
+    }
+
+    /**
+     * @return the filtered endpoints or <code>null</code> to match any client
+     */
+    public Set<String> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return <code>true</code> if the given observation is selected by this filter
+     */
+    public boolean accept(Observation observation) {
+        if (endpoints != null && !endpoints.contains(observation.getClient().getEndpoint())) {
+            return false;
+        }
+        if (path == null) {
+            return true;
+        }
+        LwM2mPath observed = observation.getPath();
+        if (path.getObjectId() != observed.getObjectId()) {
+            return false;
+        }
+        if (path.isObject()) {
+            return true;
+        }
+        if (!path.getObjectInstanceId().equals(observed.getObjectInstanceId())) {
+            return false;
+        }
+        return path.isObjectInstance() || path.getResourceId().equals(observed.getResourceId());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ObservationFilter [path=%s, endpoints=%s]", path, endpoints);
+    }
+}
@@ -61,7 +61,21 @@ public interface ObservationRegistry {
      */
     Set<Observation> getObservations(Client client);
 
+    /**
+     * Adds a listener notified of all the observations.
+     */
     void addListener(ObservationRegistryListener listener);
 
+    /**
+     * Adds a listener only notified of the observations selected by the given filter.
+     * <p>
+     * The filters are indexed: a notification is only dispatched to the matching listeners.
+     * </p>
+     */
+    void addListener(ObservationRegistryListener listener, ObservationFilter filter);
+
+    /**
+     * Removes the listener and all its filtered subscriptions.
+     */
     void removeListener(ObservationRegistryListener listener);
 }
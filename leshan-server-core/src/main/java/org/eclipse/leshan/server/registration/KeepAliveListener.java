@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistry;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+
+/**
+ * Listen for the registration updates which only extend the registration lifetime.
+ * <p>
+ * The {@link ClientRegistry} may not notify its {@link ClientRegistryListener}s of these "keep-alives": this listener
+ * is notified of each of them by the {@link RegistrationHandler}.
+ * </p>
+ */
+public interface KeepAliveListener {
+
+    /**
+     * Invoked when a client extended its registration lifetime.
+     *
+     * @param client the registered client
+     */
+    void keepAlive(Client client);
+}
@@ -15,8 +15,11 @@
  *******************************************************************************/
 package org.eclipse.leshan.server.registration;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.security.PublicKey;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.xml.bind.DatatypeConverter;
 
@@ -45,10 +48,26 @@ public class RegistrationHandler {
 
     private SecurityStore securityStore;
     private ClientRegistry clientRegistry;
+    private RegistrationIdGenerator registrationIdGenerator;
+    private final List<KeepAliveListener> keepAliveListeners = new CopyOnWriteArrayList<>();
 
     public RegistrationHandler(ClientRegistry clientRegistry, SecurityStore securityStore) {
+        this(clientRegistry, securityStore, new RegistrationIdGenerator() {
+            @Override
+            public String generate(RegisterRequest request) {
+                return RandomStringUtils.random(10, true, true);
+            }
+        });
+    }
+
+    /**
+     * @param registrationIdGenerator creates the identifiers of the new registrations
+     */
+    public RegistrationHandler(ClientRegistry clientRegistry, SecurityStore securityStore,
+            RegistrationIdGenerator registrationIdGenerator) {
         this.clientRegistry = clientRegistry;
         this.securityStore = securityStore;
+        this.registrationIdGenerator = registrationIdGenerator;
     }
 
     public RegisterResponse register(RegisterRequest registerRequest) {
@@ -57,7 +76,7 @@ public class RegistrationHandler {
             return new RegisterResponse(ResponseCode.BAD_REQUEST);
         } else {
             // register
-            String registrationId = RegistrationHandler.createRegistrationId();
+            String registrationId = registrationIdGenerator.generate(registerRequest);
 
             // do we have security information for this client?
             SecurityInfo securityInfo = securityStore.getByEndpoint(registerRequest.getEndpointName());
@@ -139,6 +158,33 @@ public class RegistrationHandler {
         }
     }
 
+    /**
+     * Handles a registration update without parameters nor payload, which only extends the registration lifetime.
+     */
+    public LwM2mResponse keepAlive(String registrationId, InetAddress address, int port) {
+        Client client = clientRegistry.keepAlive(registrationId, address, port);
+        if (client == null) {
+            return new LwM2mResponse(ResponseCode.NOT_FOUND);
+        } else {
+            for (KeepAliveListener listener : keepAliveListeners) {
+                try {
+                    listener.keepAlive(client);
+                } catch (RuntimeException e) {
+                    LOG.warn("Keep-alive listener failed for client " + client.getEndpoint(), e);
+                }
+            }
+            return new LwM2mResponse(ResponseCode.CHANGED);
+        }
+    }
+
+    public void addKeepAliveListener(KeepAliveListener listener) {
+        keepAliveListeners.add(listener);
+    }
+
+    public void removeKeepAliveListener(KeepAliveListener listener) {
+        keepAliveListeners.remove(listener);
+    }
+
     public LwM2mResponse deregister(DeregisterRequest deregisterRequest) {
         Client unregistered = clientRegistry.deregisterClient(deregisterRequest.getRegistrationID());
         if (unregistered != null) {
@@ -148,8 +194,4 @@ public class RegistrationHandler {
             return new LwM2mResponse(ResponseCode.NOT_FOUND);
         }
     }
-
-    private static String createRegistrationId() {
-        return RandomStringUtils.random(10, true, true);
-    }
 }
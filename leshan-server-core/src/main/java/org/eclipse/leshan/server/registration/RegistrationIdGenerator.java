@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.registration;
+
+import org.eclipse.leshan.core.request.RegisterRequest;
+
+/**
+ * Creates the identifiers of the new registrations.
+ */
+public interface RegistrationIdGenerator {
+
+    /**
+     * @param request the registration request
+     * @return a unique identifier usable in a URI path
+     */
+    String generate(RegisterRequest request);
+}
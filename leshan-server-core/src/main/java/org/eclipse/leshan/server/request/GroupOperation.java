@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.request;
+
+/**
+ * The progress of a request sent to a group of clients.
+ */
+public interface GroupOperation {
+
+    /**
+     * @return the number of targeted clients
+     */
+    int getTotal();
+
+    /**
+     * @return the number of clients which answered the request
+     */
+    int getResponses();
+
+    /**
+     * @return the number of clients for which the request failed
+     */
+    int getErrors();
+
+    /**
+     * @return the number of clients which have not been sent the request yet or are waiting for a response
+     */
+    int getPending();
+
+    /**
+     * @return <code>true</code> when no more results are expected
+     */
+    boolean isCompleted();
+
+    /**
+     * Stops sending the request to the remaining clients. The requests already sent still complete normally.
+     */
+    void cancel();
+
+    /**
+     * @return <code>true</code> if the operation has been cancelled
+     */
+    boolean isCancelled();
+}
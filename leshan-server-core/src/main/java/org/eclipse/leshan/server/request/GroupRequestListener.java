@@ -0,0 +1,52 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.request;
+
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.server.client.Client;
+
+/**
+ * Receives the results of a request sent to a group of clients, as soon as each of them completes.
+ * <p>
+ * The methods may be called concurrently from different threads.
+ * </p>
+ */
+public interface GroupRequestListener<T extends LwM2mResponse> {
+
+    /**
+     * Called when a client answered the request.
+     *
+     * @param client the client
+     * @param response the response of the client (which can be an error response)
+     */
+    void onResponse(Client client, T response);
+
+    /**
+     * Called when the request could not be sent to a client or when no response was received (e.g. timeout).
+     *
+     * @param client the client
+     * @param e the cause of the error
+     */
+    void onError(Client client, Exception e);
+
+    /**
+     * Called once, when all the requests are completed or when the operation is cancelled and the requests already
+     * sent are completed.
+     *
+     * @param operation the completed operation
+     */
+    void onCompleted(GroupOperation operation);
+}
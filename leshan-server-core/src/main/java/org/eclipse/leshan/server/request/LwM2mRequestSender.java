@@ -16,6 +16,7 @@
 package org.eclipse.leshan.server.request;
 
 import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.exception.TimeoutException;
 import org.eclipse.leshan.core.response.ErrorCallback;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ResponseCallback;
@@ -36,4 +37,13 @@ public interface LwM2mRequestSender {
      */
     <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
             ResponseCallback<T> responseCallback, ErrorCallback errorCallback);
+
+    /**
+     * Send a Lightweight M2M request asynchronously. If no response is received before the given timeout, the request
+     * is cancelled and the error callback is called with a {@link TimeoutException}.
+     * 
+     * @param timeout the request timeout in millisecond or <code>null</code> to rely on the CoAP timeout only
+     */
+    <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request, Long timeout,
+            ResponseCallback<T> responseCallback, ErrorCallback errorCallback);
 }
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.shadow;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.server.client.Client;
+
+/**
+ * The last known values of the resources of the registered clients, as received in read responses and notifications.
+ * <p>
+ * It can be used to answer a read without sending a request to a device when a slightly outdated value is acceptable.
+ * Values are forgotten when the client deregisters and when a request successfully changes them.
+ * </p>
+ */
+public interface DeviceShadow {
+
+    /**
+     * Gets the last known value of a node.
+     *
+     * @param client the registered client
+     * @param path the path of the node
+     * @param maxAge the maximum age of the value in milliseconds
+     * @return the value or <code>null</code> if no value received less than <code>maxAge</code> ago is known
+     */
+    ShadowValue get(Client client, LwM2mPath path, long maxAge);
+
+    /**
+     * Stores the last value of a node.
+     *
+     * @param client the registered client
+     * @param path the path of the node
+     * @param node the value received from the client
+     */
+    void update(Client client, LwM2mPath path, LwM2mNode node);
+
+    /**
+     * Forgets the values of a node, of its parents and of its children, after a request changed the node.
+     *
+     * @param client the registered client
+     * @param path the path of the node changed by the request
+     */
+    void invalidate(Client client, LwM2mPath path);
+
+    /**
+     * Forgets all the values of a client.
+     *
+     * @param client the client
+     */
+    void remove(Client client);
+}
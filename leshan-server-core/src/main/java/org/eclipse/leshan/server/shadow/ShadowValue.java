@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.shadow;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.util.Validate;
+
+/**
+ * A value of a {@link DeviceShadow} with its reception time.
+ */
+public class ShadowValue {
+
+    private final LwM2mNode node;
+    private final long timestamp;
+
+    public ShadowValue(LwM2mNode node, long timestamp) {
+        Validate.notNull(node);
+        this.node = node;
+        this.timestamp = timestamp;
+    }
+
+    public LwM2mNode getNode() {
+        return node;
+    }
+
+    /**
+     * @return the reception time of the value in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ShadowValue [node=%s, timestamp=%s]", node, timestamp);
+    }
+}
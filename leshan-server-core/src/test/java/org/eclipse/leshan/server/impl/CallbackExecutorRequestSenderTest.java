@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ValueResponse;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.impl.GroupRequestSenderTest.RecordingSender;
+import org.eclipse.leshan.util.NamedThreadFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CallbackExecutorRequestSenderTest {
+
+    RecordingSender sender;
+    ExecutorService executor;
+    CallbackExecutorRequestSender callbackSender;
+    Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        sender = new RecordingSender();
+        executor = Executors.newSingleThreadExecutor(new NamedThreadFactory("test-callback"));
+        callbackSender = new CallbackExecutorRequestSender(sender, executor);
+        client = new Client("regid", "endpoint", InetAddress.getLocalHost(), 5683, new InetSocketAddress(5683));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void call_callbacks_with_executor() throws InterruptedException {
+        Callback callback = new Callback();
+        callbackSender.send(client, new ReadRequest(3), callback, callback);
+        Callback failed = new Callback();
+        callbackSender.send(client, new ReadRequest(4), failed, failed);
+
+        sender.respond(0);
+        sender.fail(1);
+
+        Assert.assertTrue(callback.latch.await(2, TimeUnit.SECONDS));
+        Assert.assertNotNull(callback.response);
+        Assert.assertEquals("test-callback-0", callback.thread);
+        Assert.assertTrue(failed.latch.await(2, TimeUnit.SECONDS));
+        Assert.assertNotNull(failed.error);
+        Assert.assertEquals("test-callback-0", failed.thread);
+    }
+
+    @Test
+    public void call_callback_directly_when_executor_is_shut_down() {
+        Callback callback = new Callback();
+        callbackSender.send(client, new ReadRequest(3), callback, callback);
+        executor.shutdown();
+
+        sender.respond(0);
+
+        Assert.assertNotNull(callback.response);
+        Assert.assertEquals(Thread.currentThread().getName(), callback.thread);
+    }
+
+    @Test
+    public void keep_callback_for_executor_threads_when_saturated() throws InterruptedException {
+        TrafficLane lane = new TrafficLane("test-lane", 1, 1);
+        try {
+            callbackSender = new CallbackExecutorRequestSender(sender, lane);
+            final CountDownLatch blocked = new CountDownLatch(1);
+            Callback blocking = new Callback() {
+                @Override
+                public void onResponse(ValueResponse response) {
+                    try {
+                        blocked.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            };
+            callbackSender.send(client, new ReadRequest(3), blocking, blocking);
+            Callback queued = new Callback();
+            callbackSender.send(client, new ReadRequest(4), queued, queued);
+            Callback callback = new Callback();
+            callbackSender.send(client, new ReadRequest(5), callback, callback);
+            // the first callback blocks the only thread of the lane, the second one fills its queue
+            sender.respond(0);
+            sender.respond(1);
+
+            sender.respond(2);
+            Assert.assertNull(callback.response);
+
+            blocked.countDown();
+            Assert.assertTrue(callback.latch.await(2, TimeUnit.SECONDS));
+            Assert.assertEquals("test-lane-0", callback.thread);
+        } finally {
+            lane.stop();
+        }
+    }
+
+    static class Callback implements ResponseCallback<ValueResponse>, ErrorCallback {
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        volatile ValueResponse response;
+        volatile Exception error;
+        volatile String thread;
+
+        @Override
+        public void onResponse(ValueResponse response) {
+            this.response = response;
+            this.thread = Thread.currentThread().getName();
+            latch.countDown();
+        }
+
+        @Override
+        public void onError(Exception e) {
+            this.error = e;
+            this.thread = Thread.currentThread().getName();
+            latch.countDown();
+        }
+    }
+}
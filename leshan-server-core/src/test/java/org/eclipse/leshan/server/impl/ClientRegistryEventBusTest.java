@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ClientRegistryEventBusTest {
+
+    @Test
+    public void deliver_in_publishing_thread_when_not_started() throws Exception {
+        ClientRegistryEventBus bus = new ClientRegistryEventBus(2, 10, 10);
+        RecordingListener listener = new RecordingListener();
+        bus.addListener(listener);
+
+        bus.registered(givenAClient("ep1"));
+
+        Assert.assertEquals(Collections.singletonList("registered ep1"), listener.events);
+        Assert.assertEquals(Thread.currentThread(), listener.threads.get(0));
+    }
+
+    @Test
+    public void deliver_events_of_a_client_in_order() throws Exception {
+        ClientRegistryEventBus bus = new ClientRegistryEventBus(4, 10, 5);
+        RecordingListener listener = new RecordingListener();
+        bus.addListener(listener);
+        bus.start();
+
+        for (int i = 0; i < 100; i++) {
+            Client client = givenAClient("ep" + (i % 10));
+            if (i < 10) {
+                bus.registered(client);
+            } else if (i < 90) {
+                bus.updated(client);
+            } else {
+                bus.unregistered(client);
+            }
+        }
+        bus.stop();
+
+        Assert.assertEquals(100, bus.getDeliveredEvents());
+        Assert.assertEquals(0, bus.getQueuedEvents());
+        Assert.assertTrue(bus.getMaxLag() >= bus.getLag());
+        Assert.assertFalse(listener.threads.contains(Thread.currentThread()));
+        for (int ep = 0; ep < 10; ep++) {
+            List<String> events = listener.eventsOf("ep" + ep);
+            Assert.assertEquals(10, events.size());
+            Assert.assertEquals("registered ep" + ep, events.get(0));
+            Assert.assertEquals("updated ep" + ep, events.get(1));
+            Assert.assertEquals("unregistered ep" + ep, events.get(9));
+        }
+    }
+
+    @Test
+    public void deliver_to_next_listeners_after_an_error() throws Exception {
+        ClientRegistryEventBus bus = new ClientRegistryEventBus();
+        bus.addListener(new RecordingListener() {
+            @Override
+            public void registered(Client client) {
+                throw new IllegalStateException();
+            }
+        });
+        RecordingListener listener = new RecordingListener();
+        bus.addListener(listener);
+
+        bus.registered(givenAClient("ep1"));
+
+        Assert.assertEquals(Collections.singletonList("registered ep1"), listener.events);
+    }
+
+    private Client givenAClient(String endpoint) throws Exception {
+        return new Client("reg-" + endpoint, endpoint, InetAddress.getLocalHost(), 5683,
+                new InetSocketAddress(5683));
+    }
+
+    private static class RecordingListener implements ClientRegistryListener {
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final List<Thread> threads = Collections.synchronizedList(new ArrayList<Thread>());
+
+        List<String> eventsOf(String endpoint) {
+            List<String> result = new ArrayList<>();
+            synchronized (events) {
+                for (String event : events) {
+                    if (event.endsWith(" " + endpoint)) {
+                        result.add(event);
+                    }
+                }
+            }
+            return result;
+        }
+
+        private void record(String event, Client client) {
+            events.add(event + " " + client.getEndpoint());
+            threads.add(Thread.currentThread());
+        }
+
+        @Override
+        public void registered(Client client) {
+            record("registered", client);
+        }
+
+        @Override
+        public void updated(Client clientUpdated) {
+            record("updated", clientUpdated);
+        }
+
+        @Override
+        public void unregistered(Client client) {
+            record("unregistered", client);
+        }
+    }
+}
@@ -17,10 +17,12 @@ package org.eclipse.leshan.server.impl;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.Date;
 
 import org.eclipse.leshan.LinkObject;
 import org.eclipse.leshan.core.request.BindingMode;
 import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
 import org.eclipse.leshan.server.client.ClientUpdate;
 import org.junit.Assert;
 import org.junit.Before;
@@ -83,6 +85,73 @@ public class ClientRegistryImplTest {
         Assert.assertTrue(registeredClient.isAlive());
     }
 
+    @Test
+    public void keep_alive_extends_time_to_live_without_notifying_listeners() {
+        // a client whose registration expired 1s ago
+        Date lastUpdate = new Date(System.currentTimeMillis() - 2000);
+        client = new Client(registrationId, ep, address, port, null, 1L, sms, BindingMode.U, objectLinks,
+                InetSocketAddress.createUnresolved("localhost", 5683), lastUpdate, lastUpdate);
+        registry.registerClient(client);
+        CountingListener listener = new CountingListener();
+        registry.addListener(listener);
+        Assert.assertFalse(client.isAlive());
+
+        Client keptAlive = registry.keepAlive(registrationId, address, port);
+
+        Assert.assertSame(client, keptAlive);
+        Assert.assertSame(client, registry.get(ep));
+        Assert.assertTrue(keptAlive.isAlive());
+        Assert.assertEquals(0, listener.updates);
+    }
+
+    @Test
+    public void keep_alive_from_new_address_updates_client() throws Exception {
+        binding = BindingMode.U;
+        givenASimpleClient(lifetime);
+        registry.registerClient(client);
+        CountingListener listener = new CountingListener();
+        registry.addListener(listener);
+
+        Client keptAlive = registry.keepAlive(registrationId, address, port + 1);
+
+        Assert.assertEquals(port + 1, keptAlive.getPort());
+        Assert.assertEquals(port + 1, registry.get(ep).getPort());
+        Assert.assertEquals(1, listener.updates);
+    }
+
+    @Test
+    public void keep_alive_of_queue_mode_client_notifies_listeners() {
+        givenASimpleClient(lifetime);
+        registry.registerClient(client);
+        CountingListener listener = new CountingListener();
+        registry.addListener(listener);
+
+        Assert.assertNotNull(registry.keepAlive(registrationId, address, port));
+        Assert.assertEquals(1, listener.updates);
+    }
+
+    @Test
+    public void keep_alive_of_unknown_registration() {
+        Assert.assertNull(registry.keepAlive("unknown", address, port));
+    }
+
+    private static class CountingListener implements ClientRegistryListener {
+        int updates = 0;
+
+        @Override
+        public void registered(Client client) {
+        }
+
+        @Override
+        public void updated(Client clientUpdated) {
+            updates++;
+        }
+
+        @Override
+        public void unregistered(Client client) {
+        }
+    }
+
     private void givenASimpleClient(Long lifetime) {
         client = new Client(registrationId, ep, address, port, null, lifetime, sms, binding, objectLinks,
                 InetSocketAddress.createUnresolved("localhost", 5683));
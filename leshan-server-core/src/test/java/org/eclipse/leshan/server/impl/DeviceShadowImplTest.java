@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.eclipse.leshan.core.node.LwM2mObjectInstance;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.Value;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.shadow.ShadowValue;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DeviceShadowImplTest {
+
+    Client client;
+    DeviceShadowImpl shadow;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new Client("ID", "urn:client", InetAddress.getLocalHost(), 10000,
+                InetSocketAddress.createUnresolved("localhost", 5683));
+        shadow = new DeviceShadowImpl(2);
+    }
+
+    @Test
+    public void get_recent_value() {
+        LwM2mResource resource = new LwM2mResource(0, Value.newStringValue("value"));
+        shadow.update(client, new LwM2mPath(3, 0, 0), resource);
+
+        ShadowValue value = shadow.get(client, new LwM2mPath(3, 0, 0), 1000);
+        Assert.assertEquals(resource, value.getNode());
+    }
+
+    @Test
+    public void ignore_stale_value() throws InterruptedException {
+        shadow.update(client, new LwM2mPath(3, 0, 0), new LwM2mResource(0, Value.newStringValue("value")));
+        Thread.sleep(20);
+
+        Assert.assertNull(shadow.get(client, new LwM2mPath(3, 0, 0), 10));
+    }
+
+    @Test
+    public void get_resource_from_instance_value() {
+        LwM2mResource resource = new LwM2mResource(1, Value.newStringValue("model"));
+        shadow.update(client, new LwM2mPath(3, 0), new LwM2mObjectInstance(0, new LwM2mResource[] { resource }));
+
+        Assert.assertEquals(resource, shadow.get(client, new LwM2mPath(3, 0, 1), 1000).getNode());
+        Assert.assertNull(shadow.get(client, new LwM2mPath(3, 0, 2), 1000));
+    }
+
+    @Test
+    public void evict_least_recently_used_values() {
+        shadow.update(client, new LwM2mPath(3, 0, 0), new LwM2mResource(0, Value.newStringValue("a")));
+        shadow.update(client, new LwM2mPath(3, 0, 1), new LwM2mResource(1, Value.newStringValue("b")));
+        shadow.get(client, new LwM2mPath(3, 0, 0), 1000);
+        shadow.update(client, new LwM2mPath(3, 0, 2), new LwM2mResource(2, Value.newStringValue("c")));
+
+        Assert.assertEquals(2, shadow.size());
+        Assert.assertNotNull(shadow.get(client, new LwM2mPath(3, 0, 0), 1000));
+        Assert.assertNull(shadow.get(client, new LwM2mPath(3, 0, 1), 1000));
+    }
+
+    @Test
+    public void invalidate_node_parents_and_children() {
+        shadow = new DeviceShadowImpl(10);
+        shadow.update(client, new LwM2mPath(3), new LwM2mResource(0, Value.newStringValue("object")));
+        shadow.update(client, new LwM2mPath(3, 0), new LwM2mResource(0, Value.newStringValue("instance")));
+        shadow.update(client, new LwM2mPath(3, 0, 1), new LwM2mResource(1, Value.newStringValue("resource")));
+        shadow.update(client, new LwM2mPath(3, 1, 1), new LwM2mResource(1, Value.newStringValue("other")));
+
+        shadow.invalidate(client, new LwM2mPath(3, 0));
+
+        Assert.assertNull(shadow.get(client, new LwM2mPath(3), 1000));
+        Assert.assertNull(shadow.get(client, new LwM2mPath(3, 0), 1000));
+        Assert.assertNull(shadow.get(client, new LwM2mPath(3, 0, 1), 1000));
+        Assert.assertNotNull(shadow.get(client, new LwM2mPath(3, 1, 1), 1000));
+        Assert.assertEquals(1, shadow.size());
+    }
+
+    @Test
+    public void forget_values_on_deregistration() {
+        shadow.update(client, new LwM2mPath(3, 0, 0), new LwM2mResource(0, Value.newStringValue("value")));
+
+        shadow.unregistered(client);
+
+        Assert.assertEquals(0, shadow.size());
+        Assert.assertNull(shadow.get(client, new LwM2mPath(3, 0, 0), 1000));
+    }
+}
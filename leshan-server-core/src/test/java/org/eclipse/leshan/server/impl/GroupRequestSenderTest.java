@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.leshan.ResponseCode;
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ValueResponse;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.request.GroupOperation;
+import org.eclipse.leshan.server.request.GroupRequestListener;
+import org.eclipse.leshan.server.request.LwM2mRequestSender;
+import org.eclipse.leshan.util.HashedWheelTimer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GroupRequestSenderTest {
+
+    HashedWheelTimer timer;
+    RecordingSender sender;
+    Listener listener;
+
+    @Before
+    public void setUp() {
+        timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 64);
+        sender = new RecordingSender();
+        listener = new Listener();
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test
+    public void limit_concurrent_requests() throws Exception {
+        GroupRequestSender groupSender = new GroupRequestSender(sender, timer, 2, 0);
+
+        GroupOperation operation = groupSender.send(givenClients(5), new ReadRequest(3), null, listener);
+
+        Assert.assertEquals(2, sender.callbacks.size());
+        Assert.assertEquals(5, operation.getPending());
+
+        sender.respond(0);
+        Assert.assertEquals(3, sender.callbacks.size());
+        Assert.assertEquals(1, listener.responses.size());
+        Assert.assertEquals(4, operation.getPending());
+    }
+
+    @Test
+    public void complete_when_all_clients_answered() throws Exception {
+        GroupRequestSender groupSender = new GroupRequestSender(sender, timer, 2, 0);
+
+        GroupOperation operation = groupSender.send(givenClients(3), new ReadRequest(3), null, listener);
+        sender.respond(0);
+        sender.respond(1);
+        Assert.assertFalse(operation.isCompleted());
+        sender.fail(2);
+
+        Assert.assertTrue(operation.isCompleted());
+        Assert.assertEquals(0, listener.completed.getCount());
+        Assert.assertEquals(2, operation.getResponses());
+        Assert.assertEquals(1, operation.getErrors());
+        Assert.assertEquals(0, groupSender.getConcurrentRequests());
+    }
+
+    @Test
+    public void stop_sending_when_cancelled() throws Exception {
+        GroupRequestSender groupSender = new GroupRequestSender(sender, timer, 1, 0);
+
+        GroupOperation operation = groupSender.send(givenClients(3), new ReadRequest(3), null, listener);
+        operation.cancel();
+        Assert.assertFalse(operation.isCompleted());
+
+        sender.respond(0);
+        Assert.assertEquals(1, sender.callbacks.size());
+        Assert.assertTrue(operation.isCompleted());
+        Assert.assertTrue(operation.isCancelled());
+        Assert.assertEquals(0, operation.getPending());
+    }
+
+    @Test
+    public void limit_request_rate() throws Exception {
+        GroupRequestSender groupSender = new GroupRequestSender(sender, timer, 100, 10);
+
+        groupSender.send(givenClients(15), new ReadRequest(3), null, listener);
+        Assert.assertEquals(10, sender.callbacks.size());
+
+        Thread.sleep(300);
+        synchronized (sender) {
+            Assert.assertTrue(sender.callbacks.size() > 10);
+            Assert.assertTrue(sender.callbacks.size() < 15);
+        }
+    }
+
+    private List<Client> givenClients(int count) throws Exception {
+        List<Client> clients = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            clients.add(new Client("ID" + i, "urn:client" + i, InetAddress.getLocalHost(), 10000,
+                    InetSocketAddress.createUnresolved("localhost", 5683)));
+        }
+        return clients;
+    }
+
+    static class Listener implements GroupRequestListener<ValueResponse> {
+
+        final List<ValueResponse> responses = new ArrayList<>();
+        final List<Exception> errors = new ArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+
+        @Override
+        public synchronized void onResponse(Client client, ValueResponse response) {
+            responses.add(response);
+        }
+
+        @Override
+        public synchronized void onError(Client client, Exception e) {
+            errors.add(e);
+        }
+
+        @Override
+        public void onCompleted(GroupOperation operation) {
+            completed.countDown();
+        }
+    }
+
+    /**
+     * A sender which records the callbacks and lets the test complete the requests.
+     */
+    static class RecordingSender implements LwM2mRequestSender {
+
+        final List<ResponseCallback<ValueResponse>> callbacks = new ArrayList<>();
+        final List<ErrorCallback> errorCallbacks = new ArrayList<>();
+
+        void respond(int index) {
+            callbacks.get(index).onResponse(new ValueResponse(ResponseCode.NOT_FOUND));
+        }
+
+        void fail(int index) {
+            errorCallbacks.get(index).onError(new RuntimeException("failure"));
+        }
+
+        @Override
+        public <T extends LwM2mResponse> T send(Client destination, DownlinkRequest<T> request, Long timeout) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
+                ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            send(destination, request, null, responseCallback, errorCallback);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public synchronized <T extends LwM2mResponse> void send(Client destination, DownlinkRequest<T> request,
+                Long timeout, ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            callbacks.add((ResponseCallback<ValueResponse>) responseCallback);
+            errorCallbacks.add(errorCallback);
+        }
+    }
+}
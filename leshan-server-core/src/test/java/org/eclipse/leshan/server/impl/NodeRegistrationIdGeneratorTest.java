@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NodeRegistrationIdGeneratorTest {
+
+    @Test
+    public void generate_unique_ids_containing_node_id() {
+        NodeRegistrationIdGenerator generator = new NodeRegistrationIdGenerator("node-1");
+        Set<String> ids = new HashSet<>();
+
+        for (int i = 0; i < 1000; i++) {
+            String id = generator.generate(null);
+            Assert.assertTrue(id.matches("[A-Za-z0-9.-]+"));
+            Assert.assertEquals("node-1", NodeRegistrationIdGenerator.getNodeId(id));
+            ids.add(id);
+        }
+
+        Assert.assertEquals(1000, ids.size());
+    }
+
+    @Test
+    public void generate_unique_ids_after_restart() throws InterruptedException {
+        String before = new NodeRegistrationIdGenerator("node1").generate(null);
+        Thread.sleep(2);
+        String after = new NodeRegistrationIdGenerator("node1").generate(null);
+
+        Assert.assertNotEquals(before, after);
+    }
+
+    @Test
+    public void no_node_id_in_random_registration_id() {
+        Assert.assertNull(NodeRegistrationIdGenerator.getNodeId("a1b2C3d4E5"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reject_node_id_with_separator() {
+        new NodeRegistrationIdGenerator("node.1");
+    }
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.leshan.core.request.DownlinkRequest;
+import org.eclipse.leshan.core.request.ReadRequest;
+import org.eclipse.leshan.core.request.exception.RequestFailedException;
+import org.eclipse.leshan.core.response.ErrorCallback;
+import org.eclipse.leshan.core.response.LwM2mResponse;
+import org.eclipse.leshan.core.response.ResponseCallback;
+import org.eclipse.leshan.core.response.ValueResponse;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.cluster.RequestForwarder;
+import org.eclipse.leshan.server.impl.GroupRequestSenderTest.RecordingSender;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NodeRoutingRequestSenderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    SharedClientRegistry node1;
+    SharedClientRegistry node2;
+    RecordingSender localSender;
+    List<String> forwardedTo;
+    Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        node1 = new SharedClientRegistry(new FileKeyValueStore(folder.getRoot().getPath()),
+                new ClientRegistryEventBus(), "node1");
+        node2 = new SharedClientRegistry(new FileKeyValueStore(folder.getRoot().getPath()),
+                new ClientRegistryEventBus(), "node2");
+        localSender = new RecordingSender();
+        forwardedTo = new ArrayList<>();
+        client = new Client("node1.abc", "urn:endpoint", InetAddress.getLocalHost(), 5683, new InetSocketAddress(
+                5683));
+    }
+
+    @Test
+    public void route_to_the_node_of_the_last_keep_alive() {
+        NodeRoutingRequestSender sender = new NodeRoutingRequestSender("node1", localSender, new Forwarder(), node1);
+        node1.registerClient(client);
+
+        sender.send(client, new ReadRequest(3), null, null);
+        Assert.assertEquals(1, localSender.callbacks.size());
+
+        // the client moved to the other node, although its registration id still names the first one
+        node2.keepAlive("node1.abc", client.getAddress(), client.getPort());
+        sender.send(client, new ReadRequest(3), null, null);
+
+        Assert.assertEquals(1, localSender.callbacks.size());
+        Assert.assertEquals("node2", forwardedTo.get(0));
+    }
+
+    @Test
+    public void report_error_without_forwarder() {
+        NodeRoutingRequestSender sender = new NodeRoutingRequestSender("node2", localSender, null, node2);
+        node1.registerClient(client);
+        final Exception[] error = new Exception[1];
+
+        sender.send(client, new ReadRequest(3), new ResponseCallback<ValueResponse>() {
+            @Override
+            public void onResponse(ValueResponse response) {
+            }
+        }, new ErrorCallback() {
+            @Override
+            public void onError(Exception e) {
+                error[0] = e;
+            }
+        });
+
+        Assert.assertTrue(error[0] instanceof RequestFailedException);
+        Assert.assertTrue(localSender.callbacks.isEmpty());
+    }
+
+    private class Forwarder implements RequestForwarder {
+
+        @Override
+        public <T extends LwM2mResponse> void forward(String nodeId, Client destination, DownlinkRequest<T> request,
+                Long timeout, ResponseCallback<T> responseCallback, ErrorCallback errorCallback) {
+            forwardedTo.add(nodeId);
+        }
+    }
+}
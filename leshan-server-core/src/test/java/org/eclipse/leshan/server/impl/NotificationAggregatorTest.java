@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.server.aggregation.Aggregate;
+import org.eclipse.leshan.server.aggregation.AggregateListener;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NotificationAggregatorTest {
+
+    final LwM2mPath path = new LwM2mPath(3303, 0, 5700);
+    final List<Aggregate> aggregates = new ArrayList<>();
+
+    private NotificationAggregator givenAnAggregator(long window, long step) {
+        NotificationAggregator aggregator = new NotificationAggregator(window, step, 4);
+        aggregator.addListener(new AggregateListener() {
+            @Override
+            public void onAggregate(Aggregate aggregate) {
+                aggregates.add(aggregate);
+            }
+        });
+        return aggregator;
+    }
+
+    @Test
+    public void emit_tumbling_window_aggregate() {
+        NotificationAggregator aggregator = givenAnAggregator(60000, 60000);
+        aggregator.record("ep1", path, 20, 60000);
+        aggregator.record("ep1", path, 24, 90000);
+        aggregator.record("ep1", path, 22, 119999);
+        // next window
+        aggregator.record("ep1", path, 100, 120000);
+
+        aggregator.closeWindows(120010);
+
+        Assert.assertEquals(1, aggregates.size());
+        Aggregate aggregate = aggregates.get(0);
+        Assert.assertEquals("ep1", aggregate.getEndpoint());
+        Assert.assertEquals(60000, aggregate.getStart());
+        Assert.assertEquals(120000, aggregate.getEnd());
+        Assert.assertEquals(3, aggregate.getCount());
+        Assert.assertEquals(20, aggregate.getMin(), 0);
+        Assert.assertEquals(24, aggregate.getMax(), 0);
+        Assert.assertEquals(22, aggregate.getAverage(), 0);
+    }
+
+    @Test
+    public void emit_sliding_window_aggregates() {
+        NotificationAggregator aggregator = givenAnAggregator(3000, 1000);
+        aggregator.record("ep1", path, 1, 1000);
+        aggregator.record("ep1", path, 2, 2000);
+
+        aggregator.closeWindows(3000);
+        aggregator.record("ep1", path, 3, 3000);
+        aggregator.closeWindows(4000);
+
+        Assert.assertEquals(2, aggregates.size());
+        Assert.assertEquals(2, aggregates.get(0).getCount());
+        Assert.assertEquals(3, aggregates.get(1).getCount());
+        Assert.assertEquals(1000, aggregates.get(1).getStart());
+        Assert.assertEquals(6, aggregates.get(1).getSum(), 0);
+    }
+
+    @Test
+    public void aggregate_each_endpoint_separately() {
+        NotificationAggregator aggregator = givenAnAggregator(1000, 1000);
+        for (int i = 0; i < 10; i++) {
+            aggregator.record("ep" + i, path, i, 500);
+        }
+
+        aggregator.closeWindows(1000);
+
+        Assert.assertEquals(10, aggregates.size());
+        Assert.assertEquals(10, aggregator.getEmittedAggregates());
+    }
+
+    @Test
+    public void forget_idle_resources() {
+        NotificationAggregator aggregator = givenAnAggregator(1000, 1000);
+        aggregator.record("ep1", path, 1, 500);
+        aggregator.closeWindows(1000);
+        Assert.assertEquals(1, aggregator.getSeriesCount());
+
+        aggregator.closeWindows(2000);
+
+        Assert.assertEquals(1, aggregates.size());
+        Assert.assertEquals(0, aggregator.getSeriesCount());
+    }
+}
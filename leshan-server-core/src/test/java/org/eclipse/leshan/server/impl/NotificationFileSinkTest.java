@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.leshan.core.node.LwM2mObjectInstance;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.Value;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationListener;
+import org.eclipse.leshan.util.Charsets;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NotificationFileSinkTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    Client client;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new Client("ID", "urn:client 1", InetAddress.getLocalHost(), 10000,
+                InetSocketAddress.createUnresolved("localhost", 5683));
+    }
+
+    @Test
+    public void write_notified_values() throws Exception {
+        NotificationFileSink sink = new NotificationFileSink(folder.getRoot().getPath());
+        sink.start();
+
+        LwM2mResource[] resources = new LwM2mResource[] {
+                                new LwM2mResource(0, Value.newStringValue("Leshan Demo")),
+                                new LwM2mResource(7, new Value<?>[] { Value.newDoubleValue(3.8),
+                                                        Value.newDoubleValue(5.0) }),
+                                new LwM2mResource(9, Value.newIntegerValue(87)) };
+        sink.newValue(new SimpleObservation(new LwM2mPath(3, 0)), new LwM2mObjectInstance(0, resources));
+        sink.newValue(new SimpleObservation(new LwM2mPath(3, 0, 13)), new LwM2mResource(13, Value.newBinaryValue(
+                new byte[] { 0x0a, (byte) 0xff })));
+        sink.stop();
+
+        Assert.assertEquals(5, sink.getWrittenRecords());
+        Assert.assertEquals(0, sink.getDroppedRecords());
+        File[] files = folder.getRoot().listFiles();
+        Assert.assertEquals(1, files.length);
+        List<String> lines = new ArrayList<>();
+        for (String line : Files.readAllLines(files[0].toPath(), Charsets.UTF_8)) {
+            Assert.assertTrue(line.matches("\\d+ .*"));
+            // remove the timestamp
+            lines.add(line.substring(line.indexOf(' ') + 1));
+        }
+        Assert.assertEquals(5, lines.size());
+        Assert.assertTrue(lines.contains("urn:client\\s1 /3/0/0 s Leshan\\sDemo"));
+        Assert.assertTrue(lines.contains("urn:client\\s1 /3/0/7/0 f 3.8"));
+        Assert.assertTrue(lines.contains("urn:client\\s1 /3/0/7/1 f 5.0"));
+        Assert.assertTrue(lines.contains("urn:client\\s1 /3/0/9 i 87"));
+        Assert.assertEquals("urn:client\\s1 /3/0/13 o 0aff", lines.get(4));
+    }
+
+    @Test
+    public void roll_files() throws Exception {
+        NotificationFileSink sink = new NotificationFileSink(folder.getRoot().getPath(), 1, 2, 1000);
+        sink.start();
+
+        for (int i = 0; i < 5; i++) {
+            sink.newValue(new SimpleObservation(new LwM2mPath(3, 0, 9)),
+                    new LwM2mResource(9, Value.newIntegerValue(i)));
+            waitUntilWritten(sink, i + 1);
+        }
+        sink.stop();
+
+        // one file per record, only the 2 last are kept
+        String[] files = folder.getRoot().list();
+        Arrays.sort(files);
+        Assert.assertEquals(2, files.length);
+        List<String> lines = Files.readAllLines(new File(folder.getRoot(), files[1]).toPath(), Charsets.UTF_8);
+        Assert.assertTrue(lines.get(0).endsWith(" i 4"));
+    }
+
+    @Test
+    public void drop_records_when_queue_is_full() {
+        NotificationFileSink sink = new NotificationFileSink(folder.getRoot().getPath(), 1024, 1, 2);
+
+        for (int i = 0; i < 3; i++) {
+            sink.newValue(new SimpleObservation(new LwM2mPath(3, 0, 9)),
+                    new LwM2mResource(9, Value.newIntegerValue(i)));
+        }
+
+        Assert.assertEquals(2, sink.getQueuedRecords());
+        Assert.assertEquals(1, sink.getDroppedRecords());
+    }
+
+    private void waitUntilWritten(NotificationFileSink sink, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (sink.getWrittenRecords() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    private class SimpleObservation implements Observation {
+
+        private final LwM2mPath path;
+
+        SimpleObservation(LwM2mPath path) {
+            this.path = path;
+        }
+
+        @Override
+        public Client getClient() {
+            return client;
+        }
+
+        @Override
+        public LwM2mPath getPath() {
+            return path;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public void addListener(ObservationListener listener) {
+        }
+
+        @Override
+        public void removeListener(ObservationListener listener) {
+        }
+    }
+}
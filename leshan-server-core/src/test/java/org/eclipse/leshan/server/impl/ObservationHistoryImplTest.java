@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import org.eclipse.leshan.core.node.LwM2mObjectInstance;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.Value;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.history.TimeSeries;
+import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationListener;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ObservationHistoryImplTest {
+
+    Client client;
+    ObservationHistoryImpl history;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new Client("ID", "urn:client", InetAddress.getLocalHost(), 10000,
+                InetSocketAddress.createUnresolved("localhost", 5683));
+        history = new ObservationHistoryImpl(3, 2);
+    }
+
+    @Test
+    public void keep_last_values() {
+        Observation observation = new SimpleObservation(new LwM2mPath(3, 0, 9));
+        for (int i = 1; i <= 5; i++) {
+            history.newValue(observation, new LwM2mResource(9, Value.newIntegerValue(i)));
+        }
+
+        TimeSeries series = history.get(client, new LwM2mPath(3, 0, 9), 0, Long.MAX_VALUE);
+
+        Assert.assertEquals(3, series.size());
+        Assert.assertEquals(3, series.getLongValue(0));
+        Assert.assertEquals(5, series.getLongValue(2));
+        Assert.assertFalse(series.isFloatingPoint());
+    }
+
+    @Test
+    public void query_by_time_range() {
+        Observation observation = new SimpleObservation(new LwM2mPath(3303, 0, 5700));
+        long before = System.currentTimeMillis();
+        history.newValue(observation, new LwM2mResource(5700, Value.newDoubleValue(21.5)));
+
+        TimeSeries series = history.get(client, new LwM2mPath(3303, 0, 5700), before, Long.MAX_VALUE);
+        Assert.assertEquals(1, series.size());
+        Assert.assertEquals(21.5, series.getValue(0), 0);
+        Assert.assertTrue(series.isFloatingPoint());
+
+        Assert.assertEquals(0, history.get(client, new LwM2mPath(3303, 0, 5700), 0, before - 1).size());
+    }
+
+    @Test
+    public void record_numeric_resources_of_instance() {
+        Observation observation = new SimpleObservation(new LwM2mPath(3, 0));
+        history.newValue(observation, new LwM2mObjectInstance(0, new LwM2mResource[] {
+                new LwM2mResource(0, Value.newStringValue("Leshan")),
+                new LwM2mResource(9, Value.newIntegerValue(80)),
+                new LwM2mResource(10, Value.newLongValue(1024)) }));
+
+        Assert.assertNull(history.get(client, new LwM2mPath(3, 0, 0), 0, Long.MAX_VALUE));
+        Assert.assertEquals(1, history.get(client, new LwM2mPath(3, 0, 9), 0, Long.MAX_VALUE).size());
+        Assert.assertEquals(2, history.getSeriesCount());
+    }
+
+    @Test
+    public void limit_number_of_series() {
+        for (int i = 0; i < 3; i++) {
+            history.newValue(new SimpleObservation(new LwM2mPath(3, 0, i)),
+                    new LwM2mResource(i, Value.newIntegerValue(i)));
+        }
+
+        Assert.assertEquals(2, history.getSeriesCount());
+        Assert.assertNull(history.get(client, new LwM2mPath(3, 0, 2), 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void forget_history_on_cancel_and_deregistration() {
+        history.newValue(new SimpleObservation(new LwM2mPath(3, 0, 9)),
+                new LwM2mResource(9, Value.newIntegerValue(1)));
+        history.newValue(new SimpleObservation(new LwM2mPath(4, 0, 2)),
+                new LwM2mResource(2, Value.newIntegerValue(1)));
+
+        history.cancelled(new SimpleObservation(new LwM2mPath(3, 0)));
+        Assert.assertNull(history.get(client, new LwM2mPath(3, 0, 9), 0, Long.MAX_VALUE));
+        Assert.assertEquals(1, history.getSeriesCount());
+
+        history.unregistered(client);
+        Assert.assertEquals(0, history.getSeriesCount());
+    }
+
+    @Test
+    public void ignore_values_of_deregistered_client() {
+        // the registry does not know the client anymore
+        history = new ObservationHistoryImpl(3, 2, new ClientRegistryImpl());
+
+        history.newValue(new SimpleObservation(new LwM2mPath(3, 0, 9)),
+                new LwM2mResource(9, Value.newIntegerValue(1)));
+
+        Assert.assertEquals(0, history.getSeriesCount());
+        Assert.assertNull(history.get(client, new LwM2mPath(3, 0, 9), 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void ignore_values_processed_after_deregistration() {
+        ClientRegistryImpl registry = new ClientRegistryImpl();
+        registry.registerClient(client);
+        history = new ObservationHistoryImpl(3, 2, registry);
+        history.newValue(new SimpleObservation(new LwM2mPath(3, 0, 9)),
+                new LwM2mResource(9, Value.newIntegerValue(1)));
+        Assert.assertEquals(1, history.getSeriesCount());
+
+        registry.deregisterClient(client.getRegistrationId());
+        history.unregistered(client);
+        // a notification received before the deregistration and processed after it
+        history.newValue(new SimpleObservation(new LwM2mPath(4, 0, 2)),
+                new LwM2mResource(2, Value.newIntegerValue(1)));
+
+        Assert.assertEquals(0, history.getSeriesCount());
+    }
+
+    private class SimpleObservation implements Observation {
+
+        private final LwM2mPath path;
+
+        SimpleObservation(LwM2mPath path) {
+            this.path = path;
+        }
+
+        @Override
+        public Client getClient() {
+            return client;
+        }
+
+        @Override
+        public LwM2mPath getPath() {
+            return path;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public void addListener(ObservationListener listener) {
+        }
+
+        @Override
+        public void removeListener(ObservationListener listener) {
+        }
+    }
+}
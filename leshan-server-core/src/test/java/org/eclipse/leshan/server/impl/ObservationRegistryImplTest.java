@@ -16,12 +16,18 @@
 package org.eclipse.leshan.server.impl;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.eclipse.leshan.core.node.LwM2mNode;
 import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.server.client.Client;
 import org.eclipse.leshan.server.impl.ObservationRegistryImpl;
 import org.eclipse.leshan.server.observation.Observation;
+import org.eclipse.leshan.server.observation.ObservationFilter;
 import org.eclipse.leshan.server.observation.ObservationListener;
+import org.eclipse.leshan.server.observation.ObservationRegistryListener;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -48,6 +54,70 @@ public class ObservationRegistryImplTest extends BasicTestSupport {
         Assert.assertSame(1, registry.cancelObservations(client));
     }
 
+    @Test
+    public void dispatch_notifications_to_matching_subscriptions() throws IOException {
+        givenASimpleClient();
+        Client other = new Client("ID2", "urn:other", client.getAddress(), client.getPort(),
+                InetSocketAddress.createUnresolved("localhost", 5683));
+
+        RecordingListener all = new RecordingListener();
+        RecordingListener object3 = new RecordingListener();
+        RecordingListener instance30 = new RecordingListener();
+        RecordingListener resource3015 = new RecordingListener();
+        RecordingListener otherClient = new RecordingListener();
+        RecordingListener object3OfOtherClient = new RecordingListener();
+        registry.addListener(all);
+        registry.addListener(object3, ObservationFilter.forObject(3));
+        registry.addListener(instance30, ObservationFilter.forObjectInstance(3, 0));
+        registry.addListener(resource3015, ObservationFilter.forPath(new LwM2mPath(3, 0, 15)));
+        registry.addListener(otherClient, ObservationFilter.forEndpoints("urn:other"));
+        registry.addListener(object3OfOtherClient, ObservationFilter.forObject(3).withEndpoints("urn:other"));
+
+        registry.newValue(new ObservationImpl(client, new LwM2mPath(3, 0, 15)), null);
+        registry.newValue(new ObservationImpl(client, new LwM2mPath(3, 0, 14)), null);
+        registry.newValue(new ObservationImpl(client, new LwM2mPath(3)), null);
+        registry.newValue(new ObservationImpl(client, new LwM2mPath(4, 0)), null);
+        registry.newValue(new ObservationImpl(other, new LwM2mPath(3, 0)), null);
+
+        Assert.assertEquals(5, all.values.size());
+        Assert.assertEquals(4, object3.values.size());
+        Assert.assertEquals(3, instance30.values.size());
+        Assert.assertEquals(1, resource3015.values.size());
+        Assert.assertEquals(1, otherClient.values.size());
+        Assert.assertEquals(1, object3OfOtherClient.values.size());
+    }
+
+    @Test
+    public void remove_filtered_subscription() throws IOException {
+        givenASimpleClient();
+        RecordingListener listener = new RecordingListener();
+        registry.addListener(listener, ObservationFilter.forObject(3));
+        registry.addListener(listener, ObservationFilter.forObject(4));
+
+        registry.removeListener(listener);
+        registry.newValue(new ObservationImpl(client, new LwM2mPath(3, 0, 15)), null);
+
+        Assert.assertTrue(listener.values.isEmpty());
+    }
+
+    private class RecordingListener implements ObservationRegistryListener {
+
+        final List<Observation> values = new ArrayList<>();
+
+        @Override
+        public void newValue(Observation observation, LwM2mNode value) {
+            values.add(observation);
+        }
+
+        @Override
+        public void cancelled(Observation observation) {
+        }
+
+        @Override
+        public void newObservation(Observation observation) {
+        }
+    }
+
     private class ObservationImpl implements Observation {
 
         private Client client;
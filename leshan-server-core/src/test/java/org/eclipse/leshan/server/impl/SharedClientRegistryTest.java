@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.eclipse.leshan.LinkObject;
+import org.eclipse.leshan.core.request.BindingMode;
+import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.client.ClientRegistryListener;
+import org.eclipse.leshan.server.client.ClientUpdate;
+import org.eclipse.leshan.util.Charsets;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SharedClientRegistryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    FileKeyValueStore store;
+    SharedClientRegistry node1;
+    SharedClientRegistry node2;
+    InetAddress address;
+
+    @Before
+    public void setUp() throws Exception {
+        store = new FileKeyValueStore(folder.getRoot().getPath());
+        node1 = new SharedClientRegistry(store);
+        node2 = new SharedClientRegistry(new FileKeyValueStore(folder.getRoot().getPath()));
+        address = InetAddress.getLocalHost();
+    }
+
+    @Test
+    public void share_registration_between_nodes() {
+        LinkObject[] links = LinkObject.parse("</1/0>,</3/0>;rt=\"oma.lwm2m\"".getBytes(Charsets.UTF_8));
+        Date registrationDate = new Date(System.currentTimeMillis() - 1000);
+        Client client = new Client("node1.abc", "urn:endpoint", address, 5683, "1.0", 300L, "0171-32423545",
+                BindingMode.UQ, links, new InetSocketAddress("localhost", 5683), registrationDate, registrationDate);
+        node1.registerClient(client);
+
+        Client shared = node2.get("urn:endpoint");
+
+        Assert.assertEquals("node1.abc", shared.getRegistrationId());
+        Assert.assertEquals(address, shared.getAddress());
+        Assert.assertEquals(5683, shared.getPort());
+        Assert.assertEquals((Long) 300L, shared.getLifeTimeInSec());
+        Assert.assertEquals("0171-32423545", shared.getSmsNumber());
+        Assert.assertEquals(BindingMode.UQ, shared.getBindingMode());
+        Assert.assertArrayEquals(links, shared.getObjectLinks());
+        Assert.assertEquals(client.getRootPath(), shared.getRootPath());
+        Assert.assertEquals(5683, shared.getRegistrationEndpointAddress().getPort());
+        Assert.assertEquals(registrationDate, shared.getRegistrationDate());
+        Assert.assertEquals(registrationDate, shared.getLastUpdate());
+        Assert.assertEquals(1, node2.allClients().size());
+    }
+
+    @Test
+    public void update_and_deregister_through_another_node() {
+        node1.registerClient(givenAClient("node1.abc", "urn:endpoint"));
+
+        Client updated = node2.updateClient(new ClientUpdate("node1.abc", address, 5684, 60L, null, null, null));
+        Assert.assertEquals(5684, updated.getPort());
+        Assert.assertEquals((Long) 60L, node1.get("urn:endpoint").getLifeTimeInSec());
+
+        Assert.assertNotNull(node2.deregisterClient("node1.abc"));
+        Assert.assertNull(node1.get("urn:endpoint"));
+        Assert.assertNull(node1.deregisterClient("node1.abc"));
+        Assert.assertTrue(store.getAll("").isEmpty());
+    }
+
+    @Test
+    public void register_again_replaces_previous_registration() {
+        node1.registerClient(givenAClient("node1.abc", "urn:endpoint"));
+        node2.registerClient(givenAClient("node2.def", "urn:endpoint"));
+
+        Assert.assertNull(node1.updateClient(new ClientUpdate("node1.abc", address, 5683, null, null, null, null)));
+        Assert.assertEquals("node2.def", node1.get("urn:endpoint").getRegistrationId());
+    }
+
+    @Test
+    public void share_registration_of_long_endpoint() {
+        StringBuilder endpoint = new StringBuilder("urn:");
+        for (int i = 0; i < 300; i++) {
+            endpoint.append('e');
+        }
+        node1.registerClient(givenAClient("node1.abc", endpoint.toString()));
+
+        Assert.assertEquals("node1.abc", node2.get(endpoint.toString()).getRegistrationId());
+        Assert.assertEquals(1, node2.allClients().size());
+
+        Assert.assertNotNull(node2.deregisterClient("node1.abc"));
+        Assert.assertNull(node1.get(endpoint.toString()));
+    }
+
+    @Test
+    public void keep_alive_stores_last_update() {
+        Date lastUpdate = new Date(System.currentTimeMillis() - 2000);
+        node1.registerClient(new Client("node1.abc", "urn:endpoint", address, 5683, null, 1L, null, BindingMode.U,
+                null, new InetSocketAddress(5683), lastUpdate, lastUpdate));
+        Assert.assertFalse(node2.get("urn:endpoint").isAlive());
+
+        Assert.assertNotNull(node1.keepAlive("node1.abc", address, 5683));
+
+        Assert.assertTrue(node2.get("urn:endpoint").isAlive());
+    }
+
+    @Test
+    public void notify_owning_node_of_expiration_handled_by_another_node() {
+        List<Client> unregistered = listenUnregistrations(node1);
+        Date lastUpdate = new Date(System.currentTimeMillis() - 2000);
+        node1.registerClient(new Client("node1.abc", "urn:endpoint", address, 5683, null, 1L, null, BindingMode.U,
+                null, new InetSocketAddress(5683), lastUpdate, lastUpdate));
+
+        node2.cleanUp();
+        Assert.assertNull(node1.get("urn:endpoint"));
+        Assert.assertTrue(unregistered.isEmpty());
+
+        node1.cleanUp();
+        Assert.assertEquals(1, unregistered.size());
+        Assert.assertEquals("node1.abc", unregistered.get(0).getRegistrationId());
+
+        // notified only once
+        node1.cleanUp();
+        Assert.assertEquals(1, unregistered.size());
+    }
+
+    @Test
+    public void notify_owning_node_of_deregistration_through_another_node() {
+        List<Client> unregistered = listenUnregistrations(node1);
+        node1.registerClient(givenAClient("node1.abc", "urn:endpoint"));
+        node1.registerClient(givenAClient("node1.ghi", "urn:other"));
+
+        node2.deregisterClient("node1.abc");
+        node1.cleanUp();
+
+        Assert.assertEquals(1, unregistered.size());
+        Assert.assertEquals("node1.abc", unregistered.get(0).getRegistrationId());
+        Assert.assertNotNull(node1.get("urn:other"));
+    }
+
+    private List<Client> listenUnregistrations(SharedClientRegistry registry) {
+        final List<Client> unregistered = new ArrayList<>();
+        registry.addListener(new ClientRegistryListener() {
+            @Override
+            public void registered(Client client) {
+            }
+
+            @Override
+            public void updated(Client clientUpdated) {
+            }
+
+            @Override
+            public void unregistered(Client client) {
+                unregistered.add(client);
+            }
+        });
+        return unregistered;
+    }
+
+    private Client givenAClient(String registrationId, String endpoint) {
+        return new Client(registrationId, endpoint, address, 5683, new InetSocketAddress(5683));
+    }
+}
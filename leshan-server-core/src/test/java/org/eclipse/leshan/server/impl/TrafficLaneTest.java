@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.impl;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrafficLaneTest {
+
+    TrafficLane lane;
+
+    @Before
+    public void setUp() {
+        lane = new TrafficLane("test-lane", 1, 1);
+    }
+
+    @After
+    public void tearDown() {
+        lane.stop();
+    }
+
+    @Test
+    public void reject_tasks_when_lane_is_saturated() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(2);
+        final String[] threadName = new String[1];
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                threadName[0] = Thread.currentThread().getName();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(started.await(2, TimeUnit.SECONDS));
+        lane.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+
+        try {
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            Assert.fail("the lane should be saturated");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+        Assert.assertEquals(1, lane.getQueuedTasks());
+        Assert.assertEquals(1, lane.getActiveThreads());
+        Assert.assertEquals(1, lane.getRejectedTasks());
+
+        release.countDown();
+        Assert.assertTrue(done.await(2, TimeUnit.SECONDS));
+        Assert.assertEquals("test-lane-0", threadName[0]);
+        Assert.assertEquals(1, lane.getMaxQueuedTasks());
+    }
+
+    @Test
+    public void count_executed_tasks() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            lane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            });
+            Assert.assertTrue(lane.getQueuedTasks() <= 1);
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(done.await(2, TimeUnit.SECONDS));
+
+        // the task is counted right after it returns
+        for (int i = 0; i < 100 && lane.getExecutedTasks() < 3; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(3, lane.getExecutedTasks());
+        Assert.assertEquals(0, lane.getRejectedTasks());
+    }
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class MetricsRegistryTest {
+
+    @Test
+    public void return_the_same_metric_for_a_name() {
+        MetricsRegistry registry = new MetricsRegistry();
+
+        registry.counter("a").inc();
+        registry.counter("a").add(2);
+
+        Assert.assertSame(registry.counter("a"), registry.counter("a"));
+        Assert.assertEquals(3, registry.counter("a").getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reject_a_name_registered_with_another_type() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("a");
+
+        registry.meter("a");
+    }
+
+    @Test
+    public void compute_histogram_percentiles() {
+        Histogram histogram = new MetricsRegistry().histogram("h");
+        for (int i = 1; i <= 1000; i++) {
+            histogram.update(i);
+        }
+
+        Assert.assertEquals(1000, histogram.getCount());
+        Assert.assertEquals(500.5, histogram.getMean(), 0.001);
+        Assert.assertEquals(1000, histogram.getMax());
+        // the buckets are 12.5% wide at most
+        Assert.assertEquals(500, histogram.getPercentile(0.5), 500 * 0.125);
+        Assert.assertEquals(990, histogram.getPercentile(0.99), 990 * 0.125);
+        Assert.assertEquals(1000, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void cover_all_values_with_histogram_buckets() {
+        long previous = -1;
+        for (long value : new long[] { 0, 7, 8, 15, 16, 17, 1000, Long.MAX_VALUE }) {
+            int bucket = Histogram.bucketOf(value);
+            Assert.assertTrue(Histogram.upperBoundOf(bucket) >= value);
+            Assert.assertTrue(bucket >= previous);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    public void ignore_updates_when_disabled() {
+        MetricsRegistry registry = new MetricsRegistry(false);
+
+        registry.counter("c").inc();
+        registry.meter("m").mark();
+        registry.histogram("h").update(10);
+        registry.gauge("g", new Gauge() {
+            @Override
+            public long getValue() {
+                return 42;
+            }
+        });
+
+        Assert.assertEquals(0, registry.counter("c").getCount());
+        Assert.assertEquals(0, registry.meter("m").getCount());
+        Assert.assertEquals(0, registry.histogram("h").getCount());
+        Assert.assertNull(registry.getValues().get("g"));
+    }
+
+    @Test
+    public void flatten_the_values() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("c").inc();
+        registry.meter("m").mark(3);
+        registry.histogram("h").update(10);
+        registry.gauge("g", new Gauge() {
+            @Override
+            public long getValue() {
+                return 42;
+            }
+        });
+
+        Map<String, Number> values = registry.getValues();
+
+        Assert.assertEquals(1L, values.get("c"));
+        Assert.assertEquals(3L, values.get("m.count"));
+        Assert.assertNotNull(values.get("m.rate"));
+        Assert.assertEquals(1L, values.get("h.count"));
+        Assert.assertEquals(10L, values.get("h.max"));
+        Assert.assertEquals(42L, values.get("g"));
+    }
+
+    @Test
+    public void expose_the_values_through_jmx() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("registrations").add(5);
+        MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+        JmxMetricsReporter reporter = new JmxMetricsReporter(registry, "test", mbeanServer);
+
+        reporter.start();
+        try {
+            Assert.assertEquals(5L, mbeanServer.getAttribute(reporter.getObjectName(), "registrations"));
+        } finally {
+            reporter.stop();
+        }
+        Assert.assertFalse(mbeanServer.isRegistered(reporter.getObjectName()));
+    }
+}
@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * Copyright (c) 2015 Sierra Wireless and others.
+ *
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * and Eclipse Distribution License v1.0 which accompany this distribution.
+ *
+ * The Eclipse Public License is available at
+ *    http://www.eclipse.org/legal/epl-v10.html
+ * and the Eclipse Distribution License is available at
+ *    http://www.eclipse.org/org/documents/edl-v10.html.
+ *
+ * Contributors:
+ *     Sierra Wireless - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.leshan.server.observation;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.leshan.core.node.LwM2mNode;
+import org.eclipse.leshan.core.node.LwM2mPath;
+import org.eclipse.leshan.core.node.LwM2mResource;
+import org.eclipse.leshan.core.node.Value;
+import org.eclipse.leshan.server.client.Client;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ConflatingObservationRegistryListenerTest {
+
+    Client client;
+    List<Runnable> tasks;
+    List<LwM2mNode> received;
+    ConflatingObservationRegistryListener listener;
+
+    @Before
+    public void setUp() throws Exception {
+        client = new Client("ID", "urn:client", InetAddress.getLocalHost(), 10000,
+                InetSocketAddress.createUnresolved("localhost", 5683));
+        tasks = new ArrayList<>();
+        received = new ArrayList<>();
+        listener = new ConflatingObservationRegistryListener(new ObservationRegistryListener() {
+            @Override
+            public void newValue(Observation observation, LwM2mNode value) {
+                received.add(value);
+            }
+
+            @Override
+            public void cancelled(Observation observation) {
+            }
+
+            @Override
+            public void newObservation(Observation observation) {
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+    }
+
+    @Test
+    public void deliver_only_newest_value() {
+        Observation observation = new SimpleObservation(client, new LwM2mPath(3, 0, 15));
+
+        listener.newValue(observation, value(1));
+        listener.newValue(observation, value(2));
+        listener.newValue(observation, value(3));
+        Assert.assertEquals(1, tasks.size());
+        Assert.assertEquals(1, listener.getPendingValues());
+
+        tasks.get(0).run();
+
+        Assert.assertEquals(1, received.size());
+        Assert.assertEquals(value(3), received.get(0));
+        Assert.assertEquals(2, listener.getConflatedValues());
+        Assert.assertEquals(1, listener.getDeliveredValues());
+    }
+
+    @Test
+    public void deliver_values_of_each_resource() {
+        listener.newValue(new SimpleObservation(client, new LwM2mPath(3, 0, 15)), value(1));
+        listener.newValue(new SimpleObservation(client, new LwM2mPath(3, 0, 14)), value(2));
+
+        tasks.get(0).run();
+
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals(0, listener.getConflatedValues());
+
+        // delivery restarts on the next value
+        listener.newValue(new SimpleObservation(client, new LwM2mPath(3, 0, 15)), value(3));
+        Assert.assertEquals(2, tasks.size());
+    }
+
+    @Test
+    public void deliver_oldest_pending_resource_first() {
+        Observation fast = new SimpleObservation(client, new LwM2mPath(3, 0, 15));
+        listener.newValue(fast, value(1));
+        listener.newValue(new SimpleObservation(client, new LwM2mPath(3, 0, 14)), value(2));
+        listener.newValue(fast, value(3));
+
+        tasks.get(0).run();
+
+        // a resource notified faster than the delivery keeps its turn
+        Assert.assertEquals(value(3), received.get(0));
+        Assert.assertEquals(value(2), received.get(1));
+    }
+
+    @Test
+    public void drop_pending_value_on_cancel() {
+        Observation observation = new SimpleObservation(client, new LwM2mPath(3, 0, 15));
+        listener.newValue(observation, value(1));
+
+        listener.cancelled(observation);
+        tasks.get(0).run();
+
+        Assert.assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void deliver_values_inline_when_executor_rejects() {
+        listener = new ConflatingObservationRegistryListener(new ObservationRegistryListener() {
+            @Override
+            public void newValue(Observation observation, LwM2mNode value) {
+                received.add(value);
+            }
+
+            @Override
+            public void cancelled(Observation observation) {
+            }
+
+            @Override
+            public void newObservation(Observation observation) {
+            }
+        }, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException();
+            }
+        });
+        Observation observation = new SimpleObservation(client, new LwM2mPath(3, 0, 15));
+
+        listener.newValue(observation, value(1));
+        listener.newValue(observation, value(2));
+
+        // the delivery is not stuck after the first rejection
+        Assert.assertEquals(2, received.size());
+        Assert.assertEquals(0, listener.getPendingValues());
+    }
+
+    private static LwM2mResource value(long value) {
+        return new LwM2mResource(15, Value.newLongValue(value));
+    }
+
+    private static class SimpleObservation implements Observation {
+
+        private final Client client;
+        private final LwM2mPath path;
+
+        SimpleObservation(Client client, LwM2mPath path) {
+            this.client = client;
+            this.path = path;
+        }
+
+        @Override
+        public Client getClient() {
+            return client;
+        }
+
+        @Override
+        public LwM2mPath getPath() {
+            return path;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public void addListener(ObservationListener listener) {
+        }
+
+        @Override
+        public void removeListener(ObservationListener listener) {
+        }
+    }
+}
@@ -36,10 +36,13 @@ import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.eclipse.leshan.server.californium.LeshanServerBuilder;
+import org.eclipse.leshan.server.californium.impl.CircuitBreakerRequestSender;
 import org.eclipse.leshan.server.californium.impl.LeshanServer;
+import org.eclipse.leshan.server.impl.DeviceShadowImpl;
 import org.eclipse.leshan.server.impl.SecurityRegistryImpl;
 import org.eclipse.leshan.standalone.servlet.ClientServlet;
 import org.eclipse.leshan.standalone.servlet.EventServlet;
+import org.eclipse.leshan.standalone.servlet.MetricsServlet;
 import org.eclipse.leshan.standalone.servlet.ObjectSpecServlet;
 import org.eclipse.leshan.standalone.servlet.SecurityServlet;
 import org.slf4j.Logger;
@@ -59,6 +62,14 @@ public class LeshanStandalone {
 
         // Build LWM2M server
         LeshanServerBuilder builder = new LeshanServerBuilder();
+        // keep the last notified values for the sparklines of the UI
+        builder.setHistorySize(100);
+        // answer the reads with a maximum age from the last known values
+        builder.setMaxShadowEntries(DeviceShadowImpl.DEFAULT_MAX_ENTRIES);
+        builder.setMetrics(true, true);
+        // show the reachability of the clients
+        builder.setUnreachableClients(CircuitBreakerRequestSender.DEFAULT_TIMEOUT_THRESHOLD,
+                CircuitBreakerRequestSender.DEFAULT_PROBE_INTERVAL, false);
         if (iface != null && !iface.isEmpty()) {
             String[] add = iface.split(":");
             builder.setLocalAddress(add[0], Integer.parseInt(add[1]));
@@ -131,6 +142,9 @@ public class LeshanStandalone {
         ServletHolder objectSpecServletHolder = new ServletHolder(new ObjectSpecServlet());
         root.addServlet(objectSpecServletHolder, "/api/objectspecs/*");
 
+        ServletHolder metricsServletHolder = new ServletHolder(new MetricsServlet(lwServer.getMetricsRegistry()));
+        root.addServlet(metricsServletHolder, "/api/metrics/*");
+
         // Start jetty
         try {
             server.start();
@@ -28,8 +28,10 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.eclipse.jetty.http.HttpFields;
+import org.eclipse.leshan.ResponseCode;
 import org.eclipse.leshan.core.node.LwM2mNode;
 import org.eclipse.leshan.core.node.LwM2mObjectInstance;
+import org.eclipse.leshan.core.node.LwM2mPath;
 import org.eclipse.leshan.core.node.LwM2mResource;
 import org.eclipse.leshan.core.node.Value;
 import org.eclipse.leshan.core.request.ContentFormat;
@@ -44,7 +46,12 @@ import org.eclipse.leshan.core.request.exception.ResourceAccessException;
 import org.eclipse.leshan.core.response.LwM2mResponse;
 import org.eclipse.leshan.core.response.ValueResponse;
 import org.eclipse.leshan.server.LwM2mServer;
+import org.eclipse.leshan.server.californium.impl.CircuitBreakerRequestSender;
+import org.eclipse.leshan.server.californium.impl.LeshanServer;
 import org.eclipse.leshan.server.client.Client;
+import org.eclipse.leshan.server.history.ObservationHistory;
+import org.eclipse.leshan.server.history.TimeSeries;
+import org.eclipse.leshan.server.shadow.ShadowValue;
 import org.eclipse.leshan.standalone.servlet.json.ClientSerializer;
 import org.eclipse.leshan.standalone.servlet.json.LwM2mNodeDeserializer;
 import org.eclipse.leshan.standalone.servlet.json.LwM2mNodeSerializer;
@@ -54,6 +61,8 @@ import org.slf4j.LoggerFactory;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSyntaxException;
 
 /**
@@ -75,7 +84,11 @@ public class ClientServlet extends HttpServlet {
         this.server = server;
 
         GsonBuilder gsonBuilder = new GsonBuilder();
-        gsonBuilder.registerTypeHierarchyAdapter(Client.class, new ClientSerializer());
+        CircuitBreakerRequestSender circuitBreaker = null;
+        if (server instanceof LeshanServer) {
+            circuitBreaker = ((LeshanServer) server).getCircuitBreaker();
+        }
+        gsonBuilder.registerTypeHierarchyAdapter(Client.class, new ClientSerializer(circuitBreaker));
         gsonBuilder.registerTypeHierarchyAdapter(LwM2mResponse.class, new ResponseSerializer());
         gsonBuilder.registerTypeHierarchyAdapter(LwM2mNode.class, new LwM2mNodeSerializer());
         gsonBuilder.registerTypeHierarchyAdapter(LwM2mNode.class, new LwM2mNodeDeserializer());
@@ -127,6 +140,25 @@ public class ClientServlet extends HttpServlet {
             Client client = server.getClientRegistry().get(clientEndpoint);
             if (client != null) {
                 ReadRequest request = new ReadRequest(target);
+
+                // the values notified in the last seconds
+                String history = req.getParameter("history");
+                if (history != null) {
+                    processHistory(resp, client, request.getPath(), Long.parseLong(history) * 1000);
+                    return;
+                }
+
+                // answer from the last known value if it is recent enough
+                String maxAge = req.getParameter("maxAge");
+                if (maxAge != null && server.getDeviceShadow() != null) {
+                    ShadowValue value = server.getDeviceShadow().get(client, request.getPath(),
+                            Long.parseLong(maxAge) * 1000);
+                    if (value != null) {
+                        processDeviceResponse(req, resp, new ValueResponse(ResponseCode.CONTENT, value.getNode()));
+                        return;
+                    }
+                }
+
                 ValueResponse cResponse = server.send(client, request, TIMEOUT);
                 processDeviceResponse(req, resp, cResponse);
             } else {
@@ -144,6 +176,31 @@ public class ClientServlet extends HttpServlet {
         }
     }
 
+    private void processHistory(HttpServletResponse resp, Client client, LwM2mPath path, long duration)
+            throws IOException {
+        ObservationHistory history = server.getObservationHistory();
+        long now = System.currentTimeMillis();
+        TimeSeries series = history == null ? null : history.get(client, path, now - duration, now);
+
+        // [[timestamp, value], ...]
+        JsonArray samples = new JsonArray();
+        if (series != null) {
+            for (int i = 0; i < series.size(); i++) {
+                JsonArray sample = new JsonArray();
+                sample.add(new JsonPrimitive(series.getTimestamp(i)));
+                if (series.isFloatingPoint()) {
+                    sample.add(new JsonPrimitive(series.getValue(i)));
+                } else {
+                    sample.add(new JsonPrimitive(series.getLongValue(i)));
+                }
+                samples.add(sample);
+            }
+        }
+        resp.setContentType("application/json");
+        resp.getOutputStream().write(samples.toString().getBytes("UTF-8"));
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -18,6 +18,7 @@ package org.eclipse.leshan.standalone.servlet.json;
 import java.lang.reflect.Type;
 
 import org.eclipse.leshan.server.californium.LeshanServerBuilder;
+import org.eclipse.leshan.server.californium.impl.CircuitBreakerRequestSender;
 import org.eclipse.leshan.server.client.Client;
 
 import com.google.gson.JsonElement;
@@ -27,6 +28,19 @@ import com.google.gson.JsonSerializer;
 
 public class ClientSerializer implements JsonSerializer<Client> {
 
+    private final CircuitBreakerRequestSender circuitBreaker;
+
+    public ClientSerializer() {
+        this(null);
+    }
+
+    /**
+     * @param circuitBreaker gives the reachability of the clients (optional)
+     */
+    public ClientSerializer(CircuitBreakerRequestSender circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
     @Override
     public JsonElement serialize(Client src, Type typeOfSrc, JsonSerializationContext context) {
         JsonObject element = new JsonObject();
@@ -43,6 +57,10 @@ public class ClientSerializer implements JsonSerializer<Client> {
         element.add("objectLinks", context.serialize(src.getSortedObjectLinks()));
         element.add("secure",
                 context.serialize(src.getRegistrationEndpointAddress().getPort() == LeshanServerBuilder.PORT_DTLS));
+        if (circuitBreaker != null) {
+            element.addProperty("reachability", circuitBreaker.getReachability(src).toString());
+            element.addProperty("consecutiveTimeouts", circuitBreaker.getConsecutiveTimeouts(src));
+        }
 
         return element;
     }